@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.LayoutBase;
+import flylog.sdk.log.LogLevel;
+import flylog.sdk.log.LogOptions;
+import flylog.sdk.log.LogPipeline;
+import flylog.sdk.log.LogRecord;
+import flylog.sdk.log.jboss.FlyLogLoggerProvider;
+import flylog.sdk.log.logback.FlyLogAppender;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageType;
+import org.jboss.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the latency of logging calls from the logging thread to the ring buffer of a {@link LogPipeline pipeline}.
+ * <p>Segments are encoded by the pipeline thread and uploaded to an {@code es} storage, so the latency includes the backpressure
+ * of the pipeline but not the latency of a remote storage. The latency distribution is sampled, so the percentiles show the outliers.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AppenderBenchmark {
+    @Param({"pipeline", "logback", "jboss"})
+    public String appender;
+
+    private LogPipeline pipeline;
+    private FlyLogAppender<String> logback;
+    private FlyLogLoggerProvider provider;
+    private Logger logger;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LogOptions options = new LogOptions();
+        options.setSource("bench");
+        Storage storage = StorageType.ES.create(null, String.format("bench-%08x", ThreadLocalRandom.current().nextInt()), null, null);
+        switch (appender) {
+            case "pipeline":
+                pipeline = new LogPipeline(storage, options, null, (message, e) -> {
+                });
+                pipeline.start();
+                break;
+            case "logback":
+                logback = new FlyLogAppender<>();
+                logback.setContext(new ContextBase());
+                logback.setName("bench");
+                logback.setStorage(storage);
+                logback.setSource("bench");
+                LayoutBase<String> layout = new LayoutBase<>() {
+                    @Override
+                    public String doLayout(String event) {
+                        return event;
+                    }
+                };
+                logback.setLayout(layout);
+                logback.start();
+                break;
+            case "jboss":
+                pipeline = new LogPipeline(storage, options, null, (message, e) -> {
+                });
+                pipeline.start();
+                provider = new FlyLogLoggerProvider(pipeline, LogLevel.INFO);
+                logger = provider.getLogger("flylog.benchmark");
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown appender: %s", appender));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (logback != null) {
+            logback.stop();
+        }
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Benchmark
+    public void log() {
+        switch (appender) {
+            case "pipeline":
+                long s = pipeline.claim();
+                if (s >= 0L) {
+                    try {
+                        LogRecord record = pipeline.get(s);
+                        record.timestamp = System.currentTimeMillis();
+                        record.level = LogLevel.INFO;
+                        record.logger = "flylog.benchmark";
+                        record.thread = Thread.currentThread().getName();
+                        record.message.append("request completed in 42 ms");
+                    } finally {
+                        pipeline.publish(s);
+                    }
+                }
+                break;
+            case "logback":
+                logback.doAppend("request completed in 42 ms");
+                break;
+            default:
+                logger.infof("request completed in %d ms", 42);
+                break;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.storage.codec.DeflateCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the throughput and the compression ratio of {@link Codec codecs} on blocks of log text.
+ * <p>The {@code rawBytes} and {@code compressedBytes} counters are reported as rates,
+ * their quotient is the compression ratio of the codec.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final String[] LEVELS = {"INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] LOGGERS = {"io.kubfly.api.OrderController", "io.kubfly.db.ConnectionPool", "io.kubfly.cache.SessionCache"};
+
+    @Param({"none", "deflate-1", "deflate-6", "deflate-9"})
+    public String codec;
+
+    @Param({"65536", "1048576"})
+    public int blockSize;
+
+    private Codec c;
+    private ByteBuffer raw;
+    private ByteBuffer compressed;
+    private ByteBuffer decompressed;
+    private ByteBuffer scratch;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long rawBytes;
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0L;
+            compressedBytes = 0L;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        c = codec.startsWith("deflate-") ? new DeflateCodec(Integer.parseInt(codec.substring(8))) : Codecs.get(codec);
+        Random random = new Random(42L);
+        StringBuilder sb = new StringBuilder(blockSize + 256);
+        long time = 1_700_000_000_000L;
+        while (sb.length() < blockSize) {
+            time += random.nextInt(50);
+            sb.append(time).append(' ').append(LEVELS[random.nextInt(LEVELS.length)])
+              .append(" [worker-").append(random.nextInt(16)).append("] ").append(LOGGERS[random.nextInt(LOGGERS.length)])
+              .append(" - request ").append(Long.toHexString(random.nextLong())).append(" completed in ").append(random.nextInt(1000)).append(" ms\n");
+        }
+        byte[] text = sb.substring(0, blockSize).getBytes(StandardCharsets.UTF_8);
+        raw = ByteBuffer.allocateDirect(text.length).put(text).flip();
+        compressed = ByteBuffer.allocateDirect(c.maxCompressedLength(text.length));
+        decompressed = ByteBuffer.allocateDirect(text.length);
+        scratch = ByteBuffer.allocateDirect(compressed.capacity());
+        c.compress(raw.duplicate(), compressed);
+        compressed.flip();
+    }
+
+    @Benchmark
+    public int compress(Bytes bytes) {
+        scratch.clear();
+        c.compress(raw.duplicate(), scratch);
+        bytes.rawBytes += raw.remaining();
+        bytes.compressedBytes += scratch.position();
+        return scratch.position();
+    }
+
+    @Benchmark
+    public int decompress(Bytes bytes) {
+        decompressed.clear();
+        c.decompress(compressed.duplicate(), decompressed);
+        bytes.rawBytes += decompressed.position();
+        bytes.compressedBytes += compressed.remaining();
+        return decompressed.position();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import flylog.sdk.storage.Storage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the data streams of the {@code fs} and {@code es} backends at various object sizes.
+ * <p>Reads are measured through a heap buffer with {@link InputStream#read(byte[]) read}
+ * and through {@link InputStream#transferTo(OutputStream) transferTo}, which the backends implement with NIO buffers.
+ * The {@code fs} backend is also compared with a plain file stream as the baseline.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageDataBenchmark {
+    private static final String KEY = "data/object";
+
+    @Param({"fs", "es"})
+    public String type;
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    private Path root;
+    private Storage storage;
+    private byte[] data;
+    private final byte[] buffer = new byte[64 << 10];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("flylog-bench-");
+        storage = Storages.create(type, root);
+        data = new byte[size];
+        ThreadLocalRandom.current().nextBytes(data);
+        try (OutputStream out = storage.putData(KEY)) {
+            out.write(data);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Storages.delete(storage, root);
+    }
+
+    @Benchmark
+    public long getData() throws IOException {
+        long total = 0L;
+        try (InputStream in = storage.getData(KEY)) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long getDataTransfer() throws IOException {
+        try (InputStream in = storage.getData(KEY)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long getDataBaseline(Blackhole blackhole) throws IOException {
+        if (!(storage instanceof flylog.sdk.storage.fs.CustomStorage fs)) {
+            return getData();
+        }
+        long total = 0L;
+        try (InputStream in = Files.newInputStream(fs.getPath(KEY))) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                total += n;
+            }
+        }
+        blackhole.consume(buffer);
+        return total;
+    }
+
+    @Benchmark
+    public void putData() throws IOException {
+        try (OutputStream out = storage.putData("data/put")) {
+            out.write(data);
+        }
+    }
+}
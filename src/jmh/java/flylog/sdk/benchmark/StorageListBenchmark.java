@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the paginated {@link Storage#list(String, int) listing} of the {@code fs} and {@code es} backends.
+ * <p>Every invocation iterates over all objects of the prefix with the specified page size.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageListBenchmark {
+    @Param({"fs", "es"})
+    public String type;
+
+    @Param({"10000"})
+    public int objects;
+
+    @Param({"100", "1000"})
+    public int maxKeys;
+
+    private Path root;
+    private Storage storage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("flylog-bench-");
+        storage = Storages.create(type, root);
+        for (int i = 0; i < objects; i++) {
+            try (OutputStream out = storage.putData(String.format("logs/%02d/%08d.seg", i % 24, i))) {
+                out.write(i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Storages.delete(storage, root);
+    }
+
+    @Benchmark
+    public int list(Blackhole blackhole) {
+        int count = 0;
+        for (StorageObject so : storage.list("logs/", maxKeys)) {
+            blackhole.consume(so);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Storages of benchmarks.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class Storages {
+    private Storages() {
+    }
+
+    /**
+     * Creates a storage of the specified type in a unique bucket.
+     *
+     * @param type the storage type id, {@code fs} or {@code es}
+     * @param root the endpoint directory of the {@code fs} storage
+     *
+     * @return storage
+     */
+    static Storage create(String type, Path root) {
+        String bucket = String.format("bench-%08x", ThreadLocalRandom.current().nextInt());
+        return StorageType.of(type).create(root.toString(), bucket, null, null);
+    }
+
+    /**
+     * Deletes all objects of the specified storage and the endpoint directory.
+     *
+     * @param storage the storage
+     * @param root the endpoint directory
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    static void delete(Storage storage, Path root) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (StorageObject so : storage.list("", 0)) {
+            keys.add(so.key);
+        }
+        storage.deleteAll(keys);
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.benchmark;
+
+import flylog.sdk.utility.concurrent.ThreadSection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of {@link ThreadSection#enter() entering} and {@link ThreadSection#leave() leaving} a thread section under contention.
+ * <p>The striped section is compared with the single counter section and with a plain atomic counter as the baseline,
+ * the contention is set by the number of threads, e.g. {@code -t 1}, {@code -t 8} or {@code -t max}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ThreadSectionBenchmark {
+    @Param({"true", "false"})
+    public boolean striped;
+
+    private ThreadSection section;
+    private final AtomicLong counter = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        section = new ThreadSection(true, striped);
+    }
+
+    @Benchmark
+    public boolean enterLeave() {
+        boolean entered = section.enter();
+        if (entered) {
+            section.leave();
+        }
+        return entered;
+    }
+
+    @Benchmark
+    public long atomic() {
+        counter.incrementAndGet();
+        return counter.decrementAndGet();
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.utility.concurrent.Parallel;
+import flylog.sdk.utility.concurrent.ThreadSection;
+import flylog.sdk.utility.logging.ErrorLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background compaction of small {@link LogSegment log segments} into large ones.
+ * <p>Sources with little traffic or short flush intervals produce many small segments, which makes listings and per-object requests
+ * dominate the cost of storage and queries. A compactor lists the segments under the key prefix of the {@link LogLayout key layout}
+ * periodically, and merges the small segments of every closed partition into segments of the segment size:
+ * <ul>
+ *     <li>the records of a batch of small segments are read, sorted by time and encoded into new segments with the codec,
+ *     the block size and the token filters of the options, which are put with {@link Storage#putData(String, Map) putData}
+ *     together with their metadata;</li>
+ *     <li>the metadata of a merged segment holds the lineage, the names of the segments it replaces, in place of the inline
+ *     block index, so it stays within {@value #MAX_META_SIZE} bytes;</li>
+ *     <li>the merged segments are added to the {@link LogManifest manifest} of the compactor in the partition and the small
+ *     segments are {@link LogManifest#retire(String) retired} in it, which drops them from the merged manifests of the partition
+ *     without writing the manifests of the writers, after which the small segments are deleted.</li>
+ * </ul>
+ * <p>The merged manifests are the record of the segments of a partition: only small segments of the manifests are compacted.
+ * A compaction interrupted before its manifest is stored leaves merged segments which are not in the manifests,
+ * and one interrupted before its retired segments are deleted leaves retired segments, so both are neither visible to queries
+ * nor compacted again. Merged segments are kept when the manifest fails to be stored, as a failed request may have stored it
+ * nevertheless. Both are swept by the next compaction of the partition, which deletes the segments retired
+ * in the manifests and the segments with a {@value #META_LINEAGE} which are not in the manifests.
+ * A partition is compacted only after the grace period from its end, when its pipelines have stopped writing their manifests,
+ * and only one compactor may run for a key prefix, as the merged segments of a concurrent compactor are swept as well.
+ * Queries which have selected a retired segment before it was deleted fail to read it and should be repeated.
+ * <p>Partitions are compacted by a bounded number of virtual worker threads in a {@link ThreadSection thread section},
+ * so a compactor is {@link #pause() paused} during peak hours: a paused compactor starts no partitions, and the partitions
+ * in progress stop after their current batch. The records of a batch are held in memory while it is merged,
+ * which is about the segment size of compressed records for every worker.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogCompactor implements AutoCloseable {
+    /**
+     * Metadata key of the lineage of a merged segment: the comma separated names of the segments it replaces,
+     * or the first and the last name separated by {@code ..} if the names do not fit {@value #MAX_META_LINEAGE} characters.
+     */
+    public static final String META_LINEAGE = "flylog-lineage";
+
+    /**
+     * Metadata key of the number of the segments which a merged segment replaces.
+     */
+    public static final String META_LINEAGE_COUNT = "flylog-lineage-count";
+
+    /**
+     * Maximum length of the lineage stored in the metadata, which keeps the metadata within the limits of object storages.
+     */
+    public static final int MAX_META_LINEAGE = 1024;
+
+    /**
+     * Maximum total size in bytes of the keys and values of the metadata of a merged segment, the user metadata limit of S3.
+     */
+    public static final int MAX_META_SIZE = 2048;
+
+    /**
+     * Default size in bytes below which a segment is small.
+     */
+    public static final long DEFAULT_SMALL_SIZE = 1L << 20;
+
+    /**
+     * Default maximum number of concurrently compacted partitions.
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Default interval of compaction runs.
+     */
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(10L);
+
+    /**
+     * Default grace period after the end of a partition before it is compacted.
+     */
+    public static final Duration DEFAULT_GRACE = Duration.ofHours(2L);
+
+    /**
+     * Result of a compaction run.
+     */
+    public static final class Result {
+        /**
+         * Number of the partitions with small segments.
+         */
+        public final int partitions;
+
+        /**
+         * Number of the retired small segments.
+         */
+        public final int retired;
+
+        /**
+         * Number of the written merged segments.
+         */
+        public final int written;
+
+        /**
+         * Number of the partitions which failed to be compacted.
+         */
+        public final int failed;
+
+        /**
+         * Number of the swept segments of interrupted compactions.
+         */
+        public final int swept;
+
+        /**
+         * Constructs a result with the specified parameters.
+         *
+         * @param partitions the number of the partitions with small segments
+         * @param retired the number of the retired small segments
+         * @param written the number of the written merged segments
+         * @param failed the number of the partitions which failed to be compacted
+         * @param swept the number of the swept segments of interrupted compactions
+         */
+        public Result(int partitions, int retired, int written, int failed, int swept) {
+            this.partitions = partitions;
+            this.retired = retired;
+            this.written = written;
+            this.failed = failed;
+            this.swept = swept;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("partitions %d, retired %d, written %d, failed %d, swept %d", partitions, retired, written, failed, swept);
+        }
+    }
+
+    /**
+     * Object storage of segments.
+     */
+    protected final Storage storage;
+
+    private final String prefix;
+    private final int segmentSize;
+    private final int blockSize;
+    private final Codec codec;
+    private final boolean tokenFilters;
+    private final long smallSize;
+    private final int concurrency;
+    private final long interval;
+    private final long grace;
+    private final LogPipeline.ErrorHandler errors;
+    private final String instance;
+    private final AtomicLong sequence = new AtomicLong(0L);
+    private final ThreadSection section = new ThreadSection(true);
+    private final ReentrantLock scheduleLock = new ReentrantLock();
+    private Thread scheduler = null;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a compactor of the segments of the specified options with segments below {@code 1} MiB being small,
+     * {@value #DEFAULT_CONCURRENCY} concurrent partitions, runs every {@code 10} minutes, a grace period of {@code 2} hours
+     * and errors logged by the {@link ErrorLog shared error log}.
+     *
+     * @param storage the object storage of segments
+     * @param options the pipeline options of the prefix, the segment size, the block size, the codec and the token filters
+     */
+    public LogCompactor(Storage storage, LogOptions options) {
+        this(storage, options, DEFAULT_SMALL_SIZE, DEFAULT_CONCURRENCY, DEFAULT_INTERVAL, DEFAULT_GRACE, ErrorLog::error);
+    }
+
+    /**
+     * Constructs a compactor with the specified parameters, its background runs begin when it is {@link #start() started}.
+     *
+     * @param storage the object storage of segments
+     * @param options the pipeline options of the prefix, the segment size, the block size, the codec and the token filters
+     * @param smallSize the size in bytes below which a segment is small
+     * @param concurrency the maximum number of concurrently compacted partitions
+     * @param interval the interval of compaction runs, zero if compactions are run only by {@link #compact() compact}
+     * @param grace the grace period after the end of a partition before it is compacted
+     * @param errors the handler of compaction errors
+     *
+     * @throws IllegalArgumentException if the codec is unknown or a parameter is illegal
+     */
+    public LogCompactor(Storage storage, LogOptions options, long smallSize, int concurrency, Duration interval, Duration grace,
+                        LogPipeline.ErrorHandler errors) {
+        if (smallSize < 1L) {
+            throw new IllegalArgumentException(String.format("Illegal small size: %d", smallSize));
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException(String.format("Illegal concurrency: %d", concurrency));
+        }
+        if (interval.isNegative() || grace.isNegative()) {
+            throw new IllegalArgumentException(String.format("Illegal interval or grace period: %s, %s", interval, grace));
+        }
+        this.storage = storage;
+        this.prefix = (options.getPrefix() != null) ? options.getPrefix() : "";
+        this.segmentSize = options.getSegmentSize();
+        this.blockSize = options.getBlockSize();
+        this.codec = Codecs.get(options.getCodec());
+        this.tokenFilters = options.isTokenFilters();
+        this.smallSize = smallSize;
+        this.concurrency = concurrency;
+        this.interval = interval.toMillis();
+        this.grace = grace.toMillis();
+        this.errors = errors;
+        this.instance = String.format("%08x", ThreadLocalRandom.current().nextInt());
+    }
+
+    /**
+     * Starts the background runs of this compactor, a compactor without an interval or a started or closed compactor is not started.
+     */
+    public void start() {
+        scheduleLock.lock();
+        try {
+            if ((scheduler == null) && running && (interval > 0L)) {
+                scheduler = Thread.ofPlatform().daemon().name(String.format("flylog-compact-%s", instance)).start(this::run);
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the object storage of segments.
+     *
+     * @return object storage of segments
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns {@code true} if this compactor is paused, {@code false} otherwise.
+     *
+     * @return {@code true} if this compactor is paused, {@code false} otherwise
+     */
+    public boolean isPaused() {
+        return !section.isEnabled();
+    }
+
+    /**
+     * Pauses this compactor and waits until the partitions in progress stop after their current batch.
+     */
+    public void pause() {
+        section.disable();
+        section.await();
+    }
+
+    /**
+     * Pauses this compactor and waits until the partitions in progress stop after their current batch or the specified timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     *
+     * @return {@code true} if no partitions are in progress, {@code false} if the timeout elapsed
+     */
+    public boolean pause(Duration timeout) {
+        section.disable();
+        return section.await(timeout);
+    }
+
+    /**
+     * Resumes this compactor.
+     */
+    public void resume() {
+        section.enable();
+    }
+
+    /**
+     * Compacts the closed partitions of all sources under the key prefix.
+     *
+     * @return result of the compaction
+     *
+     * @throws ConnectionStorageException if the segments could not be listed
+     */
+    public Result compact() {
+        return compactRoot(prefix);
+    }
+
+    /**
+     * Compacts the closed partitions of the specified source.
+     *
+     * @param source the source name
+     *
+     * @return result of the compaction
+     *
+     * @throws IllegalArgumentException if the source name is illegal
+     * @throws ConnectionStorageException if the segments could not be listed
+     */
+    public Result compact(String source) {
+        return compactRoot(new LogLayout(prefix, source).getRoot());
+    }
+
+    /**
+     * Stops the background runs and waits until the partitions in progress stop after their current batch.
+     */
+    @Override
+    public void close() {
+        Thread s;
+        scheduleLock.lock();
+        try {
+            running = false;
+            s = scheduler;
+        } finally {
+            scheduleLock.unlock();
+        }
+        if (s != null) {
+            s.interrupt();
+            try {
+                s.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pause();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (section.isEnabled()) {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    errors.error(String.format("Log segments '%s' could not be compacted", storage.getInfo(prefix)), e);
+                }
+            }
+        }
+    }
+
+    private Result compactRoot(String root) {
+        long closed = System.currentTimeMillis() - grace;
+        Map<String, LogLayout> layouts = new HashMap<>();
+        Map<String, Partition> partitions = new LinkedHashMap<>();
+        for (StorageObject so : storage.list(root, 1000)) {
+            int i = so.key.indexOf('/', prefix.length());
+            if (!LogLayout.isSegment(so.key) || (so.size >= smallSize) || (i <= prefix.length())) {
+                continue;
+            }
+            long partition;
+            LogLayout layout;
+            try {
+                layout = layouts.computeIfAbsent(so.key.substring(prefix.length(), i), s -> new LogLayout(prefix, s));
+                partition = layout.getPartition(so.key);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (partition + LogLayout.PARTITION_INTERVAL <= closed) {
+                partitions.computeIfAbsent(layout.getPartitionPrefix(partition), k -> new Partition(layout, partition)).keys.add(so.key);
+            }
+        }
+        List<Partition> selected = new ArrayList<>();
+        for (Partition p : partitions.values()) {
+            if (p.keys.size() > 1) {
+                selected.add(p);
+            }
+        }
+        int retired = 0;
+        int written = 0;
+        int failed = 0;
+        int swept = 0;
+        for (Result r : Parallel.map(selected, concurrency, this::compact)) {
+            retired += r.retired;
+            written += r.written;
+            failed += r.failed;
+            swept += r.swept;
+        }
+        return new Result(selected.size(), retired, written, failed, swept);
+    }
+
+    private Result compact(Partition partition) {
+        if (!section.enter()) {
+            return new Result(1, 0, 0, 0, 0);
+        }
+        int retired = 0;
+        int written = 0;
+        int swept = 0;
+        try {
+            LogManifest manifest = LogManifest.loadAll(storage, partition.layout, partition.start);
+            if (manifest == null) {
+                manifest = LogManifest.rebuild(storage, partition.layout.getPartitionPrefix(partition.start));
+            }
+            swept = sweep(partition, manifest);
+            String key = partition.layout.getManifestKey(partition.start, instance);
+            LogManifest own = LogManifest.load(storage, key);
+            if (own == null) {
+                own = new LogManifest();
+            }
+            List<LogManifest.Entry> small = new ArrayList<>();
+            for (LogManifest.Entry entry : manifest.getEntries()) {
+                if (partition.keys.contains(entry.object.key)) {
+                    small.add(entry);
+                }
+            }
+            LogSegmentReader reader = new LogSegmentReader(storage);
+            int i = 0;
+            while ((i < small.size()) && section.isEnabled()) {
+                int j = i + 1;
+                long size = small.get(i).object.size;
+                while ((j < small.size()) && (size + small.get(j).object.size <= segmentSize)) {
+                    size += small.get(j++).object.size;
+                }
+                if (j - i > 1) {
+                    written += merge(partition, own, key, reader, small.subList(i, j));
+                    retired += j - i;
+                }
+                i = j;
+            }
+            return new Result(1, retired, written, 0, swept);
+        } catch (RuntimeException e) {
+            errors.error(String.format("Partition '%s' could not be compacted", storage.getInfo(partition.layout.getPartitionPrefix(partition.start))), e);
+            return new Result(1, retired, written, 1, swept);
+        } finally {
+            section.leave();
+        }
+    }
+
+    private int sweep(Partition partition, LogManifest manifest) {
+        List<String> orphans = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (StorageObject so : storage.list(partition.layout.getPartitionPrefix(partition.start), 1000)) {
+            if (LogLayout.isSegment(so.key) && !manifest.contains(so.key)) {
+                if (manifest.isRetired(so.key)) {
+                    orphans.add(so.key);
+                } else {
+                    unknown.add(so.key);
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            for (Map.Entry<String, Map<String, String>> e : storage.getMetaAll(unknown).entrySet()) {
+                if (e.getValue().containsKey(META_LINEAGE)) {
+                    orphans.add(e.getKey());
+                }
+            }
+        }
+        if (!orphans.isEmpty()) {
+            storage.deleteAll(orphans);
+        }
+        return orphans.size();
+    }
+
+    private int merge(Partition partition, LogManifest own, String key, LogSegmentReader reader, List<LogManifest.Entry> batch) {
+        List<Item> items = new ArrayList<>();
+        for (LogManifest.Entry entry : batch) {
+            reader.read(entry.object.key, Long.MIN_VALUE, Long.MAX_VALUE, r -> items.add(new Item(r.timestamp, r.level, r.message.toString())));
+        }
+        items.sort(Comparator.comparingLong(item -> item.timestamp));
+        List<String> lineage = lineage(partition, batch);
+        List<LogManifest.Entry> merged = new ArrayList<>();
+        LogSegment segment = new LogSegment(Math.min(segmentSize, 1 << 20), blockSize, codec, tokenFilters);
+        LogRecord record = new LogRecord();
+        try {
+            for (Item item : items) {
+                record.clear();
+                record.timestamp = item.timestamp;
+                record.level = item.level;
+                record.message.append(item.text);
+                record.formatted = true;
+                segment.append(record);
+                if (segment.size() >= segmentSize) {
+                    merged.add(put(partition, segment, lineage));
+                    segment.reset();
+                }
+            }
+            if (segment.getRecords() > 0) {
+                merged.add(put(partition, segment, lineage));
+            }
+        } catch (RuntimeException e) {
+            for (LogManifest.Entry entry : merged) {
+                try {
+                    storage.delete(entry.object.key);
+                } catch (RuntimeException de) {
+                    e.addSuppressed(de);
+                }
+            }
+            throw e;
+        } finally {
+            segment.release();
+        }
+        for (LogManifest.Entry entry : merged) {
+            own.add(entry);
+        }
+        for (LogManifest.Entry entry : batch) {
+            own.retire(entry.object.key);
+        }
+        own.store(storage, key);
+        List<String> keys = new ArrayList<>();
+        for (LogManifest.Entry entry : batch) {
+            keys.add(entry.object.key);
+        }
+        try {
+            storage.deleteAll(keys);
+        } catch (RuntimeException e) {
+            errors.error(String.format("Retired log segments of the partition '%s' could not be deleted",
+                                       storage.getInfo(partition.layout.getPartitionPrefix(partition.start))), e);
+        }
+        return merged.size();
+    }
+
+    private LogManifest.Entry put(Partition partition, LogSegment segment, List<String> lineage) {
+        segment.finish();
+        String key = partition.layout.getSegmentKey(partition.start, segment.getMinTime(), instance, sequence.incrementAndGet());
+        Map<String, String> meta = segment.getMeta();
+        meta.remove(LogIndex.META_INDEX);
+        meta.put(META_LINEAGE_COUNT, Integer.toString(lineage.size()));
+        meta.put(META_LINEAGE, lineage(lineage, MAX_META_SIZE - size(meta) - META_LINEAGE.length()));
+        OutputStream out = storage.putData(key, meta);
+        try {
+            segment.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            StorageOutputStream.abort(out);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new ConnectionStorageException(String.format("Log segment '%s' could not be put", storage.getInfo(key)), e);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new ConnectionStorageException(String.format("Log segment '%s' could not be put", storage.getInfo(key)), e);
+        }
+        return LogManifest.Entry.of(storage.get(key), segment.getIndex());
+    }
+
+    private static List<String> lineage(Partition partition, List<LogManifest.Entry> batch) {
+        int offset = partition.layout.getPartitionPrefix(partition.start).length();
+        List<String> names = new ArrayList<>();
+        for (LogManifest.Entry entry : batch) {
+            names.add(entry.object.key.substring(offset));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    private static String lineage(List<String> names, int max) {
+        String value = String.join(",", names);
+        if ((value.length() > MAX_META_LINEAGE) || (value.getBytes(StandardCharsets.UTF_8).length > max)) {
+            value = names.get(0) + ".." + names.get(names.size() - 1);
+        }
+        return value;
+    }
+
+    private static int size(Map<String, String> meta) {
+        int size = 0;
+        for (Map.Entry<String, String> e : meta.entrySet()) {
+            size += e.getKey().getBytes(StandardCharsets.UTF_8).length + e.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    private static final class Partition {
+        private final LogLayout layout;
+        private final long start;
+        private final Set<String> keys = new HashSet<>();
+
+        private Partition(LogLayout layout, long start) {
+            this.layout = layout;
+            this.start = start;
+        }
+    }
+
+    private static final class Item {
+        private final long timestamp;
+        private final LogLevel level;
+        private final String text;
+
+        private Item(long timestamp, LogLevel level, String text) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.storage.codec.DeflateCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block index of a binary {@link LogSegment log segment}.
+ * <p>The index names the {@link flylog.sdk.storage.codec.Codec codec} of the blocks. Every block entry holds the position of the compressed block in the segment object, the number of its records,
+ * the time range and the record counts by level, so readers fetch only the blocks of the requested time window.
+ * <p>The index is stored in the footer of the segment object and summarized in the object metadata,
+ * small indexes are also stored in the metadata entirely.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogIndex {
+    /**
+     * Metadata key of the format version.
+     */
+    public static final String META_FORMAT = "flylog-format";
+
+    /**
+     * Metadata key of the number of blocks.
+     */
+    public static final String META_BLOCKS = "flylog-blocks";
+
+    /**
+     * Metadata key of the number of records.
+     */
+    public static final String META_RECORDS = "flylog-records";
+
+    /**
+     * Metadata key of the minimum record time.
+     */
+    public static final String META_MIN_TIME = "flylog-min-time";
+
+    /**
+     * Metadata key of the maximum record time.
+     */
+    public static final String META_MAX_TIME = "flylog-max-time";
+
+    /**
+     * Metadata key of the comma separated record counts by level.
+     */
+    public static final String META_LEVELS = "flylog-levels";
+
+    /**
+     * Metadata key of the offset of the index in the segment object.
+     */
+    public static final String META_INDEX_OFFSET = "flylog-index-offset";
+
+    /**
+     * Metadata key of the length of the index in the segment object.
+     */
+    public static final String META_INDEX_LENGTH = "flylog-index-length";
+
+    /**
+     * Metadata key of the Base64 encoded index if it is small enough.
+     */
+    public static final String META_INDEX = "flylog-index";
+
+    /**
+     * Maximum length of the Base64 encoded index stored in the metadata, which keeps the metadata within the limits of object storages.
+     */
+    public static final int MAX_META_INDEX = 1024;
+
+    private static final int LEVELS = LogLevel.values().length;
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 4 * LEVELS;
+
+    /**
+     * Entry of a compressed block.
+     */
+    public static final class Block {
+        /**
+         * Offset of the compressed block in the segment object.
+         */
+        public final long offset;
+
+        /**
+         * Length of the compressed block in bytes.
+         */
+        public final int length;
+
+        /**
+         * Length of the uncompressed block in bytes.
+         */
+        public final int rawLength;
+
+        /**
+         * Number of records of the block.
+         */
+        public final int records;
+
+        /**
+         * Minimum record time of the block in milliseconds.
+         */
+        public final long minTime;
+
+        /**
+         * Maximum record time of the block in milliseconds.
+         */
+        public final long maxTime;
+
+        private final int[] levels;
+
+        /**
+         * Constructs a block entry with the specified parameters.
+         *
+         * @param offset the offset of the compressed block in the segment object
+         * @param length the length of the compressed block in bytes
+         * @param rawLength the length of the uncompressed block in bytes
+         * @param records the number of records of the block
+         * @param minTime the minimum record time of the block in milliseconds
+         * @param maxTime the maximum record time of the block in milliseconds
+         * @param levels the record counts by {@link LogLevel#ordinal() level ordinals}
+         */
+        public Block(long offset, int length, int rawLength, int records, long minTime, long maxTime, int[] levels) {
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.records = records;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.levels = levels.clone();
+        }
+
+        /**
+         * Gets the number of records of the block with the specified level.
+         *
+         * @param level the record level
+         *
+         * @return number of records with the level
+         */
+        public int getRecords(LogLevel level) {
+            return levels[level.ordinal()];
+        }
+
+        /**
+         * Checks whether the time range of the block overlaps the specified time window.
+         *
+         * @param from the start of the time window in milliseconds, inclusive
+         * @param to the end of the time window in milliseconds, exclusive
+         *
+         * @return {@code true} if the block may contain records of the time window, {@code false} otherwise
+         */
+        public boolean overlaps(long from, long to) {
+            return (records > 0) && (minTime < to) && (maxTime >= from);
+        }
+    }
+
+    private String codec = DeflateCodec.NAME;
+    private final List<Block> blocks = new ArrayList<>();
+    private long records = 0L;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private final long[] levels = new long[LEVELS];
+
+    /**
+     * Constructs an empty index.
+     */
+    public LogIndex() {
+    }
+
+    /**
+     * Gets the codec name of the blocks.
+     *
+     * @return codec name
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec name of the blocks.
+     *
+     * @param codec the codec name
+     */
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Gets the block entries.
+     *
+     * @return unmodifiable list of block entries in the order of blocks
+     */
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the number of records with the specified level.
+     *
+     * @param level the record level
+     *
+     * @return number of records with the level
+     */
+    public long getRecords(LogLevel level) {
+        return levels[level.ordinal()];
+    }
+
+    /**
+     * Gets the minimum record time in milliseconds.
+     *
+     * @return minimum record time or {@link Long#MAX_VALUE} if the index is empty
+     */
+    public long getMinTime() {
+        return minTime;
+    }
+
+    /**
+     * Gets the maximum record time in milliseconds.
+     *
+     * @return maximum record time or {@link Long#MIN_VALUE} if the index is empty
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Finds the blocks which overlap the specified time window.
+     *
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     *
+     * @return list of block entries in the order of blocks
+     */
+    public List<Block> find(long from, long to) {
+        List<Block> result = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.overlaps(from, to)) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the specified block entry.
+     *
+     * @param block the block entry
+     */
+    public void add(Block block) {
+        blocks.add(block);
+        records += block.records;
+        if (block.records > 0) {
+            minTime = Math.min(minTime, block.minTime);
+            maxTime = Math.max(maxTime, block.maxTime);
+        }
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] += block.levels[i];
+        }
+    }
+
+    /**
+     * Clears this index for reuse.
+     */
+    public void clear() {
+        blocks.clear();
+        records = 0L;
+        minTime = Long.MAX_VALUE;
+        maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = 0L;
+        }
+    }
+
+    /**
+     * Gets the size of the binary form of this index in bytes.
+     *
+     * @return size of the binary form in bytes
+     */
+    public int size() {
+        return 1 + codec.length() + 4 + blocks.size() * ENTRY_SIZE;
+    }
+
+    /**
+     * Writes the binary form of this index to the specified buffer.
+     *
+     * @param out the output buffer with at least {@link #size() size} remaining bytes
+     */
+    public void writeTo(ByteBuffer out) {
+        out.put((byte) codec.length());
+        out.put(codec.getBytes(StandardCharsets.US_ASCII));
+        out.putInt(blocks.size());
+        for (Block block : blocks) {
+            out.putLong(block.offset);
+            out.putInt(block.length);
+            out.putInt(block.rawLength);
+            out.putInt(block.records);
+            out.putLong(block.minTime);
+            out.putLong(block.maxTime);
+            for (int i = 0; i < LEVELS; i++) {
+                out.putInt(block.levels[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads an index from the binary form in the specified buffer.
+     *
+     * @param in the input buffer
+     *
+     * @return index
+     *
+     * @throws IllegalArgumentException if the binary form is malformed
+     */
+    public static LogIndex of(ByteBuffer in) {
+        LogIndex index = new LogIndex();
+        byte[] codec = new byte[in.get() & 0xff];
+        in.get(codec);
+        index.setCodec(new String(codec, StandardCharsets.US_ASCII));
+        int count = in.getInt();
+        if ((count < 0) || ((long) count * ENTRY_SIZE > in.remaining())) {
+            throw new IllegalArgumentException(String.format("Illegal number of index blocks: %d", count));
+        }
+        int[] levels = new int[LEVELS];
+        for (int i = 0; i < count; i++) {
+            long offset = in.getLong();
+            int length = in.getInt();
+            int rawLength = in.getInt();
+            int records = in.getInt();
+            long minTime = in.getLong();
+            long maxTime = in.getLong();
+            for (int l = 0; l < LEVELS; l++) {
+                levels[l] = in.getInt();
+            }
+            index.add(new Block(offset, length, rawLength, records, minTime, maxTime, levels));
+        }
+        return index;
+    }
+
+    /**
+     * Creates the object metadata of this index.
+     *
+     * @param indexOffset the offset of the index in the segment object
+     * @param indexLength the length of the index in the segment object
+     *
+     * @return metadata string map
+     */
+    public Map<String, String> toMeta(long indexOffset, int indexLength) {
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put(META_FORMAT, Integer.toString(LogSegment.FORMAT_VERSION));
+        meta.put(Codecs.META_CODEC, codec);
+        meta.put(META_BLOCKS, Integer.toString(blocks.size()));
+        meta.put(META_RECORDS, Long.toString(records));
+        meta.put(META_MIN_TIME, Long.toString(minTime));
+        meta.put(META_MAX_TIME, Long.toString(maxTime));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LEVELS; i++) {
+            sb.append((i > 0) ? "," : "").append(levels[i]);
+        }
+        meta.put(META_LEVELS, sb.toString());
+        meta.put(META_INDEX_OFFSET, Long.toString(indexOffset));
+        meta.put(META_INDEX_LENGTH, Integer.toString(indexLength));
+        if ((size() + 2) / 3 * 4 <= MAX_META_INDEX) {
+            ByteBuffer buffer = ByteBuffer.allocate(size());
+            writeTo(buffer);
+            meta.put(META_INDEX, Base64.getEncoder().encodeToString(buffer.array()));
+        }
+        return meta;
+    }
+
+    /**
+     * Reads an index stored entirely in the specified object metadata.
+     *
+     * @param meta the metadata string map
+     *
+     * @return index or {@code null} if the metadata has no entire index
+     *
+     * @throws IllegalArgumentException if the index is malformed
+     */
+    public static LogIndex of(Map<String, String> meta) {
+        String index = meta.get(META_INDEX);
+        return (index != null) ? of(ByteBuffer.wrap(Base64.getDecoder().decode(index))) : null;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Time- and source-partitioned key layout of {@link LogSegment log segments}.
+ * <p>Segments of a source are grouped in hourly partitions by the UTC time of their records:
+ * <pre>
+ * partition: &lt;prefix&gt;&lt;source&gt;/2024/01/31/12/
+ * segment:   &lt;partition&gt;20240131T120000000Z-&lt;instance&gt;-&lt;sequence&gt;.seg
+ * manifest:  &lt;partition&gt;manifest-&lt;instance&gt;.flm
+ * </pre>
+ * <p>All records of a segment belong to the partition of the segment. Every writing instance of a source, such as every process
+ * of a replicated service, has its own {@link LogManifest manifest} of its segments in every partition it writes,
+ * so writers never overwrite the entries of each other. The segments of a time window are found by listing and merging
+ * the manifests of its partitions instead of listing all objects of the source.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogLayout {
+    /**
+     * Key suffix of segment objects.
+     */
+    public static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Name prefix of manifest objects in their partitions.
+     */
+    public static final String MANIFEST_PREFIX = "manifest-";
+
+    /**
+     * Key suffix of manifest objects.
+     */
+    public static final String MANIFEST_SUFFIX = ".flm";
+
+    /**
+     * Length of a partition in milliseconds.
+     */
+    public static final long PARTITION_INTERVAL = 3_600_000L;
+
+    private static final DateTimeFormatter PARTITION = DateTimeFormatter.ofPattern("yyyy/MM/dd/HH/", Locale.ROOT).withZone(ZoneOffset.UTC);
+    private static final int PARTITION_LENGTH = "yyyy/MM/dd/HH/".length();
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'", Locale.ROOT).withZone(ZoneOffset.UTC);
+
+    private final String prefix;
+    private final String source;
+    private final String root;
+
+    /**
+     * Constructs a layout with the specified parameters.
+     *
+     * @param prefix the key prefix of segment objects or {@code null}
+     * @param source the source name
+     */
+    public LogLayout(String prefix, String source) {
+        if ((source == null) || source.isEmpty() || (source.indexOf('/') >= 0)) {
+            throw new IllegalArgumentException(String.format("Illegal source: %s", source));
+        }
+        this.prefix = (prefix != null) ? prefix : "";
+        this.source = source;
+        this.root = String.format("%s%s/", this.prefix, source);
+    }
+
+    /**
+     * Constructs the layout of the specified pipeline options.
+     *
+     * @param options the pipeline options
+     *
+     * @return layout
+     */
+    public static LogLayout of(LogOptions options) {
+        return new LogLayout(options.getPrefix(), options.getSource());
+    }
+
+    /**
+     * Gets the key prefix of segment objects.
+     *
+     * @return key prefix of segment objects
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Gets the source name.
+     *
+     * @return source name
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the key prefix of all partitions of the source.
+     *
+     * @return key prefix of the source
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Gets the partition of the specified time.
+     *
+     * @param time the time in milliseconds
+     *
+     * @return start time of the partition in milliseconds
+     */
+    public long getPartition(long time) {
+        return Math.floorDiv(time, PARTITION_INTERVAL) * PARTITION_INTERVAL;
+    }
+
+    /**
+     * Gets the partition of the specified key of a segment or a manifest of this layout.
+     *
+     * @param key the key of a segment or a manifest
+     *
+     * @return start time of the partition in milliseconds
+     *
+     * @throws IllegalArgumentException if the key is not a key of a partition of this layout
+     */
+    public long getPartition(String key) {
+        int end = root.length() + PARTITION_LENGTH;
+        if (!key.startsWith(root) || (key.length() <= end) || (key.indexOf('/', end) >= 0)) {
+            throw new IllegalArgumentException(String.format("Illegal key of the source '%s': %s", source, key));
+        }
+        try {
+            return Instant.from(PARTITION.parse(key.substring(root.length(), end))).toEpochMilli();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException(String.format("Illegal key of the source '%s': %s", source, key), e);
+        }
+    }
+
+    /**
+     * Gets the partitions which overlap the specified time window.
+     *
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     *
+     * @return start times of the partitions in milliseconds in ascending order
+     */
+    public List<Long> getPartitions(long from, long to) {
+        List<Long> partitions = new ArrayList<>();
+        if (from < to) {
+            for (long p = getPartition(from), last = getPartition(to - 1L); p <= last; p += PARTITION_INTERVAL) {
+                partitions.add(p);
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Gets the key prefix of the specified partition.
+     *
+     * @param partition the start time of the partition in milliseconds
+     *
+     * @return key prefix of the partition
+     */
+    public String getPartitionPrefix(long partition) {
+        return root + PARTITION.format(Instant.ofEpochMilli(partition));
+    }
+
+    /**
+     * Gets the key prefix of the manifests of the specified partition.
+     *
+     * @param partition the start time of the partition in milliseconds
+     *
+     * @return key prefix of the manifests
+     */
+    public String getManifestPrefix(long partition) {
+        return getPartitionPrefix(partition) + MANIFEST_PREFIX;
+    }
+
+    /**
+     * Gets the key of the manifest of the specified writing instance in the specified partition.
+     *
+     * @param partition the start time of the partition in milliseconds
+     * @param instance the identifier of the writing instance
+     *
+     * @return key of the manifest
+     */
+    public String getManifestKey(long partition, String instance) {
+        return getManifestPrefix(partition) + instance + MANIFEST_SUFFIX;
+    }
+
+    /**
+     * Gets the key of a segment.
+     *
+     * @param partition the start time of the partition of the segment in milliseconds
+     * @param minTime the minimum record time of the segment in milliseconds
+     * @param instance the identifier of the writing pipeline instance
+     * @param sequence the sequence number of the segment in the instance
+     *
+     * @return key of the segment
+     */
+    public String getSegmentKey(long partition, long minTime, String instance, long sequence) {
+        return String.format("%s%s-%s-%06d%s", getPartitionPrefix(partition), TIME.format(Instant.ofEpochMilli(minTime)), instance, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Checks whether the specified key is the key of a segment.
+     *
+     * @param key the object key
+     *
+     * @return {@code true} if the key is the key of a segment, {@code false} otherwise
+     */
+    public static boolean isSegment(String key) {
+        return key.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Checks whether the specified key is the key of a manifest.
+     *
+     * @param key the object key
+     *
+     * @return {@code true} if the key is the key of a manifest, {@code false} otherwise
+     */
+    public static boolean isManifest(String key) {
+        return key.endsWith(MANIFEST_SUFFIX) && key.startsWith(MANIFEST_PREFIX, key.lastIndexOf('/') + 1);
+    }
+}
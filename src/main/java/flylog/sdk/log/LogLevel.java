@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import java.util.Locale;
+
+/**
+ * Level of a log record.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public enum LogLevel {
+    /**
+     * Trace level.
+     */
+    TRACE,
+
+    /**
+     * Debug level.
+     */
+    DEBUG,
+
+    /**
+     * Info level.
+     */
+    INFO,
+
+    /**
+     * Warn level.
+     */
+    WARN,
+
+    /**
+     * Error level.
+     */
+    ERROR;
+
+    /**
+     * Gets the log level with the specified name ignoring case.
+     * <p>Names of the common logging frameworks are mapped to the nearest level, {@code FINE} to {@link #DEBUG DEBUG} for instance.
+     *
+     * @param name the level name
+     *
+     * @return log level or {@code null} if the name is not a level name
+     */
+    public static LogLevel of(String name) {
+        if (name == null) {
+            return null;
+        }
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "TRACE":
+            case "FINEST":
+            case "FINER":
+                return TRACE;
+            case "DEBUG":
+            case "FINE":
+            case "CONFIG":
+                return DEBUG;
+            case "INFO":
+                return INFO;
+            case "WARN":
+            case "WARNING":
+                return WARN;
+            case "ERROR":
+            case "SEVERE":
+            case "FATAL":
+                return ERROR;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.utility.concurrent.Parallel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Manifest of the {@link LogSegment log segments} of a partition of the {@link LogLayout key layout}.
+ * <p>Every entry holds the storage object of a segment with the record count, the time range and the record counts by level
+ * of the segment, so the segments of a time window are selected without listing or reading the segments.
+ * <p>The manifest is stored as one object in deflate-compressed columns:
+ * <pre>
+ * header:  "FLYM" version(1) count(4)
+ * columns: keys, sizes, etags, modification times, record counts, minimum times, maximum times, record counts by level
+ * retired: count(4) keys
+ * </pre>
+ * <p>Every writing instance of a source has its own manifest in every partition it writes, which is written only
+ * by that instance, so concurrent writers never lose the entries of each other. Readers {@link #loadAll(Storage, LogLayout, long) merge}
+ * the manifests of a partition, and the partition is {@link #rebuild(Storage, String) rebuilt} from the segment metadata
+ * if it has no manifest. A manifest also holds the keys of {@link #retire(String) retired} segments, which are replaced
+ * by the compaction: the entries of retired segments are dropped from merged manifests, so the compactor retires segments
+ * in its own manifest without writing the manifests of the writers. Manifests of version {@code 1} have no retired segments.
+ * A manifest is not thread-safe.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogManifest {
+    /**
+     * Version of the manifest format.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Magic number of the manifest format.
+     */
+    public static final int MAGIC = 0x464c594d;
+
+    private static final int LEVELS = LogLevel.values().length;
+
+    /**
+     * Entry of a segment.
+     */
+    public static final class Entry {
+        /**
+         * Storage object of the segment.
+         */
+        public final StorageObject object;
+
+        /**
+         * Number of records of the segment.
+         */
+        public final long records;
+
+        /**
+         * Minimum record time of the segment in milliseconds.
+         */
+        public final long minTime;
+
+        /**
+         * Maximum record time of the segment in milliseconds.
+         */
+        public final long maxTime;
+
+        private final long[] levels;
+
+        /**
+         * Constructs a segment entry with the specified parameters.
+         *
+         * @param object the storage object of the segment
+         * @param records the number of records of the segment
+         * @param minTime the minimum record time of the segment in milliseconds
+         * @param maxTime the maximum record time of the segment in milliseconds
+         * @param levels the record counts by {@link LogLevel#ordinal() level ordinals}
+         */
+        public Entry(StorageObject object, long records, long minTime, long maxTime, long[] levels) {
+            if (levels.length != LEVELS) {
+                throw new IllegalArgumentException(String.format("Illegal number of levels: %d", levels.length));
+            }
+            this.object = object;
+            this.records = records;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.levels = levels.clone();
+        }
+
+        /**
+         * Constructs the entry of the specified segment.
+         *
+         * @param object the storage object of the segment
+         * @param index the block index of the segment
+         *
+         * @return segment entry
+         */
+        public static Entry of(StorageObject object, LogIndex index) {
+            long[] levels = new long[LEVELS];
+            for (LogLevel level : LogLevel.values()) {
+                levels[level.ordinal()] = index.getRecords(level);
+            }
+            return new Entry(object, index.getRecords(), index.getMinTime(), index.getMaxTime(), levels);
+        }
+
+        /**
+         * Constructs an entry with the summary of this entry and the specified storage object of the segment.
+         *
+         * @param object the storage object of the segment
+         *
+         * @return segment entry
+         */
+        public Entry with(StorageObject object) {
+            return new Entry(object, records, minTime, maxTime, levels);
+        }
+
+        /**
+         * Gets the number of records of the segment with the specified level.
+         *
+         * @param level the record level
+         *
+         * @return number of records with the level
+         */
+        public long getRecords(LogLevel level) {
+            return levels[level.ordinal()];
+        }
+
+        /**
+         * Checks whether the time range of the segment overlaps the specified time window.
+         *
+         * @param from the start of the time window in milliseconds, inclusive
+         * @param to the end of the time window in milliseconds, exclusive
+         *
+         * @return {@code true} if the segment may contain records of the time window, {@code false} otherwise
+         */
+        public boolean overlaps(long from, long to) {
+            return (records > 0L) && (minTime < to) && (maxTime >= from);
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> retired = new HashSet<>();
+
+    /**
+     * Constructs an empty manifest.
+     */
+    public LogManifest() {
+    }
+
+    /**
+     * Gets the segment entries.
+     *
+     * @return list of segment entries ordered by minimum record time and key
+     */
+    public List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<>(entries.values());
+        result.sort(Comparator.<Entry>comparingLong(e -> e.minTime).thenComparing(e -> e.object.key));
+        return result;
+    }
+
+    /**
+     * Gets the number of segment entries.
+     *
+     * @return number of segment entries
+     */
+    public int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether this manifest has an entry of the specified segment.
+     *
+     * @param key the segment key
+     *
+     * @return {@code true} if the manifest has an entry of the segment, {@code false} otherwise
+     */
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Checks whether the specified segment is retired.
+     *
+     * @param key the segment key
+     *
+     * @return {@code true} if the segment is retired, {@code false} otherwise
+     */
+    public boolean isRetired(String key) {
+        return retired.contains(key);
+    }
+
+    /**
+     * Finds the segments which overlap the specified time window.
+     *
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     *
+     * @return list of segment entries ordered by minimum record time and key
+     */
+    public List<Entry> find(long from, long to) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : getEntries()) {
+            if (entry.overlaps(from, to)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the specified segment entry, an entry of the same segment is replaced.
+     *
+     * @param entry the segment entry
+     */
+    public void add(Entry entry) {
+        entries.put(entry.object.key, entry);
+    }
+
+    /**
+     * Adds the entries and the retired segments of the specified manifest, entries of the same segments are replaced
+     * and the entries of the retired segments of both manifests are removed.
+     *
+     * @param manifest the manifest
+     */
+    public void addAll(LogManifest manifest) {
+        entries.putAll(manifest.entries);
+        retired.addAll(manifest.retired);
+        entries.keySet().removeAll(retired);
+    }
+
+    /**
+     * Removes the entry of the specified segment.
+     *
+     * @param key the segment key
+     *
+     * @return {@code true} if the entry is removed, {@code false} if the manifest has no entry of the segment
+     */
+    public boolean remove(String key) {
+        return entries.remove(key) != null;
+    }
+
+    /**
+     * Retires the specified segment: its entry is removed, and its entries in the manifests merged with this manifest are dropped.
+     *
+     * @param key the segment key
+     */
+    public void retire(String key) {
+        entries.remove(key);
+        retired.add(key);
+    }
+
+    /**
+     * Writes the binary form of this manifest to the specified stream.
+     *
+     * @param out the output stream, which is not closed
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        List<Entry> es = getEntries();
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(FORMAT_VERSION);
+        header.writeInt(es.size());
+        header.flush();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            DeflaterOutputStream z = new DeflaterOutputStream(out, deflater, 8192);
+            DataOutputStream d = new DataOutputStream(new BufferedOutputStream(z, 8192));
+            for (Entry e : es) {
+                d.writeUTF(e.object.key);
+            }
+            for (Entry e : es) {
+                d.writeLong(e.object.size);
+            }
+            for (Entry e : es) {
+                d.writeUTF((e.object.etag != null) ? e.object.etag : "");
+            }
+            for (Entry e : es) {
+                d.writeLong(e.object.modified);
+            }
+            for (Entry e : es) {
+                d.writeLong(e.records);
+            }
+            for (Entry e : es) {
+                d.writeLong(e.minTime);
+            }
+            for (Entry e : es) {
+                d.writeLong(e.maxTime);
+            }
+            for (int l = 0; l < LEVELS; l++) {
+                for (Entry e : es) {
+                    d.writeLong(e.levels[l]);
+                }
+            }
+            List<String> rs = new ArrayList<>(retired);
+            rs.sort(null);
+            d.writeInt(rs.size());
+            for (String r : rs) {
+                d.writeUTF(r);
+            }
+            d.flush();
+            z.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads a manifest from the binary form in the specified stream.
+     *
+     * @param in the input stream, which is not closed
+     *
+     * @return manifest
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the binary form is malformed
+     */
+    public static LogManifest of(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IllegalArgumentException("Illegal manifest magic");
+        }
+        int version = header.readUnsignedByte();
+        if ((version < 1) || (version > FORMAT_VERSION)) {
+            throw new IllegalArgumentException(String.format("Unsupported manifest version: %d", version));
+        }
+        int count = header.readInt();
+        if (count < 0) {
+            throw new IllegalArgumentException(String.format("Illegal number of manifest entries: %d", count));
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            DataInputStream d = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, inflater, 8192), 8192));
+            String[] keys = new String[count];
+            long[] sizes = new long[count];
+            String[] etags = new String[count];
+            long[] modified = new long[count];
+            long[] records = new long[count];
+            long[] minTimes = new long[count];
+            long[] maxTimes = new long[count];
+            long[][] levels = new long[count][LEVELS];
+            for (int i = 0; i < count; i++) {
+                keys[i] = d.readUTF();
+            }
+            for (int i = 0; i < count; i++) {
+                sizes[i] = d.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                etags[i] = d.readUTF();
+            }
+            for (int i = 0; i < count; i++) {
+                modified[i] = d.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                records[i] = d.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                minTimes[i] = d.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                maxTimes[i] = d.readLong();
+            }
+            for (int l = 0; l < LEVELS; l++) {
+                for (int i = 0; i < count; i++) {
+                    levels[i][l] = d.readLong();
+                }
+            }
+            LogManifest manifest = new LogManifest();
+            for (int i = 0; i < count; i++) {
+                StorageObject object = new StorageObject(keys[i], sizes[i], etags[i].isEmpty() ? null : etags[i], modified[i]);
+                manifest.add(new Entry(object, records[i], minTimes[i], maxTimes[i], levels[i]));
+            }
+            if (version > 1) {
+                int rc = d.readInt();
+                if (rc < 0) {
+                    throw new IllegalArgumentException(String.format("Illegal number of retired segments: %d", rc));
+                }
+                for (int i = 0; i < rc; i++) {
+                    manifest.retired.add(d.readUTF());
+                }
+            }
+            return manifest;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Loads the specified manifest object.
+     *
+     * @param storage the object storage of segments
+     * @param key the manifest key
+     *
+     * @return manifest or {@code null} if the manifest does not exist
+     *
+     * @throws ObjectStorageException if the manifest is not accessible or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public static LogManifest load(Storage storage, String key) {
+        InputStream in;
+        try {
+            in = storage.getData(key);
+        } catch (ObjectStorageException e) {
+            if (storage.find(key) == null) {
+                return null;
+            }
+            throw e;
+        }
+        try (InputStream i = in) {
+            return of(i);
+        } catch (IOException e) {
+            throw new ConnectionStorageException(String.format("Manifest '%s' could not be read", storage.getInfo(key)), e);
+        } catch (RuntimeException e) {
+            throw new ObjectStorageException(String.format("Manifest '%s' is malformed", storage.getInfo(key)), e);
+        }
+    }
+
+    /**
+     * Loads and merges the manifests of all writing instances of the specified partition.
+     * <p>The manifests are read concurrently, the entries of the segments retired by any of them are dropped.
+     *
+     * @param storage the object storage of segments
+     * @param layout the key layout of segments
+     * @param partition the start time of the partition in milliseconds
+     *
+     * @return merged manifest or {@code null} if the partition has no manifest
+     *
+     * @throws ObjectStorageException if a manifest is not accessible or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public static LogManifest loadAll(Storage storage, LogLayout layout, long partition) {
+        List<String> keys = new ArrayList<>();
+        for (StorageObject object : storage.list(layout.getManifestPrefix(partition), 1000)) {
+            if (LogLayout.isManifest(object.key)) {
+                keys.add(object.key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+        LogManifest result = new LogManifest();
+        for (LogManifest manifest : Parallel.map(keys, storage.getConcurrency(), k -> load(storage, k))) {
+            if (manifest != null) {
+                result.addAll(manifest);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores this manifest to the specified object.
+     *
+     * @param storage the object storage of segments
+     * @param key the manifest key
+     *
+     * @throws ObjectStorageException if the manifest could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public void store(Storage storage, String key) {
+        OutputStream out = storage.putData(key);
+        try {
+            writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            StorageOutputStream.abort(out);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new ConnectionStorageException(String.format("Manifest '%s' could not be written", storage.getInfo(key)), e);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new ConnectionStorageException(String.format("Manifest '%s' could not be written", storage.getInfo(key)), e);
+        }
+    }
+
+    /**
+     * Rebuilds the manifest of the segments with the specified key prefix from their metadata.
+     * <p>Segments without the summary of their block index in the metadata are skipped.
+     *
+     * @param storage the object storage of segments
+     * @param prefix the key prefix of the partition
+     *
+     * @return manifest
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public static LogManifest rebuild(Storage storage, String prefix) {
+        Map<String, StorageObject> objects = new LinkedHashMap<>();
+        for (StorageObject object : storage.list(prefix, 1000)) {
+            if (LogLayout.isSegment(object.key)) {
+                objects.put(object.key, object);
+            }
+        }
+        Map<String, Map<String, String>> metas = storage.getMetaAll(objects.keySet());
+        LogManifest manifest = new LogManifest();
+        for (Map.Entry<String, Map<String, String>> e : metas.entrySet()) {
+            Entry entry = entry(objects.get(e.getKey()), e.getValue());
+            if (entry != null) {
+                manifest.add(entry);
+            }
+        }
+        return manifest;
+    }
+
+    private static Entry entry(StorageObject object, Map<String, String> meta) {
+        String records = meta.get(LogIndex.META_RECORDS);
+        String minTime = meta.get(LogIndex.META_MIN_TIME);
+        String maxTime = meta.get(LogIndex.META_MAX_TIME);
+        String levels = meta.get(LogIndex.META_LEVELS);
+        if ((records == null) || (minTime == null) || (maxTime == null) || (levels == null)) {
+            return null;
+        }
+        try {
+            String[] ls = levels.split(",");
+            long[] counts = new long[LEVELS];
+            for (int i = 0; i < Math.min(ls.length, LEVELS); i++) {
+                counts[i] = Long.parseLong(ls[i]);
+            }
+            return new Entry(object, Long.parseLong(records), Long.parseLong(minTime), Long.parseLong(maxTime), counts);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
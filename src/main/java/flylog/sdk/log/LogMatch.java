@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+/**
+ * Record of a stored {@link LogSegment log segment} which matches a {@link LogQuery query}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogMatch {
+    /**
+     * Source name of the record.
+     */
+    public final String source;
+
+    /**
+     * Key of the segment of the record.
+     */
+    public final String key;
+
+    /**
+     * Time of the record in milliseconds.
+     */
+    public final long timestamp;
+
+    /**
+     * Level of the record or {@code null} if the record has no level.
+     */
+    public final LogLevel level;
+
+    /**
+     * Text of the record.
+     */
+    public final String text;
+
+    /**
+     * Constructs a matching record with the specified parameters.
+     *
+     * @param source the source name of the record
+     * @param key the key of the segment of the record
+     * @param timestamp the time of the record in milliseconds
+     * @param level the level of the record or {@code null}
+     * @param text the text of the record
+     */
+    public LogMatch(String source, String key, long timestamp, LogLevel level, String text) {
+        this.source = source;
+        this.key = key;
+        this.timestamp = timestamp;
+        this.level = level;
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
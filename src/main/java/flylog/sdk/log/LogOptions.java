@@ -0,0 +1,420 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageType;
+import flylog.sdk.storage.codec.DeflateCodec;
+
+import java.util.Properties;
+
+/**
+ * Options of a {@link LogPipeline log pipeline}.
+ * <p>Options are plain properties, so appenders of logging frameworks expose them as their own configuration properties.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogOptions {
+    /**
+     * Default number of slots of the ring buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Default size of a segment in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+    /**
+     * Default size of an uncompressed block of a segment in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 << 10;
+
+    /**
+     * Default maximum age of a segment before it is sealed in milliseconds.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 10_000L;
+
+    /**
+     * Default maximum number of concurrently uploaded segments.
+     */
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 2;
+
+    /**
+     * Default maximum time to wait for pending records and segments on close in milliseconds.
+     */
+    public static final long DEFAULT_STOP_TIMEOUT = 30_000L;
+
+    private String type = StorageType.FS.id;
+    private String endpoint;
+    private String bucket;
+    private String accessKey;
+    private String secretKey;
+    private String prefix = "logs/";
+    private String source = defaultSource();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private String codec = DeflateCodec.NAME;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int uploadConcurrency = DEFAULT_UPLOAD_CONCURRENCY;
+    private long stopTimeout = DEFAULT_STOP_TIMEOUT;
+    private boolean neverBlock = false;
+    private boolean tokenFilters = true;
+
+    /**
+     * Gets the identifier of the storage type.
+     *
+     * @return identifier of the storage type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the identifier of the storage type.
+     *
+     * @param type the identifier of the storage type
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the storage endpoint URL.
+     *
+     * @return storage endpoint URL
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Sets the storage endpoint URL.
+     *
+     * @param endpoint the storage endpoint URL
+     */
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Gets the storage bucket name.
+     *
+     * @return storage bucket name
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Sets the storage bucket name.
+     *
+     * @param bucket the storage bucket name
+     */
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * Gets the storage access key.
+     *
+     * @return storage access key
+     */
+    public String getAccessKey() {
+        return accessKey;
+    }
+
+    /**
+     * Sets the storage access key.
+     *
+     * @param accessKey the storage access key
+     */
+    public void setAccessKey(String accessKey) {
+        this.accessKey = accessKey;
+    }
+
+    /**
+     * Gets the storage secret key.
+     *
+     * @return storage secret key
+     */
+    public String getSecretKey() {
+        return secretKey;
+    }
+
+    /**
+     * Sets the storage secret key.
+     *
+     * @param secretKey the storage secret key
+     */
+    public void setSecretKey(String secretKey) {
+        this.secretKey = secretKey;
+    }
+
+    /**
+     * Gets the key prefix of segment objects.
+     *
+     * @return key prefix of segment objects
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Sets the key prefix of segment objects.
+     *
+     * @param prefix the key prefix of segment objects
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Gets the source name which distinguishes segments of different processes, the host name by default.
+     *
+     * @return source name
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Sets the source name which distinguishes segments of different processes.
+     *
+     * @param source the source name
+     */
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Gets the number of slots of the ring buffer.
+     *
+     * @return number of slots of the ring buffer
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the number of slots of the ring buffer.
+     *
+     * @param bufferSize the number of slots of the ring buffer
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Gets the size of a segment in bytes after which it is sealed.
+     *
+     * @return size of a segment in bytes
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of a segment in bytes after which it is sealed.
+     *
+     * @param segmentSize the size of a segment in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Gets the size of an uncompressed block of a segment in bytes.
+     *
+     * @return size of an uncompressed block in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the size of an uncompressed block of a segment in bytes after which it is compressed.
+     *
+     * @param blockSize the size of an uncompressed block in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Gets the codec name of segment blocks.
+     *
+     * @return codec name of segment blocks
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec name of segment blocks.
+     *
+     * @param codec the codec name of segment blocks
+     */
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Gets the maximum age of a segment before it is sealed in milliseconds.
+     *
+     * @return maximum age of a segment in milliseconds
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the maximum age of a segment before it is sealed in milliseconds.
+     *
+     * @param flushInterval the maximum age of a segment in milliseconds
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Gets the maximum number of concurrently uploaded segments.
+     *
+     * @return maximum number of concurrently uploaded segments
+     */
+    public int getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of concurrently uploaded segments.
+     *
+     * @param uploadConcurrency the maximum number of concurrently uploaded segments
+     */
+    public void setUploadConcurrency(int uploadConcurrency) {
+        this.uploadConcurrency = uploadConcurrency;
+    }
+
+    /**
+     * Gets the maximum time to wait for pending records and segments on close in milliseconds.
+     *
+     * @return maximum time to wait on close in milliseconds
+     */
+    public long getStopTimeout() {
+        return stopTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for pending records and segments on close in milliseconds.
+     *
+     * @param stopTimeout the maximum time to wait on close in milliseconds
+     */
+    public void setStopTimeout(long stopTimeout) {
+        this.stopTimeout = stopTimeout;
+    }
+
+    /**
+     * Returns {@code true} if records are dropped when the ring buffer is full, {@code false} if logging threads wait for free slots.
+     *
+     * @return {@code true} if records are dropped when the ring buffer is full, {@code false} otherwise
+     */
+    public boolean isNeverBlock() {
+        return neverBlock;
+    }
+
+    /**
+     * Sets whether records are dropped when the ring buffer is full instead of waiting for free slots.
+     *
+     * @param neverBlock {@code true} if records are dropped when the ring buffer is full, {@code false} otherwise
+     */
+    public void setNeverBlock(boolean neverBlock) {
+        this.neverBlock = neverBlock;
+    }
+
+    /**
+     * Returns {@code true} if {@link LogTokenFilter token filters} of segment blocks are written, so searches of tokens skip blocks.
+     *
+     * @return {@code true} if token filters are written, {@code false} otherwise
+     */
+    public boolean isTokenFilters() {
+        return tokenFilters;
+    }
+
+    /**
+     * Sets whether {@link LogTokenFilter token filters} of segment blocks are written.
+     *
+     * @param tokenFilters {@code true} if token filters are written, {@code false} otherwise
+     */
+    public void setTokenFilters(boolean tokenFilters) {
+        this.tokenFilters = tokenFilters;
+    }
+
+    /**
+     * Creates the object storage of these options.
+     *
+     * @return object storage
+     *
+     * @throws IllegalArgumentException if the storage type is unknown
+     */
+    public Storage createStorage() {
+        return StorageType.of(type).create(endpoint, bucket, accessKey, secretKey);
+    }
+
+    /**
+     * Creates options from the properties with the specified prefix, {@code flylog.log.bucket} for instance.
+     * <p>Property names are the names of the options, missing properties keep their default values.
+     *
+     * @param properties the properties
+     * @param prefix the prefix of the property names
+     *
+     * @return options
+     *
+     * @throws NumberFormatException if a numeric property is not a number
+     */
+    public static LogOptions of(Properties properties, String prefix) {
+        LogOptions options = new LogOptions();
+        options.setType(properties.getProperty(prefix + "type", options.getType()));
+        options.setEndpoint(properties.getProperty(prefix + "endpoint", options.getEndpoint()));
+        options.setBucket(properties.getProperty(prefix + "bucket", options.getBucket()));
+        options.setAccessKey(properties.getProperty(prefix + "accessKey", options.getAccessKey()));
+        options.setSecretKey(properties.getProperty(prefix + "secretKey", options.getSecretKey()));
+        options.setPrefix(properties.getProperty(prefix + "prefix", options.getPrefix()));
+        options.setSource(properties.getProperty(prefix + "source", options.getSource()));
+        options.setBufferSize(Integer.parseInt(properties.getProperty(prefix + "bufferSize", Integer.toString(options.getBufferSize()))));
+        options.setSegmentSize(Integer.parseInt(properties.getProperty(prefix + "segmentSize", Integer.toString(options.getSegmentSize()))));
+        options.setBlockSize(Integer.parseInt(properties.getProperty(prefix + "blockSize", Integer.toString(options.getBlockSize()))));
+        options.setCodec(properties.getProperty(prefix + "codec", options.getCodec()));
+        options.setFlushInterval(Long.parseLong(properties.getProperty(prefix + "flushInterval", Long.toString(options.getFlushInterval()))));
+        options.setUploadConcurrency(Integer.parseInt(properties.getProperty(prefix + "uploadConcurrency",
+                                                                             Integer.toString(options.getUploadConcurrency()))));
+        options.setStopTimeout(Long.parseLong(properties.getProperty(prefix + "stopTimeout", Long.toString(options.getStopTimeout()))));
+        options.setNeverBlock(Boolean.parseBoolean(properties.getProperty(prefix + "neverBlock", Boolean.toString(options.isNeverBlock()))));
+        options.setTokenFilters(Boolean.parseBoolean(properties.getProperty(prefix + "tokenFilters", Boolean.toString(options.isTokenFilters()))));
+        return options;
+    }
+
+    private static String defaultSource() {
+        String host = System.getenv("HOSTNAME");
+        if ((host == null) || host.isEmpty()) {
+            host = System.getenv("COMPUTERNAME");
+        }
+        return ((host != null) && !host.isEmpty()) ? host : "localhost";
+    }
+}
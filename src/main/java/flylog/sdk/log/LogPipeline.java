@@ -0,0 +1,508 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.utility.concurrent.RingBuffer;
+import flylog.sdk.utility.concurrent.ThreadSection;
+import flylog.sdk.utility.concurrent.VirtualThreads;
+import flylog.sdk.utility.logging.ErrorLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous pipeline which ships log records to object storage in segments.
+ * <p>Logging threads claim preallocated records of a lock-free {@link RingBuffer ring buffer}, fill them in place and publish them,
+ * which takes no locks and no allocations. A single worker thread encodes published records in batches into the current segment,
+ * seals the segment when it reaches the segment size or the flush interval, and uploads sealed segments
+ * with {@link Storage#putData(String, Map) putData} in virtual threads while it encodes the next segment.
+ * The block index of an uploaded segment is put to its metadata with its data, so {@link LogSegmentReader readers} fetch
+ * only the blocks of a time window.
+ * <p>Segments are keyed by the {@link LogLayout key layout} of the source, a segment is sealed before a record of another partition
+ * is encoded, and every uploaded segment is added to the {@link LogManifest manifest} of its partition,
+ * so readers find the segments of a time window without listing the source. A segment which fails to be added to its manifest
+ * stays pending and is added again with the next uploaded segment and on {@link #close() close}.
+ * <p>Logging threads access the pipeline in a {@link ThreadSection thread section}, so {@link #close() close}
+ * stops new records, waits for the records being filled and ships all pending segments.
+ * <p>Producers use the pipeline as follows:
+ * <pre>{@code
+ * long sequence = pipeline.claim();
+ * if (sequence >= 0L) {
+ *     try {
+ *         LogRecord record = pipeline.get(sequence);
+ *         ...
+ *     } finally {
+ *         pipeline.publish(sequence);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogPipeline implements AutoCloseable {
+    /**
+     * Key suffix of segment objects.
+     */
+    public static final String SUFFIX = LogLayout.SEGMENT_SUFFIX;
+
+    private static final int MANIFESTS = 2;
+    private static final int BATCH = 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long BUSY_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+
+    /**
+     * Handler of the errors of a pipeline.
+     */
+    @FunctionalInterface
+    public interface ErrorHandler {
+        /**
+         * Handles the specified error.
+         *
+         * @param message the error message
+         * @param e the error
+         */
+        public void error(String message, Throwable e);
+    }
+
+    /**
+     * Object storage of segments.
+     */
+    protected final Storage storage;
+
+    private final LogLayout layout;
+    private final String instance;
+    private final int segmentSize;
+    private final long flushInterval;
+    private final long stopTimeout;
+    private final boolean neverBlock;
+    private final LogRenderer renderer;
+    private final ErrorHandler errors;
+    private final RingBuffer<LogRecord> ring;
+    private final int wakeSize;
+    private final ThreadSection section = new ThreadSection(false, true);
+    private final ArrayBlockingQueue<LogSegment> segments;
+    private final int segmentCount;
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final Consumer<LogRecord> encoder = this::encode;
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private boolean started = false;
+    private volatile Thread worker = null;
+    private volatile boolean running = true;
+    private volatile boolean sleeping = false;
+    private final TreeMap<Long, LogManifest> manifests = new TreeMap<>();
+    private final ReentrantLock manifestLock = new ReentrantLock();
+    private final List<Registration> registrations = new ArrayList<>();
+    private LogSegment current = null;
+    private long partition = 0L;
+    private long deadline = 0L;
+    private long sequence = 0L;
+
+    /**
+     * Constructs a pipeline with the specified parameters, which accepts records after it is {@link #start() started}.
+     *
+     * @param storage the object storage of segments
+     * @param options the pipeline options
+     * @param renderer the renderer of the original events of records or {@code null}
+     * @param errors the error handler or {@code null} for the {@link ErrorLog shared error log}
+     */
+    public LogPipeline(Storage storage, LogOptions options, LogRenderer renderer, ErrorHandler errors) {
+        if (options.getBufferSize() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal buffer size: %d", options.getBufferSize()));
+        }
+        if (options.getSegmentSize() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal segment size: %d", options.getSegmentSize()));
+        }
+        if (options.getBlockSize() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal block size: %d", options.getBlockSize()));
+        }
+        Codec codec = Codecs.get(options.getCodec());
+        if (options.getUploadConcurrency() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal upload concurrency: %d", options.getUploadConcurrency()));
+        }
+        this.storage = storage;
+        this.layout = LogLayout.of(options);
+        this.instance = String.format("%08x", ThreadLocalRandom.current().nextInt());
+        this.segmentSize = options.getSegmentSize();
+        this.flushInterval = options.getFlushInterval();
+        this.stopTimeout = options.getStopTimeout();
+        this.neverBlock = options.isNeverBlock();
+        this.renderer = renderer;
+        this.errors = (errors != null) ? errors : ErrorLog::error;
+        this.ring = new RingBuffer<>(options.getBufferSize(), LogRecord::new);
+        this.wakeSize = Math.max(1, ring.getCapacity() / 4);
+        this.segmentCount = options.getUploadConcurrency() + 1;
+        this.segments = new ArrayBlockingQueue<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new LogSegment(Math.min(segmentSize, 1 << 20), options.getBlockSize(), codec, options.isTokenFilters()));
+        }
+    }
+
+    /**
+     * Starts the worker thread of this pipeline and starts accepting records.
+     * <p>A pipeline is started once, a started or closed pipeline is not started again.
+     */
+    public void start() {
+        stateLock.lock();
+        try {
+            if (!started) {
+                started = true;
+                worker = Thread.ofPlatform().daemon().name(String.format("flylog-log-%s", instance)).start(this::run);
+                section.enable();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the object storage of segments.
+     *
+     * @return object storage of segments
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets the key layout of segments.
+     *
+     * @return key layout of segments
+     */
+    public LogLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the number of records dropped because the ring buffer was full.
+     *
+     * @return number of dropped records
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Claims a record for the current logging thread.
+     * <p>If the ring buffer is full, the call waits for a free record or drops the record if the pipeline never blocks.
+     * Every successfully claimed sequence must be {@link #publish(long) published}.
+     *
+     * @return sequence of the claimed record or {@code -1} if the pipeline is not started, is closed or the record is dropped
+     */
+    public long claim() {
+        if (!section.enter()) {
+            return -1L;
+        }
+        long s = neverBlock ? ring.tryClaim() : claimWaking();
+        if (s < 0L) {
+            section.leave();
+            dropped.incrementAndGet();
+        }
+        return s;
+    }
+
+    /**
+     * Gets the record of the specified claimed sequence.
+     *
+     * @param sequence the claimed sequence
+     *
+     * @return log record
+     */
+    public LogRecord get(long sequence) {
+        return ring.get(sequence);
+    }
+
+    /**
+     * Publishes the record of the specified claimed sequence to the worker thread.
+     *
+     * @param sequence the claimed sequence
+     */
+    public void publish(long sequence) {
+        ring.publish(sequence);
+        section.leave();
+        if (sleeping && (ring.size() >= wakeSize)) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Stops accepting records and ships all pending records and segments.
+     * <p>Waits up to the stop timeout for the logging threads and the uploads, records which are claimed
+     * but not published within the stop timeout are dropped. A pipeline which is not started is not started anymore.
+     */
+    @Override
+    public void close() {
+        stateLock.lock();
+        try {
+            if (!started) {
+                started = true;
+                LogSegment segment;
+                while ((segment = segments.poll()) != null) {
+                    segment.release();
+                }
+                return;
+            }
+            if (!section.disable()) {
+                return;
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        if (!section.await(Duration.ofMillis(stopTimeout))) {
+            errors.error("Log pipeline is closed before all logging threads have left it", null);
+        }
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(Duration.ofMillis(stopTimeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long claimWaking() {
+        long s = ring.tryClaim();
+        if (s < 0L) {
+            LockSupport.unpark(worker);
+            s = ring.claim();
+        }
+        return s;
+    }
+
+    private void run() {
+        long stop = 0L;
+        while (true) {
+            int n = ring.drain(encoder, BATCH);
+            if ((current != null) && (System.currentTimeMillis() >= deadline)) {
+                seal();
+            }
+            if (n == 0) {
+                if (!running) {
+                    if (ring.size() == 0) {
+                        break;
+                    } else if (stop == 0L) {
+                        stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stopTimeout);
+                    } else if (System.nanoTime() - stop >= 0L) {
+                        errors.error(String.format("Log pipeline is closed with %d records which are claimed but not published", ring.size()), null);
+                        break;
+                    }
+                }
+                sleeping = true;
+                if (ring.size() > 0) {
+                    LockSupport.parkNanos(this, BUSY_NANOS);
+                } else if (running) {
+                    long wait = (current != null) ? TimeUnit.MILLISECONDS.toNanos(Math.max(1L, deadline - System.currentTimeMillis())) : IDLE_NANOS;
+                    LockSupport.parkNanos(this, Math.min(wait, IDLE_NANOS));
+                }
+                sleeping = false;
+            }
+        }
+        if (current != null) {
+            seal();
+        }
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stopTimeout);
+        int returned = 0;
+        try {
+            while (returned < segmentCount) {
+                LogSegment s = segments.poll(Math.max(0L, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (s == null) {
+                    errors.error("Log pipeline is closed before all segments are uploaded", null);
+                    break;
+                }
+                s.release();
+                returned++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        manifestLock.lock();
+        try {
+            if (!registrations.isEmpty()) {
+                register();
+            }
+        } catch (RuntimeException e) {
+            errors.error("Log pipeline is closed before all segments are added to their manifests", e);
+        } finally {
+            manifestLock.unlock();
+        }
+    }
+
+    private void encode(LogRecord record) {
+        try {
+            if ((record.event != null) && (renderer != null)) {
+                renderer.render(record);
+            }
+            long p = layout.getPartition(record.timestamp);
+            if ((current != null) && (p != partition)) {
+                seal();
+            }
+            if (current == null) {
+                current = segments.take();
+                partition = p;
+                deadline = System.currentTimeMillis() + flushInterval;
+            }
+            current.append(record, renderer);
+            if (current.size() >= segmentSize) {
+                seal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.error("Log record encoding is interrupted", e);
+        } catch (RuntimeException e) {
+            errors.error("Log record could not be encoded", e);
+        } finally {
+            record.clear();
+        }
+    }
+
+    private void seal() {
+        LogSegment segment = current;
+        current = null;
+        try {
+            segment.finish();
+        } catch (RuntimeException e) {
+            errors.error("Log segment could not be finished", e);
+            segment.reset();
+            segments.add(segment);
+            return;
+        }
+        long p = partition;
+        String key = layout.getSegmentKey(p, segment.getMinTime(), instance, ++sequence);
+        VirtualThreads.EXECUTOR.execute(() -> upload(key, p, segment));
+    }
+
+    private void upload(String key, long partition, LogSegment segment) {
+        try {
+            OutputStream out = storage.putData(key, segment.getMeta());
+            try {
+                segment.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                StorageOutputStream.abort(out);
+                throw e;
+            }
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            errors.error(String.format("Log segment '%s' could not be put", storage.getInfo(key)), e);
+            segment.reset();
+            segments.add(segment);
+            return;
+        }
+        LogManifest.Entry entry = LogManifest.Entry.of(new StorageObject(key, 0L, null, 0L), segment.getIndex());
+        segment.reset();
+        segments.add(segment);
+        manifestLock.lock();
+        try {
+            registrations.add(new Registration(partition, key, entry));
+            register();
+        } catch (RuntimeException e) {
+            errors.error(String.format("Manifest of the log segment '%s' could not be put, it is retried with the next segment",
+                                       storage.getInfo(key)), e);
+        } finally {
+            manifestLock.unlock();
+        }
+    }
+
+    private void register() {
+        Map<Long, List<Registration>> pending = new TreeMap<>();
+        for (Registration r : registrations) {
+            pending.computeIfAbsent(r.partition, p -> new ArrayList<>()).add(r);
+        }
+        RuntimeException failure = null;
+        for (Map.Entry<Long, List<Registration>> e : pending.entrySet()) {
+            try {
+                LogManifest manifest = manifest(e.getKey());
+                for (Registration r : e.getValue()) {
+                    manifest.add(r.entry.with(storage.get(r.key)));
+                }
+                manifest.store(storage, layout.getManifestKey(e.getKey(), instance));
+                registrations.removeAll(e.getValue());
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private LogManifest manifest(long partition) {
+        LogManifest manifest = manifests.get(partition);
+        if (manifest == null) {
+            String key = layout.getManifestKey(partition, instance);
+            try {
+                manifest = LogManifest.load(storage, key);
+                if (manifest == null) {
+                    manifest = new LogManifest();
+                }
+            } catch (ObjectStorageException e) {
+                errors.error(String.format("Manifest '%s' is rebuilt", storage.getInfo(key)), e);
+                manifest = rebuild(partition);
+            }
+            manifests.put(partition, manifest);
+            while (manifests.size() > MANIFESTS) {
+                manifests.pollFirstEntry();
+            }
+        }
+        return manifest;
+    }
+
+    private LogManifest rebuild(long partition) {
+        LogManifest manifest = LogManifest.rebuild(storage, layout.getPartitionPrefix(partition));
+        String owned = String.format("-%s-", instance);
+        for (LogManifest.Entry entry : manifest.getEntries()) {
+            if (!entry.object.key.contains(owned)) {
+                manifest.remove(entry.object.key);
+            }
+        }
+        return manifest;
+    }
+
+    private static final class Registration {
+        private final long partition;
+        private final String key;
+        private final LogManifest.Entry entry;
+
+        private Registration(long partition, String key, LogManifest.Entry entry) {
+            this.partition = partition;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
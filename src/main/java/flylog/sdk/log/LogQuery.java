@@ -0,0 +1,293 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query of the records of stored {@link LogSegment log segments}, which is run by a {@link LogQueryEngine query engine}.
+ * <p>Every predicate is pushed down as far as possible: the time window, the sources and the minimum level prune partitions and
+ * segments by their {@link LogManifest manifests}, the time window and the minimum level prune blocks by their {@link LogIndex index} entries,
+ * the tokens of the query prune blocks by their {@link LogTokenFilter token filters} before the blocks are fetched,
+ * and within a block the timestamp, the level and the text of a record are checked on the raw UTF-8 bytes before the record is decoded.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogQuery {
+    private final long from;
+    private final long to;
+    private final List<String> sources = new ArrayList<>();
+    private LogLevel level;
+    private String text;
+    private byte[] pattern;
+    private String token;
+    private byte[] tokenPattern;
+    private long[] tokens = new long[0];
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * Constructs a query of the records in the specified time window.
+     *
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     *
+     * @throws IllegalArgumentException if the time window is empty
+     */
+    public LogQuery(long from, long to) {
+        if (from >= to) {
+            throw new IllegalArgumentException(String.format("Illegal time window: %d-%d", from, to));
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Gets the start of the time window in milliseconds, inclusive.
+     *
+     * @return start of the time window in milliseconds
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the end of the time window in milliseconds, exclusive.
+     *
+     * @return end of the time window in milliseconds
+     */
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * Gets the source names of the records.
+     *
+     * @return unmodifiable list of source names
+     */
+    public List<String> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Adds the specified source name of the records.
+     *
+     * @param source the source name
+     */
+    public void addSource(String source) {
+        if (!sources.contains(source)) {
+            sources.add(source);
+        }
+    }
+
+    /**
+     * Gets the minimum level of the records.
+     *
+     * @return minimum level or {@code null} if records of all levels match
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the minimum level of the records, records without a level do not match if it is set.
+     *
+     * @param level the minimum level or {@code null} if records of all levels match
+     */
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Gets the substring of the text of the records.
+     *
+     * @return case-sensitive substring or {@code null} if records with any text match
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Sets the substring of the text of the records.
+     *
+     * @param text the case-sensitive substring or {@code null} if records with any text match
+     */
+    public void setText(String text) {
+        this.text = ((text != null) && !text.isEmpty()) ? text : null;
+        this.pattern = (this.text != null) ? this.text.getBytes(StandardCharsets.UTF_8) : null;
+        updateTokens();
+    }
+
+    /**
+     * Gets the whole token of the text of the records, such as a trace or a request identifier.
+     *
+     * @return case-sensitive token or {@code null} if records with any tokens match
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Sets the whole token of the text of the records, such as a trace or a request identifier.
+     * <p>Unlike a substring, a token is not a part of a longer token of a record, so it is looked up in {@link LogTokenFilter token filters}.
+     * A token with separators, such as a UUID, matches the same sequence of tokens.
+     *
+     * @param token the case-sensitive token or {@code null} if records with any tokens match
+     */
+    public void setToken(String token) {
+        this.token = ((token != null) && !token.isEmpty()) ? token : null;
+        this.tokenPattern = (this.token != null) ? this.token.getBytes(StandardCharsets.UTF_8) : null;
+        updateTokens();
+    }
+
+    /**
+     * Gets the hashes of the tokens which the matching records contain, which are looked up in {@link LogTokenFilter token filters}.
+     *
+     * @return token hashes, empty if the query has no tokens long enough to be in filters
+     */
+    public long[] getTokens() {
+        return tokens.clone();
+    }
+
+    /**
+     * Gets the maximum number of matching records.
+     *
+     * @return maximum number of matching records
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the maximum number of matching records.
+     *
+     * @param limit the maximum number of matching records
+     *
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public void setLimit(long limit) {
+        if (limit < 0L) {
+            throw new IllegalArgumentException(String.format("Illegal limit: %d", limit));
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Checks whether the specified segment may contain matching records.
+     *
+     * @param entry the segment entry
+     *
+     * @return {@code true} if the segment may contain matching records, {@code false} otherwise
+     */
+    public boolean matches(LogManifest.Entry entry) {
+        if (!entry.overlaps(from, to)) {
+            return false;
+        } else if (level == null) {
+            return true;
+        }
+        for (LogLevel l : LogLevel.values()) {
+            if ((l.ordinal() >= level.ordinal()) && (entry.getRecords(l) > 0L)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the specified block may contain matching records.
+     *
+     * @param block the block entry
+     *
+     * @return {@code true} if the block may contain matching records, {@code false} otherwise
+     */
+    public boolean matches(LogIndex.Block block) {
+        if (!block.overlaps(from, to)) {
+            return false;
+        } else if (level == null) {
+            return true;
+        }
+        for (LogLevel l : LogLevel.values()) {
+            if ((l.ordinal() >= level.ordinal()) && (block.getRecords(l) > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the block with the specified token filter may contain matching records.
+     *
+     * @param filter the token filter of the block or {@code null} if the block has no filter
+     *
+     * @return {@code true} if the block may contain matching records, {@code false} otherwise
+     */
+    public boolean matches(LogTokenFilter filter) {
+        return (filter == null) || filter.mightContainAll(tokens);
+    }
+
+    /**
+     * Checks whether the record with the specified header and UTF-8 text matches this query.
+     *
+     * @param timestamp the record time in milliseconds
+     * @param level the {@link LogLevel#ordinal() level ordinal} of the record, negative if the record has no level
+     * @param b the byte array with the UTF-8 text
+     * @param off the offset of the text
+     * @param len the length of the text in bytes
+     *
+     * @return {@code true} if the record matches, {@code false} otherwise
+     */
+    public boolean matches(long timestamp, int level, byte[] b, int off, int len) {
+        if ((timestamp < from) || (timestamp >= to)) {
+            return false;
+        } else if ((this.level != null) && (level < this.level.ordinal())) {
+            return false;
+        }
+        return ((pattern == null) || contains(b, off, len, pattern, false)) && ((tokenPattern == null) || contains(b, off, len, tokenPattern, true));
+    }
+
+    private void updateTokens() {
+        long[] t = (token != null) ? LogTokenFilter.tokens(token, true) : new long[0];
+        long[] s = (text != null) ? LogTokenFilter.tokens(text, false) : new long[0];
+        long[] all = Arrays.copyOf(t, t.length + s.length);
+        System.arraycopy(s, 0, all, t.length, s.length);
+        this.tokens = all;
+    }
+
+    private static boolean contains(byte[] b, int off, int len, byte[] pattern, boolean whole) {
+        byte first = pattern[0];
+        int end = off + len;
+        int last = end - pattern.length;
+        for (int i = off; i <= last; i++) {
+            if (b[i] == first) {
+                int j = 1;
+                while ((j < pattern.length) && (b[i + j] == pattern[j])) {
+                    j++;
+                }
+                if ((j == pattern.length) && (!whole || (((i == off) || !LogTokenFilter.isToken(b[i - 1]))
+                                                         && ((i + j == end) || !LogTokenFilter.isToken(b[i + j]))))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.utility.concurrent.Parallel;
+import flylog.sdk.utility.concurrent.VirtualThreads;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Engine of {@link LogQuery queries} over the {@link LogSegment log segments} stored in the {@link LogLayout key layout}
+ * of a key prefix.
+ * <p>A query is run in three stages:
+ * <ul>
+ *     <li>the segments of the sources of the query are selected by the {@link LogManifest manifests} of the partitions
+ *     of the time window, and the segments without records in the time window or with the minimum level are skipped;</li>
+ *     <li>the {@link LogIndex index} of every selected segment is read, the blocks without records in the time window, with the minimum level
+ *     or, if the query has tokens, without the tokens in their {@link LogTokenFilter token filters} are skipped,
+ *     and the runs of the remaining adjacent blocks are fetched with ranged reads in virtual threads;</li>
+ *     <li>the fetched blocks are decompressed and scanned in parallel by fork-join tasks, the predicates of the query are checked
+ *     on the raw bytes of records and only the matching records are decoded.</li>
+ * </ul>
+ * <p>Matches are streamed lazily by a {@link Cursor cursor} in the order of segments, which are ordered by their minimum record time,
+ * and in the order of records within a segment. The cursor keeps a bounded window of segments in flight,
+ * so a query with a limit stops reading segments once the limit is reached.
+ * <p>An engine is thread-safe, cursors are not.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogQueryEngine {
+    private static final ThreadLocal<byte[]> RAW = ThreadLocal.withInitial(() -> new byte[LogOptions.DEFAULT_BLOCK_SIZE]);
+
+    /**
+     * Object storage of segments.
+     */
+    protected final Storage storage;
+
+    private final String prefix;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final LogSegmentReader reader;
+
+    /**
+     * Constructs an engine of the segments with the specified key prefix in the specified storage,
+     * which scans blocks in the {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @param storage the object storage of segments
+     * @param prefix the key prefix of segments
+     */
+    public LogQueryEngine(Storage storage, String prefix) {
+        this(storage, prefix, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an engine of the segments with the specified key prefix in the specified storage,
+     * which scans blocks in the specified pool.
+     *
+     * @param storage the object storage of segments
+     * @param prefix the key prefix of segments
+     * @param pool the pool of block scans
+     */
+    public LogQueryEngine(Storage storage, String prefix, ForkJoinPool pool) {
+        this.storage = storage;
+        this.prefix = prefix;
+        this.pool = pool;
+        this.window = Math.max(2, Math.min(storage.getConcurrency(), 2 * pool.getParallelism()));
+        this.reader = new LogSegmentReader(storage);
+    }
+
+    /**
+     * Gets the object storage of segments.
+     *
+     * @return object storage of segments
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets the key prefix of segments.
+     *
+     * @return key prefix of segments
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Finds the segments which may contain records matching the specified query.
+     *
+     * @param query the query
+     *
+     * @return list of segment entries ordered by minimum record time and key
+     *
+     * @throws IllegalArgumentException if the query has no sources
+     * @throws ObjectStorageException if a manifest is not accessible or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public List<LogManifest.Entry> find(LogQuery query) {
+        List<LogManifest.Entry> entries = new ArrayList<>();
+        for (Scan scan : scans(query)) {
+            entries.add(scan.entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Runs the specified query.
+     * <p>Segments are selected on the first call of {@link Cursor#hasNext() hasNext}, so errors of any stage are thrown by the cursor.
+     *
+     * @param query the query
+     *
+     * @return cursor of the matching records, which must be closed if it is not exhausted
+     *
+     * @throws IllegalArgumentException if the query has no sources
+     */
+    public Cursor query(LogQuery query) {
+        if (query.getSources().isEmpty()) {
+            throw new IllegalArgumentException("No sources of the query are set");
+        }
+        return new Cursor(query);
+    }
+
+    /**
+     * Lazy cursor of the records matching a query.
+     * <p>Errors of segment reads are thrown by {@link #hasNext() hasNext} as {@link ObjectStorageException} or {@link ConnectionStorageException}.
+     */
+    public final class Cursor implements Iterator<LogMatch>, AutoCloseable {
+        private final LogQuery query;
+        private final ArrayDeque<CompletableFuture<List<LogMatch>>> pending = new ArrayDeque<>();
+        private List<Scan> scans = null;
+        private int next = 0;
+        private Iterator<LogMatch> current = Collections.emptyIterator();
+        private long count = 0L;
+        private volatile boolean closed = false;
+
+        private Cursor(LogQuery query) {
+            this.query = query;
+        }
+
+        /**
+         * Gets the number of the returned records.
+         *
+         * @return number of the returned records
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            } else if (count >= query.getLimit()) {
+                close();
+                return false;
+            }
+            if (scans == null) {
+                scans = scans(query);
+                fill();
+            }
+            while (!current.hasNext()) {
+                CompletableFuture<List<LogMatch>> future = pending.poll();
+                if (future == null) {
+                    return false;
+                }
+                fill();
+                try {
+                    current = future.join().iterator();
+                } catch (CompletionException e) {
+                    close();
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public LogMatch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            count++;
+            return current.next();
+        }
+
+        /**
+         * Stops the scans in flight and releases the pending matches.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            for (CompletableFuture<List<LogMatch>> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+            current = Collections.emptyIterator();
+        }
+
+        private void fill() {
+            while ((pending.size() < window) && (next < scans.size())) {
+                Scan scan = scans.get(next++);
+                pending.add(CompletableFuture.supplyAsync(() -> fetch(scan, query, this), VirtualThreads.EXECUTOR)
+                                             .thenApplyAsync(chunks -> new Decode(scan, query, this, chunks, 0, chunks.size()).invoke(), pool));
+            }
+        }
+    }
+
+    private List<Scan> scans(LogQuery query) {
+        List<String> sources = query.getSources();
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No sources of the query are set");
+        }
+        List<List<LogManifest.Entry>> found = Parallel.map(sources, sources.size(),
+                                                           s -> reader.find(new LogLayout(prefix, s), query.getFrom(), query.getTo()));
+        List<Scan> scans = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            for (LogManifest.Entry entry : found.get(i)) {
+                if (query.matches(entry)) {
+                    scans.add(new Scan(sources.get(i), entry));
+                }
+            }
+        }
+        scans.sort(Comparator.<Scan>comparingLong(s -> s.entry.minTime).thenComparing(s -> s.entry.object.key));
+        return scans;
+    }
+
+    private List<Chunk> fetch(Scan scan, LogQuery query, Cursor cursor) {
+        String key = scan.entry.object.key;
+        if (cursor.closed) {
+            throw new CancellationException();
+        }
+        Map<String, String> meta = storage.getMeta(key);
+        LogIndex index = reader.getIndex(key, meta);
+        List<LogTokenFilter> filters = null;
+        if (query.getTokens().length > 0) {
+            if (!query.matches(reader.getSegmentFilter(key, meta))) {
+                return new ArrayList<>();
+            }
+            filters = reader.getFilters(key, meta);
+        }
+        if ((filters != null) && (filters.size() != index.getBlocks().size())) {
+            throw new ObjectStorageException(String.format("Token filters of the segment '%s' do not match its index", storage.getInfo(key)));
+        }
+        Codec codec;
+        try {
+            codec = Codecs.get(index.getCodec());
+        } catch (IllegalArgumentException e) {
+            throw new ObjectStorageException(String.format("Codec of the segment '%s' is unknown", storage.getInfo(key)), e);
+        }
+        List<LogIndex.Block> blocks = new ArrayList<>();
+        for (int i = 0; i < index.getBlocks().size(); i++) {
+            LogIndex.Block block = index.getBlocks().get(i);
+            if (query.matches(block) && ((filters == null) || query.matches(filters.get(i)))) {
+                blocks.add(block);
+            }
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        int i = 0;
+        while ((i < blocks.size()) && !cursor.closed) {
+            int j = LogSegmentReader.adjacent(blocks, i);
+            LogIndex.Block first = blocks.get(i);
+            LogIndex.Block last = blocks.get(j - 1);
+            byte[] range = LogSegmentReader.read(storage, key, first.offset, (int) (last.offset + last.length - first.offset));
+            for (int b = i; b < j; b++) {
+                chunks.add(new Chunk(codec, blocks.get(b), range, (int) (blocks.get(b).offset - first.offset)));
+            }
+            i = j;
+        }
+        return chunks;
+    }
+
+    private List<LogMatch> decode(Scan scan, LogQuery query, Cursor cursor, Chunk chunk) {
+        List<LogMatch> matches = new ArrayList<>();
+        if (cursor.closed) {
+            return matches;
+        }
+        String key = scan.entry.object.key;
+        LogIndex.Block block = chunk.block;
+        byte[] raw = RAW.get();
+        if (raw.length < block.rawLength) {
+            raw = new byte[block.rawLength];
+            RAW.set(raw);
+        }
+        try {
+            chunk.codec.decompress(ByteBuffer.wrap(chunk.range, chunk.offset, block.length), ByteBuffer.wrap(raw, 0, block.rawLength));
+        } catch (IllegalArgumentException e) {
+            throw new ObjectStorageException(String.format("Block at %d of the segment '%s' is malformed", block.offset, storage.getInfo(key)), e);
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw, 0, block.rawLength);
+        LogLevel[] levels = LogLevel.values();
+        long limit = query.getLimit();
+        while ((in.remaining() >= LogSegment.RECORD_HEADER_SIZE) && (matches.size() < limit)) {
+            int length = in.getInt();
+            long timestamp = in.getLong();
+            int level = in.get();
+            if ((length < 0) || (length > in.remaining())) {
+                throw new ObjectStorageException(String.format("Block at %d of the segment '%s' is malformed", block.offset, storage.getInfo(key)));
+            }
+            if (query.matches(timestamp, level, raw, in.position(), length)) {
+                matches.add(new LogMatch(scan.source, key, timestamp, ((level >= 0) && (level < levels.length)) ? levels[level] : null,
+                                         new String(raw, in.position(), length, StandardCharsets.UTF_8)));
+            }
+            in.position(in.position() + length);
+        }
+        return matches;
+    }
+
+    private static final class Scan {
+        private final String source;
+        private final LogManifest.Entry entry;
+
+        private Scan(String source, LogManifest.Entry entry) {
+            this.source = source;
+            this.entry = entry;
+        }
+    }
+
+    private static final class Chunk {
+        private final Codec codec;
+        private final LogIndex.Block block;
+        private final byte[] range;
+        private final int offset;
+
+        private Chunk(Codec codec, LogIndex.Block block, byte[] range, int offset) {
+            this.codec = codec;
+            this.block = block;
+            this.range = range;
+            this.offset = offset;
+        }
+    }
+
+    private final class Decode extends RecursiveTask<List<LogMatch>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Scan scan;
+        private final transient LogQuery query;
+        private final transient Cursor cursor;
+        private final transient List<Chunk> chunks;
+        private final int start;
+        private final int end;
+
+        private Decode(Scan scan, LogQuery query, Cursor cursor, List<Chunk> chunks, int start, int end) {
+            this.scan = scan;
+            this.query = query;
+            this.cursor = cursor;
+            this.chunks = chunks;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<LogMatch> compute() {
+            if (end - start <= 1) {
+                return (start < end) ? decode(scan, query, cursor, chunks.get(start)) : Collections.emptyList();
+            }
+            int middle = (start + end) >>> 1;
+            Decode left = new Decode(scan, query, cursor, chunks, start, middle);
+            left.fork();
+            List<LogMatch> right = new Decode(scan, query, cursor, chunks, middle, end).compute();
+            List<LogMatch> matches = left.join();
+            if (matches.isEmpty()) {
+                return right;
+            } else if (!right.isEmpty()) {
+                matches = new ArrayList<>(matches);
+                matches.addAll(right);
+            }
+            return matches;
+        }
+    }
+}
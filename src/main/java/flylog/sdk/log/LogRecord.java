@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+/**
+ * Reusable slot of a log record in the ring buffer of a {@link LogPipeline log pipeline}.
+ * <p>Producers fill the fields of a claimed record in place and the pipeline clears them after the record is encoded,
+ * so records and their message builders are reused without allocation.
+ * <p>A producer may keep the original event of a logging framework in {@link #event event} instead of filling the fields,
+ * then the {@link LogRenderer renderer} of the pipeline fills them off the caller thread.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogRecord {
+    /**
+     * Record time in milliseconds.
+     */
+    public long timestamp;
+
+    /**
+     * Record level or {@code null} if it is unknown.
+     */
+    public LogLevel level;
+
+    /**
+     * Logger name.
+     */
+    public String logger;
+
+    /**
+     * Thread name.
+     */
+    public String thread;
+
+    /**
+     * Record message.
+     */
+    public final StringBuilder message = new StringBuilder(256);
+
+    /**
+     * Record error or {@code null}.
+     */
+    public Throwable error;
+
+    /**
+     * Original event of a logging framework or {@code null}.
+     */
+    public Object event;
+
+    /**
+     * {@code true} if the message is already formatted as the complete text of the record, {@code false} otherwise.
+     */
+    public boolean formatted;
+
+    /**
+     * Reusable state of a logging framework bound to this record slot or {@code null}.
+     * <p>It is kept by {@link #clear() clear}, so a producer may copy mutable events into it without allocation.
+     */
+    public Object context;
+
+    /**
+     * Clears the fields of this record.
+     */
+    public void clear() {
+        timestamp = 0L;
+        level = null;
+        logger = null;
+        thread = null;
+        message.setLength(0);
+        if (message.capacity() > 65536) {
+            message.trimToSize();
+        }
+        error = null;
+        event = null;
+        formatted = false;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+/**
+ * Renderer of the original events of a logging framework kept in log records.
+ * <p>A renderer may also encode records itself, which lets a framework layout write straight into the buffer of a segment.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface LogRenderer {
+    /**
+     * Fills the fields of the specified record from its {@link LogRecord#event event}.
+     *
+     * @param record the log record
+     */
+    public void render(LogRecord record);
+
+    /**
+     * Encodes the specified rendered record into the specified segment.
+     * <p>The default implementation returns {@code false}, so the segment encodes the record as text.
+     *
+     * @param record the log record
+     * @param segment the log segment
+     *
+     * @return {@code true} if the record is encoded, {@code false} if the segment must encode it as text
+     */
+    public default boolean encode(LogRecord record, LogSegment segment) {
+        return false;
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Reusable writer of a binary log segment.
+ * <p>A segment object consists of a header, compressed blocks of records, the {@link LogIndex block index} and a trailer:
+ * <pre>
+ * header:  "FLYLOG" version(1) reserved(1)
+ * block:   records compressed with the codec of the segment
+ * record:  length(4) timestamp(8) level(1) UTF-8 text(length)
+ * filters: optional, see {@link LogTokenFilter}
+ * index:   see {@link LogIndex}
+ * trailer: indexOffset(8) indexLength(4) "FLYI"
+ * </pre>
+ * <p>Records are encoded into a direct block buffer as UTF-8 text directly from their message builders, so encoding does not allocate.
+ * Records without a {@link LogRecord#formatted formatted} message are written in the default format
+ * {@code 2024-01-31T12:00:00.000Z INFO [thread] logger - message} followed by the stack trace of the error.
+ * A {@link LogRenderer renderer} may encode the text of records itself straight into the {@link #getBuffer() buffer} of the segment.
+ * A block is compressed with the {@link Codec codec} of the segment when it reaches the block size.
+ * <p>A segment with token filters collects the tokens of the records of every block and writes a {@link LogTokenFilter token filter}
+ * of the block when it is compressed, the filter of all tokens of the segment and the block filters are written before the index
+ * when the segment is finished.
+ * <p>The block and data buffers are borrowed from the {@link BufferPool#SHARED shared buffer pool}
+ * and are returned to it when the segment is {@link #release() released}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogSegment {
+    /**
+     * Version of the segment format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the segment header in bytes.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of the record header in bytes.
+     */
+    public static final int RECORD_HEADER_SIZE = 13;
+
+    /**
+     * Size of the segment trailer in bytes.
+     */
+    public static final int TRAILER_SIZE = 16;
+
+    /**
+     * Magic bytes of the segment header.
+     */
+    static final byte[] MAGIC = {'F', 'L', 'Y', 'L', 'O', 'G', FORMAT_VERSION, 0};
+
+    /**
+     * Magic number of the segment trailer.
+     */
+    static final int TRAILER_MAGIC = 0x464c5949;
+
+    private static final int LEVELS = LogLevel.values().length;
+
+    private final int blockSize;
+    private final Codec codec;
+    private final LogIndex index = new LogIndex();
+    private final LogTokenFilter.Builder tokens;
+    private final LogTokenFilter.Builder segmentTokens;
+    private final int[] levels = new int[LEVELS];
+    private final StringBuilder text = new StringBuilder(256);
+    private ByteBuffer block;
+    private ByteBuffer data;
+    private ByteBuffer filters;
+    private byte[] chunk = null;
+    private int blockRecords = 0;
+    private long blockMinTime = Long.MAX_VALUE;
+    private long blockMaxTime = Long.MIN_VALUE;
+    private int records = 0;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private long indexOffset = -1L;
+    private int indexLength = 0;
+    private long filterOffset = -1L;
+    private int filterLength = 0;
+    private int segmentFilterLength = 0;
+
+    /**
+     * Constructs a segment without token filters with the specified parameters.
+     *
+     * @param capacity the initial capacity of the compressed data in bytes
+     * @param blockSize the size of uncompressed blocks in bytes
+     * @param codec the codec of blocks
+     */
+    public LogSegment(int capacity, int blockSize, Codec codec) {
+        this(capacity, blockSize, codec, false);
+    }
+
+    /**
+     * Constructs a segment with the specified parameters.
+     *
+     * @param capacity the initial capacity of the compressed data in bytes
+     * @param blockSize the size of uncompressed blocks in bytes
+     * @param codec the codec of blocks
+     * @param tokenFilters {@code true} if {@link LogTokenFilter token filters} of blocks are written, {@code false} otherwise
+     */
+    public LogSegment(int capacity, int blockSize, Codec codec, boolean tokenFilters) {
+        this.blockSize = blockSize;
+        this.codec = codec;
+        this.index.setCodec(codec.getName());
+        this.tokens = tokenFilters ? new LogTokenFilter.Builder() : null;
+        this.segmentTokens = tokenFilters ? new LogTokenFilter.Builder() : null;
+        this.block = BufferPool.SHARED.allocate(Math.max(blockSize + (blockSize >> 2), 1024));
+        this.data = BufferPool.SHARED.allocate(Math.max(capacity, 1024));
+        this.data.put(MAGIC);
+        if (tokenFilters) {
+            this.filters = BufferPool.SHARED.allocate(4096);
+            this.filters.put((byte) LogTokenFilter.HASHES);
+        }
+    }
+
+    /**
+     * Gets the size of the segment in bytes including the uncompressed current block and the token filters.
+     *
+     * @return size of the segment in bytes
+     */
+    public int size() {
+        return data.position() + block.position() + ((filters != null) ? filters.position() : 0);
+    }
+
+    /**
+     * Gets the number of the encoded records.
+     *
+     * @return number of the encoded records
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the minimum time of the encoded records in milliseconds.
+     *
+     * @return minimum time of the encoded records in milliseconds
+     */
+    public long getMinTime() {
+        return minTime;
+    }
+
+    /**
+     * Gets the maximum time of the encoded records in milliseconds.
+     *
+     * @return maximum time of the encoded records in milliseconds
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Gets the block index of the segment, which is complete when the segment is {@link #finish() finished}.
+     *
+     * @return block index
+     */
+    public LogIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the object metadata of the finished segment.
+     *
+     * @return metadata string map
+     *
+     * @throws IllegalStateException if the segment is not finished
+     */
+    public Map<String, String> getMeta() {
+        if (indexOffset < 0L) {
+            throw new IllegalStateException("Log segment is not finished");
+        }
+        Map<String, String> meta = index.toMeta(indexOffset, indexLength);
+        if (filterOffset >= 0L) {
+            meta.put(LogTokenFilter.META_FILTER_OFFSET, Long.toString(filterOffset));
+            meta.put(LogTokenFilter.META_FILTER_LENGTH, Integer.toString(filterLength));
+            meta.put(LogTokenFilter.META_SEGMENT_FILTER_LENGTH, Integer.toString(segmentFilterLength));
+        }
+        return meta;
+    }
+
+    /**
+     * Gets the buffer of the current block.
+     * <p>The position of the buffer is the end of the text of the record being encoded, bytes put to the buffer are appended to it.
+     * The buffer is replaced when the segment {@link #grow(int) grows}.
+     *
+     * @return buffer of the current block
+     */
+    public ByteBuffer getBuffer() {
+        return block;
+    }
+
+    /**
+     * Grows the buffer of the current block to have at least the specified number of remaining bytes.
+     *
+     * @param remaining the minimum number of remaining bytes
+     *
+     * @return buffer of the current block
+     */
+    public ByteBuffer grow(int remaining) {
+        block = ensure(block, block.position() + remaining);
+        return block;
+    }
+
+    /**
+     * Appends the remaining bytes of the specified buffer to the text of the record being encoded.
+     *
+     * @param src the source buffer
+     */
+    public void write(ByteBuffer src) {
+        grow(src.remaining()).put(src);
+    }
+
+    /**
+     * Appends the specified range of the specified byte array to the text of the record being encoded.
+     *
+     * @param b the byte array
+     * @param off the offset of the range
+     * @param len the length of the range
+     */
+    public void write(byte[] b, int off, int len) {
+        grow(len).put(b, off, len);
+    }
+
+    /**
+     * Encodes the specified record.
+     *
+     * @param record the log record
+     */
+    public void append(LogRecord record) {
+        append(record, null);
+    }
+
+    /**
+     * Encodes the specified record with the specified renderer.
+     * <p>The record is encoded as text if the renderer is {@code null}, the record has no event or the renderer does not encode it.
+     *
+     * @param record the log record
+     * @param renderer the renderer of the original event of the record or {@code null}
+     */
+    public void append(LogRecord record, LogRenderer renderer) {
+        int start = grow(RECORD_HEADER_SIZE).position();
+        block.position(start + RECORD_HEADER_SIZE);
+        try {
+            if ((renderer == null) || (record.event == null) || !renderer.encode(record, this)) {
+                if (record.formatted) {
+                    append(record.message);
+                } else {
+                    text.setLength(0);
+                    format(record, text);
+                    append(text);
+                    if (text.capacity() > 65536) {
+                        text.setLength(0);
+                        text.trimToSize();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            block.position(start);
+            throw e;
+        }
+        if (tokens != null) {
+            tokens.add(block, start + RECORD_HEADER_SIZE, block.position());
+        }
+        block.putInt(start, block.position() - start - RECORD_HEADER_SIZE);
+        block.putLong(start + 4, record.timestamp);
+        block.put(start + 12, (byte) ((record.level != null) ? record.level.ordinal() : -1));
+        if (record.level != null) {
+            levels[record.level.ordinal()]++;
+        }
+        blockRecords++;
+        blockMinTime = Math.min(blockMinTime, record.timestamp);
+        blockMaxTime = Math.max(blockMaxTime, record.timestamp);
+        records++;
+        minTime = Math.min(minTime, record.timestamp);
+        maxTime = Math.max(maxTime, record.timestamp);
+        if (block.position() >= blockSize) {
+            compress();
+        }
+    }
+
+    /**
+     * Compresses the current block and writes the token filters, the block index and the trailer.
+     * <p>No records can be appended to a finished segment until it is {@link #reset() reset}.
+     */
+    public void finish() {
+        if (indexOffset >= 0L) {
+            return;
+        }
+        compress();
+        if (filters != null) {
+            filterOffset = data.position();
+            data = ensure(data, data.position() + 1 + segmentTokens.size() + filters.position());
+            data.put((byte) LogTokenFilter.HASHES);
+            segmentTokens.writeTo(data);
+            segmentFilterLength = (int) (data.position() - filterOffset);
+            data.put(filters.duplicate().flip());
+            filterLength = (int) (data.position() - filterOffset);
+        }
+        indexOffset = data.position();
+        indexLength = index.size();
+        data = ensure(data, data.position() + indexLength + TRAILER_SIZE);
+        index.writeTo(data);
+        data.putLong(indexOffset);
+        data.putInt(indexLength);
+        data.putInt(TRAILER_MAGIC);
+    }
+
+    /**
+     * Writes the finished segment to the specified stream.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        finish();
+        if (chunk == null) {
+            chunk = new byte[65536];
+        }
+        int size = data.position();
+        for (int p = 0; p < size; p += chunk.length) {
+            int n = Math.min(chunk.length, size - p);
+            data.get(p, chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Clears this segment for reuse.
+     */
+    public void reset() {
+        block.clear();
+        data.clear();
+        data.put(MAGIC);
+        index.clear();
+        clearBlock();
+        records = 0;
+        minTime = Long.MAX_VALUE;
+        maxTime = Long.MIN_VALUE;
+        indexOffset = -1L;
+        indexLength = 0;
+        if (filters != null) {
+            filters.clear();
+            filters.put((byte) LogTokenFilter.HASHES);
+            tokens.clear();
+            segmentTokens.clear();
+        }
+        filterOffset = -1L;
+        filterLength = 0;
+        segmentFilterLength = 0;
+    }
+
+    /**
+     * Releases the buffers of this segment to the shared buffer pool.
+     * <p>The segment must not be used after it is released.
+     */
+    public void release() {
+        BufferPool.SHARED.release(block);
+        BufferPool.SHARED.release(data);
+        if (filters != null) {
+            BufferPool.SHARED.release(filters);
+        }
+        block = null;
+        data = null;
+        filters = null;
+    }
+
+    /**
+     * Formats the specified record in the default format {@code <time> <level> [<thread>] <logger> - <message>}
+     * followed by the stack trace of its error, if any.
+     *
+     * @param record the log record
+     * @param out the output builder
+     */
+    public static void format(LogRecord record, StringBuilder out) {
+        formatTime(record.timestamp, out);
+        out.append(' ').append((record.level != null) ? record.level.name() : "-")
+           .append(" [").append(record.thread).append("] ")
+           .append(record.logger).append(" - ")
+           .append(record.message).append('\n');
+        if (record.error != null) {
+            StringWriter trace = new StringWriter();
+            record.error.printStackTrace(new PrintWriter(trace));
+            out.append(trace.getBuffer());
+        }
+    }
+
+    /**
+     * Formats the specified time as an ISO-8601 UTC timestamp with milliseconds without allocation.
+     *
+     * @param time the time in milliseconds
+     * @param out the output builder
+     */
+    public static void formatTime(long time, StringBuilder out) {
+        long days = Math.floorDiv(time, 86_400_000L);
+        int ms = (int) Math.floorMod(time, 86_400_000L);
+        long z = days + 719_468L;
+        long era = Math.floorDiv(z, 146_097L);
+        long doe = z - era * 146_097L;
+        long yoe = (doe - doe / 1460L + doe / 36_524L - doe / 146_096L) / 365L;
+        long doy = doe - (365L * yoe + yoe / 4L - yoe / 100L);
+        long mp = (5L * doy + 2L) / 153L;
+        int day = (int) (doy - (153L * mp + 2L) / 5L + 1L);
+        int month = (int) ((mp < 10L) ? mp + 3L : mp - 9L);
+        long year = yoe + era * 400L + ((month <= 2) ? 1L : 0L);
+        out.append(year).append('-');
+        pad(month, 2, out);
+        out.append('-');
+        pad(day, 2, out);
+        out.append('T');
+        pad(ms / 3_600_000, 2, out);
+        out.append(':');
+        pad(ms / 60_000 % 60, 2, out);
+        out.append(':');
+        pad(ms / 1000 % 60, 2, out);
+        out.append('.');
+        pad(ms % 1000, 3, out);
+        out.append('Z');
+    }
+
+    private static void pad(int value, int width, StringBuilder out) {
+        for (int d = (width == 3) ? 100 : 10; d > 1 && value < d; d /= 10) {
+            out.append('0');
+        }
+        out.append(value);
+    }
+
+    private void append(CharSequence chars) {
+        int length = chars.length();
+        ByteBuffer b = grow(3 * length);
+        int p = b.position();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                b.put(p++, (byte) c);
+            } else if (c < 0x800) {
+                b.put(p++, (byte) (0xc0 | (c >> 6)));
+                b.put(p++, (byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, chars.charAt(++i));
+                b.put(p++, (byte) (0xf0 | (cp >> 18)));
+                b.put(p++, (byte) (0x80 | ((cp >> 12) & 0x3f)));
+                b.put(p++, (byte) (0x80 | ((cp >> 6) & 0x3f)));
+                b.put(p++, (byte) (0x80 | (cp & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                b.put(p++, (byte) '?');
+            } else {
+                b.put(p++, (byte) (0xe0 | (c >> 12)));
+                b.put(p++, (byte) (0x80 | ((c >> 6) & 0x3f)));
+                b.put(p++, (byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        b.position(p);
+    }
+
+    private void compress() {
+        if (blockRecords == 0) {
+            return;
+        }
+        long offset = data.position();
+        int rawLength = block.position();
+        block.flip();
+        data = ensure(data, data.position() + codec.maxCompressedLength(rawLength));
+        codec.compress(block, data);
+        index.add(new LogIndex.Block(offset, (int) (data.position() - offset), rawLength, blockRecords, blockMinTime, blockMaxTime, levels));
+        if (tokens != null) {
+            filters = ensure(filters, filters.position() + tokens.size());
+            tokens.writeTo(filters);
+            segmentTokens.add(tokens);
+            tokens.clear();
+        }
+        block.clear();
+        clearBlock();
+    }
+
+    private void clearBlock() {
+        blockRecords = 0;
+        blockMinTime = Long.MAX_VALUE;
+        blockMaxTime = Long.MIN_VALUE;
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = 0;
+        }
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int capacity) {
+        if (capacity > buffer.capacity()) {
+            ByteBuffer b = BufferPool.SHARED.allocate(Math.max(capacity, buffer.capacity() + (buffer.capacity() >> 1)));
+            b.put(buffer.flip());
+            BufferPool.SHARED.release(buffer);
+            return b;
+        }
+        return buffer;
+    }
+}
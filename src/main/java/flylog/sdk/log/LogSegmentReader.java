@@ -0,0 +1,343 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageException;
+import flylog.sdk.storage.codec.Codec;
+import flylog.sdk.storage.codec.Codecs;
+import flylog.sdk.utility.concurrent.Parallel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reader of binary {@link LogSegment log segments} in object storage.
+ * <p>The {@link LogIndex block index} is read from the object metadata, or from the footer of the object
+ * by a ranged read, and only the blocks which overlap the requested time window are fetched and decompressed.
+ * Adjacent blocks are fetched with one ranged read.
+ * <p>Reads of records are not thread-safe, they reuse the buffers of the reader and the record passed to consumers.
+ * Lookups of segments, indexes and token filters keep no state in the reader, so {@link #find(LogLayout, long, long) find},
+ * {@link #getIndex(String, Map) getIndex}, {@link #getFilters(String, Map) getFilters} and
+ * {@link #getSegmentFilter(String, Map) getSegmentFilter} are thread-safe and may be called concurrently with each other,
+ * subclasses which override them must keep them thread-safe.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class LogSegmentReader {
+    /**
+     * Object storage of segments.
+     */
+    protected final Storage storage;
+
+    private final LogRecord record = new LogRecord();
+    private byte[] raw = new byte[65536];
+
+    /**
+     * Constructs a reader of the segments in the specified storage.
+     *
+     * @param storage the object storage of segments
+     */
+    public LogSegmentReader(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Gets the object storage of segments.
+     *
+     * @return object storage of segments
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Finds the segments of the specified layout which overlap the specified time window.
+     * <p>The manifests of the partitions of the time window are read and {@link LogManifest#loadAll(Storage, LogLayout, long) merged}
+     * concurrently, a partition without manifests is {@link LogManifest#rebuild(Storage, String) rebuilt} from the metadata
+     * of its segments.
+     *
+     * @param layout the key layout of segments
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     *
+     * @return list of segment entries ordered by partition, minimum record time and key
+     *
+     * @throws ObjectStorageException if a manifest is not accessible or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public List<LogManifest.Entry> find(LogLayout layout, long from, long to) {
+        List<List<LogManifest.Entry>> found = Parallel.map(layout.getPartitions(from, to), storage.getConcurrency(), p -> {
+            LogManifest manifest = LogManifest.loadAll(storage, layout, p);
+            if (manifest == null) {
+                manifest = LogManifest.rebuild(storage, layout.getPartitionPrefix(p));
+            }
+            return manifest.find(from, to);
+        });
+        List<LogManifest.Entry> result = new ArrayList<>();
+        for (List<LogManifest.Entry> entries : found) {
+            result.addAll(entries);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the block index of the specified segment.
+     *
+     * @param key the segment key
+     *
+     * @return block index
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public LogIndex getIndex(String key) {
+        return getIndex(key, storage.getMeta(key));
+    }
+
+    /**
+     * Reads the block index of the specified segment with the specified metadata.
+     *
+     * @param key the segment key
+     * @param meta the metadata of the segment
+     *
+     * @return block index
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public LogIndex getIndex(String key, Map<String, String> meta) {
+        try {
+            LogIndex index = LogIndex.of(meta);
+            if (index != null) {
+                return index;
+            }
+            String offset = meta.get(LogIndex.META_INDEX_OFFSET);
+            String length = meta.get(LogIndex.META_INDEX_LENGTH);
+            if ((offset != null) && (length != null)) {
+                return LogIndex.of(ByteBuffer.wrap(read(storage, key, Long.parseLong(offset), Integer.parseInt(length))));
+            }
+            long size = storage.get(key).size;
+            if (size < LogSegment.HEADER_SIZE + LogSegment.TRAILER_SIZE) {
+                throw new IllegalArgumentException(String.format("Illegal segment size: %d", size));
+            }
+            ByteBuffer trailer = ByteBuffer.wrap(read(storage, key, size - LogSegment.TRAILER_SIZE, LogSegment.TRAILER_SIZE));
+            long indexOffset = trailer.getLong();
+            int indexLength = trailer.getInt();
+            if (trailer.getInt() != LogSegment.TRAILER_MAGIC) {
+                throw new IllegalArgumentException("Illegal segment trailer");
+            }
+            return LogIndex.of(ByteBuffer.wrap(read(storage, key, indexOffset, indexLength)));
+        } catch (StorageException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ObjectStorageException(String.format("Index of the segment '%s' is malformed", storage.getInfo(key)), e);
+        }
+    }
+
+    /**
+     * Reads the {@link LogTokenFilter token filters} of the blocks of the specified segment with the specified metadata.
+     *
+     * @param key the segment key
+     * @param meta the metadata of the segment
+     *
+     * @return filters in the order of blocks or {@code null} if the segment has no token filters
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public List<LogTokenFilter> getFilters(String key, Map<String, String> meta) {
+        return getFilters(key, meta, false);
+    }
+
+    /**
+     * Reads the {@link LogTokenFilter token filter} of all tokens of the specified segment with the specified metadata.
+     *
+     * @param key the segment key
+     * @param meta the metadata of the segment
+     *
+     * @return filter of the segment or {@code null} if the segment has no token filters
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public LogTokenFilter getSegmentFilter(String key, Map<String, String> meta) {
+        List<LogTokenFilter> filters = getFilters(key, meta, true);
+        if ((filters != null) && (filters.size() != 1)) {
+            throw new ObjectStorageException(String.format("Token filters of the segment '%s' are malformed", storage.getInfo(key)));
+        }
+        return (filters != null) ? filters.get(0) : null;
+    }
+
+    private List<LogTokenFilter> getFilters(String key, Map<String, String> meta, boolean segment) {
+        String offset = meta.get(LogTokenFilter.META_FILTER_OFFSET);
+        String length = meta.get(LogTokenFilter.META_FILTER_LENGTH);
+        String segmentLength = meta.get(LogTokenFilter.META_SEGMENT_FILTER_LENGTH);
+        if ((offset == null) || (length == null) || (segmentLength == null)) {
+            return null;
+        }
+        try {
+            long o = Long.parseLong(offset);
+            int s = Integer.parseInt(segmentLength);
+            byte[] part = segment ? read(storage, key, o, s) : read(storage, key, o + s, Integer.parseInt(length) - s);
+            return LogTokenFilter.of(ByteBuffer.wrap(part));
+        } catch (StorageException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ObjectStorageException(String.format("Token filters of the segment '%s' are malformed", storage.getInfo(key)), e);
+        }
+    }
+
+    /**
+     * Reads the records of the specified segment in the specified time window.
+     *
+     * @param key the segment key
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     * @param consumer the consumer of records, the record is reused after the consumer returns
+     *
+     * @return number of the consumed records
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public long read(String key, long from, long to, Consumer<? super LogRecord> consumer) {
+        return read(key, getIndex(key), from, to, consumer);
+    }
+
+    /**
+     * Reads the records of the specified segment with the specified index in the specified time window.
+     *
+     * @param key the segment key
+     * @param index the block index of the segment
+     * @param from the start of the time window in milliseconds, inclusive
+     * @param to the end of the time window in milliseconds, exclusive
+     * @param consumer the consumer of records, the record is reused after the consumer returns
+     *
+     * @return number of the consumed records
+     *
+     * @throws ObjectStorageException if the segment does not exist or is malformed
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public long read(String key, LogIndex index, long from, long to, Consumer<? super LogRecord> consumer) {
+        List<LogIndex.Block> blocks = index.find(from, to);
+        Codec codec;
+        try {
+            codec = Codecs.get(index.getCodec());
+        } catch (IllegalArgumentException e) {
+            throw new ObjectStorageException(String.format("Codec of the segment '%s' is unknown", storage.getInfo(key)), e);
+        }
+        long count = 0L;
+        int i = 0;
+        while (i < blocks.size()) {
+            int j = adjacent(blocks, i);
+            LogIndex.Block first = blocks.get(i);
+            LogIndex.Block last = blocks.get(j - 1);
+            byte[] range = read(storage, key, first.offset, (int) (last.offset + last.length - first.offset));
+            for (int b = i; b < j; b++) {
+                LogIndex.Block block = blocks.get(b);
+                count += decode(key, codec, block, range, (int) (block.offset - first.offset), from, to, consumer);
+            }
+            i = j;
+        }
+        return count;
+    }
+
+    private long decode(String key, Codec codec, LogIndex.Block block, byte[] range, int offset, long from, long to, Consumer<? super LogRecord> consumer) {
+        if (raw.length < block.rawLength) {
+            raw = new byte[Math.max(block.rawLength, raw.length + (raw.length >> 1))];
+        }
+        try {
+            codec.decompress(ByteBuffer.wrap(range, offset, block.length), ByteBuffer.wrap(raw, 0, block.rawLength));
+        } catch (IllegalArgumentException e) {
+            throw new ObjectStorageException(String.format("Block at %d of the segment '%s' is malformed", block.offset, storage.getInfo(key)), e);
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw, 0, block.rawLength);
+        LogLevel[] levels = LogLevel.values();
+        long count = 0L;
+        while (in.remaining() >= LogSegment.RECORD_HEADER_SIZE) {
+            int length = in.getInt();
+            long timestamp = in.getLong();
+            int level = in.get();
+            if ((length < 0) || (length > in.remaining())) {
+                throw new ObjectStorageException(String.format("Block at %d of the segment '%s' is malformed", block.offset, storage.getInfo(key)));
+            }
+            if ((timestamp >= from) && (timestamp < to)) {
+                record.clear();
+                record.timestamp = timestamp;
+                record.level = ((level >= 0) && (level < levels.length)) ? levels[level] : null;
+                record.message.append(new String(raw, in.position(), length, StandardCharsets.UTF_8));
+                record.formatted = true;
+                consumer.accept(record);
+                count++;
+            }
+            in.position(in.position() + length);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the end of the run of adjacent blocks which starts at the specified position, so the run is fetched with one ranged read.
+     *
+     * @param blocks the block entries in the order of blocks
+     * @param start the position of the first block of the run
+     *
+     * @return position after the last block of the run
+     */
+    static int adjacent(List<LogIndex.Block> blocks, int start) {
+        int end = start + 1;
+        while ((end < blocks.size()) && (blocks.get(end).offset == blocks.get(end - 1).offset + blocks.get(end - 1).length)) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Reads the specified range of the specified segment.
+     *
+     * @param storage the object storage of the segment
+     * @param key the segment key
+     * @param offset the offset of the range
+     * @param length the length of the range in bytes
+     *
+     * @return bytes of the range
+     *
+     * @throws ObjectStorageException if the segment does not exist or the range is truncated
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    static byte[] read(Storage storage, String key, long offset, int length) {
+        try (InputStream in = storage.getData(key, offset, length)) {
+            byte[] b = in.readNBytes(length);
+            if (b.length != length) {
+                throw new ObjectStorageException(String.format("Range %d-%d of the segment '%s' is truncated", offset, offset + length, storage.getInfo(key)));
+            }
+            return b;
+        } catch (IOException e) {
+            throw new ConnectionStorageException(String.format("Object '%s' could not be read", storage.getInfo(key)), e);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bloom filter of the tokens of a block of a {@link LogSegment log segment}.
+ * <p>Tokens are the runs of ASCII letters, digits, underscores and non-ASCII characters of the UTF-8 text of records,
+ * which are at least {@value #MIN_TOKEN_LENGTH} bytes long, so trace and request identifiers are tokens or sequences of tokens.
+ * A filter has about {@value #BITS_PER_TOKEN} bits per distinct token and is probed with {@value #HASHES} hashes,
+ * which gives a false positive rate of about two percent, so readers skip the blocks without the tokens of a query
+ * before they fetch them.
+ * <p>A segment has a filter of all its tokens followed by the filters of its blocks, so readers skip most segments with one small read
+ * and fetch the block filters only of the remaining ones. The filters are stored as one section between the blocks and the index
+ * of the segment, the positions of the section and of its block part are recorded in the object metadata:
+ * <pre>
+ * section: hashes(1) filter(segment) hashes(1) filter(block 1) ... filter(block n)
+ * filter:  words(4) bits(8 * words)
+ * </pre>
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class LogTokenFilter {
+    /**
+     * Metadata key of the offset of the filter section in the segment object.
+     */
+    public static final String META_FILTER_OFFSET = "flylog-filter-offset";
+
+    /**
+     * Metadata key of the length of the filter section in the segment object.
+     */
+    public static final String META_FILTER_LENGTH = "flylog-filter-length";
+
+    /**
+     * Metadata key of the length of the segment filter part of the filter section.
+     */
+    public static final String META_SEGMENT_FILTER_LENGTH = "flylog-segment-filter-length";
+
+    /**
+     * Minimum length of a token in bytes, shorter tokens are not added to filters.
+     */
+    public static final int MIN_TOKEN_LENGTH = 3;
+
+    /**
+     * Number of bits per distinct token.
+     */
+    public static final int BITS_PER_TOKEN = 8;
+
+    /**
+     * Number of hashes of a token.
+     */
+    public static final int HASHES = 6;
+
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bits;
+    private final int hashes;
+
+    private LogTokenFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Gets the size of this filter in bits.
+     *
+     * @return size of this filter in bits
+     */
+    public int size() {
+        return bits.length << 6;
+    }
+
+    /**
+     * Checks whether the token with the specified hash may be in this filter.
+     *
+     * @param hash the {@link #tokens(String, boolean) token hash}
+     *
+     * @return {@code false} if the token is definitely not in this filter, {@code true} otherwise
+     */
+    public boolean mightContain(long hash) {
+        return probe(bits, bits.length, hashes, hash, false);
+    }
+
+    /**
+     * Checks whether all tokens with the specified hashes may be in this filter.
+     *
+     * @param hashes the {@link #tokens(String, boolean) token hashes}
+     *
+     * @return {@code false} if any token is definitely not in this filter, {@code true} otherwise
+     */
+    public boolean mightContainAll(long[] hashes) {
+        for (long hash : hashes) {
+            if (!mightContain(hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the specified byte is a byte of a token.
+     *
+     * @param b the byte
+     *
+     * @return {@code true} if the byte is a byte of a token, {@code false} if it separates tokens
+     */
+    public static boolean isToken(byte b) {
+        return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z')) || ((b >= '0') && (b <= '9')) || (b == '_') || (b < 0);
+    }
+
+    /**
+     * Gets the hashes of the tokens of the specified text which are long enough to be in filters.
+     *
+     * @param text the text
+     * @param whole {@code true} if the text is a sequence of whole tokens, {@code false} if it is a substring of a record,
+     *              so the tokens at its start and at its end may be parts of longer tokens and are skipped
+     *
+     * @return distinct token hashes
+     */
+    public static long[] tokens(String text, boolean whole) {
+        byte[] b = text.getBytes(StandardCharsets.UTF_8);
+        List<Long> hashes = new ArrayList<>();
+        int i = 0;
+        while (i < b.length) {
+            if (!isToken(b[i])) {
+                i++;
+                continue;
+            }
+            int start = i;
+            long hash = FNV_BASIS;
+            while ((i < b.length) && isToken(b[i])) {
+                hash = (hash ^ (b[i++] & 0xff)) * FNV_PRIME;
+            }
+            if ((i - start >= MIN_TOKEN_LENGTH) && (whole || ((start > 0) && (i < b.length)))) {
+                Long h = mix(hash);
+                if (!hashes.contains(h)) {
+                    hashes.add(h);
+                }
+            }
+        }
+        long[] result = new long[hashes.size()];
+        for (int j = 0; j < result.length; j++) {
+            result[j] = hashes.get(j);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the filters from the binary form of a part of the filter section in the specified buffer.
+     *
+     * @param in the input buffer
+     *
+     * @return filters in the order of the part
+     *
+     * @throws IllegalArgumentException if the binary form is malformed
+     */
+    public static List<LogTokenFilter> of(ByteBuffer in) {
+        int hashes = in.get();
+        if ((hashes <= 0) || (hashes > 32)) {
+            throw new IllegalArgumentException(String.format("Illegal number of filter hashes: %d", hashes));
+        }
+        List<LogTokenFilter> filters = new ArrayList<>();
+        while (in.hasRemaining()) {
+            int words = in.getInt();
+            if ((words <= 0) || ((long) words * 8 > in.remaining())) {
+                throw new IllegalArgumentException(String.format("Illegal number of filter words: %d", words));
+            }
+            long[] bits = new long[words];
+            in.asLongBuffer().get(bits);
+            in.position(in.position() + words * 8);
+            filters.add(new LogTokenFilter(bits, hashes));
+        }
+        return filters;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash != 0L) ? hash : 1L;
+    }
+
+    private static boolean probe(long[] bits, int words, int hashes, long hash, boolean set) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int size = words << 6;
+        for (int i = 0; i < hashes; i++) {
+            int combined = h1 + i * h2;
+            int bit = ((combined < 0) ? ~combined : combined) % size;
+            if (set) {
+                bits[bit >>> 6] |= 1L << bit;
+            } else if ((bits[bit >>> 6] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reusable builder of the filter of a block, which collects the distinct tokens of the block and sizes the filter by their number.
+     * <p>A builder does not allocate after it has grown to the number of distinct tokens of a block.
+     */
+    static final class Builder {
+        private long[] table = new long[4096];
+        private int count = 0;
+        private long[] words = new long[64];
+
+        /**
+         * Adds the tokens of the specified range of the specified buffer.
+         *
+         * @param b the buffer
+         * @param start the start of the range
+         * @param end the end of the range
+         */
+        void add(ByteBuffer b, int start, int end) {
+            int i = start;
+            while (i < end) {
+                if (!isToken(b.get(i))) {
+                    i++;
+                    continue;
+                }
+                int s = i;
+                long hash = FNV_BASIS;
+                byte c;
+                while ((i < end) && isToken(c = b.get(i))) {
+                    hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                    i++;
+                }
+                if (i - s >= MIN_TOKEN_LENGTH) {
+                    put(mix(hash));
+                }
+            }
+        }
+
+        /**
+         * Adds the tokens of the specified builder.
+         *
+         * @param other the builder
+         */
+        void add(Builder other) {
+            for (long hash : other.table) {
+                if (hash != 0L) {
+                    put(hash);
+                }
+            }
+        }
+
+        /**
+         * Gets the size of the binary form of the filter in bytes.
+         *
+         * @return size of the binary form in bytes
+         */
+        int size() {
+            return 4 + 8 * words();
+        }
+
+        /**
+         * Writes the binary form of the filter to the specified buffer.
+         *
+         * @param out the output buffer with at least {@link #size() size} remaining bytes
+         */
+        void writeTo(ByteBuffer out) {
+            int n = words();
+            if (words.length < n) {
+                words = new long[n];
+            }
+            Arrays.fill(words, 0, n, 0L);
+            for (long hash : table) {
+                if (hash != 0L) {
+                    probe(words, n, HASHES, hash, true);
+                }
+            }
+            out.putInt(n);
+            for (int i = 0; i < n; i++) {
+                out.putLong(words[i]);
+            }
+        }
+
+        /**
+         * Clears this builder for the next block.
+         */
+        void clear() {
+            if (count > 0) {
+                Arrays.fill(table, 0L);
+                count = 0;
+            }
+        }
+
+        private int words() {
+            return Math.max(1, (int) (((long) count * BITS_PER_TOKEN + 63L) >>> 6));
+        }
+
+        private void put(long hash) {
+            int mask = table.length - 1;
+            int i = (int) (hash ^ (hash >>> 32)) & mask;
+            while (table[i] != 0L) {
+                if (table[i] == hash) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = hash;
+            if (++count > (table.length >> 1)) {
+                long[] old = table;
+                table = new long[old.length << 1];
+                count = 0;
+                for (long h : old) {
+                    if (h != 0L) {
+                        put(h);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.jboss;
+
+import flylog.sdk.log.LogLevel;
+import org.jboss.logging.Logger;
+
+import java.text.MessageFormat;
+
+/**
+ * JBoss Logging logger which publishes records to the pipeline of a {@link FlyLogLoggerProvider logger provider}.
+ * <p>Level checks compare the level with a threshold without allocation, messages of enabled records are formatted
+ * on the logging thread because parameters may change after the call.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class FlyLogLogger extends Logger {
+    private static final long serialVersionUID = 1L;
+    private static final LogLevel[] LEVELS = levels();
+
+    private final transient FlyLogLoggerProvider provider;
+    private volatile int threshold;
+
+    /**
+     * Constructs a logger with the specified parameters.
+     *
+     * @param name the logger name
+     * @param provider the logger provider
+     * @param level the minimum enabled level
+     */
+    FlyLogLogger(String name, FlyLogLoggerProvider provider, LogLevel level) {
+        super(name);
+        this.provider = provider;
+        this.threshold = level.ordinal();
+    }
+
+    /**
+     * Sets the minimum enabled level.
+     *
+     * @param level the minimum enabled level
+     */
+    void setLevel(LogLevel level) {
+        this.threshold = level.ordinal();
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        return LEVELS[level.ordinal()].ordinal() >= threshold;
+    }
+
+    @Override
+    protected void doLog(Level level, String loggerClassName, Object message, Object[] parameters, Throwable thrown) {
+        if (isEnabled(level)) {
+            Object m = ((parameters != null) && (parameters.length > 0)) ? MessageFormat.format(String.valueOf(message), parameters) : message;
+            provider.publish(getName(), LEVELS[level.ordinal()], m, thrown);
+        }
+    }
+
+    @Override
+    protected void doLogf(Level level, String loggerClassName, String format, Object[] parameters, Throwable thrown) {
+        if (isEnabled(level)) {
+            Object m = ((parameters != null) && (parameters.length > 0)) ? String.format(format, parameters) : format;
+            provider.publish(getName(), LEVELS[level.ordinal()], m, thrown);
+        }
+    }
+
+    private static LogLevel[] levels() {
+        Level[] levels = Level.values();
+        LogLevel[] result = new LogLevel[levels.length];
+        for (Level level : levels) {
+            result[level.ordinal()] = (level == Level.FATAL) ? LogLevel.ERROR : LogLevel.valueOf(level.name());
+        }
+        return result;
+    }
+}
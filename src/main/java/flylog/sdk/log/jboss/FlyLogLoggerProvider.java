@@ -0,0 +1,293 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.jboss;
+
+import flylog.sdk.log.LogLevel;
+import flylog.sdk.log.LogOptions;
+import flylog.sdk.log.LogPipeline;
+import flylog.sdk.log.LogRecord;
+import flylog.sdk.utility.logging.ErrorLog;
+import org.jboss.logging.Logger;
+import org.jboss.logging.LoggerProvider;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JBoss Logging provider which publishes records directly to a {@link LogPipeline log pipeline}
+ * without a bridge to another logging framework.
+ * <p>The provider is found by the service loader of JBoss Logging. It is only used if the system property
+ * {@value #ENABLED_PROPERTY} is {@code true}, otherwise JBoss Logging falls back to the next provider.
+ * Pipeline options are read from the system properties with the prefix {@value #PREFIX}, {@code flylog.log.bucket} for instance,
+ * and levels are read from {@code flylog.log.level} for all loggers and {@code flylog.log.level.<category>} for categories.
+ * <p>Level checks of disabled records do not allocate, records are formatted in the default format of {@link flylog.sdk.log.LogSegment log segments}.
+ * The nested diagnostic context and the mapped diagnostic context of the thread are prepended to the message,
+ * as {@code outer inner {key=value, ...} message}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class FlyLogLoggerProvider implements LoggerProvider, AutoCloseable {
+    /**
+     * Prefix of the system properties of the provider.
+     */
+    public static final String PREFIX = "flylog.log.";
+
+    /**
+     * System property which enables the provider in the service loader of JBoss Logging.
+     */
+    public static final String ENABLED_PROPERTY = "flylog.log.jboss";
+
+    private static final String LEVEL_PROPERTY = PREFIX + "level";
+
+    private final LogPipeline pipeline;
+    private final boolean owned;
+    private final Thread hook;
+    private final Map<String, LogLevel> levels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FlyLogLogger> loggers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Object>> mdc = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<ArrayDeque<String>> ndc = ThreadLocal.withInitial(ArrayDeque::new);
+    private volatile int ndcMaxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Constructs a provider configured by the system properties, which is called by the service loader of JBoss Logging.
+     * <p>The pipeline is closed by a shutdown hook.
+     *
+     * @throws IllegalStateException if the provider is not enabled
+     */
+    public FlyLogLoggerProvider() {
+        Properties properties = System.getProperties();
+        if (!Boolean.parseBoolean(properties.getProperty(ENABLED_PROPERTY))) {
+            throw new IllegalStateException(String.format("Logger provider is not enabled by the system property '%s'", ENABLED_PROPERTY));
+        }
+        LogOptions options = LogOptions.of(properties, PREFIX);
+        this.pipeline = new LogPipeline(options.createStorage(), options, null, ErrorLog::error);
+        this.owned = true;
+        pipeline.start();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.equals(LEVEL_PROPERTY) || name.startsWith(LEVEL_PROPERTY + ".")) {
+                levels.put(name.substring(Math.min(name.length(), LEVEL_PROPERTY.length() + 1)), level(properties.getProperty(name)));
+            }
+        }
+        this.hook = new Thread(pipeline::close, "flylog-log-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * Constructs a provider which publishes records to the specified started pipeline, which is shared with other appenders
+     * and is not closed by the provider.
+     *
+     * @param pipeline the log pipeline
+     * @param level the minimum enabled level of all loggers
+     */
+    public FlyLogLoggerProvider(LogPipeline pipeline, LogLevel level) {
+        this.pipeline = pipeline;
+        this.owned = false;
+        this.hook = null;
+        this.levels.put("", level);
+    }
+
+    /**
+     * Gets the log pipeline.
+     *
+     * @return log pipeline
+     */
+    public LogPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Sets the minimum enabled level of the specified category and its subcategories without an own level.
+     *
+     * @param category the category, the empty string for all loggers
+     * @param level the minimum enabled level
+     */
+    public void setLevel(String category, LogLevel level) {
+        levels.put(category, level);
+        for (FlyLogLogger logger : loggers.values()) {
+            logger.setLevel(resolve(logger.getName()));
+        }
+    }
+
+    @Override
+    public Logger getLogger(String name) {
+        return loggers.computeIfAbsent(name, n -> new FlyLogLogger(n, this, resolve(n)));
+    }
+
+    @Override
+    public void clearMdc() {
+        mdc.get().clear();
+    }
+
+    @Override
+    public Object putMdc(String key, Object value) {
+        return mdc.get().put(key, value);
+    }
+
+    @Override
+    public Object getMdc(String key) {
+        return mdc.get().get(key);
+    }
+
+    @Override
+    public void removeMdc(String key) {
+        mdc.get().remove(key);
+    }
+
+    @Override
+    public Map<String, Object> getMdcMap() {
+        return new HashMap<>(mdc.get());
+    }
+
+    @Override
+    public void clearNdc() {
+        ndc.get().clear();
+    }
+
+    @Override
+    public String getNdc() {
+        ArrayDeque<String> stack = ndc.get();
+        if (stack.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        stack.descendingIterator().forEachRemaining(s -> sb.append((sb.length() > 0) ? " " : "").append(s));
+        return sb.toString();
+    }
+
+    @Override
+    public int getNdcDepth() {
+        return ndc.get().size();
+    }
+
+    @Override
+    public String popNdc() {
+        String s = ndc.get().pollFirst();
+        return (s != null) ? s : "";
+    }
+
+    @Override
+    public String peekNdc() {
+        String s = ndc.get().peekFirst();
+        return (s != null) ? s : "";
+    }
+
+    @Override
+    public void pushNdc(String message) {
+        ArrayDeque<String> stack = ndc.get();
+        stack.push(message);
+        while (stack.size() > ndcMaxDepth) {
+            stack.pollLast();
+        }
+    }
+
+    @Override
+    public void setNdcMaxDepth(int maxDepth) {
+        this.ndcMaxDepth = maxDepth;
+        ArrayDeque<String> stack = ndc.get();
+        while (stack.size() > maxDepth) {
+            stack.pollLast();
+        }
+    }
+
+    /**
+     * Closes the pipeline if it is owned by this provider.
+     */
+    @Override
+    public void close() {
+        if (owned) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // shutdown is in progress
+            }
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Publishes a record to the pipeline.
+     *
+     * @param logger the logger name
+     * @param level the record level
+     * @param message the record message
+     * @param error the record error or {@code null}
+     */
+    void publish(String logger, LogLevel level, Object message, Throwable error) {
+        long s = pipeline.claim();
+        if (s >= 0L) {
+            try {
+                LogRecord record = pipeline.get(s);
+                record.timestamp = System.currentTimeMillis();
+                record.level = level;
+                record.logger = logger;
+                record.thread = Thread.currentThread().getName();
+                context(record.message);
+                if (message instanceof CharSequence) {
+                    record.message.append((CharSequence) message);
+                } else {
+                    record.message.append(message);
+                }
+                record.error = error;
+            } finally {
+                pipeline.publish(s);
+            }
+        }
+    }
+
+    private void context(StringBuilder out) {
+        for (Iterator<String> i = ndc.get().descendingIterator(); i.hasNext(); ) {
+            out.append(i.next()).append(' ');
+        }
+        Map<String, Object> map = mdc.get();
+        if (!map.isEmpty()) {
+            String separator = "{";
+            for (Map.Entry<String, Object> e : map.entrySet()) {
+                out.append(separator).append(e.getKey()).append('=').append(e.getValue());
+                separator = ", ";
+            }
+            out.append("} ");
+        }
+    }
+
+    private LogLevel resolve(String name) {
+        String category = name;
+        while (true) {
+            LogLevel level = levels.get(category);
+            if (level != null) {
+                return level;
+            } else if (category.isEmpty()) {
+                return LogLevel.INFO;
+            }
+            int i = category.lastIndexOf('.');
+            category = (i > 0) ? category.substring(0, i) : "";
+        }
+    }
+
+    private static LogLevel level(String name) {
+        LogLevel level = LogLevel.of(name);
+        if (level == null) {
+            throw new IllegalArgumentException(String.format("Unknown log level: %s", name));
+        }
+        return level;
+    }
+}
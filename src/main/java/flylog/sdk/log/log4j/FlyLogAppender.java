@@ -0,0 +1,553 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.log4j;
+
+import flylog.sdk.log.LogLevel;
+import flylog.sdk.log.LogOptions;
+import flylog.sdk.log.LogPipeline;
+import flylog.sdk.log.LogRecord;
+import flylog.sdk.log.LogRenderer;
+import flylog.sdk.log.LogSegment;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageType;
+import flylog.sdk.storage.codec.DeflateCodec;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.MutableLogEvent;
+import org.apache.logging.log4j.plugins.Configurable;
+import org.apache.logging.log4j.plugins.Plugin;
+import org.apache.logging.log4j.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.plugins.PluginFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Garbage-free Log4j appender which ships log events to object storage through a {@link LogPipeline log pipeline}.
+ * <p>Every slot of the ring buffer of the pipeline owns a reusable mutable event, the logging thread copies the event into it
+ * and publishes the slot. The pipeline thread encodes the copy with the layout of the appender straight into the direct buffer
+ * of the current segment, so logging allocates no objects per event in the steady state when Log4j itself runs garbage-free.
+ * <p>The caller location is resolved on the logging thread only if the layout requires it or {@code includeLocation} is set.
+ * <p>Example configuration:
+ * <pre>{@code
+ * <FlyLog name="FLYLOG" type="s3" endpoint="https://s3.eu-west-1.amazonaws.com" bucket="logs" accessKey="..." secretKey="...">
+ *     <PatternLayout pattern="%d{ISO8601} %-5level [%thread] %logger - %msg%n"/>
+ * </FlyLog>
+ * }</pre>
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+@Configurable(elementType = Appender.ELEMENT_TYPE, printObject = true)
+@Plugin(FlyLogAppender.PLUGIN_NAME)
+public class FlyLogAppender extends AbstractAppender {
+    /**
+     * Plugin name of the appender.
+     */
+    public static final String PLUGIN_NAME = "FlyLog";
+
+    /**
+     * Builder of the appender.
+     *
+     * @param <B> the builder type
+     */
+    public static class Builder<B extends Builder<B>> extends AbstractAppender.Builder<B>
+                                                     implements org.apache.logging.log4j.plugins.util.Builder<FlyLogAppender> {
+        @PluginBuilderAttribute
+        private String type = StorageType.FS.id;
+
+        @PluginBuilderAttribute
+        private String endpoint;
+
+        @PluginBuilderAttribute
+        private String bucket;
+
+        @PluginBuilderAttribute(sensitive = true)
+        private String accessKey;
+
+        @PluginBuilderAttribute(sensitive = true)
+        private String secretKey;
+
+        @PluginBuilderAttribute
+        private String prefix;
+
+        @PluginBuilderAttribute
+        private String source;
+
+        @PluginBuilderAttribute
+        private int bufferSize = LogOptions.DEFAULT_BUFFER_SIZE;
+
+        @PluginBuilderAttribute
+        private int segmentSize = LogOptions.DEFAULT_SEGMENT_SIZE;
+
+        @PluginBuilderAttribute
+        private int blockSize = LogOptions.DEFAULT_BLOCK_SIZE;
+
+        @PluginBuilderAttribute
+        private String codec = DeflateCodec.NAME;
+
+        @PluginBuilderAttribute
+        private long flushInterval = LogOptions.DEFAULT_FLUSH_INTERVAL;
+
+        @PluginBuilderAttribute
+        private int uploadConcurrency = LogOptions.DEFAULT_UPLOAD_CONCURRENCY;
+
+        @PluginBuilderAttribute
+        private long stopTimeout = LogOptions.DEFAULT_STOP_TIMEOUT;
+
+        @PluginBuilderAttribute
+        private boolean neverBlock = false;
+
+        @PluginBuilderAttribute
+        private boolean tokenFilters = true;
+
+        @PluginBuilderAttribute
+        private boolean includeLocation = false;
+
+        private Storage storage;
+
+        /**
+         * Sets the identifier of the storage type.
+         *
+         * @param type the identifier of the storage type
+         *
+         * @return this builder
+         */
+        public B setType(String type) {
+            this.type = type;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the storage endpoint URL.
+         *
+         * @param endpoint the storage endpoint URL
+         *
+         * @return this builder
+         */
+        public B setEndpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the storage bucket name.
+         *
+         * @param bucket the storage bucket name
+         *
+         * @return this builder
+         */
+        public B setBucket(String bucket) {
+            this.bucket = bucket;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the storage access key.
+         *
+         * @param accessKey the storage access key
+         *
+         * @return this builder
+         */
+        public B setAccessKey(String accessKey) {
+            this.accessKey = accessKey;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the storage secret key.
+         *
+         * @param secretKey the storage secret key
+         *
+         * @return this builder
+         */
+        public B setSecretKey(String secretKey) {
+            this.secretKey = secretKey;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the key prefix of segment objects.
+         *
+         * @param prefix the key prefix of segment objects
+         *
+         * @return this builder
+         */
+        public B setPrefix(String prefix) {
+            this.prefix = prefix;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the source name which distinguishes segments of different processes.
+         *
+         * @param source the source name
+         *
+         * @return this builder
+         */
+        public B setSource(String source) {
+            this.source = source;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the number of slots of the ring buffer.
+         *
+         * @param bufferSize the number of slots of the ring buffer
+         *
+         * @return this builder
+         */
+        public B setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the size of a segment in bytes after which it is sealed.
+         *
+         * @param segmentSize the size of a segment in bytes
+         *
+         * @return this builder
+         */
+        public B setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the size of an uncompressed block of a segment in bytes after which it is compressed.
+         *
+         * @param blockSize the size of an uncompressed block in bytes
+         *
+         * @return this builder
+         */
+        public B setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the codec name of segment blocks.
+         *
+         * @param codec the codec name of segment blocks
+         *
+         * @return this builder
+         */
+        public B setCodec(String codec) {
+            this.codec = codec;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the maximum age of a segment before it is sealed in milliseconds.
+         *
+         * @param flushInterval the maximum age of a segment in milliseconds
+         *
+         * @return this builder
+         */
+        public B setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the maximum number of concurrently uploaded segments.
+         *
+         * @param uploadConcurrency the maximum number of concurrently uploaded segments
+         *
+         * @return this builder
+         */
+        public B setUploadConcurrency(int uploadConcurrency) {
+            this.uploadConcurrency = uploadConcurrency;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the maximum time to wait for pending events and segments on stop in milliseconds.
+         *
+         * @param stopTimeout the maximum time to wait on stop in milliseconds
+         *
+         * @return this builder
+         */
+        public B setStopTimeout(long stopTimeout) {
+            this.stopTimeout = stopTimeout;
+            return asBuilder();
+        }
+
+        /**
+         * Sets whether events are dropped when the ring buffer is full instead of waiting for free slots.
+         *
+         * @param neverBlock {@code true} if events are dropped when the ring buffer is full, {@code false} otherwise
+         *
+         * @return this builder
+         */
+        public B setNeverBlock(boolean neverBlock) {
+            this.neverBlock = neverBlock;
+            return asBuilder();
+        }
+
+        /**
+         * Sets whether token filters of segment blocks are written.
+         *
+         * @param tokenFilters {@code true} if token filters are written, {@code false} otherwise
+         *
+         * @return this builder
+         */
+        public B setTokenFilters(boolean tokenFilters) {
+            this.tokenFilters = tokenFilters;
+            return asBuilder();
+        }
+
+        /**
+         * Sets whether the caller location is resolved on the logging thread even if the layout does not require it.
+         *
+         * @param includeLocation {@code true} if the caller location is always resolved, {@code false} otherwise
+         *
+         * @return this builder
+         */
+        public B setIncludeLocation(boolean includeLocation) {
+            this.includeLocation = includeLocation;
+            return asBuilder();
+        }
+
+        /**
+         * Sets the object storage of segments, which overrides the storage attributes.
+         *
+         * @param storage the object storage of segments
+         *
+         * @return this builder
+         */
+        public B setStorage(Storage storage) {
+            this.storage = storage;
+            return asBuilder();
+        }
+
+        /**
+         * Builds the appender.
+         *
+         * @return appender
+         */
+        @Override
+        public FlyLogAppender build() {
+            LogOptions options = new LogOptions();
+            options.setType(type);
+            options.setEndpoint(endpoint);
+            options.setBucket(bucket);
+            options.setAccessKey(accessKey);
+            options.setSecretKey(secretKey);
+            if (prefix != null) {
+                options.setPrefix(prefix);
+            }
+            if (source != null) {
+                options.setSource(source);
+            }
+            options.setBufferSize(bufferSize);
+            options.setSegmentSize(segmentSize);
+            options.setBlockSize(blockSize);
+            options.setCodec(codec);
+            options.setFlushInterval(flushInterval);
+            options.setUploadConcurrency(uploadConcurrency);
+            options.setStopTimeout(stopTimeout);
+            options.setNeverBlock(neverBlock);
+            options.setTokenFilters(tokenFilters);
+            return new FlyLogAppender(getName(), getFilter(), getOrCreateLayout(), isIgnoreExceptions(), getPropertyArray(), storage, options,
+                                      includeLocation);
+        }
+    }
+
+    private final LogOptions options;
+    private final Storage storage;
+    private final boolean includeLocation;
+    private final Renderer renderer = new Renderer();
+    private volatile LogPipeline pipeline;
+
+    /**
+     * Constructs an appender with the specified parameters.
+     *
+     * @param name the appender name
+     * @param filter the filter of events or {@code null}
+     * @param layout the layout of events
+     * @param ignoreExceptions {@code true} if exceptions are logged and ignored, {@code false} if they are propagated
+     * @param properties the appender properties or {@code null}
+     * @param storage the object storage of segments, which overrides the storage options, or {@code null}
+     * @param options the pipeline options
+     * @param includeLocation {@code true} if the caller location is resolved even if the layout does not require it
+     */
+    protected FlyLogAppender(String name, Filter filter, Layout layout, boolean ignoreExceptions, Property[] properties,
+                             Storage storage, LogOptions options, boolean includeLocation) {
+        super(name, filter, layout, ignoreExceptions, (properties != null) ? properties : Property.EMPTY_ARRAY);
+        this.options = options;
+        this.storage = storage;
+        this.includeLocation = includeLocation;
+    }
+
+    /**
+     * Creates a builder of the appender.
+     *
+     * @param <B> the builder type
+     *
+     * @return builder of the appender
+     */
+    @PluginFactory
+    public static <B extends Builder<B>> B newBuilder() {
+        return new Builder<B>().asBuilder();
+    }
+
+    /**
+     * Gets the pipeline options.
+     *
+     * @return pipeline options
+     */
+    public LogOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Gets the number of events dropped because the ring buffer was full.
+     *
+     * @return number of dropped events
+     */
+    public long getDropped() {
+        LogPipeline p = pipeline;
+        return (p != null) ? p.getDropped() : 0L;
+    }
+
+    /**
+     * Starts the pipeline of this appender.
+     */
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        try {
+            Storage s = (storage != null) ? storage : options.createStorage();
+            pipeline = new LogPipeline(s, options, renderer, LOGGER::error);
+            pipeline.start();
+        } catch (RuntimeException e) {
+            error(String.format("Log pipeline of the appender '%s' could not be started", getName()), e);
+            return;
+        }
+        super.start();
+    }
+
+    /**
+     * Stops accepting events and ships all pending events of this appender.
+     *
+     * @param timeout the maximum time to wait
+     * @param timeUnit the unit of the timeout
+     *
+     * @return {@code true} if the appender is stopped
+     */
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        boolean stopped = super.stop(timeout, timeUnit, false);
+        LogPipeline p = pipeline;
+        if (p != null) {
+            p.close();
+        }
+        setStopped();
+        return stopped;
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        LogPipeline p = pipeline;
+        long s = p.claim();
+        if (s >= 0L) {
+            try {
+                LogRecord record = p.get(s);
+                MutableLogEvent copy = (MutableLogEvent) record.context;
+                if (copy == null) {
+                    copy = new MutableLogEvent();
+                    record.context = copy;
+                }
+                copy(event, copy);
+                record.timestamp = event.getTimeMillis();
+                record.event = copy;
+            } finally {
+                p.publish(s);
+            }
+        }
+    }
+
+    private void copy(LogEvent event, MutableLogEvent copy) {
+        boolean location = includeLocation || getLayout().requiresLocation();
+        copy.setLoggerFqcn(event.getLoggerFqcn());
+        copy.setMarker(event.getMarker());
+        copy.setLevel(event.getLevel());
+        copy.setLoggerName(event.getLoggerName());
+        copy.setThrown(event.getThrown());
+        copy.setInstant(event.getInstant());
+        copy.getContextData().putAll(event.getContextData());
+        copy.setContextStack(event.getContextStack());
+        copy.setThreadId(event.getThreadId());
+        copy.setThreadName(event.getThreadName());
+        copy.setThreadPriority(event.getThreadPriority());
+        copy.setEndOfBatch(event.isEndOfBatch());
+        copy.setIncludeLocation(location);
+        copy.setSource(location ? event.getSource() : null);
+        copy.setNanoTime(event.getNanoTime());
+        copy.setMessage(event.getMessage());
+    }
+
+    private static LogLevel level(Level level) {
+        int l = level.intLevel();
+        if (l <= Level.ERROR.intLevel()) {
+            return LogLevel.ERROR;
+        } else if (l <= Level.WARN.intLevel()) {
+            return LogLevel.WARN;
+        } else if (l <= Level.INFO.intLevel()) {
+            return LogLevel.INFO;
+        } else if (l <= Level.DEBUG.intLevel()) {
+            return LogLevel.DEBUG;
+        } else {
+            return LogLevel.TRACE;
+        }
+    }
+
+    private final class Renderer implements LogRenderer {
+        private final SegmentDestination destination = new SegmentDestination();
+
+        @Override
+        public void render(LogRecord record) {
+            MutableLogEvent event = (MutableLogEvent) record.event;
+            record.timestamp = event.getTimeMillis();
+            record.level = level(event.getLevel());
+            record.logger = event.getLoggerName();
+            record.thread = event.getThreadName();
+            record.error = event.getThrown();
+        }
+
+        @Override
+        public boolean encode(LogRecord record, LogSegment segment) {
+            MutableLogEvent event = (MutableLogEvent) record.event;
+            try {
+                getLayout().encode(event, destination.of(segment));
+            } finally {
+                event.clear();
+            }
+            return true;
+        }
+    }
+}
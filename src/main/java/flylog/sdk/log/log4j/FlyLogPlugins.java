@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.log4j;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.plugins.model.PluginEntry;
+import org.apache.logging.log4j.plugins.model.PluginService;
+
+/**
+ * Plugin service which registers the FlyLog plugins in Log4j.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class FlyLogPlugins extends PluginService {
+    private static final PluginEntry[] ENTRIES = {
+            PluginEntry.builder()
+                       .setKey("flylog")
+                       .setClassName(FlyLogAppender.class.getName())
+                       .setName(FlyLogAppender.PLUGIN_NAME)
+                       .setNamespace("Core")
+                       .setElementType(Appender.ELEMENT_TYPE)
+                       .setPrintable(true)
+                       .get()
+    };
+
+    @Override
+    public PluginEntry[] getEntries() {
+        return ENTRIES;
+    }
+}
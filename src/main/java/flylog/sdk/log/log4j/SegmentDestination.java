@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.log4j;
+
+import flylog.sdk.log.LogSegment;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable byte buffer destination which lets a Log4j layout encode events straight into the direct buffer of a log segment.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class SegmentDestination implements ByteBufferDestination {
+    private static final int MIN_GROWTH = 8192;
+
+    private LogSegment segment;
+
+    /**
+     * Sets the current log segment.
+     *
+     * @param segment the log segment
+     *
+     * @return this destination
+     */
+    SegmentDestination of(LogSegment segment) {
+        this.segment = segment;
+        return this;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return segment.getBuffer();
+    }
+
+    @Override
+    public ByteBuffer drain(ByteBuffer buf) {
+        return segment.grow(Math.max(MIN_GROWTH, buf.capacity() >> 1));
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer data) {
+        segment.write(data);
+    }
+
+    @Override
+    public void writeBytes(byte[] data, int offset, int length) {
+        segment.write(data, offset, length);
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.logback;
+
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import ch.qos.logback.core.spi.DeferredProcessingAware;
+import flylog.sdk.log.LogOptions;
+import flylog.sdk.log.LogPipeline;
+import flylog.sdk.log.LogRecord;
+import flylog.sdk.storage.Storage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Logback appender which ships log events to object storage through a {@link LogPipeline log pipeline}.
+ * <p>The logging thread only prepares the event for deferred processing and publishes it to the ring buffer of the pipeline,
+ * events are formatted with the layout or the encoder of the appender and uploaded in segments by the pipeline threads.
+ * <p>Example configuration:
+ * <pre>{@code
+ * <appender name="FLYLOG" class="flylog.sdk.log.logback.FlyLogAppender">
+ *     <type>s3</type>
+ *     <endpoint>https://s3.eu-west-1.amazonaws.com</endpoint>
+ *     <bucket>logs</bucket>
+ *     <accessKey>...</accessKey>
+ *     <secretKey>...</secretKey>
+ *     <encoder>
+ *         <pattern>%d{ISO8601} %-5level [%thread] %logger - %msg%n</pattern>
+ *     </encoder>
+ * </appender>
+ * }</pre>
+ *
+ * @param <E> the event type
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class FlyLogAppender<E> extends UnsynchronizedAppenderBase<E> {
+    private final LogOptions options = new LogOptions();
+    private Layout<E> layout;
+    private Encoder<E> encoder;
+    private Storage storage;
+    private volatile LogPipeline pipeline;
+
+    /**
+     * Gets the pipeline options.
+     *
+     * @return pipeline options
+     */
+    public LogOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Gets the layout of events.
+     *
+     * @return layout of events
+     */
+    public Layout<E> getLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the layout of events.
+     *
+     * @param layout the layout of events
+     */
+    public void setLayout(Layout<E> layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Gets the encoder of events.
+     *
+     * @return encoder of events
+     */
+    public Encoder<E> getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * Sets the encoder of events, the layout of a layout wrapping encoder is used directly.
+     *
+     * @param encoder the encoder of events
+     */
+    public void setEncoder(Encoder<E> encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Gets the object storage of segments, which overrides the storage options if it is set.
+     *
+     * @return object storage of segments or {@code null}
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Sets the object storage of segments, which overrides the storage options.
+     *
+     * @param storage the object storage of segments
+     */
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Sets the identifier of the storage type.
+     *
+     * @param type the identifier of the storage type
+     */
+    public void setType(String type) {
+        options.setType(type);
+    }
+
+    /**
+     * Sets the storage endpoint URL.
+     *
+     * @param endpoint the storage endpoint URL
+     */
+    public void setEndpoint(String endpoint) {
+        options.setEndpoint(endpoint);
+    }
+
+    /**
+     * Sets the storage bucket name.
+     *
+     * @param bucket the storage bucket name
+     */
+    public void setBucket(String bucket) {
+        options.setBucket(bucket);
+    }
+
+    /**
+     * Sets the storage access key.
+     *
+     * @param accessKey the storage access key
+     */
+    public void setAccessKey(String accessKey) {
+        options.setAccessKey(accessKey);
+    }
+
+    /**
+     * Sets the storage secret key.
+     *
+     * @param secretKey the storage secret key
+     */
+    public void setSecretKey(String secretKey) {
+        options.setSecretKey(secretKey);
+    }
+
+    /**
+     * Sets the key prefix of segment objects.
+     *
+     * @param prefix the key prefix of segment objects
+     */
+    public void setPrefix(String prefix) {
+        options.setPrefix(prefix);
+    }
+
+    /**
+     * Sets the source name which distinguishes segments of different processes.
+     *
+     * @param source the source name
+     */
+    public void setSource(String source) {
+        options.setSource(source);
+    }
+
+    /**
+     * Sets the number of slots of the ring buffer.
+     *
+     * @param bufferSize the number of slots of the ring buffer
+     */
+    public void setBufferSize(int bufferSize) {
+        options.setBufferSize(bufferSize);
+    }
+
+    /**
+     * Sets the size of a segment in bytes after which it is sealed.
+     *
+     * @param segmentSize the size of a segment in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        options.setSegmentSize(segmentSize);
+    }
+
+    /**
+     * Sets the size of an uncompressed block of a segment in bytes after which it is compressed.
+     *
+     * @param blockSize the size of an uncompressed block in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        options.setBlockSize(blockSize);
+    }
+
+    /**
+     * Sets the codec name of segment blocks.
+     *
+     * @param codec the codec name of segment blocks
+     */
+    public void setCodec(String codec) {
+        options.setCodec(codec);
+    }
+
+    /**
+     * Sets the maximum age of a segment before it is sealed in milliseconds.
+     *
+     * @param flushInterval the maximum age of a segment in milliseconds
+     */
+    public void setFlushInterval(long flushInterval) {
+        options.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the maximum number of concurrently uploaded segments.
+     *
+     * @param uploadConcurrency the maximum number of concurrently uploaded segments
+     */
+    public void setUploadConcurrency(int uploadConcurrency) {
+        options.setUploadConcurrency(uploadConcurrency);
+    }
+
+    /**
+     * Sets the maximum time to wait for pending events and segments on stop in milliseconds.
+     *
+     * @param stopTimeout the maximum time to wait on stop in milliseconds
+     */
+    public void setStopTimeout(long stopTimeout) {
+        options.setStopTimeout(stopTimeout);
+    }
+
+    /**
+     * Sets whether events are dropped when the ring buffer is full instead of waiting for free slots.
+     *
+     * @param neverBlock {@code true} if events are dropped when the ring buffer is full, {@code false} otherwise
+     */
+    public void setNeverBlock(boolean neverBlock) {
+        options.setNeverBlock(neverBlock);
+    }
+
+    /**
+     * Sets whether token filters of segment blocks are written.
+     *
+     * @param tokenFilters {@code true} if token filters are written, {@code false} otherwise
+     */
+    public void setTokenFilters(boolean tokenFilters) {
+        options.setTokenFilters(tokenFilters);
+    }
+
+    /**
+     * Gets the number of events dropped because the ring buffer was full.
+     *
+     * @return number of dropped events
+     */
+    public long getDropped() {
+        LogPipeline p = pipeline;
+        return (p != null) ? p.getDropped() : 0L;
+    }
+
+    /**
+     * Starts the pipeline of this appender.
+     */
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if ((layout == null) && (encoder instanceof LayoutWrappingEncoder)) {
+            layout = ((LayoutWrappingEncoder<E>) encoder).getLayout();
+        }
+        if ((layout == null) && (encoder == null)) {
+            addError(String.format("No layout or encoder is set for the appender '%s'", name));
+            return;
+        }
+        try {
+            Storage s = (storage != null) ? storage : options.createStorage();
+            pipeline = new LogPipeline(s, options, this::render, this::addError);
+            pipeline.start();
+        } catch (RuntimeException e) {
+            addError(String.format("Log pipeline of the appender '%s' could not be started", name), e);
+            return;
+        }
+        super.start();
+    }
+
+    /**
+     * Stops accepting events and ships all pending events of this appender.
+     * <p>A reconfigured appender is stopped the same way, so no events are lost on reconfiguration.
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        LogPipeline p = pipeline;
+        if (p != null) {
+            p.close();
+        }
+    }
+
+    @Override
+    protected void append(E event) {
+        LogPipeline p = pipeline;
+        if (event instanceof DeferredProcessingAware) {
+            ((DeferredProcessingAware) event).prepareForDeferredProcessing();
+        }
+        long s = p.claim();
+        if (s >= 0L) {
+            try {
+                LogRecord record = p.get(s);
+                record.timestamp = System.currentTimeMillis();
+                record.event = event;
+            } finally {
+                p.publish(s);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void render(LogRecord record) {
+        E event = (E) record.event;
+        LogbackEvents.fill(record);
+        if (layout != null) {
+            record.message.append(layout.doLayout(event));
+        } else {
+            record.message.append(new String(encoder.encode(event), StandardCharsets.UTF_8));
+        }
+        record.formatted = true;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.log.logback;
+
+import flylog.sdk.log.LogLevel;
+import flylog.sdk.log.LogRecord;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Accessor of the common properties of Logback events.
+ * <p>Only {@code logback-core} is required by the SDK, so the properties of {@code logback-classic} events
+ * such as {@code getTimeStamp} and {@code getLevel} are looked up once per event class and are skipped if they are absent.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class LogbackEvents {
+    private static final ClassValue<LogbackEvents> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected LogbackEvents computeValue(Class<?> type) {
+            return new LogbackEvents(type);
+        }
+    };
+
+    private final MethodHandle timestamp;
+    private final MethodHandle level;
+    private final MethodHandle logger;
+    private final MethodHandle thread;
+
+    private LogbackEvents(Class<?> type) {
+        this.timestamp = find(type, "getTimeStamp", long.class);
+        this.level = find(type, "getLevel", Object.class);
+        this.logger = find(type, "getLoggerName", String.class);
+        this.thread = find(type, "getThreadName", String.class);
+    }
+
+    /**
+     * Fills the time, the level, the logger name and the thread name of the specified record from its event.
+     *
+     * @param record the log record with an event
+     */
+    static void fill(LogRecord record) {
+        ACCESSORS.get(record.event.getClass()).fillRecord(record);
+    }
+
+    private void fillRecord(LogRecord record) {
+        try {
+            Object event = record.event;
+            if (timestamp != null) {
+                record.timestamp = (long) timestamp.invoke(event);
+            }
+            if (level != null) {
+                Object l = level.invoke(event);
+                record.level = (l != null) ? LogLevel.of(l.toString()) : null;
+            }
+            if (logger != null) {
+                record.logger = (String) logger.invoke(event);
+            }
+            if (thread != null) {
+                record.thread = (String) thread.invoke(event);
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle find(Class<?> type, String name, Class<?> result) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(type.getMethod(name));
+            if (!result.isAssignableFrom(handle.type().returnType())) {
+                return null;
+            }
+            return handle.asType(MethodType.methodType(result, Object.class));
+        } catch (ReflectiveOperationException | SecurityException e) {
+            return null;
+        }
+    }
+}
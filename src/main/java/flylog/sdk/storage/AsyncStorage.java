@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous object storage abstraction layer.
+ * <p>Provides non-blocking variants of the {@link Storage} operations.
+ * <p>Futures of failed operations are completed exceptionally with
+ * {@link ObjectStorageException} or {@link ConnectionStorageException}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public interface AsyncStorage {
+    /**
+     * Gets the asynchronous view of the specified storage.
+     * <p>Returns the storage itself if it implements asynchronous operations natively,
+     * otherwise wraps it with {@link ExecutorAsyncStorage} on virtual threads.
+     *
+     * @param storage the storage
+     *
+     * @return asynchronous storage
+     */
+    public static AsyncStorage of(Storage storage) {
+        if (storage instanceof AsyncStorage) {
+            return (AsyncStorage) storage;
+        } else {
+            return new ExecutorAsyncStorage(storage);
+        }
+    }
+
+    /**
+     * Iterates over the storage objects with the specified prefix asynchronously.
+     * <p>The future is completed when the first page of objects is available.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the number of storage object keys in one request
+     *
+     * @return future of the iterable with storage objects
+     */
+    public CompletableFuture<Iterable<StorageObject>> listAsync(String prefix, int maxKeys);
+
+    /**
+     * Gets the data of the specified object as a stream asynchronously.
+     * <p>The future is completed when the data is available for reading.
+     *
+     * @param key the object key
+     *
+     * @return future of the data input stream
+     */
+    public CompletableFuture<InputStream> getDataAsync(String key);
+
+    /**
+     * Puts the data to the specified object asynchronously.
+     * <p>The buffer must not be modified until the future is completed, its position is not changed.
+     *
+     * @param key the object key
+     * @param data the data buffer
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> putDataAsync(String key, ByteBuffer data);
+
+    /**
+     * Gets the metadata of the specified object as a string map asynchronously.
+     *
+     * @param key the object key
+     *
+     * @return future of the metadata string map
+     */
+    public CompletableFuture<Map<String, String>> getMetaAsync(String key);
+
+    /**
+     * Puts the metadata to the specified object as a string map asynchronously.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> putMetaAsync(String key, Map<String, String> meta);
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Storage which forwards all operations to another storage.
+ * <p>Decorators extend it and override the operations they change, batch operations are forwarded as well,
+ * so the optimized batch operations of the underlying storage are kept.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class DelegatingStorage implements Storage {
+    /**
+     * Underlying storage.
+     */
+    protected final Storage storage;
+
+    /**
+     * Constructs a storage which forwards all operations to the specified storage.
+     *
+     * @param storage the underlying storage
+     */
+    public DelegatingStorage(Storage storage) {
+        if (storage == null) {
+            throw new IllegalArgumentException("Storage is null");
+        }
+        this.storage = storage;
+    }
+
+    /**
+     * Gets the underlying storage.
+     *
+     * @return underlying storage
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public StorageType getType() {
+        return storage.getType();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return storage.getEndpoint();
+    }
+
+    @Override
+    public String getBucket() {
+        return storage.getBucket();
+    }
+
+    @Override
+    public String getAccessKey() {
+        return storage.getAccessKey();
+    }
+
+    @Override
+    public String getSecretKey() {
+        return storage.getSecretKey();
+    }
+
+    @Override
+    public String getInfo() {
+        return storage.getInfo();
+    }
+
+    @Override
+    public String getInfo(String prefix) {
+        return storage.getInfo(prefix);
+    }
+
+    @Override
+    public StorageObject get(String key) {
+        return storage.get(key);
+    }
+
+    @Override
+    public StorageObject find(String key) {
+        return storage.find(key);
+    }
+
+    @Override
+    public int getConcurrency() {
+        return storage.getConcurrency();
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys) {
+        return storage.findAll(keys);
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        return storage.findAll(keys, concurrency);
+    }
+
+    @Override
+    public Iterable<StorageObject> list(String prefix, int maxKeys) {
+        return storage.list(prefix, maxKeys);
+    }
+
+    @Override
+    public InputStream getData(String key) {
+        return storage.getData(key);
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        return storage.getData(key, offset, length);
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length, String etag) {
+        return storage.getData(key, offset, length, etag);
+    }
+
+    @Override
+    public OutputStream putData(String key) {
+        return storage.putData(key);
+    }
+
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        return storage.putData(key, meta);
+    }
+
+    @Override
+    public Map<String, String> getMeta(String key) {
+        return storage.getMeta(key);
+    }
+
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        storage.putMeta(key, meta);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys) {
+        return storage.getMetaAll(keys);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        return storage.getMetaAll(keys, concurrency);
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas) {
+        storage.putMetaAll(metas);
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        storage.putMetaAll(metas, concurrency);
+    }
+
+    @Override
+    public void delete(String key) {
+        storage.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        storage.deleteAll(keys);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys, int concurrency) {
+        storage.deleteAll(keys, concurrency);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage;
+
+import flylog.sdk.utility.concurrent.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Asynchronous storage which runs blocking operations of a {@link Storage} on an executor.
+ * <p>By default every operation runs in its own virtual thread, so blocking I/O does not occupy platform threads.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class ExecutorAsyncStorage implements AsyncStorage {
+    /**
+     * Wrapped storage.
+     */
+    protected final Storage storage;
+
+    /**
+     * Executor of the storage operations.
+     */
+    protected final Executor executor;
+
+    /**
+     * Constructs an asynchronous storage on virtual threads.
+     *
+     * @param storage the wrapped storage
+     */
+    public ExecutorAsyncStorage(Storage storage) {
+        this(storage, VirtualThreads.executor("flylog-storage-"));
+    }
+
+    /**
+     * Constructs an asynchronous storage on the specified executor.
+     *
+     * @param storage the wrapped storage
+     * @param executor the executor of the storage operations
+     */
+    public ExecutorAsyncStorage(Storage storage, Executor executor) {
+        this.storage = storage;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the wrapped storage.
+     *
+     * @return wrapped storage
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public CompletableFuture<Iterable<StorageObject>> listAsync(String prefix, int maxKeys) {
+        return CompletableFuture.supplyAsync(() -> {
+            Iterable<StorageObject> sos = storage.list(prefix, maxKeys);
+            Iterator<StorageObject> first = sos.iterator();
+            first.hasNext();
+            AtomicBoolean started = new AtomicBoolean(false);
+            return () -> started.compareAndSet(false, true) ? first : sos.iterator();
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> getDataAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> storage.getData(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putDataAsync(String key, ByteBuffer data) {
+        return CompletableFuture.runAsync(() -> {
+            OutputStream out = storage.putData(key);
+            try {
+                WritableByteChannel channel = Channels.newChannel(out);
+                ByteBuffer buffer = data.duplicate();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException | RuntimeException e) {
+                StorageOutputStream.abort(out);
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                }
+                throw new ObjectStorageException(String.format("Object '%s' data could not be put", storage.getInfo(key)), e);
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new ObjectStorageException(String.format("Object '%s' data could not be put", storage.getInfo(key)), e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getMetaAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> storage.getMeta(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putMetaAsync(String key, Map<String, String> meta) {
+        return CompletableFuture.runAsync(() -> storage.putMeta(key, meta), executor);
+    }
+}
@@ -16,9 +16,16 @@
 
 package flylog.sdk.storage;
 
+import flylog.sdk.utility.concurrent.Parallel;
+import flylog.sdk.utility.io.BoundedInputStream;
+
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,6 +36,11 @@ import java.util.Map;
  * @since 1.0
  */
 public interface Storage {
+    /**
+     * Default maximum number of concurrent requests of batch operations.
+     */
+    public static final int DEFAULT_CONCURRENCY = 64;
+
     /**
      * Gets the storage type.
      *
@@ -112,7 +124,57 @@ public interface Storage {
      */
     public default StorageObject find(String key) {
         Iterator<StorageObject> sos = list(key, 1).iterator();
-        return sos.hasNext() ? sos.next() : null;
+        if (sos.hasNext()) {
+            StorageObject so = sos.next();
+            return so.key.equals(key) ? so : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the maximum number of concurrent requests of batch operations.
+     *
+     * @return maximum number of concurrent requests
+     */
+    public default int getConcurrency() {
+        return DEFAULT_CONCURRENCY;
+    }
+
+    /**
+     * Finds the specified storage objects.
+     *
+     * @param keys the object keys
+     *
+     * @return map of the existing storage objects by keys in the order of the keys
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default Map<String, StorageObject> findAll(Collection<String> keys) {
+        return findAll(keys, getConcurrency());
+    }
+
+    /**
+     * Finds the specified storage objects with the specified number of concurrent requests.
+     * <p>The default implementation calls {@link #find(String) find} for every key in virtual threads.
+     *
+     * @param keys the object keys
+     * @param concurrency the maximum number of concurrent requests
+     *
+     * @return map of the existing storage objects by keys in the order of the keys
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        List<String> ks = List.copyOf(keys);
+        List<StorageObject> sos = Parallel.map(ks, concurrency, this::find);
+        Map<String, StorageObject> result = new LinkedHashMap<>();
+        for (int i = 0; i < ks.size(); i++) {
+            if (sos.get(i) != null) {
+                result.put(ks.get(i), sos.get(i));
+            }
+        }
+        return result;
     }
 
     /**
@@ -139,6 +201,73 @@ public interface Storage {
      */
     public InputStream getData(String key);
 
+    /**
+     * Gets the specified range of the data of the specified object as a stream.
+     * <p>The stream is empty if the offset is beyond the end of the object data,
+     * and it is shorter than the requested length if the range exceeds the end of the object data.
+     * <p>The default implementation skips the data before the offset, backends override it with positional reads.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     *
+     * @return data input stream
+     *
+     * @throws IllegalArgumentException if the offset or the length is negative
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default InputStream getData(String key, long offset, long length) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        InputStream in = getData(key);
+        try {
+            long s = 0L;
+            while (s < offset) {
+                long n = in.skip(offset - s);
+                if (n <= 0L) {
+                    if (in.read() < 0) {
+                        break;
+                    }
+                    n = 1L;
+                }
+                s += n;
+            }
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ce) {
+                e.addSuppressed(ce);
+            }
+            throw new ConnectionStorageException(String.format("Object '%s' could not be read", getInfo(key)), e);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified version of the specified object as a stream.
+     * <p>The read fails if the object has another ETag, so reads of several ranges never mix the data of different versions.
+     * The default implementation checks the ETag before the data is read, backends override it with conditional reads.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     * @param etag the expected object ETag or {@code null} for any version
+     *
+     * @return data input stream
+     *
+     * @throws IllegalArgumentException if the offset or the length is negative
+     * @throws ObjectStorageException if the object does not exist or has another ETag
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default InputStream getData(String key, long offset, long length, String etag) {
+        if ((etag != null) && !etag.equals(get(key).etag)) {
+            throw new ObjectStorageException(String.format("Object '%s' is modified", getInfo(key)));
+        }
+        return getData(key, offset, length);
+    }
+
     /**
      * Put the data to the specified object as a stream.
      *
@@ -151,6 +280,58 @@ public interface Storage {
      */
     public OutputStream putData(String key);
 
+    /**
+     * Put the data with the specified metadata to the specified object as a stream.
+     * <p>Backends put the metadata with the data in one operation, so the object never exists without its metadata.
+     * The default implementation puts the metadata with {@link #putMeta(String, Map) putMeta} after the data is put.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default OutputStream putData(String key, Map<String, String> meta) {
+        OutputStream out = putData(key);
+        return new StorageOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    out.close();
+                    putMeta(key, meta);
+                }
+            }
+
+            @Override
+            public void abort() {
+                if (!closed) {
+                    closed = true;
+                    abort(out);
+                }
+            }
+        };
+    }
+
     /**
      * Gets the metadata of the specified object as a string map.
      *
@@ -173,4 +354,103 @@ public interface Storage {
      * @throws ConnectionStorageException if an error in connection occurs
      */
     public void putMeta(String key, Map<String, String> meta);
+
+    /**
+     * Gets the metadata of the specified objects as string maps.
+     *
+     * @param keys the object keys
+     *
+     * @return map of the metadata string maps by keys in the order of the keys
+     *
+     * @throws ObjectStorageException if any object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default Map<String, Map<String, String>> getMetaAll(Collection<String> keys) {
+        return getMetaAll(keys, getConcurrency());
+    }
+
+    /**
+     * Gets the metadata of the specified objects as string maps with the specified number of concurrent requests.
+     * <p>The default implementation calls {@link #getMeta(String) getMeta} for every key in virtual threads.
+     *
+     * @param keys the object keys
+     * @param concurrency the maximum number of concurrent requests
+     *
+     * @return map of the metadata string maps by keys in the order of the keys
+     *
+     * @throws ObjectStorageException if any object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        List<String> ks = List.copyOf(keys);
+        List<Map<String, String>> metas = Parallel.map(ks, concurrency, this::getMeta);
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        for (int i = 0; i < ks.size(); i++) {
+            result.put(ks.get(i), metas.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Puts the metadata to the specified objects as string maps.
+     *
+     * @param metas the map of the metadata by object keys
+     *
+     * @throws ObjectStorageException if any object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default void putMetaAll(Map<String, Map<String, String>> metas) {
+        putMetaAll(metas, getConcurrency());
+    }
+
+    /**
+     * Puts the metadata to the specified objects as string maps with the specified number of concurrent requests.
+     * <p>The default implementation calls {@link #putMeta(String, Map) putMeta} for every key in virtual threads.
+     *
+     * @param metas the map of the metadata by object keys
+     * @param concurrency the maximum number of concurrent requests
+     *
+     * @throws ObjectStorageException if any object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        Parallel.forEach(metas.entrySet(), concurrency, e -> putMeta(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Deletes the specified object.
+     * <p>Does nothing if the object does not exist.
+     *
+     * @param key the object key
+     *
+     * @throws ObjectStorageException if the object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public void delete(String key);
+
+    /**
+     * Deletes the specified objects.
+     *
+     * @param keys the object keys
+     *
+     * @throws ObjectStorageException if any object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default void deleteAll(Collection<String> keys) {
+        deleteAll(keys, getConcurrency());
+    }
+
+    /**
+     * Deletes the specified objects with the specified number of concurrent requests.
+     * <p>The default implementation calls {@link #delete(String) delete} for every key in virtual threads.
+     *
+     * @param keys the object keys
+     * @param concurrency the maximum number of concurrent requests
+     *
+     * @throws ObjectStorageException if any object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public default void deleteAll(Collection<String> keys, int concurrency) {
+        Parallel.forEach(keys, concurrency, this::delete);
+    }
 }
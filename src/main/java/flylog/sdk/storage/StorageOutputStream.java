@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream which puts the data of a storage object.
+ * <p>The object is replaced with the written data only when the stream is {@link #close() closed},
+ * a writer which fails in the middle of the data {@link #abort() aborts} the stream instead,
+ * so a truncated object never replaces the object.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public abstract class StorageOutputStream extends OutputStream {
+    /**
+     * Constructs a storage output stream.
+     */
+    protected StorageOutputStream() {
+    }
+
+    /**
+     * Discards the written data and closes this stream, the object is not replaced.
+     * <p>Aborting a closed stream has no effect, errors of the cleanup are not thrown.
+     */
+    public abstract void abort();
+
+    /**
+     * Aborts the specified stream after a failure of its writer.
+     * <p>A stream which is not a storage output stream can not discard its data, so it is closed,
+     * errors of the cleanup are not thrown.
+     *
+     * @param out the output stream
+     */
+    public static void abort(OutputStream out) {
+        if (out instanceof StorageOutputStream) {
+            ((StorageOutputStream) out).abort();
+        } else {
+            try {
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                // the writer has failed already
+            }
+        }
+    }
+}
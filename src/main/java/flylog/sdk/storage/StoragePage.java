@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage;
+
+import java.util.List;
+
+/**
+ * Page of storage objects returned by one listing request.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class StoragePage {
+    /**
+     * Storage objects of the page in the order of their keys.
+     */
+    public final List<StorageObject> objects;
+
+    /**
+     * Continuation token of the next page or {@code null} if this page is the last one.
+     */
+    public final String next;
+
+    /**
+     * Constructs a page with the specified parameters.
+     *
+     * @param objects the storage objects of the page
+     * @param next the continuation token of the next page or {@code null} if this page is the last one
+     */
+    public StoragePage(List<StorageObject> objects, String next) {
+        this.objects = objects;
+        this.next = next;
+    }
+}
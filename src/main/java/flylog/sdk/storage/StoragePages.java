@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lazy iterable over paginated storage listings.
+ * <p>Every iterator requests pages one by one with continuation tokens and prefetches the following pages
+ * while the current page is consumed, so iteration does not stall between pages.
+ * <p>An iterator holds at most the current page and {@code prefetch} requested pages in memory.
+ * An abandoned iterator does not hold any threads, its pending requests simply complete.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class StoragePages implements Iterable<StorageObject> {
+    /**
+     * Default number of prefetched pages.
+     */
+    public static final int DEFAULT_PREFETCH = 1;
+
+    /**
+     * Loader of storage pages.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * Requests the page with the specified continuation token.
+         *
+         * @param token the continuation token or {@code null} for the first page
+         *
+         * @return future of the page
+         */
+        public CompletableFuture<StoragePage> load(String token);
+    }
+
+    private final Loader loader;
+    private final int prefetch;
+    private final AtomicReference<CompletableFuture<StoragePage>> first = new AtomicReference<>();
+
+    /**
+     * Constructs a paginated iterable with the {@link #DEFAULT_PREFETCH default} number of prefetched pages.
+     *
+     * @param loader the page loader
+     */
+    public StoragePages(Loader loader) {
+        this(loader, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Constructs a paginated iterable with the specified number of prefetched pages.
+     *
+     * @param loader the page loader
+     * @param prefetch the number of pages requested ahead of the current page
+     */
+    public StoragePages(Loader loader, int prefetch) {
+        this.loader = loader;
+        this.prefetch = Math.max(0, prefetch);
+    }
+
+    /**
+     * Requests the first page and completes when it is available.
+     * <p>The first iterator of the returned iterable continues with the requested page.
+     *
+     * @return future of this iterable
+     */
+    public CompletableFuture<Iterable<StorageObject>> start() {
+        CompletableFuture<StoragePage> page = loader.load(null);
+        first.set(page);
+        return page.thenApply(p -> this);
+    }
+
+    @Override
+    public Iterator<StorageObject> iterator() {
+        CompletableFuture<StoragePage> page = first.getAndSet(null);
+        return new PageIterator((page != null) ? page : loader.load(null));
+    }
+
+    private final class PageIterator implements Iterator<StorageObject> {
+        private final Deque<CompletableFuture<StoragePage>> pages = new ArrayDeque<>();
+        private Iterator<StorageObject> current = null;
+        private String token = null;
+        private boolean last = false;
+
+        PageIterator(CompletableFuture<StoragePage> first) {
+            pages.add(first);
+            for (int i = 1; i < prefetch; i++) {
+                pages.add(pages.getLast().thenCompose(this::next));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((current == null) || !current.hasNext()) {
+                if (last) {
+                    return false;
+                }
+                CompletableFuture<StoragePage> future = pages.poll();
+                if (future == null) {
+                    future = loader.load(token);
+                }
+                if (prefetch > 0) {
+                    pages.add((pages.isEmpty() ? future : pages.getLast()).thenCompose(this::next));
+                }
+                StoragePage page = await(future);
+                if ((page == null) || (page.next == null)) {
+                    last = true;
+                    pages.clear();
+                } else {
+                    token = page.next;
+                }
+                current = (page != null) ? page.objects.iterator() : null;
+            }
+            return true;
+        }
+
+        @Override
+        public StorageObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private CompletableFuture<StoragePage> next(StoragePage page) {
+            if ((page == null) || (page.next == null)) {
+                return CompletableFuture.completedFuture(null);
+            } else {
+                return loader.load(page.next);
+            }
+        }
+
+        private StoragePage await(CompletableFuture<StoragePage> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new ConnectionStorageException("Storage page could not be listed", cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionStorageException("Storage page listing is interrupted", e);
+            }
+        }
+    }
+}
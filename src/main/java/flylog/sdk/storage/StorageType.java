@@ -51,4 +51,47 @@ public enum StorageType {
     StorageType(String id) {
         this.id = id;
     }
+
+    /**
+     * Creates object storage of this type with the specified parameters.
+     *
+     * @param endpoint the endpoint URL
+     * @param bucket the bucket name
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     *
+     * @return object storage
+     */
+    public Storage create(String endpoint, String bucket, String accessKey, String secretKey) {
+        switch (this) {
+            case CS:
+                return new flylog.sdk.storage.cs.CustomStorage(endpoint, bucket, accessKey, secretKey);
+            case ES:
+                return new flylog.sdk.storage.es.CustomStorage(endpoint, bucket, accessKey, secretKey);
+            case FS:
+                return new flylog.sdk.storage.fs.CustomStorage(endpoint, bucket, accessKey, secretKey);
+            case S3:
+                return new flylog.sdk.storage.s3.CustomStorage(endpoint, bucket, accessKey, secretKey);
+            default:
+                throw new IllegalStateException(String.format("Unsupported storage type: %s", this));
+        }
+    }
+
+    /**
+     * Gets the object storage type with the specified identifier.
+     *
+     * @param id the identifier of an object storage type
+     *
+     * @return object storage type
+     *
+     * @throws IllegalArgumentException if there is no object storage type with the identifier
+     */
+    public static StorageType of(String id) {
+        for (StorageType type : values()) {
+            if (type.id.equals(id)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown storage type: %s", id));
+    }
 }
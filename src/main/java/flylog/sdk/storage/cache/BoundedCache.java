@@ -0,0 +1,259 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Size-bounded cache with {@link CachePolicy LRU} or {@link CachePolicy#TINY_LFU Window TinyLFU} eviction.
+ * <p>Entries are weighed by a weigher, the total weight of entries never exceeds the capacity.
+ * Every value which leaves the cache, evicted, replaced, removed or rejected, is passed to the removal listener.
+ * With TinyLFU a window of {@value #WINDOW_PERCENT}% of the capacity takes new entries, entries evicted from the window
+ * compete with the least recently used entries of the main region by their access frequencies estimated by a count-min sketch.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class BoundedCache<K, V> {
+    static final int WINDOW_PERCENT = 1;
+
+    private final long capacity;
+    private final long windowCapacity;
+    private final ToLongFunction<? super V> weigher;
+    private final Consumer<? super V> removal;
+    private final Sketch sketch;
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowWeight = 0L;
+    private long mainWeight = 0L;
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+
+    BoundedCache(long capacity, int expectedCount, CachePolicy policy, ToLongFunction<? super V> weigher) {
+        this(capacity, expectedCount, policy, weigher, v -> {
+        });
+    }
+
+    BoundedCache(long capacity, int expectedCount, CachePolicy policy, ToLongFunction<? super V> weigher, Consumer<? super V> removal) {
+        if (capacity < 0L) {
+            throw new IllegalArgumentException(String.format("Illegal capacity: %d", capacity));
+        }
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.removal = removal;
+        if (policy == CachePolicy.TINY_LFU) {
+            this.windowCapacity = Math.max(1L, capacity * WINDOW_PERCENT / 100L);
+            this.sketch = new Sketch(expectedCount);
+        } else {
+            this.windowCapacity = 0L;
+            this.sketch = null;
+        }
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    synchronized V get(K key) {
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+        Entry<V> entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry != null) {
+            hits++;
+            return entry.value;
+        } else {
+            misses++;
+            return null;
+        }
+    }
+
+    synchronized V peek(K key) {
+        Entry<V> entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        return (entry != null) ? entry.value : null;
+    }
+
+    synchronized void put(K key, V value) {
+        remove(key);
+        long weight = weigher.applyAsLong(value);
+        if (weight > capacity) {
+            removal.accept(value);
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, weight);
+        if (sketch == null) {
+            main.put(key, entry);
+            mainWeight += weight;
+            Iterator<Entry<V>> victims = main.values().iterator();
+            while (mainWeight > capacity) {
+                Entry<V> victim = victims.next();
+                mainWeight -= victim.weight;
+                victims.remove();
+                evictions++;
+                removal.accept(victim.value);
+            }
+        } else {
+            window.put(key, entry);
+            windowWeight += weight;
+            Iterator<Map.Entry<K, Entry<V>>> candidates = window.entrySet().iterator();
+            while (windowWeight > windowCapacity) {
+                Map.Entry<K, Entry<V>> candidate = candidates.next();
+                candidates.remove();
+                windowWeight -= candidate.getValue().weight;
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        }
+    }
+
+    synchronized void remove(K key) {
+        Entry<V> entry = window.remove(key);
+        if (entry != null) {
+            windowWeight -= entry.weight;
+            removal.accept(entry.value);
+            return;
+        }
+        entry = main.remove(key);
+        if (entry != null) {
+            mainWeight -= entry.weight;
+            removal.accept(entry.value);
+        }
+    }
+
+    synchronized void clear() {
+        window.values().forEach(e -> removal.accept(e.value));
+        main.values().forEach(e -> removal.accept(e.value));
+        window.clear();
+        main.clear();
+        windowWeight = 0L;
+        mainWeight = 0L;
+    }
+
+    synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, window.size() + main.size(), windowWeight + mainWeight);
+    }
+
+    private void admit(K key, Entry<V> candidate) {
+        long mainCapacity = capacity - windowCapacity;
+        if (candidate.weight > mainCapacity) {
+            evictions++;
+            removal.accept(candidate.value);
+            return;
+        }
+        long excess = mainWeight + candidate.weight - mainCapacity;
+        if (excess > 0L) {
+            int frequency = sketch.frequency(key.hashCode());
+            int count = 0;
+            for (Map.Entry<K, Entry<V>> victim : main.entrySet()) {
+                if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                    evictions++;
+                    removal.accept(candidate.value);
+                    return;
+                }
+                count++;
+                excess -= victim.getValue().weight;
+                if (excess <= 0L) {
+                    break;
+                }
+            }
+            Iterator<Entry<V>> victims = main.values().iterator();
+            for (int i = 0; i < count; i++) {
+                Entry<V> victim = victims.next();
+                mainWeight -= victim.weight;
+                victims.remove();
+                evictions++;
+                removal.accept(victim.value);
+            }
+        }
+        main.put(key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters with periodic halving, so the frequencies of old accesses decay.
+     */
+    private static final class Sketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        Sketch(int expectedCount) {
+            int width = Integer.highestOneBit(Math.clamp(expectedCount, 64, 1 << 24) - 1) << 1;
+            this.counters = new byte[width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (long seed : SEEDS) {
+                int i = index(hash, seed);
+                if (counters[i] < MAX_COUNT) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && (++additions >= sampleSize)) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions >>= 1;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (long seed : SEEDS) {
+                frequency = Math.min(frequency, counters[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, long seed) {
+            long h = (hash + seed) * seed;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
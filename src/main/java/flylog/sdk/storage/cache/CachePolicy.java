@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.cache;
+
+/**
+ * Eviction policy of storage caches.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public enum CachePolicy {
+    /**
+     * Least recently used entries are evicted first.
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU: new entries enter a small LRU window and are admitted to the main LRU region
+     * only if they are accessed more frequently than the entries they would evict, so one-time scans do not flush hot entries.
+     */
+    TINY_LFU
+}
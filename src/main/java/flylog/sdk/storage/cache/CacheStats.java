@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.cache;
+
+/**
+ * Snapshot of cache statistics.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class CacheStats {
+    /**
+     * Number of lookups which found an entry.
+     */
+    public final long hits;
+
+    /**
+     * Number of lookups which did not find an entry.
+     */
+    public final long misses;
+
+    /**
+     * Number of entries evicted by the size bound or rejected by the admission policy.
+     */
+    public final long evictions;
+
+    /**
+     * Number of entries.
+     */
+    public final long count;
+
+    /**
+     * Total weight of entries, the number of bytes for data caches and the number of entries otherwise.
+     */
+    public final long weight;
+
+    /**
+     * Constructs cache statistics with specified parameters.
+     *
+     * @param hits the number of hits
+     * @param misses the number of misses
+     * @param evictions the number of evictions
+     * @param count the number of entries
+     * @param weight the total weight of entries
+     */
+    public CacheStats(long hits, long misses, long evictions, long count, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.count = count;
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the ratio of hits to lookups.
+     *
+     * @return hit ratio or {@code 0} if there were no lookups
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return (lookups > 0L) ? ((double) hits / lookups) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, count=%d, weight=%d", hits, misses, evictions, count, weight);
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.cache;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.DelegatingStorage;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.utility.buffer.BufferPool;
+import flylog.sdk.utility.io.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage decorator which caches storage objects, metadata and object data.
+ * <p>Storage objects and metadata are kept on heap, object data and ranges of object data are kept off heap in buffers
+ * of the {@link BufferPool#SHARED shared buffer pool}, which are released when they are evicted and their last stream is closed.
+ * Every cache is bounded, entries are evicted according to the {@link CachePolicy policy}.
+ * <p>Storage objects expire after the expiry time and are found again, the metadata and the data cached for an object
+ * are valid while the object keeps its ETag and size, so immutable objects like log segments are downloaded only once.
+ * Metadata expires with the storage object, because some backends keep the ETag when the metadata is replaced.
+ * Writes, metadata updates and deletes through this storage invalidate the object at once,
+ * changes made by other clients are seen within the expiry time.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class CachingStorage extends DelegatingStorage {
+    /**
+     * Default maximum number of cached storage objects and metadata.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 65536;
+
+    /**
+     * Default maximum size of cached data in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    /**
+     * Default expiry time of cached storage objects.
+     */
+    public static final Duration DEFAULT_EXPIRY = Duration.ofSeconds(30L);
+
+    private final long maxObjectSize;
+    private final long expiry;
+    private final BoundedCache<String, Head> objects;
+    private final BoundedCache<String, Meta> metas;
+    private final BoundedCache<Range, Data> data;
+
+    /**
+     * Constructs a storage with {@value #DEFAULT_MAX_ENTRIES} entries, {@value #DEFAULT_MAX_BYTES} bytes of data,
+     * the expiry time of {@code 30} seconds and the {@link CachePolicy#TINY_LFU TinyLFU} policy.
+     *
+     * @param storage the underlying storage
+     */
+    public CachingStorage(Storage storage) {
+        this(storage, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_EXPIRY, CachePolicy.TINY_LFU);
+    }
+
+    /**
+     * Constructs a storage with specified parameters.
+     * <p>Data of objects and ranges larger than a quarter of the maximum size of data is not cached.
+     *
+     * @param storage the underlying storage
+     * @param maxEntries the maximum number of cached storage objects and of cached metadata
+     * @param maxBytes the maximum size of cached data in bytes, data is not cached if it is {@code 0}
+     * @param expiry the expiry time of cached storage objects
+     * @param policy the eviction policy
+     */
+    public CachingStorage(Storage storage, int maxEntries, long maxBytes, Duration expiry, CachePolicy policy) {
+        super(storage);
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException(String.format("Illegal max entries: %d", maxEntries));
+        }
+        if (maxBytes < 0L) {
+            throw new IllegalArgumentException(String.format("Illegal max bytes: %d", maxBytes));
+        }
+        if (expiry.isNegative()) {
+            throw new IllegalArgumentException(String.format("Illegal expiry: %s", expiry));
+        }
+        this.maxObjectSize = Math.min(maxBytes / 4L, Integer.MAX_VALUE);
+        this.expiry = expiry.toNanos();
+        this.objects = new BoundedCache<>(maxEntries, maxEntries, policy, h -> 1L);
+        this.metas = new BoundedCache<>(maxEntries, maxEntries, policy, m -> 1L);
+        this.data = new BoundedCache<>(maxBytes, (int) Math.min(maxBytes >> 16, Integer.MAX_VALUE), policy, d -> d.buffer.capacity(), Data::release);
+    }
+
+    /**
+     * Gets the statistics of cached storage objects.
+     *
+     * @return statistics of storage objects
+     */
+    public CacheStats getObjectStats() {
+        return objects.getStats();
+    }
+
+    /**
+     * Gets the statistics of cached metadata.
+     *
+     * @return statistics of metadata
+     */
+    public CacheStats getMetaStats() {
+        return metas.getStats();
+    }
+
+    /**
+     * Gets the statistics of cached data, the weight is the size of data in bytes.
+     *
+     * @return statistics of data
+     */
+    public CacheStats getDataStats() {
+        return data.getStats();
+    }
+
+    /**
+     * Invalidates the cached storage object and metadata of the specified object.
+     * <p>Cached data is revalidated against the ETag of the object on the next read.
+     *
+     * @param key the object key
+     */
+    public void invalidate(String key) {
+        objects.remove(key);
+        metas.remove(key);
+    }
+
+    /**
+     * Invalidates all cached entries.
+     */
+    public void invalidateAll() {
+        objects.clear();
+        metas.clear();
+        data.clear();
+    }
+
+    @Override
+    public StorageObject get(String key) {
+        StorageObject so = find(key);
+        if (so != null) {
+            return so;
+        } else {
+            throw new ObjectStorageException(String.format("Object '%s' is not found", getInfo(key)));
+        }
+    }
+
+    @Override
+    public StorageObject find(String key) {
+        Head head = objects.get(key);
+        if ((head != null) && !head.isExpired(System.nanoTime())) {
+            return head.object;
+        }
+        StorageObject so = storage.find(key);
+        refresh(key, so);
+        return so;
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys) {
+        return findAll(keys, getConcurrency());
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        long now = System.nanoTime();
+        Map<String, Head> cached = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Head head = objects.get(key);
+            if ((head != null) && !head.isExpired(now)) {
+                cached.put(key, head);
+            } else {
+                missing.add(key);
+            }
+        }
+        Map<String, StorageObject> found = missing.isEmpty() ? Map.of() : storage.findAll(missing, concurrency);
+        for (String key : missing) {
+            refresh(key, found.get(key));
+        }
+        Map<String, StorageObject> result = new LinkedHashMap<>();
+        for (String key : keys) {
+            Head head = cached.get(key);
+            StorageObject so = (head != null) ? head.object : found.get(key);
+            if (so != null) {
+                result.put(key, so);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the storage objects with the specified prefix, the listed storage objects are cached.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the number of storage object keys in one request
+     *
+     * @return iterable with storage objects
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public Iterable<StorageObject> list(String prefix, int maxKeys) {
+        Iterable<StorageObject> sos = storage.list(prefix, maxKeys);
+        return () -> new Iterator<>() {
+            private final Iterator<StorageObject> iterator = sos.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public StorageObject next() {
+                StorageObject so = iterator.next();
+                refresh(so.key, so);
+                return so;
+            }
+        };
+    }
+
+    /**
+     * Gets the data of the specified object as a stream, the data of objects up to a quarter of the maximum size of data is cached.
+     * <p>The data is loaded with a read pinned to the ETag of the cached storage object, if the object has been replaced
+     * in the meantime, the storage object is found again and the read is repeated.
+     *
+     * @param key the object key
+     *
+     * @return data input stream
+     *
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public InputStream getData(String key) {
+        for (int attempt = 1; ; attempt++) {
+            StorageObject so = get(key);
+            if ((so.size > maxObjectSize) || (so.etag == null)) {
+                return storage.getData(key);
+            }
+            try {
+                return open(so, 0L, so.size);
+            } catch (ObjectStorageException e) {
+                revalidate(so, e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object as a stream, ranges up to a quarter of the maximum size
+     * of data are cached.
+     * <p>The range is served from the cached data of the whole object if it is cached, the data is loaded like
+     * the {@link #getData(String) data of whole objects}.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     *
+     * @return data input stream
+     *
+     * @throws IllegalArgumentException if the offset or the length is negative
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        for (int attempt = 1; ; attempt++) {
+            StorageObject so = get(key);
+            long start = Math.min(offset, so.size);
+            long end = start + Math.min(length, so.size - start);
+            if ((end - start > maxObjectSize) || (so.etag == null)) {
+                return storage.getData(key, offset, length);
+            }
+            try {
+                return open(so, start, end);
+            } catch (ObjectStorageException e) {
+                revalidate(so, e, attempt);
+            }
+        }
+    }
+
+    @Override
+    public OutputStream putData(String key) {
+        invalidate(key);
+        return invalidating(key, storage.putData(key));
+    }
+
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        invalidate(key);
+        return invalidating(key, storage.putData(key, meta));
+    }
+
+    private OutputStream invalidating(String key, OutputStream out) {
+        return new StorageOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    out.close();
+                } finally {
+                    invalidate(key);
+                }
+            }
+
+            @Override
+            public void abort() {
+                if (!closed) {
+                    closed = true;
+                    abort(out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Gets the metadata of the specified object as an unmodifiable string map.
+     *
+     * @param key the object key
+     *
+     * @return unmodifiable metadata string map
+     *
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public Map<String, String> getMeta(String key) {
+        Meta meta = metas.get(key);
+        if ((meta != null) && !meta.isExpired(System.nanoTime())) {
+            return meta.meta;
+        }
+        return cache(key, storage.getMeta(key));
+    }
+
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        try {
+            storage.putMeta(key, meta);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys) {
+        return getMetaAll(keys, getConcurrency());
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        long now = System.nanoTime();
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Meta meta = metas.get(key);
+            if ((meta != null) && !meta.isExpired(now)) {
+                result.put(key, meta.meta);
+            } else {
+                result.put(key, null);
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Map<String, String>> e : storage.getMetaAll(missing, concurrency).entrySet()) {
+                result.put(e.getKey(), cache(e.getKey(), e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas) {
+        putMetaAll(metas, getConcurrency());
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        try {
+            storage.putMetaAll(metas, concurrency);
+        } finally {
+            metas.keySet().forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            storage.delete(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        deleteAll(keys, getConcurrency());
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys, int concurrency) {
+        try {
+            storage.deleteAll(keys, concurrency);
+        } finally {
+            keys.forEach(this::invalidate);
+        }
+    }
+
+    private void refresh(String key, StorageObject so) {
+        Head previous = objects.peek(key);
+        if ((previous != null) && !Head.matches(previous.object, so)) {
+            metas.remove(key);
+        }
+        objects.put(key, new Head(so, System.nanoTime() + expiry));
+    }
+
+    private Map<String, String> cache(String key, Map<String, String> meta) {
+        Map<String, String> m = Collections.unmodifiableMap(new LinkedHashMap<>(meta));
+        metas.put(key, new Meta(m, System.nanoTime() + expiry));
+        return m;
+    }
+
+    private InputStream open(StorageObject so, long start, long end) {
+        Data d = data.get(new Range(so.key, 0L, so.size));
+        if ((d != null) && d.matches(so) && d.retain()) {
+            return new DataInputStream(d, d.buffer.slice((int) start, (int) (end - start)));
+        }
+        Range range = new Range(so.key, start, end);
+        d = data.get(range);
+        if ((d == null) || !d.matches(so) || !d.retain()) {
+            d = load(so, range);
+        }
+        return new DataInputStream(d, d.buffer);
+    }
+
+    private void revalidate(StorageObject so, ObjectStorageException error, int attempt) {
+        invalidate(so.key);
+        StorageObject current = find(so.key);
+        if ((attempt > 1) || (current == null) || Head.matches(current, so)) {
+            throw error;
+        }
+    }
+
+    private Data load(StorageObject so, Range range) {
+        int length = (int) (range.end - range.start);
+        ByteBuffer buffer = BufferPool.SHARED.allocate(length).limit(length);
+        try (InputStream in = storage.getData(so.key, range.start, length, so.etag); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            if (buffer.hasRemaining() || ((range.end == so.size) && (in.read() >= 0))) {
+                throw new ObjectStorageException(String.format("Object '%s' is modified", getInfo(so.key)));
+            }
+        } catch (IOException e) {
+            BufferPool.SHARED.release(buffer);
+            throw new ConnectionStorageException(String.format("Object '%s' could not be read", getInfo(so.key)), e);
+        } catch (RuntimeException e) {
+            BufferPool.SHARED.release(buffer);
+            throw e;
+        }
+        Data d = new Data(so.etag, so.size, buffer.flip());
+        d.retain();
+        data.put(range, d);
+        return d;
+    }
+
+    private static final class Range {
+        final String key;
+        final long start;
+        final long end;
+
+        Range(String key, long start, long end) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Range r) && (r.start == start) && (r.end == end) && r.key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * key.hashCode() + Long.hashCode(start)) + Long.hashCode(end);
+        }
+    }
+
+    private static final class Head {
+        final StorageObject object;
+        final long expires;
+
+        Head(StorageObject object, long expires) {
+            this.object = object;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now - expires >= 0L;
+        }
+
+        static boolean matches(StorageObject so1, StorageObject so2) {
+            if ((so1 == null) || (so2 == null)) {
+                return so1 == so2;
+            }
+            return (so1.size == so2.size) && Objects.equals(so1.etag, so2.etag);
+        }
+    }
+
+    private static final class Meta {
+        final Map<String, String> meta;
+        final long expires;
+
+        Meta(Map<String, String> meta, long expires) {
+            this.meta = meta;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now - expires >= 0L;
+        }
+    }
+
+    /**
+     * Cached data in a buffer of the shared buffer pool.
+     * <p>The data is reference counted, the cache holds one reference while the data is cached and every open input stream
+     * holds another one, the buffer is released to the pool with the last reference.
+     */
+    private static final class Data {
+        final String etag;
+        final long size;
+        final ByteBuffer buffer;
+        final AtomicInteger references = new AtomicInteger(1);
+
+        Data(String etag, long size, ByteBuffer buffer) {
+            this.etag = etag;
+            this.size = size;
+            this.buffer = buffer;
+        }
+
+        boolean matches(StorageObject so) {
+            return (so.etag != null) && so.etag.equals(etag) && (so.size == size);
+        }
+
+        boolean retain() {
+            int r;
+            while ((r = references.get()) > 0) {
+                if (references.compareAndSet(r, r + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                BufferPool.SHARED.release(buffer);
+            }
+        }
+    }
+
+    private static final class DataInputStream extends ByteBufferInputStream {
+        private Data data;
+
+        DataInputStream(Data data, ByteBuffer buffer) {
+            super(buffer);
+            this.data = data;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Data d = data;
+            if (d != null) {
+                data = null;
+                for (int i = index; i < buffers.length; i++) {
+                    buffers[i] = null;
+                }
+                index = buffers.length;
+                d.release();
+            }
+        }
+    }
+}
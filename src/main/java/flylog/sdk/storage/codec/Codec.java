@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression codec of object data.
+ * <p>A codec compresses independent blocks, and streams are sequences of framed blocks, so blocks of large objects
+ * are compressed and decompressed in parallel. Codecs are stateless and thread-safe.
+ * <p>Codecs are found by {@link Codecs#get(String) name}, additional codecs such as LZ4 or Zstandard
+ * are registered with the {@link java.util.ServiceLoader service loader}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public interface Codec {
+    /**
+     * Default size of an uncompressed block of codec streams in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Gets the codec name, which is recorded in the metadata of compressed objects.
+     *
+     * @return codec name
+     */
+    public String getName();
+
+    /**
+     * Gets the maximum length of the compressed form of a block of the specified length.
+     *
+     * @param length the length of an uncompressed block in bytes
+     *
+     * @return maximum length of the compressed block in bytes
+     */
+    public int maxCompressedLength(int length);
+
+    /**
+     * Compresses the remaining bytes of the source buffer into the destination buffer.
+     *
+     * @param src the source buffer
+     * @param dst the destination buffer with at least {@link #maxCompressedLength(int) maxCompressedLength} remaining bytes
+     *
+     * @throws IllegalArgumentException if the destination buffer is too small
+     */
+    public void compress(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * Decompresses the remaining bytes of the source buffer into the remaining bytes of the destination buffer.
+     *
+     * @param src the source buffer with a compressed block
+     * @param dst the destination buffer with exactly the uncompressed length of the block remaining
+     *
+     * @throws IllegalArgumentException if the compressed block is malformed
+     */
+    public void decompress(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * Wraps the specified stream in a compressing stream of blocks of {@value #DEFAULT_BLOCK_SIZE} bytes compressed in the calling thread.
+     *
+     * @param out the output stream of compressed data
+     *
+     * @return output stream of uncompressed data
+     */
+    public default OutputStream compress(OutputStream out) {
+        return compress(out, DEFAULT_BLOCK_SIZE, 1);
+    }
+
+    /**
+     * Wraps the specified stream in a compressing stream of blocks of the specified size
+     * compressed with the specified parallelism.
+     *
+     * @param out the output stream of compressed data
+     * @param blockSize the size of uncompressed blocks in bytes
+     * @param parallelism the maximum number of blocks compressed in parallel
+     *
+     * @return output stream of uncompressed data
+     */
+    public default OutputStream compress(OutputStream out, int blockSize, int parallelism) {
+        return new CodecOutputStream(this, out, blockSize, parallelism);
+    }
+
+    /**
+     * Wraps the specified stream in a decompressing stream which decompresses blocks in the calling thread.
+     *
+     * @param in the input stream of compressed data
+     *
+     * @return input stream of uncompressed data
+     */
+    public default InputStream decompress(InputStream in) {
+        return decompress(in, 1);
+    }
+
+    /**
+     * Wraps the specified stream in a decompressing stream which decompresses blocks ahead with the specified parallelism.
+     *
+     * @param in the input stream of compressed data
+     * @param parallelism the maximum number of blocks decompressed in parallel
+     *
+     * @return input stream of uncompressed data
+     */
+    public default InputStream decompress(InputStream in, int parallelism) {
+        return new CodecInputStream(this, in, parallelism);
+    }
+}
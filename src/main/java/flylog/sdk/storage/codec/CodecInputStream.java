@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Input stream which decompresses the framed blocks written by a {@link CodecOutputStream codec output stream}.
+ * <p>Up to the parallelism frames are read ahead and decompressed in the common fork-join pool.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class CodecInputStream extends InputStream {
+    private static final int MAX_BLOCK_SIZE = 1 << 30;
+
+    private final Codec codec;
+    private final DataInputStream in;
+    private final int parallelism;
+    private final ArrayDeque<Frame> ahead = new ArrayDeque<>();
+    private ByteBuffer current = null;
+    private boolean end = false;
+    private boolean closed = false;
+
+    CodecInputStream(Codec codec, InputStream in, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Illegal parallelism: %d", parallelism));
+        }
+        this.codec = codec;
+        this.in = new DataInputStream(in);
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer b = current();
+        return (b != null) ? (b.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer c = current();
+        if (c == null) {
+            return -1;
+        }
+        int n = Math.min(len, c.remaining());
+        c.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (current != null) ? current.remaining() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            for (Frame frame : ahead) {
+                frame.future.cancel(false);
+            }
+            ahead.clear();
+            in.close();
+        }
+    }
+
+    private ByteBuffer current() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while ((current == null) || !current.hasRemaining()) {
+            while (!end && (ahead.size() < parallelism)) {
+                readFrame();
+            }
+            Frame frame = ahead.poll();
+            if (frame == null) {
+                return null;
+            }
+            try {
+                frame.future.join();
+            } catch (CompletionException e) {
+                throw new IOException("Block could not be decompressed", e.getCause());
+            }
+            current = frame.raw;
+        }
+        return current;
+    }
+
+    private void readFrame() throws IOException {
+        int length;
+        byte[] compressed;
+        try {
+            length = in.readInt();
+            int compressedLength = in.readInt();
+            if ((length == 0) && (compressedLength == 0)) {
+                end = true;
+                return;
+            }
+            if ((length <= 0) || (length > MAX_BLOCK_SIZE) || (compressedLength < 0) || (compressedLength > MAX_BLOCK_SIZE)) {
+                throw new IOException(String.format("Illegal frame lengths: %d, %d", length, compressedLength));
+            }
+            compressed = new byte[compressedLength];
+            in.readFully(compressed);
+        } catch (EOFException e) {
+            throw new EOFException("Compressed stream is truncated");
+        }
+        Frame frame = new Frame(ByteBuffer.wrap(compressed), ByteBuffer.allocate(length));
+        if (parallelism == 1) {
+            try {
+                frame.decompress(codec);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Block could not be decompressed", e);
+            }
+            frame.future = CompletableFuture.completedFuture(null);
+        } else {
+            frame.future = CompletableFuture.runAsync(() -> frame.decompress(codec), ForkJoinPool.commonPool());
+        }
+        ahead.add(frame);
+    }
+
+    private static final class Frame {
+        final ByteBuffer compressed;
+        final ByteBuffer raw;
+        CompletableFuture<Void> future;
+
+        Frame(ByteBuffer compressed, ByteBuffer raw) {
+            this.compressed = compressed;
+            this.raw = raw;
+        }
+
+        void decompress(Codec codec) {
+            codec.decompress(compressed, raw);
+            raw.flip();
+        }
+    }
+}
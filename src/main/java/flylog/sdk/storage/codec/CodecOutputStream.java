@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import flylog.sdk.storage.StorageOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Output stream which compresses data in framed blocks of a {@link Codec codec}.
+ * <p>A frame consists of the uncompressed length and the compressed length of a block as big-endian integers
+ * followed by the compressed block, the stream ends with a frame of two zero lengths.
+ * Full blocks are compressed in the common fork-join pool while the next blocks are written,
+ * and frames are written in order, so at most the parallelism blocks are in memory.
+ * <p>If the stream fails to compress or to write its data, the underlying stream is
+ * {@link StorageOutputStream#abort(OutputStream) aborted} instead of closed, so a truncated object is never put.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class CodecOutputStream extends StorageOutputStream {
+    /**
+     * Size of a frame header in bytes.
+     */
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private final Codec codec;
+    private final OutputStream out;
+    private final int blockSize;
+    private final int parallelism;
+    private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+    private final ArrayDeque<Frame> free = new ArrayDeque<>();
+    private Frame current = null;
+    private boolean closed = false;
+
+    CodecOutputStream(Codec codec, OutputStream out, int blockSize, int parallelism) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Illegal block size: %d", blockSize));
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Illegal parallelism: %d", parallelism));
+        }
+        this.codec = codec;
+        this.out = out;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        frame().raw.put((byte) b);
+        if (!current.raw.hasRemaining()) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ByteBuffer raw = frame().raw;
+            int n = Math.min(len, raw.remaining());
+            raw.put(b, off, n);
+            off += n;
+            len -= n;
+            if (!raw.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        try {
+            if ((current != null) && (current.raw.position() > 0)) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeFrame();
+            }
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            out.write(new byte[FRAME_HEADER_SIZE]);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        closed = true;
+        out.close();
+    }
+
+    @Override
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Frame frame : pending) {
+            frame.future.cancel(false);
+        }
+        pending.clear();
+        abort(out);
+    }
+
+    private Frame frame() throws IOException {
+        ensureOpen();
+        if (current == null) {
+            current = free.isEmpty() ? new Frame(blockSize, codec.maxCompressedLength(blockSize)) : free.poll();
+        }
+        return current;
+    }
+
+    private void submit() throws IOException {
+        try {
+            compress();
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void compress() throws IOException {
+        Frame frame = current;
+        current = null;
+        if (parallelism == 1) {
+            try {
+                frame.compress(codec);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Block could not be compressed", e);
+            }
+            frame.future = CompletableFuture.completedFuture(null);
+        } else {
+            frame.future = CompletableFuture.runAsync(() -> frame.compress(codec), ForkJoinPool.commonPool());
+        }
+        pending.add(frame);
+        while (pending.size() >= parallelism) {
+            writeFrame();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        Frame frame = pending.poll();
+        try {
+            frame.future.join();
+        } catch (CompletionException e) {
+            throw new IOException("Block could not be compressed", e.getCause());
+        }
+        out.write(frame.compressed.array(), 0, frame.compressed.position());
+        frame.raw.clear();
+        frame.future = null;
+        free.add(frame);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    private static final class Frame {
+        final ByteBuffer raw;
+        final ByteBuffer compressed;
+        CompletableFuture<Void> future;
+
+        Frame(int blockSize, int maxCompressedLength) {
+            this.raw = ByteBuffer.allocate(blockSize);
+            this.compressed = ByteBuffer.allocate(FRAME_HEADER_SIZE + maxCompressedLength);
+        }
+
+        void compress(Codec codec) {
+            raw.flip();
+            int length = raw.remaining();
+            compressed.clear().position(FRAME_HEADER_SIZE);
+            codec.compress(raw, compressed);
+            compressed.putInt(0, length);
+            compressed.putInt(4, compressed.position() - FRAME_HEADER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.DelegatingStorage;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.utility.concurrent.Parallel;
+import flylog.sdk.utility.io.BoundedInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage decorator which compresses object data with a {@link Codec codec}.
+ * <p>Data streams are wrapped in compressing streams and the codec name is put to the object metadata
+ * with the key {@value Codecs#META_CODEC}, so reads pick the codec of every object automatically
+ * and objects without a codec name are read as they are. Blocks of large objects are compressed and decompressed in parallel.
+ * <p>Object sizes and ranged reads refer to the compressed and the uncompressed data respectively,
+ * a ranged read of a compressed object decompresses the data before the range.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class CodecStorage extends DelegatingStorage {
+    private final Codec codec;
+    private final int blockSize;
+    private final int parallelism;
+
+    /**
+     * Constructs a storage which compresses data with the specified codec in blocks of {@value Codec#DEFAULT_BLOCK_SIZE} bytes
+     * with the parallelism of the number of processors.
+     *
+     * @param storage the underlying storage
+     * @param codec the codec of written data
+     */
+    public CodecStorage(Storage storage, Codec codec) {
+        this(storage, codec, Codec.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a storage with the specified parameters.
+     *
+     * @param storage the underlying storage
+     * @param codec the codec of written data
+     * @param blockSize the size of uncompressed blocks in bytes
+     * @param parallelism the maximum number of blocks of one stream compressed or decompressed in parallel
+     */
+    public CodecStorage(Storage storage, Codec codec, int blockSize, int parallelism) {
+        super(storage);
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Illegal block size: %d", blockSize));
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Illegal parallelism: %d", parallelism));
+        }
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the codec of written data.
+     *
+     * @return codec of written data
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Gets the size of uncompressed blocks in bytes.
+     *
+     * @return size of uncompressed blocks in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Gets the maximum number of blocks of one stream compressed or decompressed in parallel.
+     *
+     * @return maximum number of blocks in parallel
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public InputStream getData(String key) {
+        Codec c = codec(key);
+        InputStream in = storage.getData(key);
+        return (c != null) ? c.decompress(in, parallelism) : in;
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        return getData(key, offset, length, null);
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length, String etag) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        Codec c = codec(key);
+        if (c == null) {
+            return storage.getData(key, offset, length, etag);
+        }
+        InputStream in = c.decompress((etag != null) ? storage.getData(key, 0L, Long.MAX_VALUE, etag) : storage.getData(key), parallelism);
+        try {
+            in.skipNBytes(offset);
+        } catch (EOFException e) {
+            // the range is beyond the end of the data
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ce) {
+                e.addSuppressed(ce);
+            }
+            throw new ConnectionStorageException(String.format("Object '%s' could not be read", getInfo(key)), e);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
+    /**
+     * Puts the data to the specified object as a stream.
+     * <p>The data is compressed with the codec, and the codec name is put with the data, so the object never exists
+     * without its codec name. A stream which is {@link StorageOutputStream#abort() aborted} or which fails to compress
+     * its data does not replace the object.
+     *
+     * @param key the object key
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key) {
+        return putData(key, Map.of());
+    }
+
+    /**
+     * Puts the data with the specified metadata to the specified object as a stream.
+     * <p>The data is compressed with the codec, and the codec name is put with the data and the metadata.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        if (codec instanceof NoneCodec) {
+            return storage.putData(key, meta);
+        }
+        Map<String, String> m = new LinkedHashMap<>(meta);
+        m.put(Codecs.META_CODEC, codec.getName());
+        return codec.compress(storage.putData(key, m), blockSize, parallelism);
+    }
+
+    /**
+     * Puts the metadata to the specified object, the codec name of the object is kept if the metadata has no codec name.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @throws ObjectStorageException if the object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        if (!meta.containsKey(Codecs.META_CODEC)) {
+            String name = storage.getMeta(key).get(Codecs.META_CODEC);
+            if (name != null) {
+                Map<String, String> m = new LinkedHashMap<>(meta);
+                m.put(Codecs.META_CODEC, name);
+                meta = m;
+            }
+        }
+        storage.putMeta(key, meta);
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas) {
+        putMetaAll(metas, getConcurrency());
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        Parallel.forEach(metas.entrySet(), concurrency, e -> putMeta(e.getKey(), e.getValue()));
+    }
+
+    private Codec codec(String key) {
+        try {
+            return Codecs.of(storage.getMeta(key));
+        } catch (IllegalArgumentException e) {
+            throw new ObjectStorageException(String.format("Codec of the object '%s' is unknown", getInfo(key)), e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of compression codecs by names.
+ * <p>The {@value NoneCodec#NAME} and {@value DeflateCodec#NAME} codecs are built in, other codecs are loaded
+ * with the {@link ServiceLoader service loader} or {@link #register(Codec) registered} explicitly.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class Codecs {
+    /**
+     * Metadata key of the codec name of compressed objects.
+     */
+    public static final String META_CODEC = "flylog-codec";
+
+    private static final Map<String, Codec> CODECS = load();
+
+    private Codecs() {
+    }
+
+    /**
+     * Gets the codec with the specified name.
+     *
+     * @param name the codec name
+     *
+     * @return codec
+     *
+     * @throws IllegalArgumentException if the codec is unknown
+     */
+    public static Codec get(String name) {
+        Codec codec = CODECS.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException(String.format("Unknown codec: %s", name));
+        }
+        return codec;
+    }
+
+    /**
+     * Gets the codec recorded in the specified object metadata.
+     *
+     * @param meta the metadata string map
+     *
+     * @return codec or {@code null} if the metadata has no codec name
+     *
+     * @throws IllegalArgumentException if the codec is unknown
+     */
+    public static Codec of(Map<String, String> meta) {
+        String name = meta.get(META_CODEC);
+        return (name != null) ? get(name) : null;
+    }
+
+    /**
+     * Gets the names of the known codecs.
+     *
+     * @return sorted set of codec names
+     */
+    public static Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(CODECS.keySet()));
+    }
+
+    /**
+     * Registers the specified codec, which replaces a codec with the same name.
+     *
+     * @param codec the codec
+     */
+    public static void register(Codec codec) {
+        CODECS.put(codec.getName(), codec);
+    }
+
+    private static Map<String, Codec> load() {
+        Map<String, Codec> codecs = new ConcurrentHashMap<>();
+        codecs.put(NoneCodec.NAME, new NoneCodec());
+        codecs.put(DeflateCodec.NAME, new DeflateCodec());
+        Iterator<Codec> providers = ServiceLoader.load(Codec.class, Codecs.class.getClassLoader()).iterator();
+        try {
+            while (providers.hasNext()) {
+                try {
+                    Codec codec = providers.next();
+                    codecs.putIfAbsent(codec.getName(), codec);
+                } catch (ServiceConfigurationError | LinkageError e) {
+                    // a codec with a missing native library is skipped, the providers after it are still loaded
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            // the provider configuration could not be read, the codecs loaded so far are kept
+        }
+        return codecs;
+    }
+}
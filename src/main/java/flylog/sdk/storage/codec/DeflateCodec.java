@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec of raw Deflate blocks of the JDK.
+ * <p>Deflaters and inflaters are pooled, so codec calls do not allocate native compression state.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class DeflateCodec implements Codec {
+    /**
+     * Codec name.
+     */
+    public static final String NAME = "deflate";
+
+    private final int level;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a codec with the default compression level.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs a codec with the specified compression level.
+     *
+     * @param level the compression level from {@code 0} to {@code 9} or {@code -1} for the default level
+     */
+    public DeflateCodec(int level) {
+        if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException(String.format("Illegal compression level: %d", level));
+        }
+        this.level = level;
+    }
+
+    /**
+     * Gets the compression level.
+     *
+     * @return compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + (length >> 3) + (length >> 6) + 64;
+    }
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            deflater.setInput(src);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!dst.hasRemaining()) {
+                    throw new IllegalArgumentException("Destination buffer is too small");
+                }
+                deflater.deflate(dst);
+            }
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(src);
+            while (dst.hasRemaining() && !inflater.finished()) {
+                if ((inflater.inflate(dst) == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            if (dst.hasRemaining() || !inflater.finished()) {
+                throw new IllegalArgumentException("Compressed block does not match its length");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed block is malformed", e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+}
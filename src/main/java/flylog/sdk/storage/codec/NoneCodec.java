@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec which stores data without compression.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class NoneCodec implements Codec {
+    /**
+     * Codec name.
+     */
+    public static final String NAME = "none";
+
+    /**
+     * Constructs a codec.
+     */
+    public NoneCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < src.remaining()) {
+            throw new IllegalArgumentException("Destination buffer is too small");
+        }
+        dst.put(src);
+    }
+
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() != src.remaining()) {
+            throw new IllegalArgumentException("Compressed block does not match its length");
+        }
+        dst.put(src);
+    }
+
+    /**
+     * Returns the specified stream itself because data is not compressed.
+     *
+     * @param out the output stream
+     * @param blockSize the size of blocks, which is ignored
+     * @param parallelism the parallelism, which is ignored
+     *
+     * @return the output stream
+     */
+    @Override
+    public OutputStream compress(OutputStream out, int blockSize, int parallelism) {
+        return out;
+    }
+
+    /**
+     * Returns the specified stream itself because data is not compressed.
+     *
+     * @param in the input stream
+     * @param parallelism the parallelism, which is ignored
+     *
+     * @return the input stream
+     */
+    @Override
+    public InputStream decompress(InputStream in, int parallelism) {
+        return in;
+    }
+}
@@ -16,192 +16,63 @@
 
 package flylog.sdk.storage.cs;
 
-import flylog.sdk.storage.Storage;
-import flylog.sdk.storage.StorageObject;
 import flylog.sdk.storage.StorageType;
 
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.Serializable;
-import java.util.Map;
-
 /**
  * Google Cloud Storage abstraction layer.
+ * <p>Objects are accessed through the XML API of Google Cloud Storage with HMAC keys,
+ * which is compatible with the Amazon S3 REST API.
  *
  * @author Dmitry Kotlyarov
  * @since 1.0
  */
-public class CustomStorage implements Storage, Serializable {
+public class CustomStorage extends flylog.sdk.storage.s3.CustomStorage {
     private static final long serialVersionUID = 1L;
 
     /**
-     * Storage type.
-     */
-    protected final StorageType type;
-
-    /**
-     * Endpoint URL.
-     */
-    protected final String endpoint;
-
-    /**
-     * Bucket name.
-     */
-    protected final String bucket;
-
-    /**
-     * Access key.
+     * Default endpoint URL of the XML API.
      */
-    protected final String accessKey;
+    public static final String DEFAULT_ENDPOINT = "https://storage.googleapis.com";
 
     /**
-     * Secret key.
+     * Signing region of the XML API.
      */
-    protected final String secretKey;
+    public static final String REGION = "auto";
 
     /**
-     * Storage info.
-     */
-    protected final String info;
-
-    /**
-     * Constructs Empty Local Storage with the specified parameters.
+     * Constructs Google Cloud Storage with the specified parameters.
      *
-     * @param endpoint the endpoint URL
+     * @param endpoint the endpoint URL, {@value #DEFAULT_ENDPOINT} is used if it is {@code null} or empty
      * @param bucket the bucket name
-     * @param accessKey the access key
-     * @param secretKey the secret key
+     * @param accessKey the HMAC access key
+     * @param secretKey the HMAC secret key
      */
     public CustomStorage(String endpoint, String bucket, String accessKey, String secretKey) {
-        this.type = StorageType.ES;
-        this.endpoint = endpoint;
-        this.bucket = bucket;
-        this.accessKey = accessKey;
-        this.secretKey = secretKey;
-        this.info = String.format("[%s]-[%s]: %s://%s", this.endpoint, this.accessKey, this.type, this.bucket);
-    }
-
-    /**
-     * Gets the storage type.
-     *
-     * @return storage type
-     */
-    @Override
-    public StorageType getType() {
-        return null;
-    }
-
-    /**
-     * Gets the endpoint URL.
-     *
-     * @return endpoint URL
-     */
-    @Override
-    public String getEndpoint() {
-        return "";
-    }
-
-    /**
-     * Gets the bucket name.
-     *
-     * @return bucket name
-     */
-    @Override
-    public String getBucket() {
-        return "";
-    }
-
-    /**
-     * Gets the access key.
-     *
-     * @return access key
-     */
-    @Override
-    public String getAccessKey() {
-        return "";
-    }
-
-    /**
-     * Gets the secret key.
-     *
-     * @return secret key
-     */
-    @Override
-    public String getSecretKey() {
-        return "";
-    }
-
-    /**
-     * Gets the storage info.
-     *
-     * @return storage info
-     */
-    @Override
-    public String getInfo() {
-        return "";
+        this(endpoint, bucket, accessKey, secretKey, DEFAULT_PART_SIZE, DEFAULT_PART_CONCURRENCY);
     }
 
     /**
-     * Iterates over the storage objects with the specified prefix.
+     * Constructs Google Cloud Storage with the specified parameters.
      *
-     * @param prefix  the objects prefix
-     * @param maxKeys the number of storage object keys in one request
-     * @return iterable with storage objects
-     * @throws ConnectionStorageException if an error in connection occurs
-     */
-    @Override
-    public Iterable<StorageObject> list(String prefix, int maxKeys) {
-        return null;
-    }
-
-    /**
-     * Gets the data of the specified object as a stream.
-     *
-     * @param key the object key
-     * @return data input stream
-     * @throws ObjectStorageException     if the object does not exist
-     * @throws ConnectionStorageException if an error in connection occurs
-     */
-    @Override
-    public InputStream getData(String key) {
-        return null;
-    }
-
-    /**
-     * Put the data to the specified object as a stream.
-     *
-     * @param key the object key
-     * @return data output stream
-     * @throws ObjectStorageException     if the object data could not be put
-     * @throws ConnectionStorageException if an error in connection occurs
-     */
-    @Override
-    public OutputStream putData(String key) {
-        return null;
-    }
-
-    /**
-     * Gets the metadata of the specified object as a string map.
-     *
-     * @param key the object key
-     * @return metadata string map
-     * @throws ObjectStorageException     if the object does not exist
-     * @throws ConnectionStorageException if an error in connection occurs
-     */
-    @Override
-    public Map<String, String> getMeta(String key) {
-        return Map.of();
+     * @param endpoint the endpoint URL, {@value #DEFAULT_ENDPOINT} is used if it is {@code null} or empty
+     * @param bucket the bucket name
+     * @param accessKey the HMAC access key
+     * @param secretKey the HMAC secret key
+     * @param partSize the size of upload and download parts in bytes, at least {@value #MIN_PART_SIZE}
+     * @param partConcurrency the maximum number of concurrent part requests of one data stream, also the read-ahead window of downloads
+     */
+    public CustomStorage(String endpoint, String bucket, String accessKey, String secretKey, int partSize, int partConcurrency) {
+        super(StorageType.CS, ((endpoint != null) && !endpoint.isEmpty()) ? endpoint : DEFAULT_ENDPOINT, bucket, accessKey, secretKey, REGION,
+              partSize, partConcurrency);
     }
 
     /**
-     * Put the metadata to the specified object as a string map.
+     * Returns {@code false} because the XML API does not support multi-object delete requests.
      *
-     * @param key  the object key
-     * @param meta the metadata
-     * @throws ObjectStorageException     if the object metadata could not be put
-     * @throws ConnectionStorageException if an error in connection occurs
+     * @return {@code false}
      */
     @Override
-    public void putMeta(String key, Map<String, String> meta) {
+    protected boolean isMultiDeleteSupported() {
+        return false;
     }
 }
@@ -16,17 +16,33 @@
 
 package flylog.sdk.storage.es;
 
+import flylog.sdk.storage.ObjectStorageException;
 import flylog.sdk.storage.Storage;
 import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StoragePage;
+import flylog.sdk.storage.StoragePages;
 import flylog.sdk.storage.StorageType;
+import flylog.sdk.utility.buffer.BufferPool;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Empty Local Storage abstraction layer.
+ * <p>Objects are kept in memory of the current process, buckets are shared by all storages with the same endpoint and bucket name.
+ * <p>Keys are kept in a concurrent skip list, so objects are listed in the lexicographical order of their keys,
+ * and data is kept in off-heap segments of the {@link BufferPool#SHARED shared buffer pool}.
+ * Objects are immutable and are replaced atomically, so reads and writes do not take locks.
  *
  * @author Dmitry Kotlyarov
  * @since 1.0
@@ -34,6 +50,14 @@ import java.util.Map;
 public class CustomStorage implements Storage, Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Maximum number of keys in one page if the requested number is not positive.
+     */
+    public static final int MAX_LIST_KEYS = 1000;
+
+    private static final ConcurrentHashMap<String, ConcurrentSkipListMap<String, Entry>> BUCKETS = new ConcurrentHashMap<>();
+    private static final AtomicLong VERSION = new AtomicLong(0L);
+
     /**
      * Storage type.
      */
@@ -64,6 +88,8 @@ public class CustomStorage implements Storage, Serializable {
      */
     protected final String info;
 
+    private transient volatile ConcurrentSkipListMap<String, Entry> objects;
+
     /**
      * Constructs Empty Local Storage with the specified parameters.
      *
@@ -88,7 +114,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public StorageType getType() {
-        return null;
+        return type;
     }
 
     /**
@@ -98,7 +124,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getEndpoint() {
-        return "";
+        return endpoint;
     }
 
     /**
@@ -108,7 +134,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getBucket() {
-        return "";
+        return bucket;
     }
 
     /**
@@ -118,7 +144,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getAccessKey() {
-        return "";
+        return accessKey;
     }
 
     /**
@@ -128,7 +154,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getSecretKey() {
-        return "";
+        return secretKey;
     }
 
     /**
@@ -138,20 +164,57 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getInfo() {
-        return "";
+        return info;
+    }
+
+    /**
+     * Finds the specified storage object.
+     *
+     * @param key the object key
+     * @return storage object if it exists, {@code null} otherwise
+     */
+    @Override
+    public StorageObject find(String key) {
+        Entry entry = getObjects().get(key);
+        return (entry != null) ? entry.object : null;
     }
 
     /**
      * Iterates over the storage objects with the specified prefix.
+     * <p>Objects are iterated in the lexicographical order of their keys, pages are read lazily from the skip list.
      *
      * @param prefix  the objects prefix
      * @param maxKeys the number of storage object keys in one request
      * @return iterable with storage objects
-     * @throws ConnectionStorageException if an error in connection occurs
      */
     @Override
     public Iterable<StorageObject> list(String prefix, int maxKeys) {
-        return null;
+        int max = (maxKeys > 0) ? maxKeys : MAX_LIST_KEYS;
+        return new StoragePages(token -> CompletableFuture.completedFuture(listPage(prefix, token, max)), 0);
+    }
+
+    /**
+     * Lists one page of the storage objects with the specified prefix.
+     *
+     * @param prefix the objects prefix
+     * @param startAfter the key after which the page starts or {@code null} for the first page
+     * @param maxKeys the maximum number of objects in the page
+     *
+     * @return page of storage objects
+     */
+    protected StoragePage listPage(String prefix, String startAfter, int maxKeys) {
+        Map<String, Entry> tail = (startAfter != null) ? getObjects().tailMap(startAfter, false) : getObjects().tailMap(prefix, true);
+        List<StorageObject> objects = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : tail.entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                return new StoragePage(objects, null);
+            }
+            if (objects.size() == maxKeys) {
+                return new StoragePage(objects, objects.get(objects.size() - 1).key);
+            }
+            objects.add(e.getValue().object);
+        }
+        return new StoragePage(objects, null);
     }
 
     /**
@@ -160,24 +223,64 @@ public class CustomStorage implements Storage, Serializable {
      * @param key the object key
      * @return data input stream
      * @throws ObjectStorageException     if the object does not exist
-     * @throws ConnectionStorageException if an error in connection occurs
      */
     @Override
     public InputStream getData(String key) {
-        return null;
+        return getData(key, 0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object as a stream.
+     * <p>The stream reads the off-heap segments of the object directly, the object data is not copied.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     * @return data input stream
+     * @throws IllegalArgumentException   if the offset or the length is negative
+     * @throws ObjectStorageException     if the object does not exist
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        while (true) {
+            Entry entry = getEntry(key);
+            if (entry.data.retain()) {
+                return new MemoryDataInputStream(entry.data, offset, length);
+            }
+        }
     }
 
     /**
      * Put the data to the specified object as a stream.
+     * <p>The data is written to segments of the {@link BufferPool#SHARED shared buffer pool}, the object is replaced when the stream is closed.
      *
      * @param key the object key
      * @return data output stream
-     * @throws ObjectStorageException     if the object data could not be put
-     * @throws ConnectionStorageException if an error in connection occurs
+     * @throws ObjectStorageException     if the object key is illegal
      */
     @Override
     public OutputStream putData(String key) {
-        return null;
+        return putData(key, Map.of());
+    }
+
+    /**
+     * Put the data with the specified metadata to the specified object as a stream.
+     * <p>The object is replaced with the data and the metadata when the stream is closed.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     * @return data output stream
+     * @throws ObjectStorageException     if the object key is illegal
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        if (key.isEmpty()) {
+            throw new ObjectStorageException(String.format("Object '%s' has illegal key", getInfo(key)));
+        }
+        return new MemoryDataOutputStream(this, key, Collections.unmodifiableMap(new LinkedHashMap<>(meta)), BufferPool.SHARED);
     }
 
     /**
@@ -186,22 +289,103 @@ public class CustomStorage implements Storage, Serializable {
      * @param key the object key
      * @return metadata string map
      * @throws ObjectStorageException     if the object does not exist
-     * @throws ConnectionStorageException if an error in connection occurs
      */
     @Override
     public Map<String, String> getMeta(String key) {
-        return Map.of();
+        return getEntry(key).meta;
     }
 
     /**
      * Put the metadata to the specified object as a string map.
+     * <p>The object is replaced by an object with the same data and the new metadata.
      *
      * @param key  the object key
      * @param meta the metadata
-     * @throws ObjectStorageException     if the object metadata could not be put
-     * @throws ConnectionStorageException if an error in connection occurs
+     * @throws ObjectStorageException     if the object does not exist
      */
     @Override
     public void putMeta(String key, Map<String, String> meta) {
+        Map<String, String> m = Collections.unmodifiableMap(new LinkedHashMap<>(meta));
+        ConcurrentSkipListMap<String, Entry> os = getObjects();
+        while (true) {
+            Entry entry = getEntry(key);
+            if (entry.data.retain()) {
+                if (os.replace(key, entry, new Entry(entry.object, m, entry.data))) {
+                    entry.data.release();
+                    return;
+                }
+                entry.data.release();
+            }
+        }
+    }
+
+    /**
+     * Deletes the specified object.
+     * <p>The object data is released when the last open input stream of the object is closed.
+     *
+     * @param key the object key
+     */
+    @Override
+    public void delete(String key) {
+        Entry entry = getObjects().remove(key);
+        if (entry != null) {
+            entry.data.release();
+        }
+    }
+
+    /**
+     * Deletes all objects of the bucket.
+     */
+    public void clear() {
+        ConcurrentSkipListMap<String, Entry> os = getObjects();
+        Map.Entry<String, Entry> e;
+        while ((e = os.pollFirstEntry()) != null) {
+            e.getValue().data.release();
+        }
+    }
+
+    /**
+     * Replaces the specified object with the specified data and metadata.
+     *
+     * @param key the object key
+     * @param data the object data
+     * @param meta the unmodifiable object metadata
+     */
+    void commit(String key, MemoryData data, Map<String, String> meta) {
+        long modified = System.currentTimeMillis();
+        StorageObject object = new StorageObject(key, data.getSize(), String.format("%x-%x", VERSION.incrementAndGet(), data.getSize()), modified);
+        Entry previous = getObjects().put(key, new Entry(object, meta, data));
+        if (previous != null) {
+            previous.data.release();
+        }
+    }
+
+    private ConcurrentSkipListMap<String, Entry> getObjects() {
+        ConcurrentSkipListMap<String, Entry> os = objects;
+        if (os == null) {
+            os = BUCKETS.computeIfAbsent(String.format("%s/%s", endpoint, bucket), name -> new ConcurrentSkipListMap<>());
+            objects = os;
+        }
+        return os;
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = getObjects().get(key);
+        if (entry == null) {
+            throw new ObjectStorageException(String.format("Object '%s' is not found", getInfo(key)));
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+        final StorageObject object;
+        final Map<String, String> meta;
+        final MemoryData data;
+
+        Entry(StorageObject object, Map<String, String> meta, MemoryData data) {
+            this.object = object;
+            this.meta = meta;
+            this.data = data;
+        }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.es;
+
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable object data in pooled off-heap segments.
+ * <p>The data is reference counted, the storage holds one reference while the data belongs to an object
+ * and every open input stream holds another one, the segments are released to the pool with the last reference.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class MemoryData {
+    /**
+     * Size of a segment in bytes.
+     */
+    static final int SEGMENT_SIZE = 64 << 10;
+
+    private final BufferPool pool;
+    private final ByteBuffer[] segments;
+    private final long size;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    MemoryData(BufferPool pool, ByteBuffer[] segments, long size) {
+        this.pool = pool;
+        this.segments = segments;
+        this.size = size;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    boolean retain() {
+        int r;
+        while ((r = references.get()) > 0) {
+            if (references.compareAndSet(r, r + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            for (ByteBuffer segment : segments) {
+                pool.release(segment);
+            }
+        }
+    }
+
+    ByteBuffer[] get(long offset, long length) {
+        long start = Math.min(offset, size);
+        long end = start + Math.min(length, size - start);
+        if (start == end) {
+            return new ByteBuffer[0];
+        }
+        int first = (int) (start / SEGMENT_SIZE);
+        int last = (int) ((end - 1L) / SEGMENT_SIZE);
+        ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            long base = (long) i * SEGMENT_SIZE;
+            int from = (int) (Math.max(start, base) - base);
+            int to = (int) (Math.min(end, base + SEGMENT_SIZE) - base);
+            buffers[i - first] = segments[i].slice(from, to - from).asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.es;
+
+import flylog.sdk.utility.io.ByteBufferInputStream;
+
+import java.io.IOException;
+
+/**
+ * Input stream over the off-heap segments of an object.
+ * <p>The stream holds a reference to the object data, so the segments are not reused until it is {@link #close() closed}
+ * even if the object is replaced or deleted meanwhile.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class MemoryDataInputStream extends ByteBufferInputStream {
+    private MemoryData data;
+
+    MemoryDataInputStream(MemoryData data, long offset, long length) {
+        super(data.get(offset, length));
+        this.data = data;
+    }
+
+    /**
+     * Releases the object data.
+     */
+    @Override
+    public void close() throws IOException {
+        MemoryData d = data;
+        if (d != null) {
+            data = null;
+            for (int i = index; i < buffers.length; i++) {
+                buffers[i] = null;
+            }
+            index = buffers.length;
+            d.release();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.es;
+
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Output stream which writes the data of an object to pooled off-heap segments.
+ * <p>The object is atomically replaced with the data and the metadata when the stream is {@link #close() closed},
+ * an {@link #abort() aborted} stream releases its segments.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class MemoryDataOutputStream extends StorageOutputStream {
+    /**
+     * Empty Local Storage.
+     */
+    protected final CustomStorage storage;
+
+    /**
+     * Object key.
+     */
+    protected final String key;
+
+    private final Map<String, String> meta;
+    private final BufferPool pool;
+    private final byte[] single = new byte[1];
+    private ByteBuffer[] segments = new ByteBuffer[4];
+    private int count = 0;
+    private long size = 0L;
+    private boolean closed = false;
+
+    MemoryDataOutputStream(CustomStorage storage, String key, Map<String, String> meta, BufferPool pool) {
+        this.storage = storage;
+        this.key = key;
+        this.meta = meta;
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes all remaining bytes of the specified buffer.
+     *
+     * @param buffer the buffer
+     *
+     * @throws IOException if the stream is closed
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while (buffer.hasRemaining()) {
+            ByteBuffer segment = current();
+            int n = Math.min(buffer.remaining(), segment.remaining());
+            segment.put(segment.position(), buffer, buffer.position(), n);
+            segment.position(segment.position() + n);
+            buffer.position(buffer.position() + n);
+            size += n;
+        }
+    }
+
+    /**
+     * Replaces the object with the written data and closes this stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            ByteBuffer[] s = Arrays.copyOf(segments, count);
+            for (ByteBuffer segment : s) {
+                segment.flip();
+            }
+            segments = null;
+            storage.commit(key, new MemoryData(pool, s, size), meta);
+        }
+    }
+
+    /**
+     * Releases the written data and closes this stream, the object is not replaced.
+     */
+    @Override
+    public void abort() {
+        if (!closed) {
+            closed = true;
+            for (int i = 0; i < count; i++) {
+                pool.release(segments[i]);
+            }
+            segments = null;
+        }
+    }
+
+    private ByteBuffer current() {
+        if ((count > 0) && segments[count - 1].hasRemaining()) {
+            return segments[count - 1];
+        }
+        if (count == segments.length) {
+            segments = Arrays.copyOf(segments, 2 * count);
+        }
+        ByteBuffer segment = pool.allocate(MemoryData.SEGMENT_SIZE);
+        segments[count++] = segment;
+        return segment;
+    }
+}
@@ -16,17 +16,55 @@
 
 package flylog.sdk.storage.fs;
 
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
 import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageException;
 import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StoragePage;
+import flylog.sdk.storage.StoragePages;
 import flylog.sdk.storage.StorageType;
+import flylog.sdk.utility.concurrent.VirtualThreads;
+import flylog.sdk.utility.io.ByteBufferInputStream;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * File System Storage abstraction layer.
+ * <p>Objects are stored as files under the bucket directory of the endpoint directory.
+ * <p>Data is read and written through file channels, new data is written to a temporary file
+ * which is atomically moved to the object file when the output stream is closed.
+ * <p>Metadata is stored in sidecar properties files in the {@value #SYSTEM_DIR} directory of the bucket.
  *
  * @author Dmitry Kotlyarov
  * @since 1.0
@@ -34,6 +72,16 @@ import java.util.Map;
 public class CustomStorage implements Storage, Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Maximum number of keys in one page if the requested number is not positive.
+     */
+    public static final int MAX_LIST_KEYS = 1000;
+
+    /**
+     * Name of the bucket directory reserved for temporary files and metadata.
+     */
+    public static final String SYSTEM_DIR = ".flylog";
+
     /**
      * Storage type.
      */
@@ -65,15 +113,15 @@ public class CustomStorage implements Storage, Serializable {
     protected final String info;
 
     /**
-     * Constructs Empty Local Storage with the specified parameters.
+     * Constructs File System Storage with the specified parameters.
      *
-     * @param endpoint the endpoint URL
+     * @param endpoint the endpoint directory
      * @param bucket the bucket name
      * @param accessKey the access key
      * @param secretKey the secret key
      */
     public CustomStorage(String endpoint, String bucket, String accessKey, String secretKey) {
-        this.type = StorageType.ES;
+        this.type = StorageType.FS;
         this.endpoint = endpoint;
         this.bucket = bucket;
         this.accessKey = accessKey;
@@ -88,7 +136,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public StorageType getType() {
-        return null;
+        return type;
     }
 
     /**
@@ -98,7 +146,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getEndpoint() {
-        return "";
+        return endpoint;
     }
 
     /**
@@ -108,7 +156,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getBucket() {
-        return "";
+        return bucket;
     }
 
     /**
@@ -118,7 +166,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getAccessKey() {
-        return "";
+        return accessKey;
     }
 
     /**
@@ -128,7 +176,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getSecretKey() {
-        return "";
+        return secretKey;
     }
 
     /**
@@ -138,11 +186,39 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getInfo() {
-        return "";
+        return info;
+    }
+
+    /**
+     * Finds the specified storage object.
+     *
+     * @param key the object key
+     * @return storage object if it exists, {@code null} otherwise
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public StorageObject find(String key) {
+        Path path;
+        try {
+            path = getPath(key);
+        } catch (ObjectStorageException e) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? toObject(key, attributes) : null;
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            return null;
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
     }
 
     /**
      * Iterates over the storage objects with the specified prefix.
+     * <p>Objects are iterated in the lexicographical order of their keys.
+     * Pages are read lazily in virtual threads, the continuation token of a page is the key of its last object,
+     * so every page reads only the directories which contain the following keys.
      *
      * @param prefix  the objects prefix
      * @param maxKeys the number of storage object keys in one request
@@ -151,7 +227,28 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public Iterable<StorageObject> list(String prefix, int maxKeys) {
-        return null;
+        int max = (maxKeys > 0) ? maxKeys : MAX_LIST_KEYS;
+        return new StoragePages(token -> CompletableFuture.supplyAsync(() -> listPage(prefix, token, max), VirtualThreads.EXECUTOR));
+    }
+
+    /**
+     * Lists one page of the storage objects with the specified prefix.
+     *
+     * @param prefix the objects prefix
+     * @param startAfter the key after which the page starts or {@code null} for the first page
+     * @param maxKeys the maximum number of objects in the page
+     *
+     * @return page of storage objects
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    protected StoragePage listPage(String prefix, String startAfter, int maxKeys) {
+        ObjectIterator sos = new ObjectIterator(prefix, startAfter);
+        List<StorageObject> objects = new ArrayList<>();
+        while ((objects.size() < maxKeys) && sos.hasNext()) {
+            objects.add(sos.next());
+        }
+        return new StoragePage(objects, sos.hasNext() ? objects.get(objects.size() - 1).key : null);
     }
 
     /**
@@ -164,7 +261,39 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public InputStream getData(String key) {
-        return null;
+        Path path = getPath(key);
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new FileDataInputStream(channel, 0L, channel.size());
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object as a stream.
+     * <p>The range is read from the shared {@link MappedFileCache cache} of memory-mapped object files,
+     * so seeking to any offset does not read the preceding data.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     * @return data input stream
+     * @throws IllegalArgumentException   if the offset or the length is negative
+     * @throws ObjectStorageException     if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        Path path = getPath(key);
+        try {
+            return new ByteBufferInputStream(MappedFileCache.SHARED.get(path, offset, length));
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
     }
 
     /**
@@ -177,7 +306,31 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public OutputStream putData(String key) {
-        return null;
+        return putData(key, Map.of());
+    }
+
+    /**
+     * Put the data with the specified metadata to the specified object as a stream.
+     * <p>The metadata file is moved into place before the data file, so the data is never visible without its metadata.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     * @return data output stream
+     * @throws ObjectStorageException     if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        getPath(key);
+        try {
+            Path dir = getSystemPath("tmp");
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, "data", ".tmp");
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new FileDataOutputStream(this, key, Map.copyOf(meta), temp, channel);
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
     }
 
     /**
@@ -190,7 +343,26 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public Map<String, String> getMeta(String key) {
-        return Map.of();
+        Path path = getPath(key);
+        Path metaPath = getMetaPath(key);
+        try {
+            if (!Files.isRegularFile(path)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(metaPath, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (NoSuchFileException e) {
+                return Map.of();
+            }
+            Map<String, String> meta = new LinkedHashMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                meta.put(name, properties.getProperty(name));
+            }
+            return Collections.unmodifiableMap(meta);
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
     }
 
     /**
@@ -203,5 +375,290 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public void putMeta(String key, Map<String, String> meta) {
+        Path path = getPath(key);
+        Path metaPath = getMetaPath(key);
+        try {
+            if (!Files.isRegularFile(path)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            writeMeta(metaPath, meta);
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
+    }
+
+    /**
+     * Deletes the specified object.
+     * <p>Empty parent directories of the object file are deleted too, the mapping of the file is removed from the shared
+     * {@link MappedFileCache cache}.
+     *
+     * @param key the object key
+     * @throws ObjectStorageException     if the object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void delete(String key) {
+        Path path = getPath(key);
+        try {
+            Files.deleteIfExists(getMetaPath(key));
+            boolean deleted = Files.deleteIfExists(path);
+            MappedFileCache.SHARED.invalidate(path);
+            if (deleted) {
+                Path root = getRoot();
+                for (Path dir = path.getParent(); (dir != null) && !dir.equals(root); dir = dir.getParent()) {
+                    try {
+                        Files.delete(dir);
+                    } catch (IOException e) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw toException(key, e);
+        }
+    }
+
+    /**
+     * Gets the bucket directory path.
+     *
+     * @return bucket directory path
+     */
+    public Path getRoot() {
+        return ((endpoint != null) && !endpoint.isEmpty()) ? Path.of(endpoint, bucket) : Path.of(bucket);
+    }
+
+    /**
+     * Gets the file path of the specified object.
+     *
+     * @param key the object key
+     *
+     * @return object file path
+     *
+     * @throws ObjectStorageException if the object key is illegal
+     */
+    public Path getPath(String key) {
+        Path root = getRoot();
+        Path path = root.resolve(key).normalize();
+        if (key.isEmpty() || key.endsWith("/") || !path.startsWith(root) || path.equals(root) || path.startsWith(root.resolve(SYSTEM_DIR))) {
+            throw new ObjectStorageException(String.format("Object '%s' has illegal key", getInfo(key)));
+        }
+        return path;
+    }
+
+    /**
+     * Gets the metadata file path of the specified object.
+     *
+     * @param key the object key
+     *
+     * @return object metadata file path
+     */
+    protected Path getMetaPath(String key) {
+        return getSystemPath("meta").resolve(key).normalize();
+    }
+
+    /**
+     * Gets the path of the specified system directory.
+     *
+     * @param name the system directory name
+     *
+     * @return system directory path
+     */
+    protected Path getSystemPath(String name) {
+        return getRoot().resolve(SYSTEM_DIR).resolve(name);
+    }
+
+    /**
+     * Moves the specified temporary file to the object file with the specified metadata.
+     * <p>The metadata file is written before the move, the previous metadata is dropped if the metadata is empty.
+     * The mapping of the replaced file is removed from the shared {@link MappedFileCache cache}.
+     * The move is retried if a parent directory is concurrently deleted by {@link #delete(String) delete}.
+     *
+     * @param key the object key
+     * @param meta the object metadata
+     * @param temp the temporary file path
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    protected void commit(String key, Map<String, String> meta, Path temp) throws IOException {
+        Path path = getPath(key);
+        if (!meta.isEmpty()) {
+            writeMeta(getMetaPath(key), meta);
+        }
+        for (int attempt = 1; ; attempt++) {
+            Files.createDirectories(path.getParent());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                MappedFileCache.SHARED.invalidate(path);
+                break;
+            } catch (NoSuchFileException e) {
+                if ((attempt >= 3) || !Files.exists(temp)) {
+                    throw e;
+                }
+            }
+        }
+        if (meta.isEmpty()) {
+            Files.deleteIfExists(getMetaPath(key));
+        }
+    }
+
+    /**
+     * Atomically replaces the specified metadata file with the specified metadata.
+     *
+     * @param metaPath the object metadata file path
+     * @param meta the object metadata
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeMeta(Path metaPath, Map<String, String> meta) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(meta);
+        Path dir = getSystemPath("tmp");
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "meta", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.createDirectories(metaPath.getParent());
+            Files.move(temp, metaPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates the storage object for the specified file.
+     *
+     * <p>The ETag combines the file key, the modification time in nanoseconds and the size. Every commit moves a new file
+     * into place, so the file key changes even if the replacement has the same size and modification time.
+     *
+     * @param key the object key
+     * @param attributes the file attributes
+     *
+     * @return storage object
+     */
+    protected StorageObject toObject(String key, BasicFileAttributes attributes) {
+        long size = attributes.size();
+        FileTime time = attributes.lastModifiedTime();
+        String etag = String.format("%x-%x-%x", Objects.hashCode(attributes.fileKey()), time.to(TimeUnit.NANOSECONDS), size);
+        return new StorageObject(key, size, etag, time.toMillis());
+    }
+
+    /**
+     * Converts the specified I/O exception to the storage exception.
+     *
+     * @param key the object key
+     * @param e the I/O exception
+     *
+     * @return storage exception
+     */
+    protected StorageException toException(String key, IOException e) {
+        if ((e instanceof NoSuchFileException) || (e instanceof NotDirectoryException)) {
+            return new ObjectStorageException(String.format("Object '%s' is not found", getInfo(key)), e);
+        } else if (e instanceof AccessDeniedException) {
+            return new ObjectStorageException(String.format("Object '%s' is not accessible", getInfo(key)), e);
+        } else {
+            return new ConnectionStorageException(String.format("Storage '%s' is not accessible", getInfo(key)), e);
+        }
+    }
+
+    private final class ObjectIterator implements Iterator<StorageObject> {
+        private final String prefix;
+        private final String startAfter;
+        private final Deque<Iterator<Entry>> stack = new ArrayDeque<>();
+        private StorageObject next;
+
+        ObjectIterator(String prefix, String startAfter) {
+            this.prefix = prefix;
+            this.startAfter = startAfter;
+            int i = prefix.lastIndexOf('/');
+            String dir = (i >= 0) ? prefix.substring(0, i + 1) : "";
+            Path root = getRoot();
+            Path path = root.resolve(dir).normalize();
+            if (path.startsWith(root)) {
+                push(path, dir);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                Iterator<Entry> entries = stack.peek();
+                if (entries == null) {
+                    return false;
+                } else if (!entries.hasNext()) {
+                    stack.pop();
+                } else {
+                    Entry entry = entries.next();
+                    if (entry.directory) {
+                        push(entry.path, entry.key);
+                    } else {
+                        next = entry.object;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public StorageObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StorageObject so = next;
+            next = null;
+            return so;
+        }
+
+        private void push(Path path, String dir) {
+            List<Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(path)) {
+                for (Path p : paths) {
+                    String name = p.getFileName().toString();
+                    String key = dir + name;
+                    if ((dir.isEmpty() && name.equals(SYSTEM_DIR)) || !(accepts(key) || accepts(key + "/"))) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        if (accepts(key + "/")) {
+                            entries.add(new Entry(key + "/", p, null));
+                        }
+                    } else if (attributes.isRegularFile() && key.startsWith(prefix) && ((startAfter == null) || (key.compareTo(startAfter) > 0))) {
+                        entries.add(new Entry(key, p, toObject(key, attributes)));
+                    }
+                }
+            } catch (NoSuchFileException | NotDirectoryException e) {
+                return;
+            } catch (IOException e) {
+                throw toException(dir, e);
+            }
+            entries.sort((e1, e2) -> e1.key.compareTo(e2.key));
+            stack.push(entries.iterator());
+        }
+
+        private boolean accepts(String key) {
+            return (key.startsWith(prefix) || prefix.startsWith(key))
+                    && ((startAfter == null) || (key.compareTo(startAfter) > 0) || startAfter.startsWith(key));
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final Path path;
+        final StorageObject object;
+        final boolean directory;
+
+        Entry(String key, Path path, StorageObject object) {
+            this.key = key;
+            this.path = path;
+            this.object = object;
+            this.directory = (object == null);
+        }
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Input stream over the file channel of a storage object.
+ * <p>Transfers to other file channels are performed by the operating system without copying data through the heap.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class FileDataInputStream extends InputStream {
+    /**
+     * File channel.
+     */
+    protected final FileChannel channel;
+
+    /**
+     * Current position in the file channel.
+     */
+    protected long position;
+
+    /**
+     * End position in the file channel (exclusive).
+     */
+    protected final long limit;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Constructs an input stream over the specified region of a file channel.
+     *
+     * @param channel the file channel
+     * @param position the start position
+     * @param limit the end position (exclusive)
+     */
+    public FileDataInputStream(FileChannel channel, long position, long limit) {
+        this.channel = channel;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the underlying file channel.
+     *
+     * @return file channel
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(single, 0, 1) == 1) ? (single[0] & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        long r = limit - position;
+        if (r <= 0L) {
+            return -1;
+        }
+        int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, r)), position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long s = Math.max(0L, Math.min(n, limit - position));
+        position += s;
+        return s;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, limit - position));
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        if (out instanceof FileDataOutputStream) {
+            return transferTo(((FileDataOutputStream) out).getChannel());
+        } else {
+            return transferTo(Channels.newChannel(out));
+        }
+    }
+
+    /**
+     * Transfers the remaining data of this stream to the specified channel.
+     * <p>Uses {@link FileChannel#transferTo(long, long, WritableByteChannel) transferTo} which is zero-copy for file and socket channels.
+     *
+     * @param target the target channel
+     *
+     * @return number of transferred bytes
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        long t = 0L;
+        while (position < limit) {
+            long n = channel.transferTo(position, limit - position, target);
+            if (n <= 0L) {
+                if (position >= channel.size()) {
+                    break;
+                }
+            } else {
+                position += n;
+                t += n;
+            }
+        }
+        return t;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
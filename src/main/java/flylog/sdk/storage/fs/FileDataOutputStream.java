@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.fs;
+
+import flylog.sdk.storage.StorageOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Output stream over the file channel of a temporary file.
+ * <p>The temporary file is atomically moved to the storage object with the metadata on {@link #close() close},
+ * and it is deleted on {@link #abort() abort} or when a write fails.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class FileDataOutputStream extends StorageOutputStream {
+    /**
+     * File System Storage.
+     */
+    protected final CustomStorage storage;
+
+    /**
+     * Object key.
+     */
+    protected final String key;
+
+    /**
+     * Object metadata.
+     */
+    protected final Map<String, String> meta;
+
+    /**
+     * Temporary file path.
+     */
+    protected final Path temp;
+
+    /**
+     * File channel of the temporary file.
+     */
+    protected final FileChannel channel;
+
+    private final byte[] single = new byte[1];
+    private boolean closed = false;
+
+    /**
+     * Constructs an output stream over the specified temporary file.
+     *
+     * @param storage the file system storage
+     * @param key the object key
+     * @param meta the object metadata
+     * @param temp the temporary file path
+     * @param channel the file channel of the temporary file
+     */
+    public FileDataOutputStream(CustomStorage storage, String key, Map<String, String> meta, Path temp, FileChannel channel) {
+        this.storage = storage;
+        this.key = key;
+        this.meta = meta;
+        this.temp = temp;
+        this.channel = channel;
+    }
+
+    /**
+     * Gets the underlying file channel.
+     *
+     * @return file channel
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes all remaining bytes of the specified buffer.
+     *
+     * @param buffer the buffer
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Transfers all data from the specified channel to this stream.
+     * <p>Uses {@link FileChannel#transferFrom(ReadableByteChannel, long, long) transferFrom} which is zero-copy for file channels.
+     *
+     * @param source the source channel
+     *
+     * @return number of transferred bytes
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferFrom(ReadableByteChannel source) throws IOException {
+        long t = 0L;
+        long p = channel.position();
+        long n;
+        while ((n = channel.transferFrom(source, p + t, 1L << 30)) > 0L) {
+            t += n;
+        }
+        channel.position(p + t);
+        return t;
+    }
+
+    /**
+     * Flushes the written data to the storage device, moves the temporary file to the storage object and closes this stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                try {
+                    channel.force(false);
+                } finally {
+                    channel.close();
+                }
+                storage.commit(key, meta, temp);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes this stream and deletes the temporary file, the object is not replaced.
+     */
+    @Override
+    public void abort() {
+        if (!closed) {
+            closed = true;
+            try {
+                try {
+                    channel.close();
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                // the writer has failed already
+            }
+        }
+    }
+}
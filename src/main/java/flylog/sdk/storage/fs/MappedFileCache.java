@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shared cache of read-only memory-mapped object files.
+ * <p>Files are mapped in chunks of {@value #CHUNK_SIZE} bytes, a mapping is reused while the file keeps its size and modification time.
+ * <p>Object files are replaced by atomic moves, so a mapping of a replaced file still reads the previous complete data.
+ * The size of a mapping is taken from the opened channel, and the file key is checked before and after the file is opened,
+ * so a file replaced while it is mapped is never cached under the attributes of its replacement.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class MappedFileCache {
+    /**
+     * Size of a mapped chunk in bytes.
+     */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Shared cache instance.
+     */
+    public static final MappedFileCache SHARED = new MappedFileCache(Integer.getInteger("flylog.storage.fs.mapped", 1024));
+
+    private final int capacity;
+    private final LinkedHashMap<Path, Mapping> mappings;
+
+    /**
+     * Constructs a cache with the specified capacity.
+     *
+     * @param capacity the maximum number of mapped files
+     */
+    public MappedFileCache(int capacity) {
+        this.capacity = capacity;
+        this.mappings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Mapping> eldest) {
+                return size() > MappedFileCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the buffers of the specified range of a file.
+     * <p>The returned buffers are independent read-only views, the range is truncated to the end of the file.
+     *
+     * @param path the file path
+     * @param offset the offset of the range
+     * @param length the length of the range
+     *
+     * @return buffers of the range
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer[] get(Path path, long offset, long length) throws IOException {
+        Mapping mapping = map(path);
+        long start = Math.min(offset, mapping.size);
+        long end = start + Math.min(length, mapping.size - start);
+        if (start == end) {
+            return new ByteBuffer[0];
+        }
+        int first = (int) (start / CHUNK_SIZE);
+        int last = (int) ((end - 1L) / CHUNK_SIZE);
+        ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            long base = (long) i * CHUNK_SIZE;
+            int from = (int) (Math.max(start, base) - base);
+            int to = (int) (Math.min(end, base + mapping.chunks[i].capacity()) - base);
+            buffers[i - first] = mapping.chunks[i].slice(from, to - from);
+        }
+        return buffers;
+    }
+
+    /**
+     * Removes the mapping of the specified file.
+     *
+     * @param path the file path
+     */
+    public void invalidate(Path path) {
+        synchronized (mappings) {
+            mappings.remove(path);
+        }
+    }
+
+    private Mapping map(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        synchronized (mappings) {
+            Mapping mapping = mappings.get(path);
+            if ((mapping != null) && mapping.matches(attributes)) {
+                return mapping;
+            }
+        }
+        for (; ; ) {
+            Mapping mapping;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                BasicFileAttributes opened = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!Objects.equals(attributes.fileKey(), opened.fileKey())) {
+                    attributes = opened;
+                    continue;
+                }
+                mapping = new Mapping(channel, opened);
+            }
+            synchronized (mappings) {
+                mappings.put(path, mapping);
+            }
+            return mapping;
+        }
+    }
+
+    private static final class Mapping {
+        final long size;
+        final long modified;
+        final Object fileKey;
+        final MappedByteBuffer[] chunks;
+
+        Mapping(FileChannel channel, BasicFileAttributes attributes) throws IOException {
+            long size = channel.size();
+            this.size = size;
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1L) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = (long) i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+            }
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return (size == attributes.size()) && (modified == attributes.lastModifiedTime().toMillis()) && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+}
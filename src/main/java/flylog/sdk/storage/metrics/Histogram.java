@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative values with a bounded relative error.
+ * <p>Like HdrHistogram, values are counted in buckets of powers of two, each divided into {@value #SUB_BUCKETS} linear sub-buckets,
+ * so the relative error is below {@code 1/}{@value #SUB_BUCKETS} over the whole range of {@code long} values
+ * and recording is a single atomic increment without allocation.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class Histogram {
+    /**
+     * Number of linear sub-buckets of a power of two.
+     */
+    public static final int SUB_BUCKETS = 32;
+
+    private static final int SUB_BITS = 5;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BITS) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the specified value, negative values are recorded as {@code 0}.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        value = Math.max(0L, value);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return number of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of recorded values.
+     *
+     * @return sum of values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the maximum recorded value.
+     *
+     * @return maximum value or {@code 0} if there are no values
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of recorded values.
+     *
+     * @return mean value or {@code 0} if there are no values
+     */
+    public double getMean() {
+        long c = count.sum();
+        return (c > 0L) ? ((double) sum.sum() / c) : 0.0;
+    }
+
+    /**
+     * Gets the value at the specified percentile, the highest value equivalent to the value of the percentile within the precision.
+     *
+     * @param percentile the percentile from {@code 0} to {@code 100}
+     *
+     * @return value at the percentile or {@code 0} if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Removes all recorded values.
+     * <p>Values recorded concurrently with the reset may be partially kept.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1L);
+    }
+}
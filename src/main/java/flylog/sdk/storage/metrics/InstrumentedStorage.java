@@ -0,0 +1,426 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+import flylog.sdk.storage.DelegatingStorage;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Storage decorator which records the metrics of every operation to {@link StorageMetrics storage metrics}.
+ * <p>Data operations last until their streams are closed and count the bytes passed through the streams,
+ * so their latency is the transfer time and unclosed streams stay in flight.
+ * A listing is recorded when its iteration reaches the end or fails, its latency is the time spent in the underlying iterator.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class InstrumentedStorage extends DelegatingStorage {
+    private final StorageMetrics metrics;
+
+    /**
+     * Constructs a storage which records metrics to new {@link StorageStats storage stats}.
+     *
+     * @param storage the underlying storage
+     */
+    public InstrumentedStorage(Storage storage) {
+        this(storage, new StorageStats());
+    }
+
+    /**
+     * Constructs a storage which records metrics to the specified metrics.
+     *
+     * @param storage the underlying storage
+     * @param metrics the storage metrics
+     */
+    public InstrumentedStorage(Storage storage, StorageMetrics metrics) {
+        super(storage);
+        if (metrics == null) {
+            throw new IllegalArgumentException("Storage metrics is null");
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the storage metrics.
+     *
+     * @return storage metrics
+     */
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public StorageObject get(String key) {
+        return call(StorageOperation.FIND, () -> storage.get(key));
+    }
+
+    @Override
+    public StorageObject find(String key) {
+        return call(StorageOperation.FIND, () -> storage.find(key));
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys) {
+        return call(StorageOperation.FIND_ALL, () -> storage.findAll(keys));
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        return call(StorageOperation.FIND_ALL, () -> storage.findAll(keys, concurrency));
+    }
+
+    @Override
+    public Iterable<StorageObject> list(String prefix, int maxKeys) {
+        Iterable<StorageObject> sos = storage.list(prefix, maxKeys);
+        return () -> new ListIterator(sos);
+    }
+
+    @Override
+    public InputStream getData(String key) {
+        long start = start(StorageOperation.GET_DATA);
+        return new MeteredInputStream(start, open(StorageOperation.GET_DATA, start, () -> storage.getData(key)));
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        long start = start(StorageOperation.GET_DATA);
+        return new MeteredInputStream(start, open(StorageOperation.GET_DATA, start, () -> storage.getData(key, offset, length)));
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length, String etag) {
+        long start = start(StorageOperation.GET_DATA);
+        return new MeteredInputStream(start, open(StorageOperation.GET_DATA, start, () -> storage.getData(key, offset, length, etag)));
+    }
+
+    @Override
+    public OutputStream putData(String key) {
+        long start = start(StorageOperation.PUT_DATA);
+        return new MeteredOutputStream(start, open(StorageOperation.PUT_DATA, start, () -> storage.putData(key)));
+    }
+
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        long start = start(StorageOperation.PUT_DATA);
+        return new MeteredOutputStream(start, open(StorageOperation.PUT_DATA, start, () -> storage.putData(key, meta)));
+    }
+
+    @Override
+    public Map<String, String> getMeta(String key) {
+        return call(StorageOperation.GET_META, () -> storage.getMeta(key));
+    }
+
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        call(StorageOperation.PUT_META, () -> {
+            storage.putMeta(key, meta);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys) {
+        return call(StorageOperation.GET_META_ALL, () -> storage.getMetaAll(keys));
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        return call(StorageOperation.GET_META_ALL, () -> storage.getMetaAll(keys, concurrency));
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas) {
+        call(StorageOperation.PUT_META_ALL, () -> {
+            storage.putMetaAll(metas);
+            return null;
+        });
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        call(StorageOperation.PUT_META_ALL, () -> {
+            storage.putMetaAll(metas, concurrency);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String key) {
+        call(StorageOperation.DELETE, () -> {
+            storage.delete(key);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        call(StorageOperation.DELETE_ALL, () -> {
+            storage.deleteAll(keys);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys, int concurrency) {
+        call(StorageOperation.DELETE_ALL, () -> {
+            storage.deleteAll(keys, concurrency);
+            return null;
+        });
+    }
+
+    private <T> T call(StorageOperation operation, Supplier<T> action) {
+        long start = start(operation);
+        Throwable error = null;
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            metrics.finished(operation, System.nanoTime() - start, error);
+        }
+    }
+
+    private long start(StorageOperation operation) {
+        metrics.started(operation);
+        return System.nanoTime();
+    }
+
+    private <T> T open(StorageOperation operation, long start, Supplier<T> action) {
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            metrics.finished(operation, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private final class ListIterator implements Iterator<StorageObject> {
+        private final Iterable<StorageObject> sos;
+        private Iterator<StorageObject> iterator;
+        private long nanos = 0L;
+        private boolean finished = false;
+
+        ListIterator(Iterable<StorageObject> sos) {
+            this.sos = sos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            try {
+                if (iterator == null) {
+                    iterator = sos.iterator();
+                }
+                boolean next = iterator.hasNext();
+                nanos += System.nanoTime() - start;
+                if (!next) {
+                    finish(null);
+                }
+                return next;
+            } catch (RuntimeException e) {
+                nanos += System.nanoTime() - start;
+                finish(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public StorageObject next() {
+            long start = System.nanoTime();
+            try {
+                if (iterator == null) {
+                    iterator = sos.iterator();
+                }
+                return iterator.next();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        private void finish(Throwable error) {
+            if (!finished) {
+                finished = true;
+                metrics.started(StorageOperation.LIST);
+                metrics.finished(StorageOperation.LIST, nanos, error);
+            }
+        }
+    }
+
+    private final class MeteredInputStream extends InputStream {
+        private final long start;
+        private final InputStream in;
+        private Throwable error;
+        private boolean closed = false;
+
+        MeteredInputStream(long start, InputStream in) {
+            this.start = start;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = in.read();
+                if (b >= 0) {
+                    metrics.read(1L);
+                }
+                return b;
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    metrics.read(n);
+                }
+                return n;
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            try {
+                long n = in.transferTo(out);
+                metrics.read(n);
+                return n;
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } catch (IOException | RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+                throw e;
+            } finally {
+                metrics.finished(StorageOperation.GET_DATA, System.nanoTime() - start, error);
+            }
+        }
+    }
+
+    private final class MeteredOutputStream extends StorageOutputStream {
+        private final long start;
+        private final OutputStream out;
+        private Throwable error;
+        private boolean closed = false;
+
+        MeteredOutputStream(long start, OutputStream out) {
+            this.start = start;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+                metrics.written(1L);
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+                metrics.written(len);
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+                throw e;
+            } finally {
+                metrics.finished(StorageOperation.PUT_DATA, System.nanoTime() - start, error);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            abort(out);
+            metrics.finished(StorageOperation.PUT_DATA, System.nanoTime() - start, (error != null) ? error : new IOException("Stream is aborted"));
+        }
+    }
+}
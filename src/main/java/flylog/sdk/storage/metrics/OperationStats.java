@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one storage operation.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class OperationStats implements OperationStatsMXBean {
+    private final StorageOperation operation;
+    private final Histogram latency = new Histogram();
+    private final LongAdder objectErrors = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final LongAdder otherErrors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+
+    OperationStats(StorageOperation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Gets the operation.
+     *
+     * @return operation
+     */
+    public StorageOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the histogram of latency in nanoseconds.
+     *
+     * @return histogram of latency
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getObjectErrors() {
+        return objectErrors.sum();
+    }
+
+    @Override
+    public long getConnectionErrors() {
+        return connectionErrors.sum();
+    }
+
+    @Override
+    public long getOtherErrors() {
+        return otherErrors.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50.0));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        objectErrors.reset();
+        connectionErrors.reset();
+        otherErrors.reset();
+        retries.reset();
+        hedges.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, errors=%d/%d/%d, retries=%d, hedges=%d, inFlight=%d, mean=%.1fus, p50=%dus, p99=%dus, p999=%dus, max=%dus",
+                             operation.id, getCount(), getObjectErrors(), getConnectionErrors(), getOtherErrors(), getRetries(), getHedges(), getInFlight(),
+                             getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    void hedged() {
+        hedges.increment();
+    }
+
+    void started() {
+        inFlight.increment();
+    }
+
+    void finished(long nanos, Throwable error) {
+        inFlight.decrement();
+        latency.record(nanos);
+        if (error != null) {
+            for (Throwable e = error; e != null; e = e.getCause()) {
+                if (e instanceof ObjectStorageException) {
+                    objectErrors.increment();
+                    return;
+                } else if (e instanceof ConnectionStorageException) {
+                    connectionErrors.increment();
+                    return;
+                }
+            }
+            otherErrors.increment();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+/**
+ * Management interface of the metrics of one storage operation.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public interface OperationStatsMXBean {
+    /**
+     * Gets the number of finished operations.
+     *
+     * @return number of operations
+     */
+    public long getCount();
+
+    /**
+     * Gets the number of operations failed with {@link flylog.sdk.storage.ObjectStorageException}.
+     *
+     * @return number of object errors
+     */
+    public long getObjectErrors();
+
+    /**
+     * Gets the number of operations failed with {@link flylog.sdk.storage.ConnectionStorageException}.
+     *
+     * @return number of connection errors
+     */
+    public long getConnectionErrors();
+
+    /**
+     * Gets the number of operations failed with other errors.
+     *
+     * @return number of other errors
+     */
+    public long getOtherErrors();
+
+    /**
+     * Gets the number of retries after failed attempts.
+     *
+     * @return number of retries
+     */
+    public long getRetries();
+
+    /**
+     * Gets the number of hedged requests.
+     *
+     * @return number of hedged requests
+     */
+    public long getHedges();
+
+    /**
+     * Gets the number of operations in progress.
+     *
+     * @return number of operations in progress
+     */
+    public long getInFlight();
+
+    /**
+     * Gets the mean latency in microseconds.
+     *
+     * @return mean latency
+     */
+    public double getMeanMicros();
+
+    /**
+     * Gets the median latency in microseconds.
+     *
+     * @return median latency
+     */
+    public long getP50Micros();
+
+    /**
+     * Gets the 99th percentile of latency in microseconds.
+     *
+     * @return 99th percentile of latency
+     */
+    public long getP99Micros();
+
+    /**
+     * Gets the 99.9th percentile of latency in microseconds.
+     *
+     * @return 99.9th percentile of latency
+     */
+    public long getP999Micros();
+
+    /**
+     * Gets the maximum latency in microseconds.
+     *
+     * @return maximum latency
+     */
+    public long getMaxMicros();
+
+    /**
+     * Resets the counters and the latency histogram, the number of operations in progress is kept.
+     */
+    public void reset();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+/**
+ * Receiver of the metrics of storage operations.
+ * <p>Implementations are called by {@link InstrumentedStorage} from the threads of the operations, so they must be thread-safe and fast.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public interface StorageMetrics {
+    /**
+     * Records the start of an operation.
+     *
+     * @param operation the operation
+     */
+    public void started(StorageOperation operation);
+
+    /**
+     * Records the end of an operation started before.
+     *
+     * @param operation the operation
+     * @param nanos the duration of the operation in nanoseconds
+     * @param error the error of the operation or {@code null} if it succeeded
+     */
+    public void finished(StorageOperation operation, long nanos, Throwable error);
+
+    /**
+     * Records bytes read from object data.
+     *
+     * @param bytes the number of bytes
+     */
+    public void read(long bytes);
+
+    /**
+     * Records bytes written to object data.
+     *
+     * @param bytes the number of bytes
+     */
+    public void written(long bytes);
+
+    /**
+     * Records a retry of an operation after a failed attempt.
+     * <p>The default implementation does nothing.
+     *
+     * @param operation the operation
+     */
+    public default void retried(StorageOperation operation) {
+    }
+
+    /**
+     * Records a hedged request of an operation sent because the first request is slow.
+     * <p>The default implementation does nothing.
+     *
+     * @param operation the operation
+     */
+    public default void hedged(StorageOperation operation) {
+    }
+}
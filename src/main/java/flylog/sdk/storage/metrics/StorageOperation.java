@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+/**
+ * Operation of an object storage.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public enum StorageOperation {
+    /**
+     * {@link flylog.sdk.storage.Storage#find(String) Finding} or {@link flylog.sdk.storage.Storage#get(String) getting} an object.
+     */
+    FIND("find"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#findAll(java.util.Collection, int) Finding} objects in a batch.
+     */
+    FIND_ALL("findAll"),
+
+    /**
+     * Complete iteration of a {@link flylog.sdk.storage.Storage#list(String, int) listing}.
+     */
+    LIST("list"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#getData(String) Reading} data until the stream is closed.
+     */
+    GET_DATA("getData"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#putData(String) Writing} data until the stream is closed.
+     */
+    PUT_DATA("putData"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#getMeta(String) Getting} metadata.
+     */
+    GET_META("getMeta"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#putMeta(String, java.util.Map) Putting} metadata.
+     */
+    PUT_META("putMeta"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#getMetaAll(java.util.Collection, int) Getting} metadata in a batch.
+     */
+    GET_META_ALL("getMetaAll"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#putMetaAll(java.util.Map, int) Putting} metadata in a batch.
+     */
+    PUT_META_ALL("putMetaAll"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#delete(String) Deleting} an object.
+     */
+    DELETE("delete"),
+
+    /**
+     * {@link flylog.sdk.storage.Storage#deleteAll(java.util.Collection, int) Deleting} objects in a batch.
+     */
+    DELETE_ALL("deleteAll");
+
+    /**
+     * Identifier of an operation.
+     */
+    public final String id;
+
+    StorageOperation(String id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link StorageMetrics storage metrics} with per-operation latency histograms, error and in-flight counters.
+ * <p>The metrics can be exported to the platform MBean server as the {@code flylog.sdk:type=Storage,name=...} MBean
+ * with one {@code flylog.sdk:type=Storage,name=...,operation=...} MBean per operation.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class StorageStats implements StorageMetrics, StorageStatsMXBean {
+    /**
+     * Domain of the MBeans.
+     */
+    public static final String DOMAIN = "flylog.sdk";
+
+    private final OperationStats[] operations;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final List<ObjectName> names = new ArrayList<>();
+
+    /**
+     * Constructs empty metrics.
+     */
+    public StorageStats() {
+        StorageOperation[] values = StorageOperation.values();
+        this.operations = new OperationStats[values.length];
+        for (int i = 0; i < values.length; i++) {
+            operations[i] = new OperationStats(values[i]);
+        }
+    }
+
+    /**
+     * Gets the metrics of the specified operation.
+     *
+     * @param operation the operation
+     *
+     * @return metrics of the operation
+     */
+    public OperationStats get(StorageOperation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    @Override
+    public void started(StorageOperation operation) {
+        operations[operation.ordinal()].started();
+    }
+
+    @Override
+    public void finished(StorageOperation operation, long nanos, Throwable error) {
+        operations[operation.ordinal()].finished(nanos, error);
+    }
+
+    @Override
+    public void retried(StorageOperation operation) {
+        operations[operation.ordinal()].retried();
+    }
+
+    @Override
+    public void hedged(StorageOperation operation) {
+        operations[operation.ordinal()].hedged();
+    }
+
+    @Override
+    public void read(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void written(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        long n = 0L;
+        for (OperationStats operation : operations) {
+            n += operation.getInFlight();
+        }
+        return n;
+    }
+
+    @Override
+    public long getErrors() {
+        long n = 0L;
+        for (OperationStats operation : operations) {
+            n += operation.getObjectErrors() + operation.getConnectionErrors() + operation.getOtherErrors();
+        }
+        return n;
+    }
+
+    @Override
+    public void reset() {
+        for (OperationStats operation : operations) {
+            operation.reset();
+        }
+        bytesRead.reset();
+        bytesWritten.reset();
+    }
+
+    /**
+     * Registers the MBeans of these metrics in the platform MBean server with the specified name.
+     *
+     * @param name the name of the metrics, e.g. the storage info
+     *
+     * @return these metrics
+     *
+     * @throws IllegalStateException if the MBeans are already registered or could not be registered
+     */
+    public synchronized StorageStats register(String name) {
+        if (!names.isEmpty()) {
+            throw new IllegalStateException(String.format("Storage stats are already registered as '%s'", names.get(0)));
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = String.format("%s:type=Storage,name=%s", DOMAIN, ObjectName.quote(name));
+        try {
+            register(server, new ObjectName(base), this);
+            for (OperationStats operation : operations) {
+                register(server, new ObjectName(String.format("%s,operation=%s", base, operation.getOperation().id)), operation);
+            }
+        } catch (JMException e) {
+            unregister();
+            throw new IllegalStateException(String.format("Storage stats could not be registered as '%s'", base), e);
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters the MBeans of these metrics from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : names) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (InstanceNotFoundException e) {
+                    // the MBean is unregistered by another party
+                } catch (JMException e) {
+                    throw new IllegalStateException(String.format("Storage stats could not be unregistered as '%s'", name), e);
+                }
+            }
+        } finally {
+            names.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("read=%d, written=%d", getBytesRead(), getBytesWritten()));
+        for (OperationStats operation : operations) {
+            if ((operation.getCount() > 0L) || (operation.getRetries() > 0L) || (operation.getInFlight() > 0L)) {
+                sb.append('\n').append(operation);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+        server.registerMBean(mbean, name);
+        names.add(name);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.metrics;
+
+/**
+ * Management interface of the metrics of a storage.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public interface StorageStatsMXBean {
+    /**
+     * Gets the number of bytes read from object data.
+     *
+     * @return number of bytes read
+     */
+    public long getBytesRead();
+
+    /**
+     * Gets the number of bytes written to object data.
+     *
+     * @return number of bytes written
+     */
+    public long getBytesWritten();
+
+    /**
+     * Gets the number of operations in progress.
+     *
+     * @return number of operations in progress
+     */
+    public long getInFlight();
+
+    /**
+     * Gets the number of failed operations.
+     *
+     * @return number of errors
+     */
+    public long getErrors();
+
+    /**
+     * Resets the counters and the latency histograms of all operations.
+     */
+    public void reset();
+}
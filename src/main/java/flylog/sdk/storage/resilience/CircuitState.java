@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.resilience;
+
+/**
+ * State of a circuit breaker.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public enum CircuitState {
+    /**
+     * Requests pass to the storage.
+     */
+    CLOSED,
+
+    /**
+     * Requests fail fast without reaching the storage.
+     */
+    OPEN,
+
+    /**
+     * A single trial request passes to the storage, other requests fail fast.
+     */
+    HALF_OPEN
+}
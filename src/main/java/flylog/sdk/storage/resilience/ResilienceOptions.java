@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.resilience;
+
+/**
+ * Options of a {@link ResilientStorage resilient storage}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class ResilienceOptions {
+    /**
+     * Default maximum number of attempts of an operation.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default base delay of retries in milliseconds.
+     */
+    public static final long DEFAULT_RETRY_DELAY = 100L;
+
+    /**
+     * Default maximum delay of retries in milliseconds.
+     */
+    public static final long DEFAULT_MAX_RETRY_DELAY = 5_000L;
+
+    /**
+     * Default minimum delay of hedged data requests in milliseconds.
+     */
+    public static final long DEFAULT_HEDGE_DELAY = 100L;
+
+    /**
+     * Default percentile of the latency of data requests after which a hedged request is sent.
+     */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95.0;
+
+    /**
+     * Default number of consecutive connection failures which opens the circuit breaker.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time of the open state of the circuit breaker before a trial request in milliseconds.
+     */
+    public static final long DEFAULT_OPEN_DURATION = 10_000L;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+    private long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+    private long hedgeDelay = DEFAULT_HEDGE_DELAY;
+    private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openDuration = DEFAULT_OPEN_DURATION;
+
+    /**
+     * Gets the maximum number of attempts of an operation including the first one.
+     *
+     * @return maximum number of attempts of an operation including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of attempts of an operation including the first one.
+     *
+     * @param maxAttempts the maximum number of attempts of an operation including the first one
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets the base delay of retries in milliseconds, the delay of every next retry is doubled and jittered.
+     *
+     * @return base delay of retries in milliseconds
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Sets the base delay of retries in milliseconds, the delay of every next retry is doubled and jittered.
+     *
+     * @param retryDelay the base delay of retries in milliseconds
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Gets the maximum delay of retries in milliseconds.
+     *
+     * @return maximum delay of retries in milliseconds
+     */
+    public long getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    /**
+     * Sets the maximum delay of retries in milliseconds.
+     *
+     * @param maxRetryDelay the maximum delay of retries in milliseconds
+     */
+    public void setMaxRetryDelay(long maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * Gets the minimum delay of hedged data requests in milliseconds, hedging is disabled if it is {@code 0}.
+     *
+     * @return minimum delay of hedged data requests in milliseconds
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Sets the minimum delay of hedged data requests in milliseconds, hedging is disabled if it is {@code 0}.
+     *
+     * @param hedgeDelay the minimum delay of hedged data requests in milliseconds
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * Gets the percentile of the latency of data requests after which a hedged request is sent.
+     *
+     * @return percentile of the latency of data requests after which a hedged request is sent
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Sets the percentile of the latency of data requests after which a hedged request is sent.
+     *
+     * @param hedgePercentile the percentile of the latency of data requests after which a hedged request is sent
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Gets the number of consecutive connection failures which opens the circuit breaker.
+     *
+     * @return number of consecutive connection failures which opens the circuit breaker
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive connection failures which opens the circuit breaker.
+     *
+     * @param failureThreshold the number of consecutive connection failures which opens the circuit breaker
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Gets the time of the open state of the circuit breaker before a trial request in milliseconds.
+     *
+     * @return time of the open state of the circuit breaker before a trial request in milliseconds
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Sets the time of the open state of the circuit breaker before a trial request in milliseconds.
+     *
+     * @param openDuration the time of the open state of the circuit breaker before a trial request in milliseconds
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.resilience;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.DelegatingStorage;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.storage.metrics.Histogram;
+import flylog.sdk.storage.metrics.StorageMetrics;
+import flylog.sdk.storage.metrics.StorageOperation;
+import flylog.sdk.utility.concurrent.ThreadSection;
+import flylog.sdk.utility.concurrent.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Storage decorator which retries connection failures, hedges slow data requests and fails fast while the storage is unhealthy.
+ * <p>Operations failed with {@link ConnectionStorageException} are retried with exponential backoff and full jitter,
+ * {@link ObjectStorageException object errors} are not retried. Data streams opened for reading are pinned to the ETag
+ * of the object and resumed with conditional ranged requests from the current position if they fail in the middle.
+ * <p>If opening a data stream takes longer than the configured percentile of the recent latency, a second hedged request
+ * is sent and the stream of the first response is used, the other stream is closed. The recent latency is recorded
+ * in two histograms which are reset in turn every minute, the percentile is taken from the older one,
+ * so it covers the last one to two minutes. Hedged requests run in the thread section
+ * of the storage, and data streams are not hedged while the circuit breaker is not closed.
+ * <p>Consecutive connection failures open the circuit breaker, which {@link ThreadSection#disable() disables} the thread section
+ * of the storage: new requests fail fast with {@link ConnectionStorageException} instead of waiting for timeouts,
+ * while requests in flight drain. After the open duration a single trial request is let through, its success closes the breaker.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class ResilientStorage extends DelegatingStorage {
+    private static final int MIN_HEDGE_SAMPLES = 100;
+    private static final int HEDGE_UPDATE_MASK = 63;
+    private static final long HEDGE_WINDOW = TimeUnit.MINUTES.toNanos(1L);
+
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final long hedgeDelay;
+    private final double hedgePercentile;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final StorageMetrics metrics;
+    private final ThreadSection section = new ThreadSection(true, true);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final Histogram[] latencies = {new Histogram(), new Histogram()};
+    private final AtomicLong rotatedAt = new AtomicLong(System.nanoTime());
+    private volatile int window = 0;
+    private volatile long hedgeNanos;
+    private volatile CircuitState state = CircuitState.CLOSED;
+    private volatile long openedAt = 0L;
+
+    /**
+     * Constructs a storage with the default options.
+     *
+     * @param storage the underlying storage
+     */
+    public ResilientStorage(Storage storage) {
+        this(storage, new ResilienceOptions(), null);
+    }
+
+    /**
+     * Constructs a storage with the specified options.
+     *
+     * @param storage the underlying storage
+     * @param options the resilience options
+     */
+    public ResilientStorage(Storage storage, ResilienceOptions options) {
+        this(storage, options, null);
+    }
+
+    /**
+     * Constructs a storage with the specified options which records retries and hedged requests to the specified metrics.
+     *
+     * @param storage the underlying storage
+     * @param options the resilience options
+     * @param metrics the storage metrics or {@code null}
+     */
+    public ResilientStorage(Storage storage, ResilienceOptions options, StorageMetrics metrics) {
+        super(storage);
+        if (options.getMaxAttempts() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal max attempts: %d", options.getMaxAttempts()));
+        }
+        if ((options.getRetryDelay() < 0L) || (options.getMaxRetryDelay() < options.getRetryDelay())) {
+            throw new IllegalArgumentException(String.format("Illegal retry delays: %d, %d", options.getRetryDelay(), options.getMaxRetryDelay()));
+        }
+        if ((options.getHedgeDelay() < 0L) || !(options.getHedgePercentile() > 0.0) || (options.getHedgePercentile() > 100.0)) {
+            throw new IllegalArgumentException(String.format("Illegal hedge delay or percentile: %d, %s", options.getHedgeDelay(), options.getHedgePercentile()));
+        }
+        if (options.getFailureThreshold() < 1) {
+            throw new IllegalArgumentException(String.format("Illegal failure threshold: %d", options.getFailureThreshold()));
+        }
+        if (options.getOpenDuration() < 0L) {
+            throw new IllegalArgumentException(String.format("Illegal open duration: %d", options.getOpenDuration()));
+        }
+        this.maxAttempts = options.getMaxAttempts();
+        this.retryDelay = options.getRetryDelay();
+        this.maxRetryDelay = options.getMaxRetryDelay();
+        this.hedgeDelay = TimeUnit.MILLISECONDS.toNanos(options.getHedgeDelay());
+        this.hedgePercentile = options.getHedgePercentile();
+        this.failureThreshold = options.getFailureThreshold();
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(options.getOpenDuration());
+        this.metrics = (metrics != null) ? metrics : new StorageMetrics() {
+            @Override
+            public void started(StorageOperation operation) {
+            }
+
+            @Override
+            public void finished(StorageOperation operation, long nanos, Throwable error) {
+            }
+
+            @Override
+            public void read(long bytes) {
+            }
+
+            @Override
+            public void written(long bytes) {
+            }
+        };
+        this.hedgeNanos = hedgeDelay;
+    }
+
+    /**
+     * Gets the state of the circuit breaker.
+     *
+     * @return state of the circuit breaker
+     */
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Gets the thread section of the requests to the storage, which is disabled while the circuit breaker is not closed.
+     *
+     * @return thread section of requests
+     */
+    public ThreadSection getSection() {
+        return section;
+    }
+
+    /**
+     * Waits until the circuit breaker is open and all requests in flight have left the storage.
+     *
+     * @param timeout the maximum time to wait
+     *
+     * @return {@code true} if the breaker is open and no requests are in flight, {@code false} if the timeout elapsed
+     */
+    public boolean awaitDrained(Duration timeout) {
+        return section.await(timeout);
+    }
+
+    @Override
+    public StorageObject get(String key) {
+        return call(StorageOperation.FIND, () -> storage.get(key), maxAttempts);
+    }
+
+    @Override
+    public StorageObject find(String key) {
+        return call(StorageOperation.FIND, () -> storage.find(key), maxAttempts);
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys) {
+        return call(StorageOperation.FIND_ALL, () -> storage.findAll(keys), maxAttempts);
+    }
+
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        return call(StorageOperation.FIND_ALL, () -> storage.findAll(keys, concurrency), maxAttempts);
+    }
+
+    /**
+     * Iterates over the storage objects with the specified prefix.
+     * <p>Pages are not retried, because the position of a failed iterator is unknown, but failures count for the circuit breaker.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the number of storage object keys in one request
+     *
+     * @return iterable with storage objects
+     *
+     * @throws ConnectionStorageException if an error in connection occurs or the circuit breaker is open
+     */
+    @Override
+    public Iterable<StorageObject> list(String prefix, int maxKeys) {
+        Iterable<StorageObject> sos = storage.list(prefix, maxKeys);
+        return () -> {
+            Iterator<StorageObject> iterator = call(StorageOperation.LIST, sos::iterator, 1);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return call(StorageOperation.LIST, iterator::hasNext, 1);
+                }
+
+                @Override
+                public StorageObject next() {
+                    return call(StorageOperation.LIST, iterator::next, 1);
+                }
+            };
+        };
+    }
+
+    /**
+     * Gets the data of the specified object as a stream.
+     * <p>The stream is pinned to the version of the object when it is opened, which costs one request for the ETag,
+     * so a resumed stream fails instead of mixing the data of different versions.
+     *
+     * @param key the object key
+     *
+     * @return data input stream
+     *
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs or the circuit breaker is open
+     */
+    @Override
+    public InputStream getData(String key) {
+        return getData(key, 0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object as a stream.
+     * <p>The stream is pinned to the version of the object when it is opened, which costs one request for the ETag,
+     * so a resumed stream fails instead of mixing the data of different versions.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     *
+     * @return data input stream
+     *
+     * @throws IllegalArgumentException if the offset or the length is negative
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs or the circuit breaker is open
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        StorageObject so = get(key);
+        return getData(key, Math.min(offset, so.size), Math.min(length, so.size - Math.min(offset, so.size)), so.etag);
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length, String etag) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        long n = Math.min(length, Long.MAX_VALUE - offset);
+        return new ResumingInputStream(key, etag, offset, n,
+                                       call(StorageOperation.GET_DATA, () -> hedge(() -> storage.getData(key, offset, n, etag)), maxAttempts));
+    }
+
+    /**
+     * Puts the data to the specified object as a stream.
+     * <p>Opening the stream is retried, failures of the written stream are not retried but count for the circuit breaker.
+     *
+     * @param key the object key
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs or the circuit breaker is open
+     */
+    @Override
+    public OutputStream putData(String key) {
+        return guard(call(StorageOperation.PUT_DATA, () -> storage.putData(key), maxAttempts));
+    }
+
+    /**
+     * Puts the data with the specified metadata to the specified object as a stream.
+     * <p>Opening the stream is retried, failures of the written stream are not retried but count for the circuit breaker.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs or the circuit breaker is open
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        return guard(call(StorageOperation.PUT_DATA, () -> storage.putData(key, meta), maxAttempts));
+    }
+
+    private OutputStream guard(OutputStream out) {
+        return new StorageOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    out.write(b);
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.close();
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void abort() {
+                abort(out);
+            }
+        };
+    }
+
+    @Override
+    public Map<String, String> getMeta(String key) {
+        return call(StorageOperation.GET_META, () -> storage.getMeta(key), maxAttempts);
+    }
+
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        call(StorageOperation.PUT_META, () -> {
+            storage.putMeta(key, meta);
+            return null;
+        }, maxAttempts);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys) {
+        return call(StorageOperation.GET_META_ALL, () -> storage.getMetaAll(keys), maxAttempts);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        return call(StorageOperation.GET_META_ALL, () -> storage.getMetaAll(keys, concurrency), maxAttempts);
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas) {
+        call(StorageOperation.PUT_META_ALL, () -> {
+            storage.putMetaAll(metas);
+            return null;
+        }, maxAttempts);
+    }
+
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        call(StorageOperation.PUT_META_ALL, () -> {
+            storage.putMetaAll(metas, concurrency);
+            return null;
+        }, maxAttempts);
+    }
+
+    @Override
+    public void delete(String key) {
+        call(StorageOperation.DELETE, () -> {
+            storage.delete(key);
+            return null;
+        }, maxAttempts);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        call(StorageOperation.DELETE_ALL, () -> {
+            storage.deleteAll(keys);
+            return null;
+        }, maxAttempts);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys, int concurrency) {
+        call(StorageOperation.DELETE_ALL, () -> {
+            storage.deleteAll(keys, concurrency);
+            return null;
+        }, maxAttempts);
+    }
+
+    private <T> T call(StorageOperation operation, Supplier<T> action, int attempts) {
+        ConnectionStorageException failure = null;
+        for (int attempt = 1; ; attempt++) {
+            if (!section.enter()) {
+                return probe(action, failure);
+            }
+            try {
+                T result = action.get();
+                succeeded();
+                return result;
+            } catch (ConnectionStorageException e) {
+                failed(e);
+                failure = e;
+            } catch (ObjectStorageException e) {
+                succeeded();
+                throw e;
+            } finally {
+                section.leave();
+            }
+            if ((attempt >= attempts) || !backoff(attempt)) {
+                throw failure;
+            }
+            metrics.retried(operation);
+        }
+    }
+
+    private <T> T probe(Supplier<T> action, Throwable cause) {
+        if ((state != CircuitState.OPEN) || (System.nanoTime() - openedAt < openDuration) || !probing.compareAndSet(false, true)) {
+            throw new ConnectionStorageException(String.format("Storage '%s' is unavailable, the circuit breaker is open", getInfo()), cause);
+        }
+        state = CircuitState.HALF_OPEN;
+        try {
+            T result = action.get();
+            close();
+            return result;
+        } catch (ConnectionStorageException e) {
+            open();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } finally {
+            probing.set(false);
+        }
+    }
+
+    private void succeeded() {
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+    }
+
+    private void failed(Throwable e) {
+        if (isRetryable(e) && (failures.incrementAndGet() >= failureThreshold)) {
+            synchronized (this) {
+                if (state == CircuitState.CLOSED) {
+                    open();
+                }
+            }
+        }
+    }
+
+    private synchronized void open() {
+        state = CircuitState.OPEN;
+        openedAt = System.nanoTime();
+        section.disable();
+    }
+
+    private synchronized void close() {
+        failures.set(0);
+        state = CircuitState.CLOSED;
+        section.enable();
+    }
+
+    private boolean backoff(int attempt) {
+        long cap = retryDelay;
+        for (int i = 1; (i < attempt) && (cap < maxRetryDelay); i++) {
+            cap <<= 1;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(Math.min(cap, maxRetryDelay) + 1L));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private InputStream hedge(Supplier<InputStream> action) {
+        if ((hedgeDelay == 0L) || (state != CircuitState.CLOSED)) {
+            return action.get();
+        }
+        CompletableFuture<InputStream> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        launch(action, result, pending);
+        try {
+            try {
+                return result.get(hedgeNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                metrics.hedged(StorageOperation.GET_DATA);
+                pending.incrementAndGet();
+                launch(action, result, pending);
+                return result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new ConnectionStorageException(String.format("Data of the storage '%s' could not be read", getInfo()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(false);
+            throw new ConnectionStorageException(String.format("Data request to the storage '%s' is interrupted", getInfo()), e);
+        }
+    }
+
+    private void launch(Supplier<InputStream> action, CompletableFuture<InputStream> result, AtomicInteger pending) {
+        VirtualThreads.EXECUTOR.execute(() -> {
+            if (!section.enter()) {
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(new ConnectionStorageException(String.format("Storage '%s' is unavailable, the circuit breaker is open", getInfo())));
+                }
+                return;
+            }
+            try {
+                request(action, result, pending);
+            } finally {
+                section.leave();
+            }
+        });
+    }
+
+    private void request(Supplier<InputStream> action, CompletableFuture<InputStream> result, AtomicInteger pending) {
+        long start = System.nanoTime();
+        InputStream in;
+        try {
+            in = action.get();
+        } catch (RuntimeException e) {
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+            return;
+        }
+        record(start);
+        if (!result.complete(in)) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the stream of the slower response is not used
+            }
+        }
+    }
+
+    private void record(long start) {
+        long now = System.nanoTime();
+        latencies[0].record(now - start);
+        latencies[1].record(now - start);
+        long rotated = rotatedAt.get();
+        if ((now - rotated >= HEDGE_WINDOW) && rotatedAt.compareAndSet(rotated, now)) {
+            int w = window;
+            latencies[w & 1].reset();
+            window = w + 1;
+            update(latencies[(w + 1) & 1]);
+        } else {
+            Histogram latency = latencies[window & 1];
+            if ((latency.getCount() & HEDGE_UPDATE_MASK) == 0L) {
+                update(latency);
+            }
+        }
+    }
+
+    private void update(Histogram latency) {
+        hedgeNanos = (latency.getCount() >= MIN_HEDGE_SAMPLES) ? Math.max(hedgeDelay, latency.getValueAtPercentile(hedgePercentile)) : hedgeDelay;
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof ObjectStorageException) {
+                return false;
+            } else if (e instanceof ConnectionStorageException) {
+                return true;
+            }
+        }
+        return error instanceof IOException;
+    }
+
+    private final class ResumingInputStream extends InputStream {
+        private final String key;
+        private final String etag;
+        private final long offset;
+        private final long length;
+        private InputStream in;
+        private long position = 0L;
+        private int resumes = 0;
+
+        ResumingInputStream(String key, String etag, long offset, long length, InputStream in) {
+            this.key = key;
+            this.etag = etag;
+            this.offset = offset;
+            this.length = length;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                try {
+                    int b = in.read();
+                    if (b >= 0) {
+                        position++;
+                    }
+                    return b;
+                } catch (IOException | RuntimeException e) {
+                    resume(e);
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                try {
+                    int n = in.read(b, off, len);
+                    if (n > 0) {
+                        position += n;
+                    }
+                    return n;
+                } catch (IOException | RuntimeException e) {
+                    resume(e);
+                }
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = in.skip(n);
+            position += s;
+            return s;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void resume(Exception e) throws IOException {
+            failed(e);
+            if (!isRetryable(e) || (++resumes >= maxAttempts) || !backoff(resumes)) {
+                if (e instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw (RuntimeException) e;
+            }
+            try {
+                in.close();
+            } catch (IOException ce) {
+                e.addSuppressed(ce);
+            }
+            metrics.retried(StorageOperation.GET_DATA);
+            in = call(StorageOperation.GET_DATA, () -> storage.getData(key, offset + position, length - position, etag), maxAttempts - resumes);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.s3;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * Publisher of the remaining bytes of a byte buffer as a request body.
+ * <p>The bytes are published in slices of {@value #CHUNK_SIZE} bytes without copying, so off-heap buffers are sent directly.
+ * Every subscriber reads the buffer from its original position, so the request may be retried.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class BufferBodyPublisher implements Flow.Publisher<ByteBuffer> {
+    /**
+     * Maximum size of a published slice in bytes.
+     */
+    static final int CHUNK_SIZE = 64 << 10;
+
+    private final ByteBuffer buffer;
+
+    BufferBodyPublisher(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new Subscription(subscriber, buffer.duplicate()));
+    }
+
+    private static final class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer buffer;
+        private long demand = 0L;
+        private boolean draining = false;
+        private boolean done = false;
+
+        Subscription(Flow.Subscriber<? super ByteBuffer> subscriber, ByteBuffer buffer) {
+            this.subscriber = subscriber;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0L) {
+                done = true;
+                subscriber.onError(new IllegalArgumentException(String.format("Illegal demand: %d", n)));
+                return;
+            }
+            demand = (demand + n < 0L) ? Long.MAX_VALUE : demand + n;
+            if (draining) {
+                return;
+            }
+            draining = true;
+            try {
+                while (!done && (demand > 0L) && buffer.hasRemaining()) {
+                    int length = Math.min(CHUNK_SIZE, buffer.remaining());
+                    ByteBuffer chunk = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    demand--;
+                    subscriber.onNext(chunk);
+                }
+                if (!done && !buffer.hasRemaining()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            } finally {
+                draining = false;
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.s3;
+
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Subscriber which collects a response body into a buffer of a {@link BufferPool buffer pool}.
+ * <p>The buffer is allocated for the expected length of the body and is replaced by a larger one if the body exceeds it.
+ * The flipped buffer belongs to the receiver of the body, which releases it to the pool,
+ * and it is released by the subscriber if the body fails.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class BufferBodySubscriber implements HttpResponse.BodySubscriber<ByteBuffer> {
+    private final BufferPool pool;
+    private final CompletableFuture<ByteBuffer> body = new CompletableFuture<>();
+    private ByteBuffer buffer;
+
+    BufferBodySubscriber(BufferPool pool, int length) {
+        this.pool = pool;
+        this.buffer = pool.allocate(length);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        for (ByteBuffer item : items) {
+            if (item.remaining() > buffer.remaining()) {
+                ByteBuffer b = pool.allocate((int) Math.min(Integer.MAX_VALUE - 8L,
+                                                            Math.max((long) buffer.position() + item.remaining(), 2L * buffer.capacity())));
+                b.put(buffer.flip());
+                pool.release(buffer);
+                buffer = b;
+            }
+            buffer.put(item);
+        }
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        pool.release(buffer);
+        buffer = null;
+        body.completeExceptionally(e);
+    }
+
+    @Override
+    public void onComplete() {
+        body.complete(buffer.flip());
+        buffer = null;
+    }
+
+    @Override
+    public CompletionStage<ByteBuffer> getBody() {
+        return body;
+    }
+}
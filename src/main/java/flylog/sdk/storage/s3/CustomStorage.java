@@ -16,24 +16,52 @@
 
 package flylog.sdk.storage.s3;
 
+import flylog.sdk.storage.AsyncStorage;
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
 import flylog.sdk.storage.Storage;
 import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StoragePages;
 import flylog.sdk.storage.StorageType;
+import flylog.sdk.utility.concurrent.Parallel;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Amazon S3 Storage abstraction layer.
+ * <p>Objects are accessed through the S3 REST API of the endpoint, any S3-compatible storage can be used.
  *
  * @author Dmitry Kotlyarov
  * @since 1.0
  */
-public class CustomStorage implements Storage, Serializable {
+public class CustomStorage implements Storage, AsyncStorage, Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Minimum size of upload and download parts in bytes.
+     */
+    public static final int MIN_PART_SIZE = 5 << 20;
+
+    /**
+     * Default size of upload and download parts in bytes.
+     */
+    public static final int DEFAULT_PART_SIZE = 8 << 20;
+
+    /**
+     * Default maximum number of concurrent part requests of one data stream.
+     */
+    public static final int DEFAULT_PART_CONCURRENCY = 4;
+
     /**
      * Storage type.
      */
@@ -65,7 +93,25 @@ public class CustomStorage implements Storage, Serializable {
     protected final String info;
 
     /**
-     * Constructs Empty Local Storage with the specified parameters.
+     * Signing region.
+     */
+    protected final String region;
+
+    /**
+     * Size of upload and download parts in bytes.
+     */
+    protected final int partSize;
+
+    /**
+     * Maximum number of concurrent part requests of one data stream, which is also the read-ahead window of downloads in parts.
+     */
+    protected final int partConcurrency;
+
+    private transient volatile S3Client client;
+    private transient volatile PartBufferPool pool;
+
+    /**
+     * Constructs Amazon S3 Storage with the specified parameters.
      *
      * @param endpoint the endpoint URL
      * @param bucket the bucket name
@@ -73,12 +119,52 @@ public class CustomStorage implements Storage, Serializable {
      * @param secretKey the secret key
      */
     public CustomStorage(String endpoint, String bucket, String accessKey, String secretKey) {
-        this.type = StorageType.ES;
+        this(endpoint, bucket, accessKey, secretKey, DEFAULT_PART_SIZE, DEFAULT_PART_CONCURRENCY);
+    }
+
+    /**
+     * Constructs Amazon S3 Storage with the specified parameters.
+     *
+     * @param endpoint the endpoint URL
+     * @param bucket the bucket name
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     * @param partSize the size of upload and download parts in bytes, at least {@value #MIN_PART_SIZE}
+     * @param partConcurrency the maximum number of concurrent part requests of one data stream, also the read-ahead window of downloads
+     */
+    public CustomStorage(String endpoint, String bucket, String accessKey, String secretKey, int partSize, int partConcurrency) {
+        this(StorageType.S3, endpoint, bucket, accessKey, secretKey, S3Client.getRegion(endpoint), partSize, partConcurrency);
+    }
+
+    /**
+     * Constructs S3-compatible Storage with the specified parameters.
+     *
+     * @param type the storage type
+     * @param endpoint the endpoint URL
+     * @param bucket the bucket name
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     * @param region the signing region
+     * @param partSize the size of upload and download parts in bytes, at least {@value #MIN_PART_SIZE}
+     * @param partConcurrency the maximum number of concurrent part requests of one data stream, also the read-ahead window of downloads
+     */
+    protected CustomStorage(StorageType type, String endpoint, String bucket, String accessKey, String secretKey, String region,
+                            int partSize, int partConcurrency) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException(String.format("Part size %d is less than %d", partSize, MIN_PART_SIZE));
+        }
+        if (partConcurrency < 1) {
+            throw new IllegalArgumentException(String.format("Illegal part concurrency: %d", partConcurrency));
+        }
+        this.type = type;
         this.endpoint = endpoint;
         this.bucket = bucket;
         this.accessKey = accessKey;
         this.secretKey = secretKey;
         this.info = String.format("[%s]-[%s]: %s://%s", this.endpoint, this.accessKey, this.type, this.bucket);
+        this.region = region;
+        this.partSize = partSize;
+        this.partConcurrency = partConcurrency;
     }
 
     /**
@@ -88,7 +174,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public StorageType getType() {
-        return null;
+        return type;
     }
 
     /**
@@ -98,7 +184,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getEndpoint() {
-        return "";
+        return endpoint;
     }
 
     /**
@@ -108,7 +194,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getBucket() {
-        return "";
+        return bucket;
     }
 
     /**
@@ -118,7 +204,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getAccessKey() {
-        return "";
+        return accessKey;
     }
 
     /**
@@ -128,7 +214,7 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getSecretKey() {
-        return "";
+        return secretKey;
     }
 
     /**
@@ -138,11 +224,50 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public String getInfo() {
-        return "";
+        return info;
+    }
+
+    /**
+     * Finds the specified storage object.
+     * <p>The object is requested with a {@code HEAD} request instead of listing.
+     *
+     * @param key the object key
+     * @return storage object if it exists, {@code null} otherwise
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public StorageObject find(String key) {
+        S3Client c = getClient();
+        HttpHeaders headers = c.head(key);
+        return (headers != null) ? c.toObject(key, headers) : null;
+    }
+
+    /**
+     * Finds the specified storage objects with the specified number of concurrent requests.
+     * <p>The {@code HEAD} requests are pipelined asynchronously without blocking threads.
+     *
+     * @param keys        the object keys
+     * @param concurrency the maximum number of concurrent requests
+     * @return map of the existing storage objects by keys in the order of the keys
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public Map<String, StorageObject> findAll(Collection<String> keys, int concurrency) {
+        S3Client c = getClient();
+        List<String> ks = List.copyOf(keys);
+        List<StorageObject> sos = Parallel.mapAsync(ks, concurrency, key -> c.headAsync(key).thenApply(headers -> (headers != null) ? c.toObject(key, headers) : null));
+        Map<String, StorageObject> result = new LinkedHashMap<>();
+        for (int i = 0; i < ks.size(); i++) {
+            if (sos.get(i) != null) {
+                result.put(ks.get(i), sos.get(i));
+            }
+        }
+        return result;
     }
 
     /**
      * Iterates over the storage objects with the specified prefix.
+     * <p>Pages are requested lazily with continuation tokens, the next page is prefetched while the current one is consumed.
      *
      * @param prefix  the objects prefix
      * @param maxKeys the number of storage object keys in one request
@@ -151,11 +276,28 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public Iterable<StorageObject> list(String prefix, int maxKeys) {
-        return null;
+        S3Client c = getClient();
+        return new StoragePages(token -> c.listAsync(prefix, maxKeys, token));
+    }
+
+    /**
+     * Iterates over the storage objects with the specified prefix asynchronously.
+     * <p>The first page is requested without blocking, the next pages are requested during iteration.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the number of storage object keys in one request
+     * @return future of the iterable with storage objects
+     */
+    @Override
+    public CompletableFuture<Iterable<StorageObject>> listAsync(String prefix, int maxKeys) {
+        S3Client c = getClient();
+        return new StoragePages(token -> c.listAsync(prefix, maxKeys, token)).start();
     }
 
     /**
      * Gets the data of the specified object as a stream.
+     * <p>The data is downloaded in ranged parts of {@link #getPartSize() part size}, up to {@link #getPartConcurrency() part concurrency}
+     * parts are read ahead concurrently.
      *
      * @param key the object key
      * @return data input stream
@@ -164,11 +306,73 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public InputStream getData(String key) {
-        return null;
+        return getClient().await(getDataAsync(key), key);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object as a stream.
+     * <p>The range is requested with the HTTP {@code Range} header, so the preceding data is not transferred.
+     * Ranges longer than one part are downloaded in parallel like {@link #getData(String) whole objects}.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     * @return data input stream
+     * @throws IllegalArgumentException   if the offset or the length is negative
+     * @throws ObjectStorageException     if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        return getData(key, offset, length, null);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified version of the specified object as a stream.
+     * <p>All parts are requested with {@code If-Match}, so the read fails if the object is replaced.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes
+     * @param etag the expected object ETag or {@code null} for any version
+     * @return data input stream
+     * @throws IllegalArgumentException   if the offset or the length is negative
+     * @throws ObjectStorageException     if the object does not exist or has another ETag
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public InputStream getData(String key, long offset, long length, String etag) {
+        if ((offset < 0L) || (length < 0L)) {
+            throw new IllegalArgumentException(String.format("Illegal range: offset %d, length %d", offset, length));
+        }
+        if (length == 0L) {
+            StorageObject so = get(key);
+            if ((etag != null) && !etag.equals(so.etag)) {
+                throw new ObjectStorageException(String.format("Object '%s' is modified", getInfo(key)));
+            }
+            return InputStream.nullInputStream();
+        }
+        S3Client c = getClient();
+        return c.await(ParallelInputStream.openAsync(c, key, offset, length, partSize, partConcurrency, etag), key);
+    }
+
+    /**
+     * Gets the data of the specified object as a stream asynchronously.
+     * <p>The future is completed when the first part is received.
+     *
+     * @param key the object key
+     * @return future of the data input stream
+     */
+    @Override
+    public CompletableFuture<InputStream> getDataAsync(String key) {
+        return ParallelInputStream.openAsync(getClient(), key, 0L, -1L, partSize, partConcurrency, null);
     }
 
     /**
      * Put the data to the specified object as a stream.
+     * <p>The data is uploaded in parts of {@link #getPartSize() part size} with up to {@link #getPartConcurrency() part concurrency}
+     * parts in flight, the upload is completed when the stream is closed.
+     * Data smaller than one part is uploaded with a single request on close.
      *
      * @param key the object key
      * @return data output stream
@@ -177,7 +381,35 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public OutputStream putData(String key) {
-        return null;
+        return putData(key, Map.of());
+    }
+
+    /**
+     * Put the data with the specified metadata to the specified object as a stream.
+     * <p>The metadata is sent with the single request or with the creation of the multipart upload,
+     * so the object is created with its metadata. Data up to one part is buffered without a part buffer of the storage.
+     *
+     * @param key  the object key
+     * @param meta the metadata
+     * @return data output stream
+     * @throws ObjectStorageException     if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        return new MultipartOutputStream(getClient(), getPool(), key, Map.copyOf(meta), partConcurrency);
+    }
+
+    /**
+     * Puts the data to the specified object asynchronously.
+     *
+     * @param key  the object key
+     * @param data the data buffer
+     * @return future of the completion
+     */
+    @Override
+    public CompletableFuture<Void> putDataAsync(String key, ByteBuffer data) {
+        return getClient().putAsync(key, data.duplicate(), Map.of()).thenApply(etag -> null);
     }
 
     /**
@@ -190,11 +422,34 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public Map<String, String> getMeta(String key) {
-        return Map.of();
+        S3Client c = getClient();
+        HttpHeaders headers = c.head(key);
+        if (headers == null) {
+            throw new ObjectStorageException(String.format("Object '%s' is not found", getInfo(key)));
+        }
+        return c.toMeta(headers);
+    }
+
+    /**
+     * Gets the metadata of the specified object as a string map asynchronously.
+     *
+     * @param key the object key
+     * @return future of the metadata string map
+     */
+    @Override
+    public CompletableFuture<Map<String, String>> getMetaAsync(String key) {
+        S3Client c = getClient();
+        return c.headAsync(key).thenApply(headers -> {
+            if (headers == null) {
+                throw new ObjectStorageException(String.format("Object '%s' is not found", getInfo(key)));
+            }
+            return c.toMeta(headers);
+        });
     }
 
     /**
      * Put the metadata to the specified object as a string map.
+     * <p>The object is copied to itself with the replaced metadata.
      *
      * @param key  the object key
      * @param meta the metadata
@@ -203,5 +458,167 @@ public class CustomStorage implements Storage, Serializable {
      */
     @Override
     public void putMeta(String key, Map<String, String> meta) {
+        getClient().copy(key, meta);
+    }
+
+    /**
+     * Puts the metadata to the specified object as a string map asynchronously.
+     *
+     * @param key  the object key
+     * @param meta the metadata
+     * @return future of the completion
+     */
+    @Override
+    public CompletableFuture<Void> putMetaAsync(String key, Map<String, String> meta) {
+        return getClient().copyAsync(key, meta);
+    }
+
+    /**
+     * Gets the metadata of the specified objects as string maps with the specified number of concurrent requests.
+     * <p>The {@code HEAD} requests are pipelined asynchronously without blocking threads.
+     *
+     * @param keys        the object keys
+     * @param concurrency the maximum number of concurrent requests
+     * @return map of the metadata string maps by keys in the order of the keys
+     * @throws ObjectStorageException     if any object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public Map<String, Map<String, String>> getMetaAll(Collection<String> keys, int concurrency) {
+        List<String> ks = List.copyOf(keys);
+        List<Map<String, String>> metas = Parallel.mapAsync(ks, concurrency, this::getMetaAsync);
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        for (int i = 0; i < ks.size(); i++) {
+            result.put(ks.get(i), metas.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Puts the metadata to the specified objects as string maps with the specified number of concurrent requests.
+     * <p>The copy requests are pipelined asynchronously without blocking threads.
+     *
+     * @param metas       the map of the metadata by object keys
+     * @param concurrency the maximum number of concurrent requests
+     * @throws ObjectStorageException     if any object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void putMetaAll(Map<String, Map<String, String>> metas, int concurrency) {
+        Parallel.mapAsync(metas.entrySet(), concurrency, e -> putMetaAsync(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Deletes the specified object.
+     *
+     * @param key the object key
+     * @throws ObjectStorageException     if the object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void delete(String key) {
+        S3Client c = getClient();
+        c.await(c.deleteAsync(key), key);
+    }
+
+    /**
+     * Deletes the specified objects with the specified number of concurrent requests.
+     * <p>Keys are deleted with multi-object delete requests of up to {@value S3Client#MAX_DELETE_KEYS} keys
+     * if the storage supports them, otherwise with pipelined single delete requests.
+     *
+     * @param keys        the object keys
+     * @param concurrency the maximum number of concurrent requests
+     * @throws ObjectStorageException     if any object could not be deleted
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void deleteAll(Collection<String> keys, int concurrency) {
+        S3Client c = getClient();
+        if (isMultiDeleteSupported()) {
+            List<String> ks = List.copyOf(keys);
+            List<List<String>> batches = new ArrayList<>();
+            for (int i = 0; i < ks.size(); i += S3Client.MAX_DELETE_KEYS) {
+                batches.add(ks.subList(i, Math.min(ks.size(), i + S3Client.MAX_DELETE_KEYS)));
+            }
+            Parallel.mapAsync(batches, concurrency, c::deleteAllAsync);
+        } else {
+            Parallel.mapAsync(keys, concurrency, c::deleteAsync);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the storage supports multi-object delete requests.
+     *
+     * @return {@code true} if the storage supports multi-object delete requests, {@code false} otherwise
+     */
+    protected boolean isMultiDeleteSupported() {
+        return true;
+    }
+
+    /**
+     * Gets the size of upload and download parts in bytes.
+     *
+     * @return size of upload and download parts in bytes
+     */
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Gets the maximum number of concurrent part requests of one data stream.
+     *
+     * @return maximum number of concurrent part requests
+     */
+    public int getPartConcurrency() {
+        return partConcurrency;
+    }
+
+    /**
+     * Gets the signing region.
+     *
+     * @return signing region
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Gets the S3 client of this storage.
+     *
+     * @return S3 client
+     */
+    protected S3Client getClient() {
+        S3Client c = client;
+        if (c == null) {
+            synchronized (this) {
+                c = client;
+                if (c == null) {
+                    c = new S3Client(endpoint, region, bucket, accessKey, secretKey, info);
+                    client = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Gets the part buffer pool of this storage.
+     * <p>The pool holds up to twice as many buffers as concurrent parts of one stream, which bounds the memory of all multipart uploads,
+     * and a stream holds at most as many buffers as its concurrent parts, so two streams may upload at full concurrency.
+     *
+     * @return part buffer pool
+     */
+    PartBufferPool getPool() {
+        PartBufferPool p = pool;
+        if (p == null) {
+            synchronized (this) {
+                p = pool;
+                if (p == null) {
+                    p = new PartBufferPool(partSize, 2 * partConcurrency);
+                    pool = p;
+                }
+            }
+        }
+        return p;
     }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.s3;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.StorageException;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Output stream which uploads the data of a storage object in parts.
+ * <p>Data up to one part is collected in a pooled off-heap buffer which grows with the data and is uploaded with a single request,
+ * so small objects take no part buffers. Larger data is collected in part buffers, full parts are uploaded concurrently
+ * while the next part is written. The multipart upload is created with the first full part and completed on {@link #close() close}.
+ * <p>A stream holds at most as many part buffers as its concurrency, written and uploading parts together,
+ * and waits for its own parts before it takes a buffer of the shared part buffer pool.
+ * <p>If any part or write fails, the upload is aborted and the failure is thrown by the next call of this stream,
+ * {@link #close() close} in particular, so a failed stream never puts or completes a partial object.
+ * An {@link #abort() aborted} stream aborts the upload, so the object is not replaced.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class MultipartOutputStream extends StorageOutputStream {
+    /**
+     * Maximum number of parts of a multipart upload.
+     */
+    public static final int MAX_PARTS = 10000;
+
+    private static final int INITIAL_SIZE = 64 << 10;
+
+    private final S3Client client;
+    private final PartBufferPool pool;
+    private final String key;
+    private final Map<String, String> meta;
+    private final Semaphore permits;
+    private final List<CompletableFuture<String>> parts = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final byte[] single = new byte[1];
+    private String uploadId = null;
+    private ByteBuffer buffer = null;
+    private boolean borrowed = false;
+    private boolean discarded = false;
+    private boolean closed = false;
+
+    MultipartOutputStream(S3Client client, PartBufferPool pool, String key, Map<String, String> meta, int concurrency) {
+        this.client = client;
+        this.pool = pool;
+        this.key = key;
+        this.meta = meta;
+        this.permits = new Semaphore(Math.max(1, concurrency));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        check();
+        try {
+            while (len > 0) {
+                if (buffer == null) {
+                if (uploadId == null) {
+                        buffer = allocate(INITIAL_SIZE);
+                    } else {
+                        borrow();
+                        buffer = pool.borrow();
+                    }
+                } else if (!buffer.hasRemaining()) {
+                    if (buffer.limit() < pool.getBufferSize()) {
+                        grow();
+                    } else {
+                        upload();
+                        continue;
+                    }
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the remaining data, waits for all parts and completes the upload.
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            check();
+            if (uploadId == null) {
+                ByteBuffer b = (buffer != null) ? buffer.flip() : ByteBuffer.allocate(0);
+                try {
+                    client.put(key, b, meta);
+                } finally {
+                    release();
+                }
+            } else {
+                if ((buffer != null) && (buffer.position() > 0)) {
+                    upload();
+                }
+                release();
+                List<String> etags = new ArrayList<>(parts.size());
+                for (CompletableFuture<String> part : parts) {
+                    etags.add(client.await(part, key));
+                }
+                client.await(client.completeUploadAsync(key, uploadId, etags), key);
+            }
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    private void upload() {
+        if (parts.size() >= MAX_PARTS) {
+            throw new ObjectStorageException(String.format("Object '%s' exceeds %d parts", client.getInfo(key), MAX_PARTS));
+        }
+        if (uploadId == null) {
+            borrow();
+            try {
+                pool.acquire();
+            } catch (RuntimeException e) {
+                permits.release();
+                borrowed = false;
+                throw e;
+            }
+            uploadId = client.await(client.createUploadAsync(key, meta), key);
+        }
+        ByteBuffer b = buffer.flip();
+        buffer = null;
+        borrowed = false;
+        CompletableFuture<String> part = client.uploadPartAsync(key, uploadId, parts.size() + 1, b);
+        part.whenComplete((etag, e) -> {
+            pool.release(b);
+            permits.release();
+            if ((e != null) && !failure.compareAndSet(null, e)) {
+                failure.get().addSuppressed(e);
+            }
+        });
+        parts.add(part);
+    }
+
+    private ByteBuffer allocate(int size) {
+        ByteBuffer b = BufferPool.SHARED.allocate(Math.min(size, pool.getBufferSize()));
+        return b.limit(Math.min(b.capacity(), pool.getBufferSize()));
+    }
+
+    private void grow() {
+        ByteBuffer b = allocate(2 * buffer.limit());
+        b.put(buffer.flip());
+        BufferPool.SHARED.release(buffer);
+        buffer = b;
+    }
+
+    private void borrow() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionStorageException(String.format("Object '%s' upload is interrupted", client.getInfo(key)), e);
+        }
+        borrowed = true;
+    }
+
+    private void fail(Throwable e) {
+        if (!failure.compareAndSet(null, e) && (failure.get() != e)) {
+            failure.get().addSuppressed(e);
+        }
+        discard();
+    }
+
+    private void check() {
+        Throwable e = failure.get();
+        if (e != null) {
+            Throwable cause = ((e.getCause() != null) && !(e instanceof StorageException)) ? e.getCause() : e;
+            if (cause instanceof StorageException) {
+                throw (StorageException) cause;
+            } else {
+                throw new ConnectionStorageException(String.format("Object '%s' part could not be uploaded", client.getInfo(key)), cause);
+            }
+        }
+    }
+
+    private void release() {
+        if (borrowed) {
+            if (buffer != null) {
+                pool.release(buffer);
+            }
+            permits.release();
+            borrowed = false;
+        } else {
+            BufferPool.SHARED.release(buffer);
+        }
+        buffer = null;
+    }
+
+    /**
+     * Aborts the multipart upload and closes this stream, the object is not replaced.
+     */
+    @Override
+    public void abort() {
+        if (!closed) {
+            closed = true;
+            discard();
+        }
+    }
+
+    private void discard() {
+        if (discarded) {
+            return;
+        }
+        discarded = true;
+        release();
+        if (uploadId != null) {
+            CompletableFuture<?>[] pending = parts.toArray(new CompletableFuture<?>[0]);
+            CompletableFuture.allOf(Arrays.stream(pending).map(p -> p.handle((r, e) -> null)).toArray(CompletableFuture<?>[]::new))
+                             .thenCompose(v -> client.abortUploadAsync(key, uploadId));
+        }
+    }
+}
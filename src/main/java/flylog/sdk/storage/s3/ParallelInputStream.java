@@ -0,0 +1,211 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.s3;
+
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Input stream which downloads the data of a storage object in ranged parts.
+ * <p>Up to the read-ahead window of parts following the part being read are requested concurrently over separate connections,
+ * and the parts are returned in order.
+ * The first part determines the object size and the ETag, the following parts are requested with {@code If-Match},
+ * so an object replaced during the read fails the stream instead of mixing the data of different versions.
+ * <p>Parts are received into off-heap buffers of the {@link BufferPool#SHARED shared buffer pool},
+ * which are released when the part is read or the stream is closed.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class ParallelInputStream extends InputStream {
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final S3Client client;
+    private final String key;
+    private final int partSize;
+    private final int window;
+    private final ArrayDeque<CompletableFuture<ByteBuffer>> parts;
+    private final String etag;
+    private final long end;
+    private long next;
+    private ByteBuffer buffer;
+    private boolean closed = false;
+
+    private ParallelInputStream(S3Client client, String key, long offset, long length, int partSize, int window,
+                                HttpResponse<ByteBuffer> first) {
+        this.client = client;
+        this.key = key;
+        this.partSize = partSize;
+        this.window = Math.max(1, window);
+        this.parts = new ArrayDeque<>(this.window);
+        if (first == null) {
+            this.etag = null;
+            this.end = offset;
+            this.next = offset;
+            this.buffer = null;
+        } else if (first.statusCode() == 206) {
+            Matcher m = CONTENT_RANGE.matcher(first.headers().firstValue("Content-Range").orElse(""));
+            if (!m.matches() || m.group(3).equals("*") || (Long.parseLong(m.group(1)) != offset)) {
+                BufferPool.SHARED.release(first.body());
+                throw new ObjectStorageException(String.format("Object '%s' range response is illegal", client.getInfo(key)));
+            }
+            long size = Long.parseLong(m.group(3));
+            this.etag = S3Client.etag(first.headers());
+            this.end = ((length < 0L) || (length >= size - offset)) ? size : offset + length;
+            this.buffer = first.body();
+            buffer.limit((int) Math.min(buffer.limit(), end - offset));
+            this.next = offset + buffer.limit();
+        } else {
+            ByteBuffer body = first.body();
+            this.etag = null;
+            this.end = ((length < 0L) || (length >= body.limit() - offset)) ? body.limit() : offset + length;
+            this.buffer = body;
+            buffer.position((int) Math.min(offset, body.limit()));
+            buffer.limit((int) Math.max(buffer.position(), end));
+            this.next = end;
+        }
+        request();
+    }
+
+    /**
+     * Opens the stream of the specified range of the specified object asynchronously.
+     * <p>The future is completed when the first part is received.
+     *
+     * @param client the S3 client
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes or {@code -1} for the whole object
+     * @param partSize the size of parts in bytes
+     * @param window the maximum number of parts requested ahead of the part being read
+     * @param etag the expected object ETag or {@code null} for any version
+     *
+     * @return future of the input stream
+     */
+    static CompletableFuture<InputStream> openAsync(S3Client client, String key, long offset, long length, int partSize, int window, String etag) {
+        long n = (length < 0L) ? partSize : Math.min(partSize, length);
+        return client.getPartAsync(key, offset, n, etag)
+                     .thenApply(first -> new ParallelInputStream(client, key, offset, length, partSize, window, first));
+    }
+
+    @Override
+    public int read() throws IOException {
+        return available(true) ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!available(true)) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if ((n <= 0L) || !available(true)) {
+            return 0L;
+        }
+        int s = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + s);
+        return s;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return available(false) ? buffer.remaining() : 0;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long t = 0L;
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (available(true)) {
+            t += channel.write(buffer);
+        }
+        return t;
+    }
+
+    /**
+     * Releases the current part and the pending parts when they are received.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            BufferPool.SHARED.release(buffer);
+            buffer = null;
+            for (CompletableFuture<ByteBuffer> part : parts) {
+                part.thenAccept(BufferPool.SHARED::release);
+            }
+            parts.clear();
+        }
+    }
+
+    private boolean available(boolean wait) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while ((buffer == null) || !buffer.hasRemaining()) {
+            CompletableFuture<ByteBuffer> part = parts.peekFirst();
+            if ((part == null) || (!wait && !part.isDone())) {
+                return false;
+            }
+            parts.removeFirst();
+            BufferPool.SHARED.release(buffer);
+            buffer = null;
+            ByteBuffer b = client.await(part, key);
+            request();
+            buffer = b;
+        }
+        return true;
+    }
+
+    private void request() {
+        while ((parts.size() < window) && (next < end)) {
+            long offset = next;
+            int length = (int) Math.min(partSize, end - offset);
+            parts.addLast(client.getPartAsync(key, offset, length, etag).thenApply(response -> {
+                if ((response == null) || (response.statusCode() != 206) || (response.body().remaining() != length)) {
+                    if (response != null) {
+                        BufferPool.SHARED.release(response.body());
+                    }
+                    throw new ObjectStorageException(String.format("Object '%s' is modified", client.getInfo(key)));
+                }
+                return response.body();
+            }));
+            next += length;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.s3;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded set of part buffers shared by the multipart uploads of a storage.
+ * <p>Buffers are borrowed from the {@link BufferPool#SHARED shared buffer pool} up to the capacity of the set,
+ * then borrowers wait for returned buffers, which limits the memory of all concurrent uploads.
+ * A permit may also be {@link #acquire() acquired} for a buffer allocated by the borrower, it is returned with the buffer.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+final class PartBufferPool {
+    private final int bufferSize;
+    private final Semaphore permits;
+
+    PartBufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.permits = new Semaphore(capacity);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    ByteBuffer borrow() {
+        acquire();
+        return BufferPool.SHARED.allocate(bufferSize).limit(bufferSize);
+    }
+
+    void acquire() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionStorageException("Part buffer wait is interrupted", e);
+        }
+    }
+
+    void release(ByteBuffer buffer) {
+        BufferPool.SHARED.release(buffer);
+        permits.release();
+    }
+}
@@ -0,0 +1,966 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.storage.s3;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.StorageException;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StoragePage;
+import flylog.sdk.utility.buffer.BufferPool;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client of the Amazon S3 REST API.
+ * <p>Requests are signed with AWS Signature Version 4 and addressed in the path style,
+ * which is also accepted by S3-compatible storages and by the XML API of Google Cloud Storage with HMAC keys.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class S3Client {
+    /**
+     * Prefix of user metadata headers.
+     */
+    public static final String META_PREFIX = "x-amz-meta-";
+
+    /**
+     * Payload hash of requests with unsigned payload.
+     */
+    public static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    /**
+     * Maximum number of keys in one list request.
+     */
+    public static final int MAX_LIST_KEYS = 1000;
+
+    /**
+     * Maximum number of keys in one multi-object delete request.
+     */
+    public static final int MAX_DELETE_KEYS = 1000;
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT).withZone(ZoneOffset.UTC);
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Pattern REGION = Pattern.compile("(?:^|\\.)s3[.-](?:dualstack\\.)?([a-z]{2}(?:-gov)?-[a-z]+-\\d+)\\.amazonaws\\.com$");
+
+    /**
+     * Endpoint URL.
+     */
+    protected final String endpoint;
+
+    /**
+     * Signing region.
+     */
+    protected final String region;
+
+    /**
+     * Bucket name.
+     */
+    protected final String bucket;
+
+    /**
+     * Access key.
+     */
+    protected final String accessKey;
+
+    /**
+     * Secret key.
+     */
+    protected final String secretKey;
+
+    /**
+     * Storage info.
+     */
+    protected final String info;
+
+    /**
+     * HTTP client.
+     */
+    protected final HttpClient http;
+
+    /**
+     * Constructs a client with the specified parameters.
+     *
+     * @param endpoint the endpoint URL
+     * @param region the signing region
+     * @param bucket the bucket name
+     * @param accessKey the access key, requests are not signed if it is {@code null}
+     * @param secretKey the secret key
+     * @param info the storage info
+     */
+    public S3Client(String endpoint, String region, String bucket, String accessKey, String secretKey, String info) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.info = info;
+        this.http = HttpClient.newBuilder()
+                              .version(HttpClient.Version.HTTP_1_1)
+                              .connectTimeout(Duration.ofSeconds(30L))
+                              .followRedirects(HttpClient.Redirect.NEVER)
+                              .build();
+    }
+
+    /**
+     * Gets the signing region for the specified endpoint URL.
+     * <p>The region is taken from the Amazon S3 endpoint host name, {@code us-east-1} is used for other endpoints.
+     *
+     * @param endpoint the endpoint URL
+     *
+     * @return signing region
+     */
+    public static String getRegion(String endpoint) {
+        String host = URI.create(endpoint).getHost();
+        Matcher matcher = REGION.matcher((host != null) ? host : "");
+        return matcher.find() ? matcher.group(1) : "us-east-1";
+    }
+
+    /**
+     * Lists one page of the objects with the specified prefix.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the maximum number of objects in the page
+     * @param token the continuation token or {@code null} for the first page
+     *
+     * @return list of objects followed by the next continuation token or {@code null} for the last page
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public StoragePage list(String prefix, int maxKeys, String token) {
+        return await(listAsync(prefix, maxKeys, token), prefix);
+    }
+
+    /**
+     * Lists one page of the objects with the specified prefix asynchronously.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the maximum number of objects in the page
+     * @param token the continuation token or {@code null} for the first page
+     *
+     * @return future of the list of objects followed by the next continuation token or {@code null} for the last page
+     */
+    public CompletableFuture<StoragePage> listAsync(String prefix, int maxKeys, String token) {
+        Map<String, String> query = new TreeMap<>();
+        query.put("list-type", "2");
+        query.put("prefix", prefix);
+        query.put("max-keys", Integer.toString((maxKeys > 0) ? maxKeys : MAX_LIST_KEYS));
+        if (token != null) {
+            query.put("continuation-token", token);
+        }
+        HttpRequest request = request("GET", "", query, Map.of(), HttpRequest.BodyPublishers.noBody());
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), prefix)
+                .thenApply(response -> parsePage(prefix, response.body()));
+    }
+
+    /**
+     * Gets the headers of the specified object.
+     *
+     * @param key the object key
+     *
+     * @return object headers or {@code null} if the object does not exist
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public HttpHeaders head(String key) {
+        return await(headAsync(key), key);
+    }
+
+    /**
+     * Gets the headers of the specified object asynchronously.
+     *
+     * @param key the object key
+     *
+     * @return future of the object headers or {@code null} if the object does not exist
+     */
+    public CompletableFuture<HttpHeaders> headAsync(String key) {
+        HttpRequest request = request("HEAD", key, Map.of(), Map.of(), HttpRequest.BodyPublishers.noBody());
+        return executeAsync(request, HttpResponse.BodyHandlers.discarding(), key).thenApply(response -> {
+            if (response.statusCode() == 404) {
+                return null;
+            }
+            check(key, response.statusCode(), null);
+            return response.headers();
+        });
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes or {@code -1} for the whole object
+     *
+     * @return data input stream
+     *
+     * @throws ObjectStorageException if the object does not exist
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public InputStream get(String key, long offset, long length) {
+        return await(getAsync(key, offset, length), key);
+    }
+
+    /**
+     * Gets the specified range of the data of the specified object asynchronously.
+     * <p>The future is completed when the response headers are received, the data is streamed afterwards.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum length of the range in bytes or {@code -1} for the whole object
+     *
+     * @return future of the data input stream
+     */
+    public CompletableFuture<InputStream> getAsync(String key, long offset, long length) {
+        Map<String, String> headers = (length < 0L) ? Map.of() : Map.of("Range", range(offset, length));
+        HttpRequest request = request("GET", key, Map.of(), headers, HttpRequest.BodyPublishers.noBody());
+        return executeAsync(request, HttpResponse.BodyHandlers.ofInputStream(), key).thenApply(response -> {
+            int status = response.statusCode();
+            if (status == 416) {
+                close(response.body());
+                return InputStream.nullInputStream();
+            }
+            check(key, status, response.body());
+            return response.body();
+        });
+    }
+
+    /**
+     * Gets the specified part of the data of the specified object asynchronously.
+     * <p>The part is read into a buffer of the {@link BufferPool#SHARED shared buffer pool}, which is released by the caller.
+     * The request is conditional on the specified ETag if it is not {@code null}.
+     *
+     * @param key the object key
+     * @param offset the offset of the first byte of the part
+     * @param length the length of the part in bytes
+     * @param etag the expected object ETag or {@code null}
+     *
+     * @return future of the response with status {@code 206} or {@code 200}, or {@code null} if the offset is beyond the end of the object
+     */
+    public CompletableFuture<HttpResponse<ByteBuffer>> getPartAsync(String key, long offset, long length, String etag) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Range", range(offset, length));
+        if (etag != null) {
+            headers.put("If-Match", "\"" + etag + "\"");
+        }
+        HttpRequest request = request("GET", key, Map.of(), headers, HttpRequest.BodyPublishers.noBody());
+        HttpResponse.BodyHandler<ByteBuffer> handler = info -> {
+            if ((info.statusCode() >= 200) && (info.statusCode() < 300)) {
+                long expected = info.headers().firstValueAsLong("Content-Length").orElse(length);
+                return new BufferBodySubscriber(BufferPool.SHARED, (int) Math.min(expected, Integer.MAX_VALUE - 8L));
+            } else {
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), ByteBuffer::wrap);
+            }
+        };
+        return executeAsync(request, handler, key).thenApply(response -> {
+            int status = response.statusCode();
+            if (status == 416) {
+                return null;
+            }
+            if ((status < 200) || (status >= 300)) {
+                check(key, status, response.body().array());
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Puts the data and the metadata to the specified object.
+     *
+     * @param key the object key
+     * @param data the data buffer
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data
+     * @param meta the metadata
+     *
+     * @return object ETag
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public String put(String key, byte[] data, int offset, int length, Map<String, String> meta) {
+        return await(putAsync(key, data, offset, length, meta), key);
+    }
+
+    /**
+     * Puts the remaining bytes of the specified buffer and the metadata to the specified object.
+     *
+     * @param key the object key
+     * @param data the data buffer, its position is not changed
+     * @param meta the metadata
+     *
+     * @return object ETag
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public String put(String key, ByteBuffer data, Map<String, String> meta) {
+        return await(putAsync(key, data, meta), key);
+    }
+
+    /**
+     * Puts the data and the metadata to the specified object asynchronously.
+     *
+     * @param key the object key
+     * @param data the data buffer
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data
+     * @param meta the metadata
+     *
+     * @return future of the object ETag
+     */
+    public CompletableFuture<String> putAsync(String key, byte[] data, int offset, int length, Map<String, String> meta) {
+        return putAsync(key, ByteBuffer.wrap(data, offset, length), meta);
+    }
+
+    /**
+     * Puts the remaining bytes of the specified buffer and the metadata to the specified object asynchronously.
+     * <p>Off-heap buffers are sent without copying, so the buffer must not be changed until the future is completed.
+     *
+     * @param key the object key
+     * @param data the data buffer, its position is not changed
+     * @param meta the metadata
+     *
+     * @return future of the object ETag
+     */
+    public CompletableFuture<String> putAsync(String key, ByteBuffer data, Map<String, String> meta) {
+        HttpRequest request = request("PUT", key, Map.of(), toHeaders(meta), body(data));
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenApply(response -> etag(response.headers()));
+    }
+
+    /**
+     * Replaces the metadata of the specified object by copying the object to itself.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @throws ObjectStorageException if the object does not exist or the object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public void copy(String key, Map<String, String> meta) {
+        await(copyAsync(key, meta), key);
+    }
+
+    /**
+     * Replaces the metadata of the specified object by copying the object to itself asynchronously.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> copyAsync(String key, Map<String, String> meta) {
+        Map<String, String> headers = toHeaders(meta);
+        headers.put("x-amz-copy-source", "/" + bucket + "/" + encode(key, false));
+        headers.put("x-amz-metadata-directive", "REPLACE");
+        HttpRequest request = request("PUT", key, Map.of(), headers, HttpRequest.BodyPublishers.noBody());
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenAccept(response -> {
+            String code = element(response.body(), "Code");
+            if (code != null) {
+                throw new ObjectStorageException(String.format("Object '%s' metadata could not be put: %s", getInfo(key), code));
+            }
+        });
+    }
+
+    /**
+     * Creates a multipart upload of the specified object asynchronously.
+     *
+     * @param key the object key
+     * @param meta the metadata of the object
+     *
+     * @return future of the upload identifier
+     */
+    public CompletableFuture<String> createUploadAsync(String key, Map<String, String> meta) {
+        HttpRequest request = request("POST", key, Map.of("uploads", ""), toHeaders(meta), HttpRequest.BodyPublishers.noBody());
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenApply(response -> {
+            String id = element(response.body(), "UploadId");
+            if (id == null) {
+                throw new ObjectStorageException(String.format("Object '%s' upload could not be created", getInfo(key)));
+            }
+            return id;
+        });
+    }
+
+    /**
+     * Uploads the specified part of a multipart upload asynchronously.
+     *
+     * @param key the object key
+     * @param uploadId the upload identifier
+     * @param partNumber the part number starting from 1
+     * @param data the data buffer
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data
+     *
+     * @return future of the part ETag
+     */
+    public CompletableFuture<String> uploadPartAsync(String key, String uploadId, int partNumber, byte[] data, int offset, int length) {
+        return uploadPartAsync(key, uploadId, partNumber, ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Uploads the remaining bytes of the specified buffer as a part of a multipart upload asynchronously.
+     * <p>Off-heap buffers are sent without copying, so the buffer must not be changed until the future is completed.
+     *
+     * @param key the object key
+     * @param uploadId the upload identifier
+     * @param partNumber the part number starting from 1
+     * @param data the data buffer, its position is not changed
+     *
+     * @return future of the part ETag
+     */
+    public CompletableFuture<String> uploadPartAsync(String key, String uploadId, int partNumber, ByteBuffer data) {
+        HttpRequest request = request("PUT", key, Map.of("partNumber", Integer.toString(partNumber), "uploadId", uploadId), Map.of(),
+                                      body(data));
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenApply(response -> etag(response.headers()));
+    }
+
+    /**
+     * Completes the specified multipart upload asynchronously.
+     *
+     * @param key the object key
+     * @param uploadId the upload identifier
+     * @param etags the ETags of the parts in the order of the part numbers
+     *
+     * @return future of the object ETag
+     */
+    public CompletableFuture<String> completeUploadAsync(String key, String uploadId, List<String> etags) {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>\"")
+               .append(escape(etags.get(i))).append("\"</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        HttpRequest request = request("POST", key, Map.of("uploadId", uploadId), Map.of("Content-Type", "application/xml"),
+                                      HttpRequest.BodyPublishers.ofString(xml.toString(), StandardCharsets.UTF_8));
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenApply(response -> {
+            String code = element(response.body(), "Code");
+            if (code != null) {
+                throw toException(key, code.equals("InternalError") || code.equals("SlowDown") ? 500 : 400, code);
+            }
+            String etag = element(response.body(), "ETag");
+            return (etag != null) ? unquote(etag) : null;
+        });
+    }
+
+    /**
+     * Aborts the specified multipart upload asynchronously.
+     *
+     * @param key the object key
+     * @param uploadId the upload identifier
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> abortUploadAsync(String key, String uploadId) {
+        HttpRequest request = request("DELETE", key, Map.of("uploadId", uploadId), Map.of(), HttpRequest.BodyPublishers.noBody());
+        return executeAsync(request, HttpResponse.BodyHandlers.discarding(), key).thenAccept(response -> {
+        });
+    }
+
+    /**
+     * Deletes the specified object asynchronously.
+     *
+     * @param key the object key
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> deleteAsync(String key) {
+        HttpRequest request = request("DELETE", key, Map.of(), Map.of(), HttpRequest.BodyPublishers.noBody());
+        return executeAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenAccept(response -> {
+            if (response.statusCode() != 404) {
+                check(key, response.statusCode(), response.body());
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified objects with one multi-object delete request asynchronously.
+     *
+     * @param keys the object keys, at most {@value #MAX_DELETE_KEYS}
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<Void> deleteAllAsync(List<String> keys) {
+        StringBuilder xml = new StringBuilder("<Delete><Quiet>true</Quiet>");
+        for (String key : keys) {
+            xml.append("<Object><Key>").append(escape(key)).append("</Key></Object>");
+        }
+        xml.append("</Delete>");
+        byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+        String md5;
+        try {
+            md5 = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        String key = keys.isEmpty() ? "" : keys.get(0);
+        HttpRequest request = request("POST", "", Map.of("delete", ""), Map.of("Content-MD5", md5, "Content-Type", "application/xml"),
+                                      HttpRequest.BodyPublishers.ofByteArray(body));
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), key).thenAccept(response -> {
+            String failed = element(response.body(), "Key");
+            if (failed != null) {
+                throw new ObjectStorageException(String.format("Object '%s' could not be deleted: %s", getInfo(failed), element(response.body(), "Code")));
+            }
+        });
+    }
+
+    /**
+     * Creates the signed request with the specified parameters.
+     *
+     * @param method the HTTP method
+     * @param key the object key or an empty string for bucket requests
+     * @param query the query parameters
+     * @param headers the additional headers
+     * @param body the body publisher
+     *
+     * @return signed request
+     */
+    public HttpRequest request(String method, String key, Map<String, String> query, Map<String, String> headers, HttpRequest.BodyPublisher body) {
+        String path = "/" + bucket + (key.isEmpty() ? "" : "/" + encode(key, false));
+        StringBuilder q = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(query).entrySet()) {
+            if (q.length() > 0) {
+                q.append('&');
+            }
+            q.append(encode(e.getKey(), true)).append('=').append(encode(e.getValue(), true));
+        }
+        URI uri = URI.create(endpoint + path + ((q.length() > 0) ? "?" + q : ""));
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                                                 .timeout(Duration.ofMinutes(5L))
+                                                 .method(method, body);
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            builder.header(e.getKey(), e.getValue());
+        }
+        if (accessKey != null) {
+            sign(builder, method, uri, path, q.toString(), headers);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Sends the specified request asynchronously and checks the response status.
+     *
+     * @param request the request
+     * @param handler the response body handler
+     * @param key the object key for error messages
+     * @param <T> the response body type
+     *
+     * @return future of the response with a successful status
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, String key) {
+        return executeAsync(request, handler, key).thenApply(response -> {
+            check(key, response.statusCode(), response.body());
+            return response;
+        });
+    }
+
+    /**
+     * Sends the specified request asynchronously without checking the response status.
+     * <p>I/O errors complete the future with {@link ConnectionStorageException}.
+     *
+     * @param request the request
+     * @param handler the response body handler
+     * @param key the object key for error messages
+     * @param <T> the response body type
+     *
+     * @return future of the response
+     */
+    public <T> CompletableFuture<HttpResponse<T>> executeAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, String key) {
+        return http.sendAsync(request, handler).exceptionallyCompose(e -> {
+            Throwable cause = (e instanceof CompletionException) && (e.getCause() != null) ? e.getCause() : e;
+            return CompletableFuture.failedFuture(new ConnectionStorageException(String.format("Storage '%s' is not accessible", getInfo(key)), cause));
+        });
+    }
+
+    /**
+     * Waits for the specified future and unwraps its storage exceptions.
+     *
+     * @param future the future
+     * @param key the object key for error messages
+     * @param <T> the result type
+     *
+     * @return future result
+     *
+     * @throws StorageException if the future is completed exceptionally
+     */
+    public <T> T await(CompletableFuture<T> future, String key) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof StorageException) {
+                throw (StorageException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new ConnectionStorageException(String.format("Storage '%s' request failed", getInfo(key)), cause);
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectionStorageException(String.format("Storage '%s' request is interrupted", getInfo(key)), e);
+        }
+    }
+
+    /**
+     * Checks the specified response status.
+     *
+     * @param key the object key for error messages
+     * @param status the response status
+     * @param body the response body, an input stream body is closed if the status is not successful
+     *
+     * @throws ObjectStorageException if the object is not found or not accessible
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    public void check(String key, int status, Object body) {
+        if ((status >= 200) && (status < 300)) {
+            return;
+        }
+        byte[] bytes = null;
+        if (body instanceof byte[]) {
+            bytes = (byte[]) body;
+        } else if (body instanceof InputStream) {
+            try (InputStream in = (InputStream) body) {
+                bytes = in.readNBytes(4096);
+            } catch (IOException e) {
+                bytes = null;
+            }
+        }
+        throw toException(key, status, element(bytes, "Code"));
+    }
+
+    /**
+     * Creates the storage exception for the specified response status.
+     *
+     * @param key the object key for error messages
+     * @param status the response status
+     * @param code the error code or {@code null}
+     *
+     * @return storage exception
+     */
+    public StorageException toException(String key, int status, String code) {
+        String c = (code != null) ? code : Integer.toString(status);
+        if (status == 404) {
+            return new ObjectStorageException(String.format("Object '%s' is not found: %s", getInfo(key), c));
+        } else if (status == 412) {
+            return new ObjectStorageException(String.format("Object '%s' is modified: %s", getInfo(key), c));
+        } else if ((status == 401) || (status == 403)) {
+            return new ObjectStorageException(String.format("Object '%s' is not accessible: %s", getInfo(key), c));
+        } else if ((status == 408) || (status == 429) || (status >= 500)) {
+            return new ConnectionStorageException(String.format("Storage '%s' is not available: %s", getInfo(key), c));
+        } else {
+            return new ObjectStorageException(String.format("Object '%s' request failed: %s", getInfo(key), c));
+        }
+    }
+
+    /**
+     * Creates the storage object from the specified object headers.
+     *
+     * @param key the object key
+     * @param headers the object headers
+     *
+     * @return storage object
+     */
+    public StorageObject toObject(String key, HttpHeaders headers) {
+        long size = headers.firstValueAsLong("Content-Length").orElse(0L);
+        long modified = headers.firstValue("Last-Modified")
+                               .map(v -> ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                               .orElse(0L);
+        return new StorageObject(key, size, etag(headers), modified);
+    }
+
+    /**
+     * Gets the user metadata from the specified object headers.
+     *
+     * @param headers the object headers
+     *
+     * @return metadata string map
+     */
+    public Map<String, String> toMeta(HttpHeaders headers) {
+        Map<String, String> meta = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> e : headers.map().entrySet()) {
+            String name = e.getKey().toLowerCase(Locale.ROOT);
+            if (name.startsWith(META_PREFIX) && !e.getValue().isEmpty()) {
+                meta.put(name.substring(META_PREFIX.length()), e.getValue().get(0));
+            }
+        }
+        return Collections.unmodifiableMap(meta);
+    }
+
+    /**
+     * Gets the storage info with the specified object key.
+     *
+     * @param key the object key
+     *
+     * @return storage info with object key
+     */
+    public String getInfo(String key) {
+        return String.format("%s/%s", info, key);
+    }
+
+    /**
+     * Encodes the specified string according to RFC 3986.
+     *
+     * @param value the string
+     * @param slash {@code true} if slashes should be encoded
+     *
+     * @return encoded string
+     */
+    public static String encode(String value, boolean slash) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(bytes.length + 16);
+        for (byte b : bytes) {
+            char c = (char) (b & 0xff);
+            if (((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9'))
+                    || (c == '-') || (c == '_') || (c == '.') || (c == '~') || ((c == '/') && !slash)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xf, 16)))
+                              .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the text of the first element with the specified name in the specified XML document.
+     *
+     * @param xml the XML document or {@code null}
+     * @param name the element name
+     *
+     * @return element text or {@code null} if it is not found
+     */
+    public static String element(byte[] xml, String name) {
+        if ((xml == null) || (xml.length == 0)) {
+            return null;
+        }
+        try {
+            XMLStreamReader reader = newReader(xml);
+            try {
+                while (reader.hasNext()) {
+                    if ((reader.next() == XMLStreamConstants.START_ELEMENT) && reader.getLocalName().equals(name)) {
+                        return reader.getElementText();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a secure XML stream reader for the specified XML document.
+     *
+     * @param xml the XML document
+     *
+     * @return XML stream reader
+     *
+     * @throws XMLStreamException if the reader could not be created
+     */
+    public static XMLStreamReader newReader(byte[] xml) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(new ByteArrayInputStream(xml));
+    }
+
+    private static HttpRequest.BodyPublisher body(ByteBuffer data) {
+        if (data.hasArray()) {
+            return HttpRequest.BodyPublishers.ofByteArray(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else if (!data.hasRemaining()) {
+            return HttpRequest.BodyPublishers.noBody();
+        } else {
+            return HttpRequest.BodyPublishers.fromPublisher(new BufferBodyPublisher(data), data.remaining());
+        }
+    }
+
+    private StoragePage parsePage(String prefix, byte[] xml) {
+        List<StorageObject> objects = new ArrayList<>();
+        String next = null;
+        boolean truncated = false;
+        try {
+            XMLStreamReader reader = newReader(xml);
+            try {
+                String key = null;
+                long size = 0L;
+                String etag = null;
+                long modified = 0L;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "Contents":
+                                key = null;
+                                size = 0L;
+                                etag = null;
+                                modified = 0L;
+                                break;
+                            case "Key":
+                                key = reader.getElementText();
+                                break;
+                            case "Size":
+                                size = Long.parseLong(reader.getElementText().trim());
+                                break;
+                            case "ETag":
+                                etag = unquote(reader.getElementText());
+                                break;
+                            case "LastModified":
+                                modified = Instant.parse(reader.getElementText().trim()).toEpochMilli();
+                                break;
+                            case "NextContinuationToken":
+                                next = reader.getElementText();
+                                break;
+                            case "IsTruncated":
+                                truncated = Boolean.parseBoolean(reader.getElementText().trim());
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if ((event == XMLStreamConstants.END_ELEMENT) && reader.getLocalName().equals("Contents")) {
+                        objects.add(new StorageObject(key, size, etag, modified));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new ConnectionStorageException(String.format("Storage '%s' returned illegal object list", getInfo(prefix)), e);
+        }
+        return new StoragePage(objects, truncated ? next : null);
+    }
+
+    private void sign(HttpRequest.Builder builder, String method, URI uri, String path, String query, Map<String, String> headers) {
+        String dateTime = DATE_TIME.format(Instant.now());
+        String date = dateTime.substring(0, 8);
+        String host = (uri.getPort() >= 0) ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+        TreeMap<String, String> signed = new TreeMap<>();
+        signed.put("host", host);
+        signed.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        signed.put("x-amz-date", dateTime);
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            String name = e.getKey().toLowerCase(Locale.ROOT);
+            if (name.startsWith("x-amz-")) {
+                signed.put(name, e.getValue().trim());
+            }
+        }
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> e : signed.entrySet()) {
+            canonicalHeaders.append(e.getKey()).append(':').append(e.getValue()).append('\n');
+        }
+        String signedHeaders = String.join(";", signed.keySet());
+        String canonicalRequest = method + '\n' + path + '\n' + query + '\n' + canonicalHeaders + '\n' + signedHeaders + '\n' + UNSIGNED_PAYLOAD;
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + dateTime + '\n' + scope + '\n' + HEX.formatHex(sha256(canonicalRequest));
+        byte[] k = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        k = hmac(k, region);
+        k = hmac(k, "s3");
+        k = hmac(k, "aws4_request");
+        String signature = HEX.formatHex(hmac(k, stringToSign));
+        builder.header("x-amz-date", dateTime)
+               .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+               .header("Authorization", String.format("AWS4-HMAC-SHA256 Credential=%s/%s, SignedHeaders=%s, Signature=%s",
+                                                      accessKey, scope, signedHeaders, signature));
+    }
+
+    private static Map<String, String> toHeaders(Map<String, String> meta) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : meta.entrySet()) {
+            headers.put(META_PREFIX + e.getKey().toLowerCase(Locale.ROOT), e.getValue());
+        }
+        return headers;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&apos;");
+    }
+
+    static String etag(HttpHeaders headers) {
+        return headers.firstValue("ETag").map(S3Client::unquote).orElse(null);
+    }
+
+    private static String range(long offset, long length) {
+        return (length > Long.MAX_VALUE - offset) ? String.format("bytes=%d-", offset) : String.format("bytes=%d-%d", offset, offset + length - 1L);
+    }
+
+    private static String unquote(String etag) {
+        return ((etag.length() >= 2) && etag.startsWith("\"") && etag.endsWith("\"")) ? etag.substring(1, etag.length() - 1) : etag;
+    }
+
+    private static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing to do with a discarded body
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.storage.tier;
+
+import flylog.sdk.storage.ConnectionStorageException;
+import flylog.sdk.storage.ObjectStorageException;
+import flylog.sdk.storage.Storage;
+import flylog.sdk.storage.StorageObject;
+import flylog.sdk.storage.StorageOutputStream;
+import flylog.sdk.storage.StorageType;
+import flylog.sdk.utility.concurrent.VirtualThreads;
+import flylog.sdk.utility.logging.ErrorLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-tier storage which writes objects to a local storage and uploads them to a remote storage in the background.
+ * <p>Written objects are acknowledged as soon as they are committed to the local storage, usually a
+ * {@link flylog.sdk.storage.fs.CustomStorage file system storage}, so writers do not wait for the remote storage
+ * and survive its outages. Every local object is pending: it is uploaded with its metadata by a background scheduler,
+ * retried with exponential backoff until it succeeds, and deleted from the local storage after the upload.
+ * <p>Reads are served by the local storage while an object is resident there and by the remote storage otherwise,
+ * listings merge both storages. The local storage is a durable spool: objects left there by a previous process
+ * are uploaded when a storage is constructed over it again.
+ * <p>Uploads run on virtual threads, so the local objects are guarded by striped {@link ReentrantLock reentrant locks},
+ * which do not pin the carrier threads while they are held over local I/O.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class TieredStorage implements Storage, AutoCloseable {
+    /**
+     * Default maximum number of concurrent uploads.
+     */
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+
+    /**
+     * Default delay of the first retry of a failed upload.
+     */
+    public static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(1L);
+
+    /**
+     * Default maximum delay of retries of a failed upload.
+     */
+    public static final Duration DEFAULT_MAX_RETRY_DELAY = Duration.ofMinutes(5L);
+
+    private static final int LOCK_COUNT = 64;
+
+    /**
+     * Handler of the errors of background uploads.
+     */
+    @FunctionalInterface
+    public interface ErrorHandler {
+        /**
+         * Handles the specified error.
+         *
+         * @param message the error message
+         * @param e the error
+         */
+        public void error(String message, Throwable e);
+    }
+
+    /**
+     * Local storage of written objects.
+     */
+    protected final Storage local;
+
+    /**
+     * Remote storage of uploaded objects.
+     */
+    protected final Storage remote;
+
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final ErrorHandler errors;
+    private final Semaphore uploads;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_COUNT];
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition uploaded = flushLock.newCondition();
+    private final ConcurrentHashMap<String, Upload> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> writes = new ConcurrentHashMap<>();
+    private final DelayQueue<Upload> queue = new DelayQueue<>();
+    private final Thread scheduler;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs and starts a storage with {@value #DEFAULT_UPLOAD_CONCURRENCY} concurrent uploads, retries from {@code 1} second
+     * to {@code 5} minutes and errors logged by the {@link ErrorLog shared error log}.
+     *
+     * @param local the local storage
+     * @param remote the remote storage
+     */
+    public TieredStorage(Storage local, Storage remote) {
+        this(local, remote, DEFAULT_UPLOAD_CONCURRENCY, DEFAULT_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY, ErrorLog::error);
+    }
+
+    /**
+     * Constructs and starts a storage with the specified parameters.
+     * <p>Objects already present in the local storage are scheduled for upload.
+     *
+     * @param local the local storage
+     * @param remote the remote storage
+     * @param uploadConcurrency the maximum number of concurrent uploads
+     * @param retryDelay the delay of the first retry of a failed upload, every next retry doubles it
+     * @param maxRetryDelay the maximum delay of retries
+     * @param errors the handler of upload errors
+     *
+     * @throws ConnectionStorageException if the local storage could not be listed
+     */
+    public TieredStorage(Storage local, Storage remote, int uploadConcurrency, Duration retryDelay, Duration maxRetryDelay, ErrorHandler errors) {
+        if (uploadConcurrency < 1) {
+            throw new IllegalArgumentException(String.format("Illegal upload concurrency: %d", uploadConcurrency));
+        }
+        if (!retryDelay.isPositive() || (maxRetryDelay.compareTo(retryDelay) < 0)) {
+            throw new IllegalArgumentException(String.format("Illegal retry delays: %s, %s", retryDelay, maxRetryDelay));
+        }
+        this.local = local;
+        this.remote = remote;
+        this.retryDelay = retryDelay.toNanos();
+        this.maxRetryDelay = maxRetryDelay.toNanos();
+        this.errors = errors;
+        this.uploads = new Semaphore(uploadConcurrency);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        for (StorageObject so : local.list("", 0)) {
+            schedule(so.key);
+        }
+        this.scheduler = Thread.ofPlatform().daemon().name(String.format("flylog-tier-%08x", ThreadLocalRandom.current().nextInt())).start(this::run);
+    }
+
+    /**
+     * Gets the local storage.
+     *
+     * @return local storage
+     */
+    public Storage getLocal() {
+        return local;
+    }
+
+    /**
+     * Gets the remote storage.
+     *
+     * @return remote storage
+     */
+    public Storage getRemote() {
+        return remote;
+    }
+
+    /**
+     * Gets the number of objects which are not uploaded yet.
+     *
+     * @return number of pending objects
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Waits until all pending objects are uploaded, failed uploads are retried according to their backoff.
+     *
+     * @param timeout the maximum time to wait
+     *
+     * @return {@code true} if all objects are uploaded, {@code false} if the timeout elapsed
+     *
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public boolean flush(Duration timeout) throws InterruptedException {
+        long nanos = timeout.toNanos();
+        flushLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = uploaded.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background scheduler.
+     * <p>Uploads in progress are completed, objects which are not uploaded stay in the local storage.
+     */
+    @Override
+    public void close() {
+        running = false;
+        scheduler.interrupt();
+        try {
+            scheduler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public StorageType getType() {
+        return remote.getType();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return remote.getEndpoint();
+    }
+
+    @Override
+    public String getBucket() {
+        return remote.getBucket();
+    }
+
+    @Override
+    public String getAccessKey() {
+        return remote.getAccessKey();
+    }
+
+    @Override
+    public String getSecretKey() {
+        return remote.getSecretKey();
+    }
+
+    @Override
+    public String getInfo() {
+        return remote.getInfo();
+    }
+
+    @Override
+    public int getConcurrency() {
+        return remote.getConcurrency();
+    }
+
+    @Override
+    public StorageObject find(String key) {
+        StorageObject so = local.find(key);
+        return (so != null) ? so : remote.find(key);
+    }
+
+    /**
+     * Iterates over the storage objects with the specified prefix in both storages.
+     * <p>Objects of both storages are merged by keys, a resident object is listed once as the local object.
+     *
+     * @param prefix the objects prefix
+     * @param maxKeys the number of storage object keys in one request
+     *
+     * @return iterable with storage objects
+     *
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public Iterable<StorageObject> list(String prefix, int maxKeys) {
+        return () -> new MergeIterator(local.list(prefix, maxKeys).iterator(), remote.list(prefix, maxKeys).iterator());
+    }
+
+    @Override
+    public InputStream getData(String key) {
+        if (local.find(key) != null) {
+            try {
+                return local.getData(key);
+            } catch (ObjectStorageException e) {
+                // the object is uploaded and deleted from the local storage in the meantime
+            }
+        }
+        return remote.getData(key);
+    }
+
+    @Override
+    public InputStream getData(String key, long offset, long length) {
+        if (local.find(key) != null) {
+            try {
+                return local.getData(key, offset, length);
+            } catch (ObjectStorageException e) {
+                // the object is uploaded and deleted from the local storage in the meantime
+            }
+        }
+        return remote.getData(key, offset, length);
+    }
+
+    /**
+     * Puts the data to the specified object in the local storage as a stream.
+     * <p>The object is scheduled for upload when the stream is closed.
+     *
+     * @param key the object key
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key) {
+        return scheduling(key, local.putData(key));
+    }
+
+    /**
+     * Puts the data with the specified metadata to the specified object in the local storage as a stream.
+     * <p>The object is scheduled for upload when the stream is closed.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @return data output stream
+     *
+     * @throws ObjectStorageException if the object data could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public OutputStream putData(String key, Map<String, String> meta) {
+        return scheduling(key, local.putData(key, meta));
+    }
+
+    private OutputStream scheduling(String key, OutputStream out) {
+        return new StorageOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                ReentrantLock lock = lock(key);
+                lock.lock();
+                try {
+                    out.close();
+                    writes.merge(key, 1L, Long::sum);
+                    schedule(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void abort() {
+                if (!closed) {
+                    closed = true;
+                    abort(out);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Map<String, String> getMeta(String key) {
+        if (local.find(key) != null) {
+            try {
+                return local.getMeta(key);
+            } catch (ObjectStorageException e) {
+                // the object is uploaded and deleted from the local storage in the meantime
+            }
+        }
+        return remote.getMeta(key);
+    }
+
+    /**
+     * Puts the metadata to the specified object.
+     * <p>The metadata of a resident object is put to the local storage and uploaded with the object.
+     *
+     * @param key the object key
+     * @param meta the metadata
+     *
+     * @throws ObjectStorageException if the object metadata could not be put
+     * @throws ConnectionStorageException if an error in connection occurs
+     */
+    @Override
+    public void putMeta(String key, Map<String, String> meta) {
+        ReentrantLock lock = lock(key);
+        lock.lock();
+        try {
+            if (local.find(key) != null) {
+                local.putMeta(key, meta);
+                writes.merge(key, 1L, Long::sum);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        remote.putMeta(key, meta);
+    }
+
+    @Override
+    public void delete(String key) {
+        ReentrantLock lock = lock(key);
+        lock.lock();
+        try {
+            local.delete(key);
+        } finally {
+            lock.unlock();
+        }
+        remote.delete(key);
+    }
+
+    private ReentrantLock lock(String key) {
+        return locks[key.hashCode() & (LOCK_COUNT - 1)];
+    }
+
+    private void schedule(String key) {
+        Upload upload = new Upload(key, 0, System.nanoTime());
+        if (pending.putIfAbsent(key, upload) == null) {
+            queue.add(upload);
+        }
+    }
+
+    private void remove(String key) {
+        pending.remove(key);
+        flushLock.lock();
+        try {
+            uploaded.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void reschedule(Upload upload, int attempts, long delay) {
+        Upload next = new Upload(upload.key, attempts, System.nanoTime() + delay);
+        pending.put(upload.key, next);
+        queue.add(next);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Upload upload = queue.take();
+                uploads.acquire();
+                VirtualThreads.EXECUTOR.execute(() -> {
+                    try {
+                        upload(upload);
+                    } finally {
+                        uploads.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                if (running) {
+                    errors.error("Tiered storage scheduler is interrupted", e);
+                }
+            }
+        }
+    }
+
+    private void upload(Upload upload) {
+        String key = upload.key;
+        ReentrantLock lock = lock(key);
+        try {
+            long version;
+            StorageObject so;
+            lock.lock();
+            try {
+                version = writes.getOrDefault(key, 0L);
+                so = local.find(key);
+                if (so == null) {
+                    writes.remove(key);
+                    remove(key);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            Map<String, String> meta = local.getMeta(key);
+            try (InputStream in = local.getData(key)) {
+                OutputStream out = remote.putData(key, meta);
+                try {
+                    in.transferTo(out);
+                } catch (IOException | RuntimeException e) {
+                    StorageOutputStream.abort(out);
+                    throw e;
+                }
+                out.close();
+            }
+            boolean deleted;
+            lock.lock();
+            try {
+                StorageObject current = local.find(key);
+                deleted = (current == null);
+                if (!deleted && ((writes.getOrDefault(key, 0L) != version) || !current.etag.equals(so.etag))) {
+                    reschedule(upload, 0, 0L);
+                    return;
+                }
+                if (!deleted) {
+                    local.delete(key);
+                }
+                writes.remove(key);
+                remove(key);
+            } finally {
+                lock.unlock();
+            }
+            if (deleted) {
+                remote.delete(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            int attempts = upload.attempts + 1;
+            long delay = retryDelay;
+            for (int i = 1; (i < attempts) && (delay < maxRetryDelay); i++) {
+                delay <<= 1;
+            }
+            delay = Math.min(delay, maxRetryDelay);
+            errors.error(String.format("Object '%s' could not be uploaded, attempt %d, next retry in %d ms",
+                                       remote.getInfo(key), attempts, TimeUnit.NANOSECONDS.toMillis(delay)), e);
+            reschedule(upload, attempts, delay);
+        }
+    }
+
+    private static final class Upload implements Delayed {
+        final String key;
+        final int attempts;
+        final long due;
+
+        Upload(String key, int attempts, long due) {
+            this.key = key;
+            this.attempts = attempts;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(due, ((Upload) o).due);
+        }
+    }
+
+    private static final class MergeIterator implements Iterator<StorageObject> {
+        private final Iterator<StorageObject> first;
+        private final Iterator<StorageObject> second;
+        private StorageObject nextFirst;
+        private StorageObject nextSecond;
+
+        MergeIterator(Iterator<StorageObject> first, Iterator<StorageObject> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ((nextFirst == null) && first.hasNext()) {
+                nextFirst = first.next();
+            }
+            if ((nextSecond == null) && second.hasNext()) {
+                nextSecond = second.next();
+            }
+            return (nextFirst != null) || (nextSecond != null);
+        }
+
+        @Override
+        public StorageObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StorageObject so;
+            int c = (nextFirst == null) ? 1 : ((nextSecond == null) ? -1 : nextFirst.key.compareTo(nextSecond.key));
+            if (c <= 0) {
+                so = nextFirst;
+                nextFirst = null;
+                if (c == 0) {
+                    nextSecond = null;
+                }
+            } else {
+                so = nextSecond;
+                nextSecond = null;
+            }
+            return so;
+        }
+    }
+}
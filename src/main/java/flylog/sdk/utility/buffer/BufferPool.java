@@ -0,0 +1,382 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.utility.buffer;
+
+import flylog.sdk.utility.logging.ErrorLog;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of off-heap byte buffers shared by storage streams and log encoders.
+ * <p>Buffers are direct byte buffers in power-of-two size classes from {@value #MIN_SIZE} to {@value #MAX_SIZE} bytes,
+ * a request is served by a buffer of the smallest class which fits it, larger buffers are allocated and released without pooling.
+ * Released buffers up to {@value #THREAD_CACHE_MAX_SIZE} bytes are cached by the releasing platform thread,
+ * {@value #THREAD_CACHE_SIZE} buffers of every class, and other buffers are kept in shared stacks up to the capacity of the pool,
+ * so steady-state I/O allocates neither heap nor off-heap memory. Virtual threads are short-lived, so they bypass the thread caches.
+ * <p>A sample of allocations is tracked for leaks: a tracked buffer which becomes unreachable without being released
+ * is reported to the leak handler with the stack trace of its allocation. Tracked buffers are kept in buckets
+ * by identity hash, every bucket has its own lock, so releases of different buffers rarely contend.
+ * <p>A released buffer must not be used anymore, and only buffers allocated by the pool must be released to it,
+ * duplicates and slices in particular must not be released.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class BufferPool {
+    /**
+     * Size of the smallest size class in bytes.
+     */
+    public static final int MIN_SIZE = 4 << 10;
+
+    /**
+     * Size of the largest size class in bytes.
+     */
+    public static final int MAX_SIZE = 16 << 20;
+
+    /**
+     * Size of the largest size class cached by threads in bytes.
+     */
+    public static final int THREAD_CACHE_MAX_SIZE = 256 << 10;
+
+    /**
+     * Maximum number of buffers of one size class cached by a thread.
+     */
+    public static final int THREAD_CACHE_SIZE = 4;
+
+    /**
+     * Default capacity of a pool in bytes.
+     */
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+
+    /**
+     * Default interval of tracked allocations.
+     */
+    public static final int DEFAULT_LEAK_SAMPLING = 128;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final int THREAD_CLASSES = Integer.numberOfTrailingZeros(THREAD_CACHE_MAX_SIZE) - MIN_SHIFT + 1;
+    private static final int TRACK_BUCKETS = 256;
+
+    /**
+     * Shared pool of the SDK.
+     * <p>The capacity is read from the system property {@code flylog.buffer.capacity} and the interval of tracked allocations
+     * from {@code flylog.buffer.leakSampling}, leaks are logged by the {@link ErrorLog shared error log}.
+     */
+    public static final BufferPool SHARED = new BufferPool(Long.getLong("flylog.buffer.capacity", DEFAULT_CAPACITY),
+                                                           Integer.getInteger("flylog.buffer.leakSampling", DEFAULT_LEAK_SAMPLING),
+                                                           ErrorLog::error);
+
+    /**
+     * Handler of leaked buffers.
+     */
+    @FunctionalInterface
+    public interface LeakHandler {
+        /**
+         * Handles the specified leak.
+         *
+         * @param message the leak message
+         * @param trace the stack trace of the allocation of the leaked buffer
+         */
+        public void leaked(String message, Throwable trace);
+    }
+
+    private final long capacity;
+    private final int leakSampling;
+    private final LeakHandler leaks;
+    private final Stack[] stacks = new Stack[CLASSES];
+    private final ThreadLocal<ThreadCache> caches = ThreadLocal.withInitial(ThreadCache::new);
+    private final AtomicLong pooled = new AtomicLong(0L);
+    private final AtomicLong allocated = new AtomicLong(0L);
+    private final AtomicLong leaked = new AtomicLong(0L);
+    private final ReferenceQueue<ByteBuffer> unreachable = new ReferenceQueue<>();
+    private final Bucket[] buckets = new Bucket[TRACK_BUCKETS];
+    private final AtomicInteger tracked = new AtomicInteger(0);
+
+    /**
+     * Constructs a pool with the specified parameters.
+     *
+     * @param capacity the maximum number of bytes of buffers in the shared stacks
+     * @param leakSampling the interval of tracked allocations, {@code 1} to track every allocation, {@code 0} to disable tracking
+     * @param leaks the handler of leaked buffers
+     */
+    public BufferPool(long capacity, int leakSampling, LeakHandler leaks) {
+        if (capacity < 0L) {
+            throw new IllegalArgumentException(String.format("Illegal capacity: %d", capacity));
+        }
+        if (leakSampling < 0) {
+            throw new IllegalArgumentException(String.format("Illegal leak sampling: %d", leakSampling));
+        }
+        this.capacity = capacity;
+        this.leakSampling = leakSampling;
+        this.leaks = leaks;
+        for (int i = 0; i < CLASSES; i++) {
+            stacks[i] = new Stack();
+        }
+        for (int i = 0; i < TRACK_BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Allocates a cleared buffer of at least the specified size in big-endian byte order.
+     * <p>The capacity of the buffer is the size of its size class, which may exceed the requested size.
+     *
+     * @param size the minimum size of the buffer in bytes
+     *
+     * @return buffer
+     */
+    public ByteBuffer allocate(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(String.format("Illegal size: %d", size));
+        }
+        if (leakSampling > 0) {
+            poll();
+        }
+        ByteBuffer buffer = null;
+        if (size <= MAX_SIZE) {
+            int c = index(size);
+            if ((c < THREAD_CLASSES) && !Thread.currentThread().isVirtual()) {
+                buffer = caches.get().pop(c);
+            }
+            if (buffer == null) {
+                buffer = stacks[c].pop();
+                if (buffer != null) {
+                    pooled.addAndGet(-buffer.capacity());
+                }
+            }
+            if (buffer == null) {
+                size = MIN_SIZE << c;
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+            allocated.incrementAndGet();
+        }
+        buffer.clear().order(ByteOrder.BIG_ENDIAN);
+        if ((leakSampling > 0) && ((leakSampling == 1) || (ThreadLocalRandom.current().nextInt(leakSampling) == 0))) {
+            track(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Releases the specified buffer to the pool.
+     * <p>Buffers which are not pooled are left to the garbage collector.
+     *
+     * @param buffer the buffer allocated by this pool or {@code null}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (tracked.get() > 0) {
+            untrack(buffer);
+        }
+        int size = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || (size < MIN_SIZE) || (size > MAX_SIZE) || (Integer.bitCount(size) != 1)) {
+            return;
+        }
+        int c = index(size);
+        if ((c < THREAD_CLASSES) && !Thread.currentThread().isVirtual() && caches.get().push(c, buffer)) {
+            return;
+        }
+        long p;
+        do {
+            p = pooled.get();
+            if (p + size > capacity) {
+                return;
+            }
+        } while (!pooled.compareAndSet(p, p + size));
+        stacks[c].push(buffer);
+    }
+
+    /**
+     * Gets the number of bytes of buffers in the shared stacks.
+     *
+     * @return number of pooled bytes
+     */
+    public long getPooled() {
+        return pooled.get();
+    }
+
+    /**
+     * Gets the number of buffers allocated from off-heap memory.
+     *
+     * @return number of allocated buffers
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * Gets the number of reported leaked buffers.
+     *
+     * @return number of leaked buffers
+     */
+    public long getLeaked() {
+        if (leakSampling > 0) {
+            poll();
+        }
+        return leaked.get();
+    }
+
+    private void track(ByteBuffer buffer) {
+        int b = System.identityHashCode(buffer) & (TRACK_BUCKETS - 1);
+        Track track = new Track(buffer, unreachable, b, new Throwable(String.format("Buffer of %d bytes is allocated", buffer.capacity())));
+        Bucket bucket = buckets[b];
+        bucket.lock.lock();
+        try {
+            track.next = bucket.head;
+            bucket.head = track;
+        } finally {
+            bucket.lock.unlock();
+        }
+        tracked.incrementAndGet();
+    }
+
+    private void untrack(ByteBuffer buffer) {
+        int b = System.identityHashCode(buffer) & (TRACK_BUCKETS - 1);
+        Bucket bucket = buckets[b];
+        Track track = null;
+        bucket.lock.lock();
+        try {
+            for (Track t = bucket.head, prev = null; t != null; prev = t, t = t.next) {
+                if (t.refersTo(buffer)) {
+                    if (prev != null) {
+                        prev.next = t.next;
+                    } else {
+                        bucket.head = t.next;
+                    }
+                    track = t;
+                    break;
+                }
+            }
+        } finally {
+            bucket.lock.unlock();
+        }
+        if (track != null) {
+            track.clear();
+            tracked.decrementAndGet();
+        }
+    }
+
+    private void poll() {
+        Track track;
+        while ((track = (Track) unreachable.poll()) != null) {
+            Bucket bucket = buckets[track.bucket];
+            boolean removed = false;
+            bucket.lock.lock();
+            try {
+                for (Track t = bucket.head, prev = null; t != null; prev = t, t = t.next) {
+                    if (t == track) {
+                        if (prev != null) {
+                            prev.next = t.next;
+                        } else {
+                            bucket.head = t.next;
+                        }
+                        removed = true;
+                        break;
+                    }
+                }
+            } finally {
+                bucket.lock.unlock();
+            }
+            if (removed) {
+                tracked.decrementAndGet();
+                leaked.incrementAndGet();
+                if (leaks != null) {
+                    leaks.leaked("Buffer is garbage collected without being released to the pool", track.trace);
+                }
+            }
+        }
+    }
+
+    private static int index(int size) {
+        return (size <= MIN_SIZE) ? 0 : (32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT);
+    }
+
+    private static final class Stack {
+        private ByteBuffer[] buffers = new ByteBuffer[16];
+        private int count = 0;
+
+        synchronized ByteBuffer pop() {
+            if (count == 0) {
+                return null;
+            }
+            ByteBuffer buffer = buffers[--count];
+            buffers[count] = null;
+            return buffer;
+        }
+
+        synchronized void push(ByteBuffer buffer) {
+            if (count == buffers.length) {
+                buffers = Arrays.copyOf(buffers, 2 * count);
+            }
+            buffers[count++] = buffer;
+        }
+    }
+
+    private static final class ThreadCache {
+        private final ByteBuffer[] buffers = new ByteBuffer[THREAD_CLASSES * THREAD_CACHE_SIZE];
+        private final int[] counts = new int[THREAD_CLASSES];
+
+        ByteBuffer pop(int c) {
+            if (counts[c] == 0) {
+                return null;
+            }
+            int i = c * THREAD_CACHE_SIZE + --counts[c];
+            ByteBuffer buffer = buffers[i];
+            buffers[i] = null;
+            return buffer;
+        }
+
+        boolean push(int c, ByteBuffer buffer) {
+            if (counts[c] == THREAD_CACHE_SIZE) {
+                return false;
+            }
+            buffers[c * THREAD_CACHE_SIZE + counts[c]++] = buffer;
+            return true;
+        }
+    }
+
+    private static final class Bucket {
+        final ReentrantLock lock = new ReentrantLock();
+        Track head;
+    }
+
+    private static final class Track extends PhantomReference<ByteBuffer> {
+        final int bucket;
+        final Throwable trace;
+        Track next;
+
+        Track(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue, int bucket, Throwable trace) {
+            super(buffer, queue);
+            this.bucket = bucket;
+            this.trace = trace;
+        }
+    }
+}
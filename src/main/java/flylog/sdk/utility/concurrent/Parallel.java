@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.utility.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bounded parallel execution of tasks over collections.
+ * <p>Blocking tasks run in a limited number of virtual worker threads, asynchronous tasks are limited by the number of incomplete futures.
+ * <p>Execution stops scheduling new tasks after the first failure, which is rethrown with the other failures suppressed.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class Parallel {
+    private Parallel() {
+    }
+
+    /**
+     * Applies the specified action to every item with the specified parallelism.
+     *
+     * @param items the items
+     * @param parallelism the maximum number of concurrent tasks
+     * @param action the action
+     * @param <T> the item type
+     *
+     * @throws RuntimeException the first failure of the action
+     */
+    public static <T> void forEach(Collection<? extends T> items, int parallelism, Consumer<? super T> action) {
+        map(items, parallelism, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the specified function to every item with the specified parallelism.
+     *
+     * @param items the items
+     * @param parallelism the maximum number of concurrent tasks
+     * @param function the function
+     * @param <T> the item type
+     * @param <R> the result type
+     *
+     * @return results in the order of the items
+     *
+     * @throws RuntimeException the first failure of the function
+     */
+    public static <T, R> List<R> map(Collection<? extends T> items, int parallelism, Function<? super T, ? extends R> function) {
+        List<T> list = new ArrayList<>(items);
+        Object[] results = new Object[list.size()];
+        int workers = Math.min(Math.max(1, parallelism), list.size());
+        if (workers <= 1) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = function.apply(list.get(i));
+            }
+        } else {
+            AtomicInteger next = new AtomicInteger(0);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(workers);
+            for (int w = 0; w < workers; w++) {
+                VirtualThreads.EXECUTOR.execute(() -> {
+                    try {
+                        int i;
+                        while ((failure.get() == null) && ((i = next.getAndIncrement()) < results.length)) {
+                            results[i] = function.apply(list.get(i));
+                        }
+                    } catch (Throwable e) {
+                        if (!failure.compareAndSet(null, e)) {
+                            failure.get().addSuppressed(e);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                next.set(results.length);
+                Thread.currentThread().interrupt();
+            }
+            rethrow(failure.get());
+        }
+        return cast(results);
+    }
+
+    /**
+     * Applies the specified asynchronous function to every item keeping at most the specified number of incomplete futures.
+     *
+     * @param items the items
+     * @param parallelism the maximum number of incomplete futures
+     * @param function the asynchronous function
+     * @param <T> the item type
+     * @param <R> the result type
+     *
+     * @return results in the order of the items
+     *
+     * @throws RuntimeException the first failure of the function or its futures
+     */
+    public static <T, R> List<R> mapAsync(Collection<? extends T> items, int parallelism, Function<? super T, CompletableFuture<? extends R>> function) {
+        List<T> list = new ArrayList<>(items);
+        Object[] results = new Object[list.size()];
+        AtomicInteger next = new AtomicInteger(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CompletableFuture<?>[] chains = new CompletableFuture<?>[Math.min(Math.max(1, parallelism), list.size())];
+        for (int w = 0; w < chains.length; w++) {
+            chains[w] = chain(list, results, next, failure, function);
+        }
+        try {
+            CompletableFuture.allOf(chains).get();
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            next.set(results.length);
+            Thread.currentThread().interrupt();
+        }
+        rethrow(failure.get());
+        return cast(results);
+    }
+
+    private static <T, R> CompletableFuture<Void> chain(List<T> list, Object[] results, AtomicInteger next, AtomicReference<Throwable> failure,
+                                                        Function<? super T, CompletableFuture<? extends R>> function) {
+        int i;
+        if ((failure.get() != null) || ((i = next.getAndIncrement()) >= results.length)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<? extends R> future;
+        try {
+            future = function.apply(list.get(i));
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return future.handle((r, e) -> {
+            if (e != null) {
+                Throwable cause = ((e instanceof CompletionException) && (e.getCause() != null)) ? e.getCause() : e;
+                if (!failure.compareAndSet(null, cause)) {
+                    failure.get().addSuppressed(cause);
+                }
+            } else {
+                results[i] = r;
+            }
+            return null;
+        }).thenComposeAsync(v -> chain(list, results, next, failure, function), VirtualThreads.EXECUTOR);
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new CompletionException(failure);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> List<R> cast(Object[] results) {
+        return (List<R>) Arrays.asList(results);
+    }
+}
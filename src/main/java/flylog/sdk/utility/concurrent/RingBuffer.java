@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.utility.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free ring buffer of preallocated slots for multiple producers and a single consumer.
+ * <p>A producer claims the sequence of a free slot, fills the slot in place and publishes the sequence,
+ * the consumer processes published slots in the order of their sequences and frees them for reuse.
+ * Slots are never allocated after construction, so the buffer does not produce garbage.
+ * <p>The producer and consumer cursors are padded apart, so producers and the consumer do not share a cache line.
+ *
+ * @param <T> the slot type
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class RingBuffer<T> {
+    private static final int TAIL = 16;
+    private static final int HEAD = 32;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLongArray cursors = new AtomicLongArray(HEAD + 16);
+
+    /**
+     * Constructs a ring buffer with the specified capacity and slots.
+     *
+     * @param capacity the number of slots, it is rounded up to a power of two
+     * @param factory the slot factory
+     */
+    public RingBuffer(int capacity, Supplier<? extends T> factory) {
+        if ((capacity < 1) || (capacity > (1 << 30))) {
+            throw new IllegalArgumentException(String.format("Illegal capacity: %d", capacity));
+        }
+        int c = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[c];
+        this.mask = c - 1;
+        this.published = new AtomicLongArray(c);
+        for (int i = 0; i < c; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * Gets the number of slots.
+     *
+     * @return number of slots
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the number of claimed slots which are not processed yet.
+     *
+     * @return number of claimed slots
+     */
+    public int size() {
+        return (int) (cursors.get(TAIL) - cursors.get(HEAD));
+    }
+
+    /**
+     * Claims the sequence of a free slot without waiting.
+     *
+     * @return sequence of the claimed slot or {@code -1} if all slots are claimed
+     */
+    public long tryClaim() {
+        long t;
+        do {
+            t = cursors.get(TAIL);
+            if (t - cursors.get(HEAD) >= slots.length) {
+                return -1L;
+            }
+        } while (!cursors.compareAndSet(TAIL, t, t + 1L));
+        return t;
+    }
+
+    /**
+     * Claims the sequence of a free slot and waits for it if all slots are claimed.
+     * <p>The producer spins, yields and then parks for short periods until the consumer frees a slot.
+     *
+     * @return sequence of the claimed slot
+     */
+    public long claim() {
+        for (int i = 0; ; i++) {
+            long s = tryClaim();
+            if (s >= 0L) {
+                return s;
+            } else if (i < 64) {
+                Thread.onSpinWait();
+            } else if (i < 80) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, 50_000L);
+            }
+        }
+    }
+
+    /**
+     * Gets the slot of the specified claimed sequence.
+     *
+     * @param sequence the claimed sequence
+     *
+     * @return slot
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+
+    /**
+     * Publishes the slot of the specified claimed sequence to the consumer.
+     * <p>Every claimed sequence must be published, even if the producer failed to fill its slot.
+     *
+     * @param sequence the claimed sequence
+     */
+    public void publish(long sequence) {
+        published.set((int) sequence & mask, sequence + 1L);
+    }
+
+    /**
+     * Processes published slots in the order of their sequences with the consumer thread.
+     * <p>Processing stops at the first claimed slot which is not published yet.
+     * Processed slots are freed for reuse, so the consumer must not keep references to them.
+     *
+     * @param consumer the slot consumer
+     * @param max the maximum number of processed slots
+     *
+     * @return number of processed slots
+     */
+    public int drain(Consumer<? super T> consumer, int max) {
+        long h = cursors.get(HEAD);
+        int n = 0;
+        while (n < max) {
+            int index = (int) h & mask;
+            if (published.get(index) != h + 1L) {
+                break;
+            }
+            try {
+                consumer.accept(get(h));
+            } finally {
+                cursors.lazySet(HEAD, ++h);
+                n++;
+            }
+        }
+        return n;
+    }
+}
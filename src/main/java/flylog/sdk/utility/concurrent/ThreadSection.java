@@ -16,21 +16,38 @@
 
 package flylog.sdk.utility.concurrent;
 
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Controls multi-threaded access to a given resource using atomics instead of locks.
  * <p>Multiple threads access a resource while thread section is enabled.
  * <p>An external thread can disable thread section at any time and terminate threads access to the resource.
  * <p>Then it can enable thread section and resume threads access to the resource.
+ * <p>In the striped mode access threads are counted in padded cells selected by thread identifiers, like in {@link java.util.concurrent.atomic.LongAdder LongAdder},
+ * so concurrent {@link #enter() enter} and {@link #leave() leave} calls of different threads do not contend on one cache line,
+ * while {@link #isDisabled() isDisabled} sums all cells.
+ * <p>Waiting threads spin briefly, then yield and then park until the last access thread leaves the disabled section,
+ * so waiting does not occupy a processor and is safe for virtual threads.
  *
  * @author Dmitry Kotlyarov
  * @since 1.0
  */
 public final class ThreadSection {
+    private static final int SPINS = 128;
+    private static final int YIELDS = 16;
+    private static final int PADDING = 16;
+    private static final int STRIPES = Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1);
+
     private final AtomicBoolean enabled;
-    private final AtomicLong count = new AtomicLong(0L);
+    private final AtomicLong count;
+    private final AtomicLongArray cells;
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
 
     /**
      * Constructs a thread section with the specified state.
@@ -38,7 +55,30 @@ public final class ThreadSection {
      * @param enabled the state of a thread section {@code true} - enabled or {@code false} - disabled
      */
     public ThreadSection(boolean enabled) {
+        this(enabled, false);
+    }
+
+    /**
+     * Constructs a thread section with the specified state and counter mode.
+     * <p>The striped mode is preferable for sections entered by many threads concurrently,
+     * the single counter is cheaper to sum and takes less memory.
+     *
+     * @param enabled the state of a thread section {@code true} - enabled or {@code false} - disabled
+     * @param striped the counter mode {@code true} - striped cells or {@code false} - single counter
+     */
+    public ThreadSection(boolean enabled, boolean striped) {
         this.enabled = new AtomicBoolean(enabled);
+        this.count = striped ? null : new AtomicLong(0L);
+        this.cells = striped ? new AtomicLongArray((STRIPES + 2) * PADDING) : null;
+    }
+
+    /**
+     * Returns {@code true} if this thread section counts access threads in striped cells, {@code false} otherwise.
+     *
+     * @return {@code true} if this thread section counts access threads in striped cells, {@code false} otherwise
+     */
+    public boolean isStriped() {
+        return cells != null;
     }
 
     /**
@@ -56,7 +96,7 @@ public final class ThreadSection {
      * @return {@code true} if this thread section is in the disabled state, {@code false} otherwise
      */
     public boolean isDisabled() {
-        return !enabled.get() && (count.get() == 0L);
+        return !enabled.get() && (count() == 0L);
     }
 
     /**
@@ -74,16 +114,44 @@ public final class ThreadSection {
      * @return {@code true} if this thread section was switched to the disabled state, {@code false} if it was already in the disabled state
      */
     public boolean disable() {
-        return enabled.compareAndSet(true, false);
+        if (enabled.compareAndSet(true, false)) {
+            signal();
+            return true;
+        } else {
+            return false;
+        }
     }
 
     /**
      * Waits until this thread section becomes disabled and all access threads have left it.
+     * <p>The wait is not interrupted, the interrupt status of the current thread is restored when it returns.
      */
     public void await() {
-        while (!isDisabled()) {
-            Thread.onSpinWait();
-        }
+        await(false, 0L);
+    }
+
+    /**
+     * Waits until this thread section becomes disabled and all access threads have left it or the specified timeout elapses.
+     * <p>The wait is not interrupted, the interrupt status of the current thread is restored when it returns.
+     *
+     * @param timeout the maximum time to wait
+     *
+     * @return {@code true} if this thread section is disabled and all access threads have left it, {@code false} if the timeout elapsed
+     */
+    public boolean await(Duration timeout) {
+        return awaitNanos(TimeUnit.NANOSECONDS.convert(timeout));
+    }
+
+    /**
+     * Waits until this thread section becomes disabled and all access threads have left it or the specified timeout elapses.
+     * <p>The wait is not interrupted, the interrupt status of the current thread is restored when it returns.
+     *
+     * @param nanos the maximum time to wait in nanoseconds
+     *
+     * @return {@code true} if this thread section is disabled and all access threads have left it, {@code false} if the timeout elapsed
+     */
+    public boolean awaitNanos(long nanos) {
+        return await(true, nanos);
     }
 
     /**
@@ -94,11 +162,11 @@ public final class ThreadSection {
      */
     public boolean enter() {
         if (enabled.get()) {
-            count.incrementAndGet();
+            add(1L);
             if (enabled.get()) {
                 return true;
             } else {
-                count.decrementAndGet();
+                add(-1L);
                 return false;
             }
         } else {
@@ -111,10 +179,80 @@ public final class ThreadSection {
      * <p>Every call of this method should follow after the call of {@link #enter() enter} method with {@code true} result.
      */
     public void leave() {
-        long c = count.decrementAndGet();
-        if (c < 0L) {
-            count.incrementAndGet();
+        long c = add(-1L);
+        if ((c < 0L) && ((cells == null) || ((c = count()) < 0L))) {
+            add(1L);
             throw new IllegalStateException(String.format("Illegal enter/leave calls: %d", c));
         }
+        signal();
+    }
+
+    private void signal() {
+        if (!waiters.isEmpty() && isDisabled()) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    private boolean await(boolean timed, long nanos) {
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        for (int i = 0; i < SPINS + YIELDS; i++) {
+            if (isDisabled()) {
+                return true;
+            } else if (timed && (deadline - System.nanoTime() <= 0L)) {
+                return false;
+            } else if (i < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        Thread current = Thread.currentThread();
+        boolean interrupted = false;
+        waiters.add(current);
+        try {
+            while (!isDisabled()) {
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            waiters.remove(current);
+            if (interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    private long add(long delta) {
+        if (cells == null) {
+            return count.addAndGet(delta);
+        } else {
+            long id = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+            return cells.addAndGet((((int) (id >>> 32) & (STRIPES - 1)) + 1) * PADDING, delta);
+        }
+    }
+
+    private long count() {
+        if (cells == null) {
+            return count.get();
+        } else {
+            long c = 0L;
+            for (int i = 1; i <= STRIPES; i++) {
+                c += cells.get(i * PADDING);
+            }
+            return c;
+        }
     }
 }
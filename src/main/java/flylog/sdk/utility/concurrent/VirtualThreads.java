@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.utility.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors which run every task in a new virtual thread.
+ * <p>These executors do not own any threads, so they do not need to be shut down.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class VirtualThreads {
+    /**
+     * Shared executor of the SDK.
+     */
+    public static final Executor EXECUTOR = executor("flylog-");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor which runs every task in a new virtual thread with the specified name prefix.
+     *
+     * @param prefix the thread name prefix
+     *
+     * @return virtual thread executor
+     */
+    public static Executor executor(String prefix) {
+        ThreadFactory factory = Thread.ofVirtual().name(prefix, 0L).factory();
+        return task -> factory.newThread(task).start();
+    }
+}
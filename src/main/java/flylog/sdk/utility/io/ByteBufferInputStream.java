@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flylog.sdk.utility.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Input stream which reads the remaining bytes of a sequence of byte buffers.
+ * <p>Buffers are read through their duplicates, so the positions of the original buffers are not changed.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public class ByteBufferInputStream extends InputStream {
+    /**
+     * Duplicates of the byte buffers.
+     */
+    protected final ByteBuffer[] buffers;
+
+    /**
+     * Index of the current byte buffer.
+     */
+    protected int index = 0;
+
+    /**
+     * Constructs an input stream over the specified byte buffers.
+     *
+     * @param buffers the byte buffers
+     */
+    public ByteBufferInputStream(ByteBuffer... buffers) {
+        this.buffers = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            this.buffers[i] = buffers[i].duplicate();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer buffer = current();
+        return (buffer != null) ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long s = 0L;
+        ByteBuffer buffer;
+        while ((s < n) && ((buffer = current()) != null)) {
+            int c = (int) Math.min(n - s, buffer.remaining());
+            buffer.position(buffer.position() + c);
+            s += c;
+        }
+        return s;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long a = 0L;
+        for (int i = index; i < buffers.length; i++) {
+            a += buffers[i].remaining();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, a);
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long t = 0L;
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer;
+        while ((buffer = current()) != null) {
+            t += channel.write(buffer);
+        }
+        return t;
+    }
+
+    /**
+     * Gets the current byte buffer with remaining bytes.
+     *
+     * @return current byte buffer or {@code null} if there are no more bytes
+     */
+    protected ByteBuffer current() {
+        while (index < buffers.length) {
+            ByteBuffer buffer = buffers[index];
+            if (buffer.hasRemaining()) {
+                return buffer;
+            }
+            buffers[index++] = null;
+        }
+        return null;
+    }
+}
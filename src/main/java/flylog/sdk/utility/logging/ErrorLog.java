@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 The FlyLog Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flylog.sdk.utility.logging;
+
+/**
+ * Default handler of the errors of background work of the SDK.
+ * <p>Errors are logged to the {@link System.Logger platform logger} {@value #LOGGER_NAME} with the level
+ * {@link System.Logger.Level#ERROR ERROR}, so they reach the logging backend of the application instead of the standard error stream.
+ * Components owned by a logging framework report their errors to the status channel of the framework instead.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 1.0
+ */
+public final class ErrorLog {
+    /**
+     * Name of the platform logger of the errors.
+     */
+    public static final String LOGGER_NAME = "flylog.sdk";
+
+    private static final System.Logger LOGGER = System.getLogger(LOGGER_NAME);
+
+    private ErrorLog() {
+    }
+
+    /**
+     * Logs the specified error.
+     *
+     * @param message the error message
+     * @param e the error or {@code null}
+     */
+    public static void error(String message, Throwable e) {
+        LOGGER.log(System.Logger.Level.ERROR, message, e);
+    }
+}